@@ -0,0 +1,176 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Page load event storm microbenchmark comparing the SessionEventBus dispatch with the
+ * CopyOnWriteArrayList loops Session used before. It is not part of the unit tests, run it on a
+ * device with:
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=org.mozilla.vrbrowser.browser.engine.SessionEventBusBenchmark
+ * The median time of each implementation is logged and reported in the instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SessionEventBusBenchmark {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionEventBusBenchmark.class);
+
+    private static final int PAGE_LOADS = 200;
+    private static final int PROGRESS_PER_LOAD = 50;
+    private static final int LISTENERS = 8;
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 15;
+
+    private interface PageListener {
+        void onPageStart(String aUri);
+        void onProgressChange(int aProgress);
+        void onPageStop();
+    }
+
+    private static class CountingListener implements PageListener {
+        int events;
+
+        @Override
+        public void onPageStart(String aUri) {
+            events++;
+        }
+
+        @Override
+        public void onProgressChange(int aProgress) {
+            events++;
+        }
+
+        @Override
+        public void onPageStop() {
+            events++;
+        }
+    }
+
+    private interface Storm {
+        // Returns the number of delivered events.
+        int run();
+    }
+
+    @Test
+    public void pageLoadEventStorm() {
+        // Every page load delivers its start, stop and a single coalesced progress event.
+        assertEquals((LISTENERS + 1) * PAGE_LOADS * 3, runEventBus());
+        // Every progress event is delivered.
+        assertEquals((LISTENERS + 1) * PAGE_LOADS * (PROGRESS_PER_LOAD + 2), runCopyOnWrite());
+
+        long eventBusNs = measure(this::runEventBus);
+        long copyOnWriteNs = measure(this::runCopyOnWrite);
+
+        String summary = "Page load event storm (" + PAGE_LOADS + " loads, " + PROGRESS_PER_LOAD +
+                " progress events each): SessionEventBus " + eventBusNs / 1000 + "us, CopyOnWriteArrayList " +
+                copyOnWriteNs / 1000 + "us";
+        Log.i(LOGTAG, summary);
+
+        Bundle status = new Bundle();
+        status.putLong("session_event_bus_median_ns", eventBusNs);
+        status.putLong("copy_on_write_median_ns", copyOnWriteNs);
+        status.putString("summary", summary);
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    private static long measure(Storm aStorm) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            aStorm.run();
+        }
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            aStorm.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private int runEventBus() {
+        final ArrayList<Runnable> scheduled = new ArrayList<>();
+        SessionEventBus bus = new SessionEventBus(scheduled::add);
+        ListenerList<PageListener> listeners = new ListenerList<>();
+        ArrayList<CountingListener> counters = new ArrayList<>();
+        for (int i = 0; i < LISTENERS; i++) {
+            CountingListener listener = new CountingListener();
+            counters.add(listener);
+            listeners.add(listener);
+        }
+
+        for (int load = 0; load < PAGE_LOADS; load++) {
+            // Listeners come and go while the page sends navigation and progress events.
+            CountingListener tabListener = new CountingListener();
+            counters.add(tabListener);
+            listeners.add(tabListener);
+            final String uri = "https://example.com/" + load;
+            bus.post(listeners, aListener -> aListener.onPageStart(uri));
+            for (int progress = 1; progress <= PROGRESS_PER_LOAD; progress++) {
+                final int value = progress;
+                bus.postCoalesced(SessionEventBus.COALESCED_PROGRESS, listeners, aListener -> aListener.onProgressChange(value));
+            }
+            // One UI loop turn per page load.
+            for (Runnable runnable: scheduled) {
+                runnable.run();
+            }
+            scheduled.clear();
+            bus.post(listeners, PageListener::onPageStop);
+            listeners.remove(tabListener);
+        }
+
+        return countEvents(counters);
+    }
+
+    private int runCopyOnWrite() {
+        CopyOnWriteArrayList<PageListener> listeners = new CopyOnWriteArrayList<>();
+        ArrayList<CountingListener> counters = new ArrayList<>();
+        for (int i = 0; i < LISTENERS; i++) {
+            CountingListener listener = new CountingListener();
+            counters.add(listener);
+            listeners.add(listener);
+        }
+
+        for (int load = 0; load < PAGE_LOADS; load++) {
+            CountingListener tabListener = new CountingListener();
+            counters.add(tabListener);
+            listeners.add(tabListener);
+            String uri = "https://example.com/" + load;
+            for (PageListener listener: listeners) {
+                listener.onPageStart(uri);
+            }
+            for (int progress = 1; progress <= PROGRESS_PER_LOAD; progress++) {
+                for (PageListener listener: listeners) {
+                    listener.onProgressChange(progress);
+                }
+            }
+            for (PageListener listener: listeners) {
+                listener.onPageStop();
+            }
+            listeners.remove(tabListener);
+        }
+
+        return countEvents(counters);
+    }
+
+    private static int countEvents(ArrayList<CountingListener> aListeners) {
+        int events = 0;
+        for (CountingListener listener: aListeners) {
+            events += listener.events;
+        }
+        return events;
+    }
+}
@@ -0,0 +1,89 @@
+package org.mozilla.vrbrowser.performance;
+
+import android.app.Instrumentation;
+import android.content.Context;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.browser.SettingsStore;
+import org.mozilla.vrbrowser.crashreporting.CrashReporterService;
+import org.mozilla.vrbrowser.utils.EnvironmentUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the known main thread I/O entry points on a device, where StrictMode also reports the
+ * accesses that aren't traced, and checks that every detected site is in the baseline.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainThreadIOInstrumentedTest {
+
+    private Instrumentation mInstrumentation;
+    private Set<String> mBaseline;
+
+    @Before
+    public void setUp() throws IOException {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mBaseline = readBaseline();
+        mInstrumentation.runOnMainSync(() -> {
+            MainThreadIO.clear();
+            MainThreadIO.enable();
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(() -> {
+            MainThreadIO.disable();
+            MainThreadIO.clear();
+        });
+    }
+
+    @Test
+    public void entryPointsOnlyHitBaselineSites() {
+        final Context context = mInstrumentation.getTargetContext();
+        mInstrumentation.runOnMainSync(() -> {
+            SettingsStore settings = SettingsStore.getInstance(context);
+            settings.setMainThreadWatchdogEnabled(settings.isMainThreadWatchdogEnabled());
+            CrashReporterService.findCrashFiles(context);
+            EnvironmentUtils.isExternalEnvReady(context, SettingsStore.ENV_DEFAULT);
+        });
+        // StrictMode violations are reported after the access.
+        mInstrumentation.waitForIdleSync();
+
+        Set<String> sites = MainThreadIO.getSites();
+        Set<String> added = new HashSet<>(sites);
+        added.removeAll(mBaseline);
+        assertTrue("New main thread I/O sites, move them off the main thread: " + added, added.isEmpty());
+    }
+
+    private Set<String> readBaseline() throws IOException {
+        HashSet<String> baseline = new HashSet<>();
+        InputStream in = getClass().getClassLoader().getResourceAsStream("main_thread_io_baseline.txt");
+        assertNotNull(in);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    baseline.add(line);
+                }
+            }
+        }
+        return baseline;
+    }
+}
@@ -16,6 +16,10 @@ public class AppExecutors {
 
     private final Executor mNetworkIO;
 
+    private final Executor mDatabaseIO;
+
+    private final Executor mImageIO;
+
     private final Executor mMainThread;
 
     private final HandlerThread mBackgroundThread;
@@ -23,9 +27,11 @@ public class AppExecutors {
 
     private final ScheduledExecutorService mScheduled;
 
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread, ScheduledExecutorService scheduled) {
+    private AppExecutors(Executor diskIO, Executor networkIO, Executor databaseIO, Executor imageIO, Executor mainThread, ScheduledExecutorService scheduled) {
         this.mDiskIO = diskIO;
         this.mNetworkIO = networkIO;
+        this.mDatabaseIO = databaseIO;
+        this.mImageIO = imageIO;
         this.mMainThread = mainThread;
         this.mScheduled = scheduled;
         mBackgroundThread = new HandlerThread("BackgroundThread");
@@ -34,6 +40,8 @@ public class AppExecutors {
     public AppExecutors() {
         this(Executors.newSingleThreadExecutor(),
                 Executors.newFixedThreadPool(3),
+                Executors.newFixedThreadPool(2),
+                Executors.newFixedThreadPool(2),
                 new MainThreadExecutor(),
                 Executors.newSingleThreadScheduledExecutor());
     }
@@ -46,6 +54,22 @@ public class AppExecutors {
         return mNetworkIO;
     }
 
+    /**
+     * Executor used by Room to run the database queries, so they don't wait behind
+     * unrelated file operations queued in {@link #diskIO()}.
+     */
+    public Executor databaseIO() {
+        return mDatabaseIO;
+    }
+
+    /**
+     * Bounded executor used to decode and transform images, so image loads can't starve
+     * {@link #diskIO()} or {@link #networkIO()}.
+     */
+    public Executor imageIO() {
+        return mImageIO;
+    }
+
     public Executor mainThread() {
         return mMainThread;
     }
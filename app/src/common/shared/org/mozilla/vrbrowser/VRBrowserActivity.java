@@ -47,6 +47,8 @@ import org.mozilla.geckoview.GeckoRuntime;
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.geckoview.GeckoVRManager;
 import org.mozilla.vrbrowser.audio.AudioEngine;
+import org.mozilla.vrbrowser.audio.SoundPoolAudioEngine;
+import org.mozilla.vrbrowser.audio.VRAudioTheme;
 import org.mozilla.vrbrowser.browser.Accounts;
 import org.mozilla.vrbrowser.browser.PermissionDelegate;
 import org.mozilla.vrbrowser.browser.SettingsStore;
@@ -55,8 +57,13 @@ import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.crashreporting.CrashReporterService;
 import org.mozilla.vrbrowser.crashreporting.GlobalExceptionHandler;
+import org.mozilla.vrbrowser.db.KeyValueStore;
 import org.mozilla.vrbrowser.geolocation.GeolocationWrapper;
 import org.mozilla.vrbrowser.input.MotionEventGenerator;
+import org.mozilla.vrbrowser.performance.BackgroundScheduler;
+import org.mozilla.vrbrowser.performance.SessionResourceMonitor;
+import org.mozilla.vrbrowser.performance.FrameStats;
+import org.mozilla.vrbrowser.performance.PerformancePolicy;
 import org.mozilla.vrbrowser.search.SearchEngineWrapper;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.ui.OffscreenDisplay;
@@ -82,14 +89,17 @@ import org.mozilla.vrbrowser.ui.widgets.menus.VideoProjectionMenuWidget;
 import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.ConnectivityReceiver;
 import org.mozilla.vrbrowser.utils.DeviceType;
+import org.mozilla.vrbrowser.utils.LastFrameCache;
 import org.mozilla.vrbrowser.utils.LocaleUtils;
 import org.mozilla.vrbrowser.utils.ServoUtils;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -156,6 +166,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     static final long RESET_CRASH_COUNT_DELAY = 5000;
 
     static final String LOGTAG = SystemUtils.createLogtag(VRBrowserActivity.class);
+    private static final String POOR_PERFORMANCE_ALLOW_LIST_KEY = "poor_performance_allow_list";
     ConcurrentHashMap<Integer, Widget> mWidgets;
     private int mWidgetHandleIndex = 1;
     AudioEngine mAudioEngine;
@@ -164,7 +175,6 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     int mLastGesture;
     SwipeRunnable mLastRunnable;
     Handler mHandler = new Handler();
-    Runnable mAudioUpdateRunnable;
     Windows mWindows;
     RootWidget mRootWidget;
     KeyboardWidget mKeyboard;
@@ -190,6 +200,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     private AudioManager mAudioManager;
     private Widget mActiveDialog;
     private Set<String> mPoorPerformanceAllowList;
+    private PerformancePolicy mPerformancePolicy;
+    private BackgroundScheduler mBackgroundScheduler;
+    private SessionResourceMonitor mSessionResourceMonitor;
+    private KeyValueStore mKeyValueStore;
     private float mCurrentCylinderDensity = 0;
     private boolean mHideWebXRIntersitial = false;
 
@@ -228,6 +242,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     protected void onCreate(Bundle savedInstanceState) {
         SettingsStore.getInstance(getBaseContext()).setPid(Process.myPid());
         ((VRBrowserApplication)getApplication()).onActivityCreate(this);
+        mBackgroundScheduler = ((VRBrowserApplication)getApplication()).getBackgroundScheduler();
+        mSessionResourceMonitor = ((VRBrowserApplication)getApplication()).getSessionResourceMonitor();
+        mKeyValueStore = ((VRBrowserApplication)getApplication()).getKeyValueStore();
         // Fix for infinite restart on startup crashes.
         long count = SettingsStore.getInstance(getBaseContext()).getCrashRestartCount();
         boolean cancelRestart = count > CrashReporterService.MAX_RESTART_COUNT;
@@ -248,6 +265,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mUiThread = Thread.currentThread();
 
         BitmapCache.getInstance(this).onCreate();
+        LastFrameCache.getInstance(this).onCreate();
 
         EngineProvider.INSTANCE.getOrCreateRuntime(this).appendAppNotesToCrashReport("Firefox Reality " + BuildConfig.VERSION_NAME + "-" + BuildConfig.VERSION_CODE + "-" + BuildConfig.FLAVOR + "-" + BuildConfig.BUILD_TYPE + " (" + BuildConfig.GIT_HASH + ")");
 
@@ -273,13 +291,12 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         mPermissionDelegate = new PermissionDelegate(this, this);
 
-        mAudioEngine = new AudioEngine(this, null);
+        mAudioEngine = new AudioEngine(this, new SoundPoolAudioEngine(this, new VRAudioTheme()));
         mAudioEngine.setEnabled(SettingsStore.getInstance(this).isAudioEnabled());
         mAudioEngine.preloadAsync(() -> {
             Log.i(LOGTAG, "AudioEngine sounds preloaded!");
             // mAudioEngine.playSound(AudioEngine.Sound.AMBIENT, true);
         });
-        mAudioUpdateRunnable = () -> mAudioEngine.update();
 
         mSettings = SettingsStore.getInstance(this);
         mSettings.initModel(this);
@@ -303,7 +320,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         GeolocationWrapper.INSTANCE.update(this);
 
-        mPoorPerformanceAllowList = new HashSet<>();
+        mPoorPerformanceAllowList = new HashSet<>(mKeyValueStore.getStringSet(POOR_PERFORMANCE_ALLOW_LIST_KEY, Collections.emptySet()));
+        mPerformancePolicy = new PerformancePolicy(mPerformanceDelegate);
+        final ByteBuffer performanceBuffer = mPerformancePolicy.getFrameTimingBuffer().getBuffer();
+        queueRunnable(() -> setPerformanceBufferNative(performanceBuffer));
         checkForCrash();
 
         mLifeCycle.setCurrentState(Lifecycle.State.CREATED);
@@ -442,8 +462,13 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         }
 
         mAudioEngine.pauseEngine();
+        mPerformancePolicy.stop();
+        mBackgroundScheduler.setHeadsetIdle(true);
+        mSessionResourceMonitor.stop();
 
         mWindows.onPause();
+        // The app may be killed while in the background.
+        ((VRBrowserApplication)getApplication()).getExecutors().diskIO().execute(mKeyValueStore::flush);
 
         for (Widget widget: mWidgets.values()) {
             widget.onPause();
@@ -470,6 +495,12 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mWindows.onResume();
 
         mAudioEngine.resumeEngine();
+        mBackgroundScheduler.setHeadsetIdle(false);
+        mSessionResourceMonitor.start();
+        // The frame statistics are also used to defer background work, so the policy is always
+        // sampled and only its mitigations depend on the setting.
+        mPerformancePolicy.setMitigationsEnabled(mSettings.isPerformanceMonitorEnabled());
+        mPerformancePolicy.start();
         for (Widget widget: mWidgets.values()) {
             widget.onResume();
         }
@@ -511,6 +542,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mWindows.onDestroy();
 
         BitmapCache.getInstance(this).onDestroy();
+        LastFrameCache.getInstance(this).onDestroy();
 
         SessionStore.get().onDestroy();
 
@@ -655,7 +687,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         }
         boolean isCrashReportingEnabled = SettingsStore.getInstance(this).isCrashReportingEnabled();
         if (isCrashReportingEnabled) {
-            SystemUtils.postCrashFiles(this, files);
+            mBackgroundScheduler.schedule("crash-files", BackgroundScheduler.PRIORITY_IDLE, true,
+                    ((VRBrowserApplication)getApplication()).getExecutors().networkIO(),
+                    () -> SystemUtils.postCrashFiles(this, files));
 
         } else {
             if (mCrashDialog == null) {
@@ -675,7 +709,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         boolean isCrashReportingEnabled = SettingsStore.getInstance(this).isCrashReportingEnabled();
         if (isCrashReportingEnabled) {
-            SystemUtils.postCrashFiles(this, dumpFile, extraFile);
+            mBackgroundScheduler.schedule("crash-" + dumpFile, BackgroundScheduler.PRIORITY_IDLE, true,
+                    ((VRBrowserApplication)getApplication()).getExecutors().networkIO(),
+                    () -> SystemUtils.postCrashFiles(this, dumpFile, extraFile));
 
         } else {
             if (mCrashDialog == null) {
@@ -702,7 +738,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
                 // It looks like these come in all at the same time so just always suspend inactive Sessions.
                 Log.d(LOGTAG, "Memory pressure, suspending inactive sessions.");
-                SessionStore.get().suspendAllInactiveSessions();
+                SessionStore.get().onMemoryPressure();
                 break;
             default:
                 Log.e(LOGTAG, "onTrimMemory unknown level: " + level);
@@ -951,11 +987,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     @Keep
     @SuppressWarnings({"UnusedDeclaration"})
     void handleAudioPose(float qx, float qy, float qz, float qw, float px, float py, float pz) {
+        // Called from the render thread every frame. The engine picks up the latest pose from its
+        // own thread, so there is no need to post an update to the UI thread.
         mAudioEngine.setPose(qx, qy, qz, qw, px, py, pz);
-
-        // https://developers.google.com/vr/reference/android/com/google/vr/sdk/audio/GvrAudioEngine.html#resume()
-        // The initialize method must be called from the main thread at a regular rate.
-        runOnUiThread(mAudioUpdateRunnable);
     }
 
     @Keep
@@ -1006,6 +1040,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         }
         mIsPresentingImmersive = true;
         runOnUiThread(() -> {
+            mBackgroundScheduler.setImmersive(true);
             mWindows.enterImmersiveMode();
             for (WebXRListener listener: mWebXRListeners) {
                 listener.onEnterWebXR();
@@ -1035,6 +1070,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         }
         mIsPresentingImmersive = false;
         runOnUiThread(() -> {
+            mBackgroundScheduler.setImmersive(false);
             mWindows.exitImmersiveMode();
             for (WebXRListener listener: mWebXRListeners) {
                 listener.onExitWebXR();
@@ -1172,7 +1208,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             if (mIsPresentingImmersive) {
                 return;
             }
-            WindowWidget window = mWindows.getFocusedWindow();
+            WindowWidget window = getPoorPerformanceWindow();
             if (window == null || window.getSession() == null) {
                 return;
             }
@@ -1180,7 +1216,12 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             if (mPoorPerformanceAllowList.contains(originalUri)) {
                 return;
             }
+            // Try the cheaper mitigations before blocking the page.
+            if (!mPerformancePolicy.onPoorPerformance()) {
+                return;
+            }
             window.getSession().loadHomePage();
+            mPerformancePolicy.reset();
             final String[] buttons = {getString(R.string.ok_button), getString(R.string.performance_unblock_page)};
             window.showConfirmPrompt(getString(R.string.performance_title),
                     getString(R.string.performance_message),
@@ -1188,12 +1229,37 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                     (index, isChecked) -> {
                 if (index == PromptDialogWidget.NEGATIVE) {
                     mPoorPerformanceAllowList.add(originalUri);
+                    mKeyValueStore.putStringSet(POOR_PERFORMANCE_ALLOW_LIST_KEY, mPoorPerformanceAllowList);
                     window.getSession().loadUri(originalUri);
                 }
             });
         });
     }
 
+    /**
+     * @return The window showing the session that uses the most CPU if it's heavy, otherwise the
+     * focused window.
+     */
+    @Nullable
+    private WindowWidget getPoorPerformanceWindow() {
+        ArrayList<Session> sessions = new ArrayList<>();
+        for (WindowWidget window: mWindows.getCurrentWindows()) {
+            if (window.getSession() != null) {
+                sessions.add(window.getSession());
+            }
+        }
+        Session heaviest = mSessionResourceMonitor.getHeaviestCpuSession(sessions);
+        if (heaviest != null) {
+            for (WindowWidget window: mWindows.getCurrentWindows()) {
+                if (window.getSession() == heaviest) {
+                    Log.d(LOGTAG, "Poor performance attributed to: " + heaviest.getCurrentUri());
+                    return window;
+                }
+            }
+        }
+        return mWindows.getFocusedWindow();
+    }
+
     @Keep
     @SuppressWarnings("unused")
     private void onAppLink(String aJSON) {
@@ -1221,6 +1287,26 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         });
     }
 
+    private PerformancePolicy.Delegate mPerformanceDelegate = new PerformancePolicy.Delegate() {
+        @Override
+        public void onPerformanceLevelChanged(int aLevel, int aPreviousLevel) {
+            mWindows.setBackgroundWindowsPaused(aLevel >= PerformancePolicy.LEVEL_PAUSE_BACKGROUND_WINDOWS);
+        }
+
+        @Override
+        public boolean isLevelEffective(int aLevel) {
+            if (aLevel == PerformancePolicy.LEVEL_PAUSE_BACKGROUND_WINDOWS) {
+                return mWindows.getCurrentWindows().size() > 1;
+            }
+            return true;
+        }
+
+        @Override
+        public void onFrameStats(@NonNull FrameStats aStats) {
+            mBackgroundScheduler.onFrameStats(aStats);
+        }
+    };
+
     @Keep
     @SuppressWarnings("unused")
     private void appendAppNotesToCrashReport(String aNotes) {
@@ -1715,6 +1801,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     private native void runCallbackNative(long aCallback);
     private native void setCylinderDensityNative(float aDensity);
     private native void setCPULevelNative(@CPULevelFlags int aCPULevel);
+    private native void setPerformanceBufferNative(ByteBuffer aBuffer);
     private native void setWebXRIntersitialStateNative(@WebXRInterstitialState int aState);
     private native void setIsServo(boolean aIsServo);
 }
@@ -19,17 +19,25 @@ import org.mozilla.vrbrowser.browser.Addons;
 import org.mozilla.vrbrowser.browser.LoginStorage;
 import org.mozilla.vrbrowser.browser.Places;
 import org.mozilla.vrbrowser.browser.Services;
+import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.EngineProvider;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.db.AppDatabase;
 import org.mozilla.vrbrowser.db.DataRepository;
+import org.mozilla.vrbrowser.db.KeyValueStore;
+import org.mozilla.vrbrowser.db.KeyValueStores;
 import org.mozilla.vrbrowser.downloads.DownloadsManager;
+import org.mozilla.vrbrowser.performance.BackgroundScheduler;
+import org.mozilla.vrbrowser.performance.MainThreadWatchdog;
+import org.mozilla.vrbrowser.performance.SessionResourceMonitor;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.ui.adapters.Language;
 import org.mozilla.vrbrowser.ui.widgets.AppServicesProvider;
 import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.ConnectivityReceiver;
 import org.mozilla.vrbrowser.utils.EnvironmentsManager;
+import org.mozilla.vrbrowser.utils.ImagePipeline;
+import org.mozilla.vrbrowser.utils.LastFrameCache;
 import org.mozilla.vrbrowser.utils.LocaleUtils;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
@@ -38,6 +46,11 @@ public class VRBrowserApplication extends Application implements AppServicesProv
     private SessionStore mSessionStore;
     private AppExecutors mAppExecutors;
     private BitmapCache mBitmapCache;
+    private LastFrameCache mLastFrameCache;
+    private ImagePipeline mImagePipeline;
+    private BackgroundScheduler mBackgroundScheduler;
+    private MainThreadWatchdog mMainThreadWatchdog;
+    private SessionResourceMonitor mSessionResourceMonitor;
     private Services mServices;
     private LoginStorage mLoginStorage;
     private Places mPlaces;
@@ -71,15 +84,23 @@ public class VRBrowserApplication extends Application implements AppServicesProv
     }
 
     protected void onActivityCreate(@NonNull Context activityContext) {
+        mMainThreadWatchdog = new MainThreadWatchdog(activityContext);
+        if (SettingsStore.getInstance(activityContext).isMainThreadWatchdogEnabled()) {
+            mMainThreadWatchdog.start();
+        }
         onConfigurationChanged(activityContext.getResources().getConfiguration());
         EngineProvider.INSTANCE.getDefaultGeckoWebExecutor(activityContext);
         mAppExecutors = new AppExecutors();
         mConnectivityManager = new ConnectivityReceiver(activityContext);
         mConnectivityManager.init();
+        mBackgroundScheduler = new BackgroundScheduler(activityContext);
+        mBackgroundScheduler.init();
         mPlaces = new Places(activityContext);
         mServices = new Services(activityContext, mPlaces);
         mLoginStorage = new LoginStorage(this);
+        mImagePipeline = new ImagePipeline(activityContext, mAppExecutors.imageIO(), mAppExecutors.mainThread());
         mAccounts = new Accounts(activityContext);
+        mSessionResourceMonitor = new SessionResourceMonitor(activityContext);
         mSessionStore = SessionStore.get();
         mSessionStore.initialize(activityContext);
         mSessionStore.setLocales(LocaleUtils.getPreferredLanguageTags(activityContext));
@@ -87,12 +108,16 @@ public class VRBrowserApplication extends Application implements AppServicesProv
         mDownloadsManager.init();
         mSpeechService = new SpeechService(activityContext);
         mBitmapCache = new BitmapCache(activityContext, mAppExecutors.diskIO(), mAppExecutors.mainThread());
+        mLastFrameCache = new LastFrameCache(activityContext, mAppExecutors.diskIO(), mAppExecutors.mainThread());
         mEnvironmentsManager = new EnvironmentsManager(activityContext);
         mEnvironmentsManager.init();
         mAddons = new Addons(activityContext, mSessionStore);
     }
 
     protected void onActivityDestroy() {
+        mMainThreadWatchdog.stop();
+        mSessionResourceMonitor.stop();
+        mBackgroundScheduler.end();
         mConnectivityManager.end();
         mDownloadsManager.end();
         mEnvironmentsManager.end();
@@ -131,10 +156,40 @@ public class VRBrowserApplication extends Application implements AppServicesProv
         return DataRepository.getInstance(getDatabase(), mAppExecutors);
     }
 
+    @Override
+    public KeyValueStore getKeyValueStore() {
+        return KeyValueStores.getDefault(this);
+    }
+
     public BitmapCache getBitmapCache() {
         return mBitmapCache;
     }
 
+    @Override
+    public LastFrameCache getLastFrameCache() {
+        return mLastFrameCache;
+    }
+
+    @Override
+    public ImagePipeline getImagePipeline() {
+        return mImagePipeline;
+    }
+
+    @Override
+    public BackgroundScheduler getBackgroundScheduler() {
+        return mBackgroundScheduler;
+    }
+
+    @Override
+    public MainThreadWatchdog getMainThreadWatchdog() {
+        return mMainThreadWatchdog;
+    }
+
+    @Override
+    public SessionResourceMonitor getSessionResourceMonitor() {
+        return mSessionResourceMonitor;
+    }
+
     public Accounts getAccounts() {
         return mAccounts;
     }
@@ -0,0 +1,328 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.audio;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link AudioEngine.AudioEngineImpl} based on a low latency {@link SoundPool}.
+ * All the SoundPool calls run in a dedicated audio priority thread. Head poses are published by
+ * the render thread through a lock-free single slot mailbox and consumed by the audio thread,
+ * which pans the UI sounds in stereo according to the head orientation (no HRTF).
+ */
+public class SoundPoolAudioEngine implements AudioEngine.AudioEngineImpl {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SoundPoolAudioEngine.class);
+    private static final int MAX_STREAMS = 4;
+    // Pan refresh rate of the looping sounds while the head moves.
+    private static final long POSE_UPDATE_INTERVAL_MS = 20;
+
+    private static final int POSE_SIZE = 7;
+    private static final int DIRTY = 4;
+    private static final int INDEX_MASK = 3;
+
+    /**
+     * Playback counters, read from any thread.
+     */
+    public static class Metrics {
+        // Output latency estimated from the device buffer size, in milliseconds.
+        public volatile float outputLatencyMs;
+        // Average and worst delay between a play request and the SoundPool call, in milliseconds.
+        public volatile float averageRequestLatencyMs;
+        public volatile long maxRequestLatencyMs;
+        public final AtomicInteger played = new AtomicInteger();
+        // Plays dropped because the sound wasn't loaded or no stream was available.
+        public final AtomicInteger dropped = new AtomicInteger();
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "output latency: " + outputLatencyMs + "ms, request latency: " + averageRequestLatencyMs +
+                    "ms (max " + maxRequestLatencyMs + "ms), played: " + played.get() + ", dropped: " + dropped.get();
+        }
+    }
+
+    private Context mContext;
+    private AudioEngine.AudioTheme mTheme;
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private Handler mMainHandler;
+    private SoundPool mSoundPool;
+    // Audio thread state.
+    private final EnumMap<AudioEngine.Sound, Integer> mSoundIds = new EnumMap<>(AudioEngine.Sound.class);
+    private final EnumMap<AudioEngine.Sound, Integer> mStreamIds = new EnumMap<>(AudioEngine.Sound.class);
+    private final EnumMap<AudioEngine.Sound, Float> mStreamVolumes = new EnumMap<>(AudioEngine.Sound.class);
+    private float mPan;
+    private boolean mPoseUpdatesScheduled;
+    private long mRequestLatencySum;
+    private final Metrics mMetrics = new Metrics();
+
+    // Triple buffered pose mailbox. The writer fills its back buffer and swaps it with the slot,
+    // the reader swaps its front buffer with the slot only when the slot has a new pose.
+    private final float[][] mPoses = new float[3][POSE_SIZE];
+    private final AtomicInteger mPoseSlot = new AtomicInteger(0);
+    private int mWriterIndex = 1;
+    private int mReaderIndex = 2;
+
+    public SoundPoolAudioEngine(@NonNull Context aContext, @NonNull AudioEngine.AudioTheme aTheme) {
+        mContext = aContext;
+        mTheme = aTheme;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mThread = new HandlerThread("AudioEngine", Process.THREAD_PRIORITY_AUDIO);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.post(this::createSoundPool);
+    }
+
+    @NonNull
+    public Metrics getMetrics() {
+        return mMetrics;
+    }
+
+    private void createSoundPool() {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .setFlags(AudioAttributes.FLAG_LOW_LATENCY)
+                .build();
+        mSoundPool = new SoundPool.Builder()
+                .setMaxStreams(MAX_STREAMS)
+                .setAudioAttributes(attributes)
+                .build();
+
+        AudioManager audioManager = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
+        if (audioManager != null) {
+            try {
+                int framesPerBuffer = Integer.parseInt(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER));
+                int sampleRate = Integer.parseInt(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE));
+                mMetrics.outputLatencyMs = framesPerBuffer * 1000.0f / sampleRate;
+
+            } catch (NumberFormatException | NullPointerException e) {
+                Log.w(LOGTAG, "Unable to query the output buffer size");
+            }
+        }
+    }
+
+    @Override
+    public void preloadAsync(final Runnable aCallback) {
+        mHandler.post(() -> {
+            if (mSoundPool == null) {
+                return;
+            }
+            AtomicInteger pending = new AtomicInteger();
+            Runnable done = () -> {
+                if (aCallback != null) {
+                    mMainHandler.post(aCallback);
+                }
+            };
+            mSoundPool.setOnLoadCompleteListener((soundPool, sampleId, status) -> {
+                if (status != 0) {
+                    Log.e(LOGTAG, "Error loading sound: " + sampleId);
+                    mSoundIds.values().remove(sampleId);
+                }
+                if (pending.decrementAndGet() == 0) {
+                    done.run();
+                }
+            });
+            for (AudioEngine.Sound sound: AudioEngine.Sound.values()) {
+                String path = mTheme.getPath(sound);
+                if (path == null || mSoundIds.containsKey(sound)) {
+                    continue;
+                }
+                try (AssetFileDescriptor fd = mContext.getAssets().openFd(path)) {
+                    pending.incrementAndGet();
+                    mSoundIds.put(sound, mSoundPool.load(fd, 1));
+
+                } catch (IOException e) {
+                    Log.e(LOGTAG, "Sound not found: " + path);
+                }
+            }
+            if (pending.get() == 0) {
+                done.run();
+            }
+        });
+    }
+
+    @Override
+    public void pause() {
+        mHandler.post(() -> {
+            if (mSoundPool != null) {
+                mSoundPool.autoPause();
+            }
+            Log.d(LOGTAG, "Audio metrics: " + mMetrics);
+        });
+    }
+
+    @Override
+    public void resume() {
+        mHandler.post(() -> {
+            if (mSoundPool != null) {
+                mSoundPool.autoResume();
+            }
+        });
+    }
+
+    /**
+     * Publishes the head pose. Called from the render thread on every frame, it doesn't lock,
+     * allocate or post anything.
+     */
+    @Override
+    public void setPose(float qx, float qy, float qz, float qw, float px, float py, float pz) {
+        float[] pose = mPoses[mWriterIndex];
+        pose[0] = qx;
+        pose[1] = qy;
+        pose[2] = qz;
+        pose[3] = qw;
+        pose[4] = px;
+        pose[5] = py;
+        pose[6] = pz;
+        mWriterIndex = mPoseSlot.getAndSet(mWriterIndex | DIRTY) & INDEX_MASK;
+    }
+
+    /**
+     * Poses are consumed by the audio thread, nothing needs to run in the caller thread.
+     */
+    @Override
+    public void update() {
+    }
+
+    @Override
+    public void release() {
+        mHandler.post(() -> {
+            Log.d(LOGTAG, "Audio metrics: " + mMetrics);
+            if (mSoundPool != null) {
+                mSoundPool.release();
+                mSoundPool = null;
+            }
+            mSoundIds.clear();
+            mStreamIds.clear();
+            mStreamVolumes.clear();
+        });
+        mThread.quitSafely();
+    }
+
+    @Override
+    public void playSound(AudioEngine.Sound aSound, float aVolume, boolean aLoop) {
+        final long requestTime = SystemClock.uptimeMillis();
+        mHandler.post(() -> {
+            updatePan();
+            long latency = SystemClock.uptimeMillis() - requestTime;
+            Integer soundId = mSoundIds.get(aSound);
+            int streamId = 0;
+            if (mSoundPool != null && soundId != null) {
+                float[] volumes = getStereoVolumes(aSound, aVolume);
+                streamId = mSoundPool.play(soundId, volumes[0], volumes[1], 1, aLoop ? -1 : 0, 1.0f);
+            }
+            recordPlay(streamId != 0, latency);
+            if (streamId != 0 && aLoop) {
+                mStreamIds.put(aSound, streamId);
+                mStreamVolumes.put(aSound, aVolume);
+                schedulePoseUpdates();
+            }
+        });
+    }
+
+    @Override
+    public void stopSound(AudioEngine.Sound aSound) {
+        mHandler.post(() -> {
+            Integer streamId = mStreamIds.remove(aSound);
+            mStreamVolumes.remove(aSound);
+            if (streamId != null && mSoundPool != null) {
+                mSoundPool.stop(streamId);
+            }
+        });
+    }
+
+    private void recordPlay(boolean aPlayed, long aLatency) {
+        if (!aPlayed) {
+            mMetrics.dropped.incrementAndGet();
+            return;
+        }
+        int played = mMetrics.played.incrementAndGet();
+        mRequestLatencySum += aLatency;
+        mMetrics.averageRequestLatencyMs = (float) mRequestLatencySum / played;
+        mMetrics.maxRequestLatencyMs = Math.max(mMetrics.maxRequestLatencyMs, aLatency);
+    }
+
+    /**
+     * Reads the latest pose, if a new one was published, and updates the pan.
+     * @return true if the pan changed.
+     */
+    private boolean updatePan() {
+        if ((mPoseSlot.get() & DIRTY) == 0) {
+            return false;
+        }
+        mReaderIndex = mPoseSlot.getAndSet(mReaderIndex) & INDEX_MASK;
+        float[] pose = mPoses[mReaderIndex];
+        float qx = pose[0];
+        float qy = pose[1];
+        float qz = pose[2];
+        float qw = pose[3];
+        // The UI is in front of the user (-Z). Rotate that direction into head space, its X
+        // component tells how much the sound comes from the right (1) or the left (-1).
+        float pan = 2.0f * (qw * qy - qx * qz);
+        pan = Math.max(-1.0f, Math.min(1.0f, pan));
+        if (Math.abs(pan - mPan) < 0.01f) {
+            return false;
+        }
+        mPan = pan;
+        return true;
+    }
+
+    @NonNull
+    private float[] getStereoVolumes(@NonNull AudioEngine.Sound aSound, float aVolume) {
+        if (aSound.getType() == AudioEngine.SoundType.FIELD) {
+            return new float[] { aVolume, aVolume };
+        }
+        // Equal power panning.
+        double angle = (mPan + 1.0) * Math.PI / 4.0;
+        return new float[] { aVolume * (float) Math.cos(angle), aVolume * (float) Math.sin(angle) };
+    }
+
+    private void schedulePoseUpdates() {
+        if (!mPoseUpdatesScheduled) {
+            mPoseUpdatesScheduled = true;
+            mHandler.postDelayed(mPoseUpdateRunnable, POSE_UPDATE_INTERVAL_MS);
+        }
+    }
+
+    // Keeps the looping sounds panned while they play.
+    private final Runnable mPoseUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mPoseUpdatesScheduled = false;
+            if (mStreamIds.isEmpty() || mSoundPool == null) {
+                return;
+            }
+            if (updatePan()) {
+                for (AudioEngine.Sound sound: mStreamIds.keySet()) {
+                    Float volume = mStreamVolumes.get(sound);
+                    float[] volumes = getStereoVolumes(sound, volume != null ? volume : 1.0f);
+                    mSoundPool.setVolume(mStreamIds.get(sound), volumes[0], volumes[1]);
+                }
+            }
+            schedulePoseUpdates();
+        }
+    };
+}
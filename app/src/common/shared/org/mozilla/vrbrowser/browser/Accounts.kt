@@ -6,6 +6,7 @@
 package org.mozilla.vrbrowser.browser
 
 import android.content.Context
+import android.graphics.Bitmap
 import android.graphics.BitmapFactory
 import android.graphics.drawable.BitmapDrawable
 import android.os.Handler
@@ -25,15 +26,16 @@ import mozilla.components.service.fxa.sync.SyncStatusObserver
 import mozilla.components.service.fxa.sync.getLastSynced
 import org.mozilla.vrbrowser.R
 import org.mozilla.vrbrowser.VRBrowserApplication
+import org.mozilla.vrbrowser.performance.BackgroundScheduler
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService
 import org.mozilla.vrbrowser.utils.BitmapCache
+import org.mozilla.vrbrowser.utils.ImagePipeline
 import org.mozilla.vrbrowser.utils.SystemUtils
 import org.mozilla.vrbrowser.utils.ViewUtils
-import java.net.URL
 import java.util.concurrent.CompletableFuture
-import kotlin.concurrent.thread
 
 const val PROFILE_PICTURE_TAG = "fxa_profile_picture"
+const val PROFILE_PICTURE_SIZE = 256
 
 class Accounts constructor(val context: Context) {
 
@@ -130,8 +132,17 @@ class Accounts constructor(val context: Context) {
 
             accountStatus = AccountStatus.SIGNED_IN
 
-            // Enable syncing after signing in
-            syncNowAsync(SyncReason.EngineChange, true)
+            if (authType === AuthType.Existing) {
+                // The account was restored at startup, the sync can wait until it doesn't compete with rendering.
+                val application = context.applicationContext as VRBrowserApplication
+                application.backgroundScheduler.schedule(
+                        "fxa-sync", BackgroundScheduler.PRIORITY_NORMAL, true, application.executors.mainThread()) {
+                    syncNowAsync(SyncReason.Startup, true)
+                }
+            } else {
+                // Enable syncing after signing in
+                syncNowAsync(SyncReason.EngineChange, true)
+            }
 
             // Update device list
             account.deviceConstellation().registerDeviceObserver(
@@ -211,24 +222,27 @@ class Accounts constructor(val context: Context) {
     }
 
     private fun loadProfilePicture(profile: Profile) {
-        thread {
-            try {
-                val url = URL(profile.avatar!!.url)
-                BitmapFactory.decodeStream(url.openStream())?.let {
-                    val bitmap = ViewUtils.getRoundedCroppedBitmap(it)
+        val avatarUrl = profile.avatar?.url
+        // The image pipeline must be used from the UI thread.
+        Handler(Looper.getMainLooper()).post {
+            val request = avatarUrl?.let {
+                ImagePipeline.ImageRequest(it)
+                        .size(PROFILE_PICTURE_SIZE, PROFILE_PICTURE_SIZE)
+                        .transform(ImagePipeline.TRANSFORM_ROUND_CROP)
+            }
+            val picture = request?.let { ImagePipeline.getInstance(context).load(it) }
+                    ?: CompletableFuture.completedFuture<Bitmap?>(null)
+            picture.thenAccept { bitmap ->
+                if (bitmap != null) {
                     profilePicture = BitmapDrawable(context.resources, bitmap)
                     BitmapCache.getInstance(context).addBitmap(PROFILE_PICTURE_TAG, bitmap)
 
-                } ?: throw IllegalArgumentException()
-
-            } catch (e: Exception) {
-                loadDefaultProfilePicture()
+                } else {
+                    loadDefaultProfilePicture()
+                }
 
-            } finally {
                 accountListeners.toMutableList().forEach {
-                    Handler(Looper.getMainLooper()).post {
-                        it.onProfileUpdated(profile)
-                    }
+                    it.onProfileUpdated(profile)
                 }
             }
         }
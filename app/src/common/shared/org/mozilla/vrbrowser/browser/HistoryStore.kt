@@ -16,9 +16,8 @@ import mozilla.components.service.fxa.sync.SyncStatusObserver
 import mozilla.components.support.base.log.logger.Logger
 import org.mozilla.vrbrowser.VRBrowserApplication
 import org.mozilla.vrbrowser.utils.SystemUtils
+import java.util.*
 import java.util.concurrent.CompletableFuture
-import java.util.stream.Collectors
-import java.util.stream.Stream
 
 class HistoryStore constructor(val context: Context) {
 
@@ -26,14 +25,70 @@ class HistoryStore constructor(val context: Context) {
 
     private var listeners = ArrayList<HistoryListener>()
     private var storage = (context.applicationContext as VRBrowserApplication).places.history
+    private val handler = Handler(Looper.getMainLooper())
 
     companion object {
+        // Window used to batch the visits and observations of redirect chains and SPA navigations.
+        private const val WRITE_BATCH_DELAY_MS = 250L
+        private const val NOTIFY_DELAY_MS = 300L
+
         @JvmStatic
-        val BLOCK_LIST: MutableList<String> = Stream.of(
+        val BLOCK_LIST: List<String> = listOf(
                 "https://accounts.firefox.com/authorization",
                 "https://accounts.firefox.com/oauth",
                 "moz-extension://"
-        ).collect(Collectors.toList())
+        )
+
+        private val blockListMatcher = PrefixMatcher(BLOCK_LIST)
+
+        @JvmStatic
+        fun isBlocked(aURL: String?): Boolean {
+            return aURL != null && blockListMatcher.matches(aURL)
+        }
+    }
+
+    /**
+     * Matches strings against a fixed set of prefixes with a single binary search.
+     * Prefixes that extend another prefix are dropped, so the only candidate for a string is the
+     * greatest prefix that sorts before it.
+     */
+    private class PrefixMatcher(prefixes: Collection<String>) {
+        private val sortedPrefixes: Array<String>
+
+        init {
+            val sorted = TreeSet(prefixes)
+            val minimal = ArrayList<String>()
+            for (prefix in sorted) {
+                if (minimal.isEmpty() || !prefix.startsWith(minimal.last())) {
+                    minimal.add(prefix)
+                }
+            }
+            sortedPrefixes = minimal.toTypedArray()
+        }
+
+        fun matches(value: String): Boolean {
+            val index = Arrays.binarySearch(sortedPrefixes, value)
+            if (index >= 0) {
+                return true
+            }
+            val candidate = -index - 2
+            return candidate >= 0 && value.startsWith(sortedPrefixes[candidate])
+        }
+    }
+
+    // Visits and latest observation of a URL waiting to be written.
+    private class PendingWrite {
+        val visits = ArrayList<PageVisit>()
+        var observation: PageObservation? = null
+    }
+
+    private val pendingWrites = LinkedHashMap<String, PendingWrite>()
+    private var pendingWritesResult = CompletableFuture<Unit>()
+    private val flushRunnable = Runnable { flushPendingWrites() }
+    private val notifyRunnable = Runnable {
+        for (listener in ArrayList(listeners)) {
+            listener.onHistoryUpdated()
+        }
     }
 
     // Bookmarks might have changed during sync, so notify our listeners.
@@ -103,47 +158,126 @@ class HistoryStore constructor(val context: Context) {
                 VisitType.REDIRECT_PERMANENT))
     }
 
-    fun recordVisit(aURL: String, pageVisit: PageVisit) = GlobalScope.future {
-        if(BLOCK_LIST.stream().noneMatch {
-                    aURL.startsWith(it)
-                }) {
-            storage.recordVisit(aURL, pageVisit)
-            notifyListeners()
+    fun recordVisit(aURL: String, pageVisit: PageVisit): CompletableFuture<Unit> {
+        if (isBlocked(aURL)) {
+            return CompletableFuture.completedFuture(Unit)
+        }
+        return enqueueWrite(aURL) { it.visits.add(pageVisit) }
+    }
+
+    fun recordObservation(aURL: String, observation: PageObservation): CompletableFuture<Unit> {
+        if (isBlocked(aURL)) {
+            return CompletableFuture.completedFuture(Unit)
+        }
+        return enqueueWrite(aURL) {
+            // Only the latest title of a URL matters.
+            if (observation.title != null || it.observation == null) {
+                it.observation = observation
+            }
+        }
+    }
+
+    private fun enqueueWrite(aURL: String, update: (PendingWrite) -> Unit): CompletableFuture<Unit> {
+        synchronized(pendingWrites) {
+            if (pendingWrites.isEmpty()) {
+                handler.postDelayed(flushRunnable, WRITE_BATCH_DELAY_MS)
+            }
+            update(pendingWrites.getOrPut(aURL) { PendingWrite() })
+            return pendingWritesResult
         }
     }
 
-    fun recordObservation(aURL: String, observation: PageObservation) = GlobalScope.future {
-        if(BLOCK_LIST.stream().noneMatch {
-                    aURL.startsWith(it)
-                }) {
-            storage.recordObservation(aURL, observation)
+    /**
+     * Writes the queued visits and observations in a single batch. Called when the batch window
+     * expires and before the store goes away.
+     */
+    fun flushPendingWrites() {
+        val batch: List<Pair<String, PendingWrite>>
+        val result: CompletableFuture<Unit>
+        synchronized(pendingWrites) {
+            handler.removeCallbacks(flushRunnable)
+            if (pendingWrites.isEmpty()) {
+                return
+            }
+            batch = pendingWrites.map { it.key to it.value }
+            pendingWrites.clear()
+            result = pendingWritesResult
+            pendingWritesResult = CompletableFuture()
+        }
+
+        GlobalScope.future {
+            try {
+                for ((url, write) in batch) {
+                    for (visit in write.visits) {
+                        storage.recordVisit(url, visit)
+                    }
+                    write.observation?.let { storage.recordObservation(url, it) }
+                }
+                result.complete(Unit)
+            } catch (e: Exception) {
+                Logger(LOGTAG).error("Error writing history batch", e)
+                result.completeExceptionally(e)
+            }
             notifyListeners()
         }
     }
 
-    fun deleteHistory(aUrl: String, timestamp: Long) = GlobalScope.future {
-        storage.deleteVisit(aUrl, timestamp)
-        notifyListeners()
+    // Pending writes would resurrect the deleted entries.
+    private fun discardPendingWrites(aURL: String? = null) {
+        synchronized(pendingWrites) {
+            if (aURL != null) {
+                pendingWrites.remove(aURL)
+            } else {
+                pendingWrites.clear()
+            }
+            if (pendingWrites.isEmpty()) {
+                handler.removeCallbacks(flushRunnable)
+                pendingWritesResult.complete(Unit)
+                pendingWritesResult = CompletableFuture()
+            }
+        }
     }
 
-    fun deleteVisitsFor(aUrl: String) = GlobalScope.future {
-        storage.deleteVisitsFor(aUrl)
-        notifyListeners()
+    fun deleteHistory(aUrl: String, timestamp: Long): CompletableFuture<Unit> {
+        discardPendingWrites(aUrl)
+        return GlobalScope.future {
+            storage.deleteVisit(aUrl, timestamp)
+            notifyListeners()
+        }
     }
 
-    fun deleteEverything() = GlobalScope.future {
-        storage.deleteEverything()
-        notifyListeners()
+    fun deleteVisitsFor(aUrl: String): CompletableFuture<Unit> {
+        discardPendingWrites(aUrl)
+        return GlobalScope.future {
+            storage.deleteVisitsFor(aUrl)
+            notifyListeners()
+        }
     }
 
-    fun deleteVisitsSince(since: Long) = GlobalScope.future {
-        storage.deleteVisitsSince(since)
-        notifyListeners()
+    fun deleteEverything(): CompletableFuture<Unit> {
+        discardPendingWrites()
+        return GlobalScope.future {
+            storage.deleteEverything()
+            notifyListeners()
+        }
     }
 
-    fun deleteVisitsBetween(startTime: Long, endTime: Long) = GlobalScope.future {
-        storage.deleteVisitsBetween(startTime, endTime)
-        notifyListeners()
+    fun deleteVisitsSince(since: Long): CompletableFuture<Unit> {
+        discardPendingWrites()
+        return GlobalScope.future {
+            storage.deleteVisitsSince(since)
+            notifyListeners()
+        }
+    }
+
+    fun deleteVisitsBetween(startTime: Long, endTime: Long): CompletableFuture<Unit> {
+        if (endTime >= System.currentTimeMillis()) {
+            discardPendingWrites()
+        }
+        return GlobalScope.future {
+            storage.deleteVisitsBetween(startTime, endTime)
+            notifyListeners()
+        }
     }
 
     fun getVisited(uris: List<String>) = GlobalScope.future {
@@ -159,15 +293,9 @@ class HistoryStore constructor(val context: Context) {
         storage.getSuggestions(query, limit)
     }
 
+    // Bursts of changes are coalesced into a single notification.
     private fun notifyListeners() {
-        if (listeners.size > 0) {
-            val listenersCopy = ArrayList(listeners)
-            Handler(Looper.getMainLooper()).post {
-                for (listener in listenersCopy) {
-                    listener.onHistoryUpdated()
-                }
-            }
-        }
+        handler.removeCallbacks(notifyRunnable)
+        handler.postDelayed(notifyRunnable, NOTIFY_DELAY_MS)
     }
 }
-
@@ -1,6 +1,7 @@
 package org.mozilla.vrbrowser.browser
 
 import android.content.Context
+import androidx.lifecycle.ProcessLifecycleOwner
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.future.future
@@ -8,7 +9,7 @@ import kotlinx.coroutines.launch
 import mozilla.components.concept.storage.Login
 import mozilla.components.service.fxa.SyncEngine
 import mozilla.components.service.fxa.sync.GlobalSyncableStoreProvider
-import mozilla.components.service.sync.logins.GeckoLoginStorageDelegate
+import mozilla.components.service.fxa.sync.SyncStatusObserver
 import org.mozilla.vrbrowser.VRBrowserApplication
 import org.mozilla.vrbrowser.browser.components.GeckoLoginDelegateWrapper
 import org.mozilla.vrbrowser.browser.engine.EngineProvider
@@ -21,15 +22,36 @@ class LoginStorage(
 
     private val places = (context as AppServicesProvider).places
     private var storage = places.logins
+    val loginDelegate = GeckoLoginDelegateWrapper(places.logins)
+
+    // Logins might have changed during sync, so the cached lookups are stale.
+    private val syncStatusObserver = object : SyncStatusObserver {
+        override fun onStarted() {}
+
+        override fun onIdle() {
+            loginDelegate.invalidateCache()
+        }
+
+        override fun onError(error: Exception?) {}
+    }
 
     init {
-        EngineProvider.getOrCreateRuntime(context).loginStorageDelegate = GeckoLoginDelegateWrapper(
-                GeckoLoginStorageDelegate(places.logins))
+        EngineProvider.getOrCreateRuntime(context).loginStorageDelegate = loginDelegate
         GlobalScope.launch(Dispatchers.IO) {
             places.logins.value.warmUp()
         }
 
         GlobalSyncableStoreProvider.configureStore(SyncEngine.Passwords to storage)
+        (context as AppServicesProvider).services.accountManager.registerForSyncEvents(
+                syncStatusObserver, ProcessLifecycleOwner.get(), false
+        )
+    }
+
+    /**
+     * Drops the cached login lookups, e.g. when leaving private mode.
+     */
+    fun clearCache() {
+        loginDelegate.invalidateCache()
     }
 
     fun getLogins(): CompletableFuture<List<Login>> = GlobalScope.future {
@@ -38,14 +60,18 @@ class LoginStorage(
 
     fun deleteEverything() = GlobalScope.future {
         storage.value.wipeLocal()
+        loginDelegate.invalidateCache()
     }
 
     fun delete(login: Login) = GlobalScope.future {
-        storage.value.delete(login.guid!!);
+        val deleted = storage.value.delete(login.guid!!)
+        loginDelegate.invalidateCache()
+        deleted
     }
 
     fun update(login: Login) = GlobalScope.future {
-        storage.value.update(login);
+        storage.value.update(login)
+        loginDelegate.invalidateCache()
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,346 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.browser;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.StrictMode;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.mozilla.vrbrowser.BuildConfig;
+import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.browser.engine.EngineProvider;
+import org.mozilla.vrbrowser.db.KeyValueStore;
+import org.mozilla.vrbrowser.db.KeyValueStores;
+import org.mozilla.vrbrowser.utils.Environment;
+import org.mozilla.vrbrowser.utils.RemoteProperties;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import mozilla.components.concept.fetch.MutableHeaders;
+import mozilla.components.concept.fetch.Request;
+import mozilla.components.concept.fetch.Response;
+
+/**
+ * Keeps the remote properties parsed in memory. The raw payload is persisted in the app state
+ * KeyValueStore and the endpoint is only downloaded again when it changed, using the
+ * ETag/Last-Modified validators of the previous response. The "best version" of the properties
+ * (the requested version if it has environments, otherwise the most recent one that has them) is
+ * resolved once per payload.
+ */
+public class RemotePropertiesStore {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(RemotePropertiesStore.class);
+
+    private static final String KEY_PAYLOAD = "remote_props";
+    private static final String KEY_ETAG = "remote_props_etag";
+    private static final String KEY_LAST_MODIFIED = "remote_props_last_modified";
+    // Storage used by previous versions.
+    private static final String LEGACY_PAYLOAD_FILE = "remote_props.json";
+    private static final String PREF_ETAG = "remote_props_etag";
+    private static final String PREF_LAST_MODIFIED = "remote_props_last_modified";
+
+    private static final Gson GSON = new GsonBuilder().create();
+    private static final Type PROPERTIES_TYPE = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
+
+    /**
+     * Describes what changed for the running version when a new payload is applied.
+     */
+    public static class Change {
+        @Nullable
+        public final Map<String, RemoteProperties> properties;
+        public final boolean whatsNewChanged;
+        public final boolean environmentsChanged;
+
+        Change(@NonNull Snapshot aPrevious, @NonNull Snapshot aCurrent) {
+            properties = aCurrent.properties;
+            RemoteProperties previousProps = aPrevious.get(BuildConfig.VERSION_NAME);
+            RemoteProperties currentProps = aCurrent.get(BuildConfig.VERSION_NAME);
+            whatsNewChanged = !Objects.equals(
+                    previousProps != null ? previousProps.getWhatsNewUrl() : null,
+                    currentProps != null ? currentProps.getWhatsNewUrl() : null);
+            environmentsChanged = !Objects.deepEquals(
+                    aPrevious.getEnvironments(BuildConfig.VERSION_NAME),
+                    aCurrent.getEnvironments(BuildConfig.VERSION_NAME));
+        }
+    }
+
+    public interface RemotePropertiesListener {
+        void onRemotePropertiesChanged(@NonNull Change aChange);
+    }
+
+    // Immutable parsed payload.
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(null);
+
+        @Nullable
+        final Map<String, RemoteProperties> properties;
+        // Version of the most recent properties that have environments, null if none.
+        @Nullable
+        final String latestWithEnvironments;
+        // Best version for each requested version name.
+        final ConcurrentHashMap<String, String> resolved = new ConcurrentHashMap<>();
+
+        Snapshot(@Nullable Map<String, RemoteProperties> aProperties) {
+            properties = aProperties != null ? Collections.unmodifiableMap(aProperties) : null;
+            String latest = null;
+            if (aProperties != null) {
+                for (Map.Entry<String, RemoteProperties> entry : aProperties.entrySet()) {
+                    RemoteProperties props = entry.getValue();
+                    if (props != null && props.getEnvironments() != null &&
+                            (latest == null || entry.getKey().compareTo(latest) > 0)) {
+                        latest = entry.getKey();
+                    }
+                }
+            }
+            latestWithEnvironments = latest;
+        }
+
+        @Nullable
+        RemoteProperties get(@NonNull String aVersionName) {
+            return properties != null ? properties.get(aVersionName) : null;
+        }
+
+        @Nullable
+        Environment[] getEnvironments(@NonNull String aVersionName) {
+            if (properties == null) {
+                return null;
+            }
+            String version = resolved.get(aVersionName);
+            if (version == null) {
+                RemoteProperties props = properties.get(aVersionName);
+                version = props != null && props.getEnvironments() != null ? aVersionName : latestWithEnvironments;
+                if (version == null) {
+                    return null;
+                }
+                resolved.put(aVersionName, version);
+            }
+            RemoteProperties props = properties.get(version);
+            return props != null ? props.getEnvironments() : null;
+        }
+    }
+
+    private Context mContext;
+    private SharedPreferences mPrefs;
+    private KeyValueStore mStore;
+    private volatile Snapshot mSnapshot;
+    private final Object mLock = new Object();
+    private final List<RemotePropertiesListener> mListeners = new CopyOnWriteArrayList<>();
+
+    public RemotePropertiesStore(@NonNull Context aContext) {
+        mContext = aContext;
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(aContext);
+    }
+
+    public void addListener(@NonNull RemotePropertiesListener aListener) {
+        mListeners.add(aListener);
+    }
+
+    public void removeListener(@NonNull RemotePropertiesListener aListener) {
+        mListeners.remove(aListener);
+    }
+
+    /**
+     * @return The parsed properties by version name, null if there are no valid properties.
+     */
+    @Nullable
+    public Map<String, RemoteProperties> getProperties() {
+        return getSnapshot().properties;
+    }
+
+    @Nullable
+    public RemoteProperties getProperties(@NonNull String aVersionName) {
+        return getSnapshot().get(aVersionName);
+    }
+
+    /**
+     * @return The environments for the given version if it has them, otherwise the environments
+     * of the most recent version that has them. Null if there are none.
+     */
+    @Nullable
+    public Environment[] getEnvironments(@NonNull String aVersionName) {
+        return getSnapshot().getEnvironments(aVersionName);
+    }
+
+    /**
+     * Replaces the payload, e.g. with a downloaded one. A null payload clears the properties.
+     */
+    public void setPayload(@Nullable String aJson) {
+        Snapshot snapshot = parse(aJson);
+        Snapshot previous = getSnapshot();
+        synchronized (mLock) {
+            mSnapshot = snapshot;
+            getStore().putString(KEY_PAYLOAD, aJson);
+        }
+        if (!Objects.equals(previous.properties, snapshot.properties)) {
+            Change change = new Change(previous, snapshot);
+            for (RemotePropertiesListener listener : mListeners) {
+                listener.onRemotePropertiesChanged(change);
+            }
+        }
+    }
+
+    /**
+     * Downloads the properties if they changed since the last download.
+     */
+    @WorkerThread
+    public void fetch() {
+        MutableHeaders headers = new MutableHeaders();
+        String etag = getStore().getString(KEY_ETAG, null);
+        String lastModified = getStore().getString(KEY_LAST_MODIFIED, null);
+        // Validators are only meaningful while the payload they belong to is stored.
+        if (getSnapshot().properties != null) {
+            if (etag != null) {
+                headers.set("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                headers.set("If-Modified-Since", lastModified);
+            }
+        }
+
+        Request request = new Request(
+                BuildConfig.PROPS_ENDPOINT,
+                Request.Method.GET,
+                headers,
+                null,
+                null,
+                null,
+                Request.Redirect.FOLLOW,
+                Request.CookiePolicy.INCLUDE,
+                false
+        );
+
+        try (Response response = EngineProvider.INSTANCE.getDefaultClient(mContext).fetch(request)) {
+            if (response.getStatus() == 304) {
+                Log.d(LOGTAG, "Remote properties not modified");
+
+            } else if (response.getStatus() == 200) {
+                String json = response.getBody().string(StandardCharsets.UTF_8);
+                setPayload(json);
+                getStore().putString(KEY_ETAG, response.getHeaders().get("ETag"));
+                getStore().putString(KEY_LAST_MODIFIED, response.getHeaders().get("Last-Modified"));
+            }
+
+        } catch (IOException e) {
+            Log.d(LOGTAG, "Remote properties error: " + e.getLocalizedMessage());
+        }
+    }
+
+    @NonNull
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (mLock) {
+            if (mSnapshot == null) {
+                mSnapshot = parse(getStore().getString(KEY_PAYLOAD, null));
+            }
+            return mSnapshot;
+        }
+    }
+
+    @NonNull
+    private static Snapshot parse(@Nullable String aJson) {
+        if (aJson == null) {
+            return Snapshot.EMPTY;
+        }
+        try {
+            Map<String, RemoteProperties> properties = GSON.fromJson(aJson, PROPERTIES_TYPE);
+            return properties != null ? new Snapshot(properties) : Snapshot.EMPTY;
+
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Invalid remote properties: " + e.getLocalizedMessage());
+            return Snapshot.EMPTY;
+        }
+    }
+
+    /**
+     * The store is only opened when the properties are used, so other processes that create
+     * the SettingsStore don't open it.
+     */
+    @NonNull
+    private KeyValueStore getStore() {
+        synchronized (mLock) {
+            if (mStore == null) {
+                mStore = KeyValueStores.getDefault(mContext);
+                migrate(mStore);
+            }
+            return mStore;
+        }
+    }
+
+    /**
+     * Moves the payload and validators stored by previous versions in a file and the preferences.
+     */
+    private void migrate(@NonNull KeyValueStore aStore) {
+        File file = new File(mContext.getFilesDir(), LEGACY_PAYLOAD_FILE);
+        String payloadKey = mContext.getString(R.string.settings_key_remote_props);
+        if (!file.exists() && !mPrefs.contains(payloadKey) &&
+                !mPrefs.contains(PREF_ETAG) && !mPrefs.contains(PREF_LAST_MODIFIED)) {
+            return;
+        }
+        if (!aStore.contains(KEY_PAYLOAD)) {
+            String json = file.exists() ? readLegacyPayload(file) : mPrefs.getString(payloadKey, null);
+            aStore.putString(KEY_PAYLOAD, json);
+            aStore.putString(KEY_ETAG, mPrefs.getString(PREF_ETAG, null));
+            aStore.putString(KEY_LAST_MODIFIED, mPrefs.getString(PREF_LAST_MODIFIED, null));
+        }
+        if (file.exists() && !file.delete()) {
+            Log.e(LOGTAG, "Error deleting the legacy remote properties");
+        }
+        mPrefs.edit()
+                .remove(payloadKey)
+                .remove(PREF_ETAG)
+                .remove(PREF_LAST_MODIFIED)
+                .apply();
+    }
+
+    @Nullable
+    private static String readLegacyPayload(@NonNull File aFile) {
+        // Only read once, when updating from a version that stored the payload in a file.
+        final StrictMode.ThreadPolicy threadPolicy = StrictMode.allowThreadDiskReads();
+        try (FileInputStream in = new FileInputStream(aFile)) {
+            byte[] data = new byte[(int) aFile.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return new String(data, 0, read, StandardCharsets.UTF_8);
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error reading the remote properties: " + e.getLocalizedMessage());
+            return null;
+
+        } finally {
+            StrictMode.setThreadPolicy(threadPolicy);
+        }
+    }
+}
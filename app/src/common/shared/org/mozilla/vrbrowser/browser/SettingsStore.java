@@ -12,10 +12,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.ViewModelProvider;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.mozilla.geckoview.ContentBlocking;
@@ -24,7 +20,8 @@ import org.mozilla.vrbrowser.BuildConfig;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserActivity;
 import org.mozilla.vrbrowser.VRBrowserApplication;
-import org.mozilla.vrbrowser.browser.engine.EngineProvider;
+import org.mozilla.vrbrowser.performance.BackgroundScheduler;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.ui.viewmodel.SettingsViewModel;
 import org.mozilla.vrbrowser.ui.widgets.menus.library.SortingContextMenuWidget;
@@ -33,18 +30,12 @@ import org.mozilla.vrbrowser.utils.RemoteProperties;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
-import mozilla.components.concept.fetch.Request;
-import mozilla.components.concept.fetch.Response;
-
 import static org.mozilla.vrbrowser.utils.ServoUtils.isServoAvailable;
 
 public class SettingsStore {
@@ -70,6 +61,8 @@ public class SettingsStore {
     private Context mContext;
     private SharedPreferences mPrefs;
     private SettingsViewModel mSettingsViewModel;
+    private RemotePropertiesStore mRemoteProperties;
+    private RemotePropertiesStore.RemotePropertiesListener mRemotePropertiesListener;
 
     // Developer options default values
     public final static boolean REMOTE_DEBUGGING_DEFAULT = false;
@@ -77,6 +70,7 @@ public class SettingsStore {
     public final static boolean UI_HARDWARE_ACCELERATION_DEFAULT = true;
     public final static boolean UI_HARDWARE_ACCELERATION_DEFAULT_WAVEVR = false;
     public final static boolean PERFORMANCE_MONITOR_DEFAULT = true;
+    public final static boolean MAIN_THREAD_WATCHDOG_DEFAULT = BuildConfig.DEBUG;
     public final static boolean DRM_PLAYBACK_DEFAULT = false;
     public final static int TRACKING_DEFAULT = ContentBlocking.EtpLevel.DEFAULT;
     public final static boolean NOTIFICATIONS_DEFAULT = true;
@@ -133,6 +127,7 @@ public class SettingsStore {
     public SettingsStore(Context aContext) {
         mContext = aContext;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(aContext);
+        mRemoteProperties = new RemotePropertiesStore(aContext);
     }
 
     public void initModel(@NonNull Context context) {
@@ -142,8 +137,13 @@ public class SettingsStore {
                 .get(SettingsViewModel.class);
 
         // Setup the stored properties until we get updated ones
-        String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
-        mSettingsViewModel.setProps(json);
+        mSettingsViewModel.setProps(mRemoteProperties.getProperties());
+        if (mRemotePropertiesListener != null) {
+            mRemoteProperties.removeListener(mRemotePropertiesListener);
+        }
+        final SettingsViewModel model = mSettingsViewModel;
+        mRemotePropertiesListener = change -> model.setProps(change.properties);
+        mRemoteProperties.addListener(mRemotePropertiesListener);
 
         mSettingsViewModel.refresh();
 
@@ -155,34 +155,18 @@ public class SettingsStore {
      * Any consumer listening to the SettingsViewModel will get notified of the properties updates.
      */
     private void update() {
-        ((VRBrowserApplication) mContext.getApplicationContext()).getExecutors().backgroundThread().post(() -> {
-            Request request = new Request(
-                    BuildConfig.PROPS_ENDPOINT,
-                    Request.Method.GET,
-                    null,
-                    null,
-                    null,
-                    null,
-                    Request.Redirect.FOLLOW,
-                    Request.CookiePolicy.INCLUDE,
-                    false
-            );
-
-            try {
-                Response response = EngineProvider.INSTANCE.getDefaultClient(mContext).fetch(request);
-                if (response.getStatus() == 200) {
-                    String json = response.getBody().string(StandardCharsets.UTF_8);
-                    SharedPreferences.Editor editor = mPrefs.edit();
-                    editor.putString(mContext.getString(R.string.settings_key_remote_props), json);
-                    editor.commit();
-
-                    mSettingsViewModel.setProps(json);
-                }
+        VRBrowserApplication application = (VRBrowserApplication) mContext.getApplicationContext();
+        application.getBackgroundScheduler().schedule("remote-props", BackgroundScheduler.PRIORITY_NORMAL, true,
+                application.getExecutors().networkIO(), mRemoteProperties::fetch);
+    }
 
-            } catch (IOException e) {
-                Log.d(LOGTAG, "Remote properties error: " + e.getLocalizedMessage());
-            }
-        });
+    /**
+     * Settings are written synchronously so they survive a crash right after they change.
+     */
+    private void commit(@NonNull SharedPreferences.Editor aEditor) {
+        try (MainThreadIO.Trace trace = MainThreadIO.trace("SettingsStore.commit", MainThreadIO.DISK_WRITE)) {
+            aEditor.commit();
+        }
     }
 
     public boolean isCrashReportingEnabled() {
@@ -192,7 +176,7 @@ public class SettingsStore {
     public void setCrashReportingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_crash), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isTelemetryEnabled() {
@@ -209,7 +193,7 @@ public class SettingsStore {
     public void setTelemetryEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_telemetry), isEnabled);
-        editor.commit();
+        commit(editor);
 
         // We send after enabling in case of opting-in
         if (isEnabled) {
@@ -233,13 +217,13 @@ public class SettingsStore {
     public void setTelemetryPingUpdateSent(boolean isSent) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_telemetry_status_update_sent), isSent);
-        editor.commit();
+        commit(editor);
     }
 
     public void setGeolocationData(String aGeolocationData) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_geolocation_data), aGeolocationData);
-        editor.commit();
+        commit(editor);
     }
 
     public String getGeolocationData() {
@@ -254,7 +238,7 @@ public class SettingsStore {
     public void setRemoteDebuggingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_remote_debugging), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
 
@@ -270,7 +254,7 @@ public class SettingsStore {
     public void setDrmContentPlaybackEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_drm_playback), isEnabled);
-        editor.commit();
+        commit(editor);
 
         mSettingsViewModel.setIsDrmEnabled(isEnabled);
     }
@@ -283,7 +267,7 @@ public class SettingsStore {
     public void setTrackingProtectionLevel(int level) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_tracking_protection_level), level);
-        editor.commit();
+        commit(editor);
 
         mSettingsViewModel.setIsTrackingProtectionEnabled(level != ContentBlocking.EtpLevel.NONE);
     }
@@ -296,7 +280,7 @@ public class SettingsStore {
     public void setEnvironmentOverrideEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_environment_override), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isUIHardwareAccelerationEnabled() {
@@ -311,7 +295,7 @@ public class SettingsStore {
     public void setUIHardwareAccelerationEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_ui_hardware_acceleration), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isPerformanceMonitorEnabled() {
@@ -322,7 +306,17 @@ public class SettingsStore {
     public void setPerformanceMonitorEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_performance_monitor), isEnabled);
-        editor.commit();
+        commit(editor);
+    }
+
+    public boolean isMainThreadWatchdogEnabled() {
+        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_main_thread_watchdog), MAIN_THREAD_WATCHDOG_DEFAULT);
+    }
+
+    public void setMainThreadWatchdogEnabled(boolean isEnabled) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putBoolean(mContext.getString(R.string.settings_key_main_thread_watchdog), isEnabled);
+        commit(editor);
     }
 
     public boolean isServoEnabled() {
@@ -332,7 +326,7 @@ public class SettingsStore {
     public void setServoEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_servo), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public int getUaMode() {
@@ -348,7 +342,7 @@ public class SettingsStore {
         }
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_user_agent_version), checkedMode);
-        editor.commit();
+        commit(editor);
     }
 
     public int getInputMode() {
@@ -359,7 +353,7 @@ public class SettingsStore {
     public void setInputMode(int aTouchMode) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_input_mode), aTouchMode);
-        editor.commit();
+        commit(editor);
     }
 
     public String getHomepage() {
@@ -371,7 +365,7 @@ public class SettingsStore {
     public void setHomepage(String aHomepage) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_homepage), aHomepage);
-        editor.commit();
+        commit(editor);
     }
 
     public float getDisplayDensity() {
@@ -382,7 +376,7 @@ public class SettingsStore {
     public void setDisplayDensity(float aDensity) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putFloat(mContext.getString(R.string.settings_key_display_density), aDensity);
-        editor.commit();
+        commit(editor);
     }
 
     public int getWindowWidth() {
@@ -405,7 +399,7 @@ public class SettingsStore {
     public void setDisplayDpi(int aDpi) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_display_dpi), aDpi);
-        editor.commit();
+        commit(editor);
     }
 
     public int getMaxWindowWidth() {
@@ -423,7 +417,7 @@ public class SettingsStore {
     public void setEnvironment(String aEnv) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_env), aEnv);
-        editor.commit();
+        commit(editor);
     }
 
     public int getPointerColor() {
@@ -434,7 +428,7 @@ public class SettingsStore {
     public void setPointerColor(int color) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_pointer_color), color);
-        editor.commit();
+        commit(editor);
     }
 
     public int getScrollDirection() {
@@ -448,7 +442,7 @@ public class SettingsStore {
         mCachedScrollDirection = aScrollDirection;
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_scroll_direction), aScrollDirection);
-        editor.commit();
+        commit(editor);
     }
 
 
@@ -460,7 +454,7 @@ public class SettingsStore {
     public void setMSAALevel(int level) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_msaa), level);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean getLayersEnabled() {
@@ -483,7 +477,7 @@ public class SettingsStore {
     public void setAudioEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_audio), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public String getVoiceSearchLocale() {
@@ -495,7 +489,7 @@ public class SettingsStore {
     public void setVoiceSearchLocale(String language) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_voice_search_language), language);
-        editor.commit();
+        commit(editor);
     }
 
     public String getDisplayLocale() {
@@ -507,7 +501,7 @@ public class SettingsStore {
     public void setDisplayLocale(String language) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_display_language), language);
-        editor.commit();
+        commit(editor);
     }
 
     public ArrayList<String> getContentLocales() {
@@ -534,7 +528,7 @@ public class SettingsStore {
         JSONArray json = new JSONArray(languages);
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_content_languages), json.toString());
-        editor.commit();
+        commit(editor);
     }
 
     public float getCylinderDensity() {
@@ -544,7 +538,7 @@ public class SettingsStore {
     public void setCylinderDensity(float aDensity) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putFloat(mContext.getString(R.string.settings_key_cylinder_density), aDensity);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isCurvedModeEnabled() {
@@ -554,7 +548,7 @@ public class SettingsStore {
     public void setSelectedKeyboard(Locale aLocale) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_keyboard_locale), aLocale.toLanguageTag());
-        editor.commit();
+        commit(editor);
     }
 
     public Locale getKeyboardLocale() {
@@ -574,7 +568,7 @@ public class SettingsStore {
                 SharedPreferences.Editor editor = mPrefs.edit();
                 editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
                 editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), -1);
-                editor.commit();
+                commit(editor);
             }
         }
         return count;
@@ -586,13 +580,13 @@ public class SettingsStore {
         count++;
         editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
         editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), System.currentTimeMillis());
-        editor.commit();
+        commit(editor);
     }
 
     public synchronized void resetCrashRestartCount() {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isSpeechDataCollectionEnabled() {
@@ -603,7 +597,7 @@ public class SettingsStore {
     public void setSpeechDataCollectionEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isNotificationsEnabled() {
@@ -614,7 +608,7 @@ public class SettingsStore {
     public void setNotificationsEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_notifications), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isSpeechDataCollectionReviewed() {
@@ -625,7 +619,7 @@ public class SettingsStore {
     public void setSpeechDataCollectionReviewed(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection_reviewed), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isDebugLoggingEnabled() {
@@ -635,7 +629,7 @@ public class SettingsStore {
     public void setDebugLoggingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_debug_logging), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isAutoplayEnabled() {
@@ -645,13 +639,13 @@ public class SettingsStore {
     public void setAutoplayEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_autoplay), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public void setPid(int aPid) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_pid), aPid);
-        editor.commit();
+        commit(editor);
     }
 
     public int getPid() {
@@ -665,7 +659,7 @@ public class SettingsStore {
     public void setPopUpsBlockingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_pop_up_blocking), isEnabled);
-        editor.commit();
+        commit(editor);
 
         mSettingsViewModel.setIsPopUpBlockingEnabled(isEnabled);
     }
@@ -677,7 +671,7 @@ public class SettingsStore {
     public void setWebXREnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_webxr), isEnabled);
-        editor.commit();
+        commit(editor);
 
         mSettingsViewModel.setIsWebXREnabled(isEnabled);
     }
@@ -685,7 +679,7 @@ public class SettingsStore {
     public void setWhatsNewDisplayed(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_whats_new_displayed), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isWhatsNewDisplayed() {
@@ -703,7 +697,7 @@ public class SettingsStore {
 
             SharedPreferences.Editor editor = mPrefs.edit();
             editor.putString(mContext.getString(R.string.settings_key_fxa_last_sync), jsonObject.toString());
-            editor.commit();
+            commit(editor);
 
         } catch (Exception e) {
             Log.d(LOGTAG, e.getMessage());
@@ -735,7 +729,7 @@ public class SettingsStore {
     public void setRestoreTabsEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_restore_tabs), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isRestoreTabsEnabled() {
@@ -745,7 +739,7 @@ public class SettingsStore {
     public void setBypassCacheOnReload(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_bypass_cache_on_reload), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isBypassCacheOnReloadEnabled() {
@@ -755,7 +749,7 @@ public class SettingsStore {
     public void setDownloadsStorage(@Storage int storage) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_downloads_external), storage);
-        editor.commit();
+        commit(editor);
     }
 
     public @Storage int getDownloadsStorage() {
@@ -765,7 +759,7 @@ public class SettingsStore {
     public void setDownloadsSortingOrder(@SortingContextMenuWidget.Order int order) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_downloads_sorting_order), order);
-        editor.commit();
+        commit(editor);
     }
 
     public @Storage int getDownloadsSortingOrder() {
@@ -775,7 +769,7 @@ public class SettingsStore {
     public void setRemotePropsVersionName(String versionName) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putString(mContext.getString(R.string.settings_key_remote_props_version_name), versionName);
-        editor.commit();
+        commit(editor);
 
         mSettingsViewModel.setPropsVersionName(versionName);
     }
@@ -787,7 +781,7 @@ public class SettingsStore {
     public void setAutocompleteEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_autocomplete), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isAutocompleteEnabled() {
@@ -797,7 +791,7 @@ public class SettingsStore {
     public void setWebGLOutOfProcess(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_webgl_out_of_process), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isWebGLOutOfProcess() {
@@ -811,35 +805,27 @@ public class SettingsStore {
     public void setPrefsLastResetVersionCode(int versionCode) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putInt(mContext.getString(R.string.settings_key_prefs_last_reset_version_code), versionCode);
-        editor.commit();
+        commit(editor);
+    }
+
+    @NonNull
+    public RemotePropertiesStore getRemotePropertiesStore() {
+        return mRemoteProperties;
     }
 
     @Nullable
     public Map<String, RemoteProperties> getRemoteProperties() {
-        String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
-
-        Gson gson = new GsonBuilder().create();
-        Type type = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
-
-        Map<String, RemoteProperties> propertiesMap = null;
-        try {
-            propertiesMap = gson.fromJson(json, type);
-
-        } catch (Exception ignored) { }
-
-        return propertiesMap;
+        return mRemoteProperties.getProperties();
     }
-    
+
     public void setRemoteProperties(@Nullable String json) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_remote_props), json);
-        editor.commit();
+        mRemoteProperties.setPayload(json);
     }
 
     public void recordPasswordsEncryptionKeyGenerated() {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_passwords_encryption_key_generated), true);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isPasswordsEncryptionKeyGenerated() {
@@ -849,7 +835,7 @@ public class SettingsStore {
     public void setAutoFillEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_autofill_enabled), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isAutoFillEnabled() {
@@ -859,7 +845,7 @@ public class SettingsStore {
     public void setLoginAutocompleteEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_login_autocomplete_enabled), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isLoginAutocompleteEnabled() {
@@ -869,7 +855,7 @@ public class SettingsStore {
     public void setLoginSyncEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
         editor.putBoolean(mContext.getString(R.string.settings_key_login_sync_enabled), isEnabled);
-        editor.commit();
+        commit(editor);
     }
 
     public boolean isLoginSyncEnabled() {
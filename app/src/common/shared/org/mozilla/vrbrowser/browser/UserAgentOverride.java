@@ -7,6 +7,7 @@ import android.util.Log;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.io.IOException;
@@ -31,7 +32,8 @@ public class UserAgentOverride {
 
     public void loadOverridesFromAssets(Activity aActivity, String aFileName) {
         String json = null;
-        try (InputStream is = aActivity.getAssets().open(aFileName)) {
+        try (MainThreadIO.Trace trace = MainThreadIO.trace("UserAgentOverride.loadOverridesFromAssets", MainThreadIO.DISK_READ);
+             InputStream is = aActivity.getAssets().open(aFileName)) {
             int size = is.available();
             byte[] buffer = new byte[size];
             is.read(buffer);
@@ -4,47 +4,152 @@
 
 package org.mozilla.vrbrowser.browser.components
 
+import android.util.LruCache
 import kotlinx.coroutines.Dispatchers.IO
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
 import mozilla.components.concept.storage.Login
 import mozilla.components.concept.storage.LoginStorageDelegate
+import mozilla.components.concept.storage.LoginsStorage
+import mozilla.components.service.sync.logins.GeckoLoginStorageDelegate
 import org.mozilla.geckoview.GeckoResult
 import org.mozilla.geckoview.Autocomplete
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * This class exists only to convert incoming [LoginEntry] arguments into [Login]s, then forward
  * them to [storageDelegate]. This allows us to avoid duplicating [LoginStorageDelegate] code
  * between different versions of GeckoView, by duplicating this wrapper instead.
+ *
+ * The converted entries of each domain are cached, so repeated lookups from the same page don't
+ * query the encrypted storage again. Concurrent lookups of a domain share the same query.
  */
-class GeckoLoginDelegateWrapper(private val storageDelegate: LoginStorageDelegate) :
+class GeckoLoginDelegateWrapper(loginStorage: Lazy<LoginsStorage>) :
         Autocomplete.LoginStorageDelegate {
 
+    // Saves are written asynchronously, the cache is invalidated again once they land in the storage.
+    private val storageDelegate: LoginStorageDelegate = GeckoLoginStorageDelegate(lazy {
+        InvalidatingLoginsStorage(loginStorage.value)
+    })
+
+    private val cache = LruCache<String, CompletableFuture<Array<Autocomplete.LoginEntry>>>(CACHE_SIZE)
+    // Incremented on each invalidation, so lookups started before it don't store stale entries.
+    private val generation = AtomicInteger()
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
     override fun onLoginSave(login: Autocomplete.LoginEntry) {
+        invalidateCache()
         storageDelegate.onLoginSave(login.toLogin())
     }
 
     override fun onLoginFetch(domain: String): GeckoResult<Array<Autocomplete.LoginEntry>>? {
+        val cached = cache.get(domain)
+        if (cached != null) {
+            hits.incrementAndGet()
+            val entries = cached.getNow(null)
+            if (entries != null) {
+                return GeckoResult.fromValue(entries.clone())
+            }
+            val result = GeckoResult<Array<Autocomplete.LoginEntry>>()
+            cached.whenComplete { logins, error ->
+                if (logins != null) result.complete(logins.clone()) else result.completeExceptionally(error)
+            }
+            return result
+        }
+
+        misses.incrementAndGet()
+        val future = CompletableFuture<Array<Autocomplete.LoginEntry>>()
+        val lookupGeneration = generation.get()
+        cache.put(domain, future)
         val result = GeckoResult<Array<Autocomplete.LoginEntry>>()
 
         GlobalScope.launch(IO) {
-            val storedLogins = storageDelegate.onLoginFetch(domain)
+            try {
+                val storedLogins = storageDelegate.onLoginFetch(domain)
+
+                val logins = storedLogins.await()
+                        .map { it.toLoginEntry() }
+                        .toTypedArray()
 
-            val logins = storedLogins.await()
-                    .map { it.toLoginEntry() }
-                    .toTypedArray()
+                if (generation.get() != lookupGeneration) {
+                    removeFromCache(domain, future)
+                }
+                future.complete(logins)
+                result.complete(logins.clone())
 
-            result.complete(logins)
+            } catch (e: Exception) {
+                removeFromCache(domain, future)
+                future.completeExceptionally(e)
+                result.completeExceptionally(e)
+            }
         }
 
         return result
     }
 
     override fun onLoginUsed(login: Autocomplete.LoginEntry, useFields: Int) {
+        invalidateCache()
         storageDelegate.onLoginSave(login.toLogin())
     }
 
+    private fun removeFromCache(domain: String, future: CompletableFuture<Array<Autocomplete.LoginEntry>>) {
+        // LruCache locks on itself, a newer lookup of the domain must be kept.
+        synchronized(cache) {
+            if (cache.snapshot()[domain] === future) {
+                cache.remove(domain)
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached entries. Lookups are keyed by domain while changes come with an origin,
+     * so any change to the logins invalidates the whole cache.
+     */
+    fun invalidateCache() {
+        generation.incrementAndGet()
+        cache.evictAll()
+    }
+
+    /**
+     * Invalidates the cache when a login is written, lookups that ran during the write are not cached.
+     */
+    private inner class InvalidatingLoginsStorage(private val storage: LoginsStorage) : LoginsStorage by storage {
+        override suspend fun add(login: Login): String {
+            try {
+                return storage.add(login)
+            } finally {
+                invalidateCache()
+            }
+        }
+
+        override suspend fun update(login: Login) {
+            try {
+                storage.update(login)
+            } finally {
+                invalidateCache()
+            }
+        }
+    }
+
+    /**
+     * @return The ratio of lookups served from the cache.
+     */
+    fun getCacheHitRate(): Float {
+        val total = hits.get() + misses.get()
+        return if (total > 0) hits.get().toFloat() / total else 0f
+    }
+
+    fun getCacheHits(): Long = hits.get()
+
+    fun getCacheMisses(): Long = misses.get()
+
     companion object {
+        // Number of domains whose entries are kept.
+        private const val CACHE_SIZE = 32
+
         /**
          * Converts a GeckoView [LoginStorage.LoginEntry] to an Android Components [Login]
          */
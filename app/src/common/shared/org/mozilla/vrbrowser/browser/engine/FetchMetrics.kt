@@ -0,0 +1,70 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.browser.engine
+
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Concurrency and latency counters for [GeckoViewFetchClient].
+ * Latencies are kept in a fixed size ring so percentiles reflect the most recent requests.
+ */
+class FetchMetrics(private val capacity: Int = DEFAULT_CAPACITY) {
+
+    private val inFlight = AtomicInteger(0)
+    private val maxInFlight = AtomicInteger(0)
+    private val latencies = LongArray(capacity)
+    private var latencyCount = 0L
+    private var failureCount = 0L
+
+    val concurrentRequests: Int
+        get() = inFlight.get()
+
+    val maxConcurrentRequests: Int
+        get() = maxInFlight.get()
+
+    fun onRequestStarted() {
+        val current = inFlight.incrementAndGet()
+        maxInFlight.accumulateAndGet(current) { a, b -> Math.max(a, b) }
+    }
+
+    fun onRequestFinished(latencyMillis: Long, success: Boolean) {
+        inFlight.decrementAndGet()
+        synchronized(latencies) {
+            latencies[(latencyCount % capacity).toInt()] = latencyMillis
+            latencyCount++
+            if (!success) {
+                failureCount++
+            }
+        }
+    }
+
+    /**
+     * @param percentile Value between 0 and 100.
+     * @return The latency in ms for the given percentile over the recent requests, or -1 if
+     * no request has finished yet.
+     */
+    fun latencyPercentile(percentile: Int): Long {
+        val sorted = synchronized(latencies) {
+            val count = Math.min(latencyCount, capacity.toLong()).toInt()
+            latencies.copyOf(count)
+        }
+        if (sorted.isEmpty()) {
+            return -1
+        }
+        sorted.sort()
+        val index = Math.ceil(percentile / 100.0 * sorted.size).toInt() - 1
+        return sorted[index.coerceIn(0, sorted.size - 1)]
+    }
+
+    override fun toString(): String {
+        return "FetchMetrics(inFlight=${concurrentRequests}, maxInFlight=${maxConcurrentRequests}, " +
+                "p50=${latencyPercentile(50)}ms, p90=${latencyPercentile(90)}ms, p99=${latencyPercentile(99)}ms, " +
+                "failures=$failureCount)"
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 256
+    }
+}
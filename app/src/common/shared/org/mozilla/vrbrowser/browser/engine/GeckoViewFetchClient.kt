@@ -5,22 +5,37 @@
 package org.mozilla.vrbrowser.browser.engine
 
 import android.content.Context
+import android.os.Handler
 import androidx.annotation.VisibleForTesting
+import kotlinx.coroutines.future.await
 import mozilla.components.concept.fetch.*
+import org.mozilla.geckoview.GeckoResult
 import org.mozilla.geckoview.GeckoWebExecutor
 import org.mozilla.geckoview.WebRequest
 import org.mozilla.geckoview.WebRequest.CACHE_MODE_DEFAULT
 import org.mozilla.geckoview.WebRequest.CACHE_MODE_RELOAD
 import org.mozilla.geckoview.WebRequestError
 import org.mozilla.geckoview.WebResponse
+import org.mozilla.vrbrowser.VRBrowserApplication
 import java.io.IOException
+import java.io.InputStream
 import java.net.SocketTimeoutException
 import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.util.ArrayDeque
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
-import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * GeckoView ([GeckoWebExecutor]) based implementation of [Client].
+ *
+ * [fetchAsync] and [fetchSuspend] don't block any thread while the request is in flight:
+ * the result is completed from the [GeckoResult] callback, which runs on the shared background
+ * Looper thread. The response body is the [WebResponse] stream, so it can be read incrementally.
+ * The blocking [fetch] is kept for the android-components [Client] users.
  */
 class GeckoViewFetchClient(
     context: Context,
@@ -30,34 +45,108 @@ class GeckoViewFetchClient(
     @VisibleForTesting(otherwise = VisibleForTesting.PRIVATE)
     internal var executor: GeckoWebExecutor? = null
 
+    private val callbackHandler: Handler
+    private val scheduler: ScheduledExecutorService
+
+    val metrics = FetchMetrics()
+
+    init {
+        val executors = (context.applicationContext as VRBrowserApplication).executors
+        callbackHandler = executors.backgroundThread()
+        scheduler = executors.scheduled()
+    }
+
     @Throws(IOException::class)
     override fun fetch(request: Request): Response {
-        if (executor == null) {
-            throw IOException("GeckoWebExecutor not initialized")
+        return try {
+            fetchAsync(request).get()
+        } catch (e: ExecutionException) {
+            throw e.cause as? IOException ?: IOException(e.cause)
+        } catch (e: InterruptedException) {
+            throw IOException(e)
         }
+    }
+
+    /**
+     * Suspends until the response headers are available, without blocking the calling thread.
+     */
+    @Throws(IOException::class)
+    suspend fun fetchSuspend(request: Request): Response = fetchAsync(request).await()
 
-        val webRequest = request.toWebRequest()
+    /**
+     * @return A future completed with the response once the headers are received, or completed
+     * exceptionally with an [IOException] ([SocketTimeoutException] on timeout).
+     * Cancelling the future cancels the request.
+     */
+    fun fetchAsync(request: Request): CompletableFuture<Response> {
+        val result = CompletableFuture<Response>()
+        val geckoExecutor = executor
+        if (geckoExecutor == null) {
+            result.completeExceptionally(IOException("GeckoWebExecutor not initialized"))
+            return result
+        }
+
+        var body: RequestBodyBuffer? = null
+        val webRequest = try {
+            body = request.body?.let { RequestBodyBuffer.read(it) }
+            request.toWebRequest(body?.content)
+        } catch (e: IOException) {
+            body?.release()
+            result.completeExceptionally(e)
+            return result
+        }
 
         val readTimeOut = request.readTimeout ?: maxReadTimeOut
         val readTimeOutMillis = readTimeOut.let { (timeout, unit) ->
             unit.toMillis(timeout)
         }
 
-        return try {
-            var fetchFlags = 0
-            if (request.cookiePolicy == Request.CookiePolicy.OMIT) {
-                fetchFlags += GeckoWebExecutor.FETCH_FLAGS_ANONYMOUS
-            }
-            if (request.redirect == Request.Redirect.MANUAL) {
-                fetchFlags += GeckoWebExecutor.FETCH_FLAGS_NO_REDIRECTS
+        var fetchFlags = 0
+        if (request.cookiePolicy == Request.CookiePolicy.OMIT) {
+            fetchFlags += GeckoWebExecutor.FETCH_FLAGS_ANONYMOUS
+        }
+        if (request.redirect == Request.Redirect.MANUAL) {
+            fetchFlags += GeckoWebExecutor.FETCH_FLAGS_NO_REDIRECTS
+        }
+
+        val startTime = System.nanoTime()
+        metrics.onRequestStarted()
+        result.whenComplete { _, error ->
+            metrics.onRequestFinished(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), error == null)
+        }
+
+        // GeckoResult callbacks are dispatched on the Looper of the thread that registers them.
+        callbackHandler.post {
+            val geckoResult = geckoExecutor.fetch(webRequest, fetchFlags)
+            val timeout = scheduler.schedule({
+                if (result.completeExceptionally(SocketTimeoutException())) {
+                    geckoResult.cancel()
+                }
+            }, readTimeOutMillis, TimeUnit.MILLISECONDS)
+            result.whenComplete { _, _ ->
+                timeout.cancel(false)
+                if (result.isCancelled) {
+                    geckoResult.cancel()
+                }
             }
-            val webResponse = executor!!.fetch(webRequest, fetchFlags).poll(readTimeOutMillis)
-            webResponse?.toResponse() ?: throw IOException("Fetch failed with null response")
-        } catch (e: TimeoutException) {
-            throw SocketTimeoutException()
-        } catch (e: WebRequestError) {
-            throw IOException(e)
+            // Gecko reads the body until the fetch settles, which may be after the future has
+            // completed (e.g. on a read timeout), so the buffer goes back to the pool from here.
+            geckoResult.then<Void>({ webResponse ->
+                body?.release()
+                if (webResponse != null) {
+                    result.complete(webResponse.toResponse())
+                } else {
+                    result.completeExceptionally(IOException("Fetch failed with null response"))
+                }
+                null
+            }, { throwable ->
+                body?.release()
+                result.completeExceptionally(if (throwable is WebRequestError) IOException(throwable) else throwable)
+                null
+            })
         }
+
+        return result
     }
 
     companion object {
@@ -65,6 +154,68 @@ class GeckoViewFetchClient(
     }
 }
 
+/**
+ * A request body streamed into a direct buffer. Bodies that fit in [POOLED_SIZE] (most sync and
+ * telemetry uploads) reuse one of a small number of pooled buffers instead of allocating a new
+ * direct buffer and an intermediate byte array per request. Larger bodies get an unpooled buffer
+ * of the exact size.
+ *
+ * Gecko reads the body by the buffer capacity, so [content] is an exact-size slice of the
+ * backing buffer.
+ */
+private class RequestBodyBuffer private constructor(
+    private val backing: ByteBuffer,
+    val content: ByteBuffer
+) {
+    private val released = AtomicBoolean(false)
+
+    fun release() {
+        if (released.compareAndSet(false, true) && backing.capacity() == POOLED_SIZE) {
+            synchronized(pool) {
+                if (pool.size < MAX_POOLED_BUFFERS) {
+                    pool.addLast(backing)
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val POOLED_SIZE = 64 * 1024
+        private const val MAX_POOLED_BUFFERS = 4
+
+        private val pool = ArrayDeque<ByteBuffer>()
+
+        @Throws(IOException::class)
+        fun read(body: Request.Body): RequestBodyBuffer = body.useStream { stream -> read(stream) }
+
+        private fun read(stream: InputStream): RequestBodyBuffer {
+            val pooled = synchronized(pool) { pool.pollFirst() } ?: ByteBuffer.allocateDirect(POOLED_SIZE)
+            pooled.clear()
+            val channel = Channels.newChannel(stream)
+            while (pooled.hasRemaining() && channel.read(pooled) >= 0) {
+                // Keep filling the pooled buffer.
+            }
+
+            if (!pooled.hasRemaining()) {
+                // The body didn't fit, move it to an unpooled buffer of the exact size.
+                val overflow = stream.readBytes()
+                if (overflow.isNotEmpty()) {
+                    val buffer = ByteBuffer.allocateDirect(pooled.capacity() + overflow.size)
+                    pooled.flip()
+                    buffer.put(pooled)
+                    buffer.put(overflow)
+                    buffer.flip()
+                    RequestBodyBuffer(pooled, pooled).release()
+                    return RequestBodyBuffer(buffer, buffer)
+                }
+            }
+
+            pooled.flip()
+            return RequestBodyBuffer(pooled, pooled.slice())
+        }
+    }
+}
+
 /*
 * Default headers where removed from android-components.
 * We still need to pass these headers or FxR Account login doesn't work correctly.
@@ -88,10 +239,10 @@ val defaultHeaders: Headers = MutableHeaders(
     "Connection" to "keep-alive"
 )
 
-private fun Request.toWebRequest(): WebRequest = WebRequest.Builder(url)
+private fun Request.toWebRequest(requestBody: ByteBuffer?): WebRequest = WebRequest.Builder(url)
     .method(method.name)
     .addHeadersFrom(this, defaultHeaders)
-    .addBodyFrom(this)
+    .apply { requestBody?.let { this.body(it) } }
     .cacheMode(if (useCaches) CACHE_MODE_DEFAULT else CACHE_MODE_RELOAD)
     .build()
 
@@ -109,19 +260,6 @@ private fun WebRequest.Builder.addHeadersFrom(request: Request, defaultHeaders:
     return this
 }
 
-private fun WebRequest.Builder.addBodyFrom(request: Request): WebRequest.Builder {
-    request.body?.let { body ->
-        body.useStream { inStream ->
-            val bytes = inStream.readBytes()
-            val buffer = ByteBuffer.allocateDirect(bytes.size)
-            buffer.put(bytes)
-            this.body(buffer)
-        }
-    }
-
-    return this
-}
-
 private fun WebResponse.toResponse(): Response {
     val headers = translateHeaders(this)
     return Response(
@@ -0,0 +1,101 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.browser.engine;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Listener registry confined to the UI thread. Iteration works over an immutable snapshot, so
+ * listeners can be added or removed while an event is being dispatched. Unlike a
+ * CopyOnWriteArrayList, adding or removing listeners doesn't copy: the snapshot is rebuilt at
+ * most once, by the first dispatch after the registry changed.
+ */
+class ListenerList<T> implements Iterable<T> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private final ArrayList<T> mListeners = new ArrayList<>();
+    private Object[] mSnapshot = EMPTY;
+    private boolean mDirty;
+
+    /**
+     * @return true if the listener was added, false if it was already registered.
+     */
+    boolean add(@NonNull T aListener) {
+        if (mListeners.contains(aListener)) {
+            return false;
+        }
+        mListeners.add(aListener);
+        mDirty = true;
+        return true;
+    }
+
+    boolean remove(@NonNull Object aListener) {
+        if (mListeners.remove(aListener)) {
+            mDirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    boolean contains(@NonNull Object aListener) {
+        return mListeners.contains(aListener);
+    }
+
+    void clear() {
+        if (!mListeners.isEmpty()) {
+            mListeners.clear();
+            mDirty = true;
+        }
+    }
+
+    int size() {
+        return mListeners.size();
+    }
+
+    boolean isEmpty() {
+        return mListeners.isEmpty();
+    }
+
+    /**
+     * @return The listeners registered at the time of the call. The array must not be modified.
+     */
+    @NonNull
+    Object[] snapshot() {
+        if (mDirty) {
+            mSnapshot = mListeners.isEmpty() ? EMPTY : mListeners.toArray();
+            mDirty = false;
+        }
+        return mSnapshot;
+    }
+
+    @NonNull
+    @Override
+    public Iterator<T> iterator() {
+        final Object[] snapshot = snapshot();
+        return new Iterator<T>() {
+            private int mIndex;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < snapshot.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public T next() {
+                if (mIndex >= snapshot.length) {
+                    throw new NoSuchElementException();
+                }
+                return (T) snapshot[mIndex++];
+            }
+        };
+    }
+}
@@ -33,6 +33,7 @@ import org.mozilla.geckoview.MediaElement;
 import org.mozilla.geckoview.SlowScriptResponse;
 import org.mozilla.geckoview.WebRequestError;
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.Media;
 import org.mozilla.vrbrowser.browser.SessionChangeListener;
 import org.mozilla.vrbrowser.browser.SettingsStore;
@@ -44,6 +45,7 @@ import org.mozilla.vrbrowser.geolocation.GeolocationData;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.InternalPages;
+import org.mozilla.vrbrowser.utils.LastFrameCache;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
@@ -70,17 +72,18 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     private static UserAgentOverride sUserAgentOverride;
     private static final long KEEP_ALIVE_DURATION_MS = 1000; // 1 second.
 
-    private transient CopyOnWriteArrayList<GeckoSession.NavigationDelegate> mNavigationListeners;
-    private transient CopyOnWriteArrayList<GeckoSession.ProgressDelegate> mProgressListeners;
-    private transient CopyOnWriteArrayList<GeckoSession.ContentDelegate> mContentListeners;
-    private transient CopyOnWriteArrayList<SessionChangeListener> mSessionChangeListeners;
-    private transient CopyOnWriteArrayList<GeckoSession.TextInputDelegate> mTextInputListeners;
-    private transient CopyOnWriteArrayList<VideoAvailabilityListener> mVideoAvailabilityListeners;
-    private transient CopyOnWriteArrayList<BitmapChangedListener> mBitmapChangedListeners;
-    private transient CopyOnWriteArrayList<GeckoSession.SelectionActionDelegate> mSelectionActionListeners;
-    private transient CopyOnWriteArrayList<WebXRStateChangedListener> mWebXRStateListeners;
-    private transient CopyOnWriteArrayList<PopUpStateChangedListener> mPopUpStateStateListeners;
-    private transient CopyOnWriteArrayList<DrmStateChangedListener> mDrmStateStateListeners;
+    private transient ListenerList<GeckoSession.NavigationDelegate> mNavigationListeners;
+    private transient ListenerList<GeckoSession.ProgressDelegate> mProgressListeners;
+    private transient ListenerList<GeckoSession.ContentDelegate> mContentListeners;
+    private transient ListenerList<SessionChangeListener> mSessionChangeListeners;
+    private transient ListenerList<GeckoSession.TextInputDelegate> mTextInputListeners;
+    private transient ListenerList<VideoAvailabilityListener> mVideoAvailabilityListeners;
+    private transient ListenerList<BitmapChangedListener> mBitmapChangedListeners;
+    private transient ListenerList<GeckoSession.SelectionActionDelegate> mSelectionActionListeners;
+    private transient ListenerList<WebXRStateChangedListener> mWebXRStateListeners;
+    private transient ListenerList<PopUpStateChangedListener> mPopUpStateStateListeners;
+    private transient ListenerList<DrmStateChangedListener> mDrmStateStateListeners;
+    private transient SessionEventBus mEventBus;
 
     private SessionState mState;
     private transient CopyOnWriteArrayList<Runnable> mQueuedCalls = new CopyOnWriteArrayList<>();
@@ -94,6 +97,12 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     private transient byte[] mPrivatePage;
     private transient boolean mFirstContentfulPaint;
     private transient long mKeepAlive;
+    private transient boolean mThrottled;
+    private transient int mSurfaceWidth;
+    private transient int mSurfaceHeight;
+    private transient boolean mSuspendPending;
+    // The current GeckoSession is known to be inactive: a parked spare, prewarmed, throttled or deactivated.
+    private transient boolean mGeckoSessionInactive;
 
     private static final List<String> FORCE_MOBILE_VIEWPORT = Collections.singletonList(".youtube.com");
 
@@ -172,17 +181,18 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     private void initialize() {
-        mNavigationListeners = new CopyOnWriteArrayList<>();
-        mProgressListeners = new CopyOnWriteArrayList<>();
-        mContentListeners = new CopyOnWriteArrayList<>();
-        mSessionChangeListeners = new CopyOnWriteArrayList<>();
-        mTextInputListeners = new CopyOnWriteArrayList<>();
-        mVideoAvailabilityListeners = new CopyOnWriteArrayList<>();
-        mSelectionActionListeners = new CopyOnWriteArrayList<>();
-        mBitmapChangedListeners = new CopyOnWriteArrayList<>();
-        mWebXRStateListeners = new CopyOnWriteArrayList<>();
-        mPopUpStateStateListeners = new CopyOnWriteArrayList<>();
-        mDrmStateStateListeners = new CopyOnWriteArrayList<>();
+        mNavigationListeners = new ListenerList<>();
+        mProgressListeners = new ListenerList<>();
+        mContentListeners = new ListenerList<>();
+        mSessionChangeListeners = new ListenerList<>();
+        mTextInputListeners = new ListenerList<>();
+        mVideoAvailabilityListeners = new ListenerList<>();
+        mSelectionActionListeners = new ListenerList<>();
+        mBitmapChangedListeners = new ListenerList<>();
+        mWebXRStateListeners = new ListenerList<>();
+        mPopUpStateStateListeners = new ListenerList<>();
+        mDrmStateStateListeners = new ListenerList<>();
+        mEventBus = new SessionEventBus(((VRBrowserApplication)mContext.getApplicationContext()).getExecutors().mainThread());
 
         if (mPrefs != null) {
             mPrefs.registerOnSharedPreferenceChangeListener(this);
@@ -206,7 +216,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         }
 
         if (mState.mParentId != null) {
-            Session parent = SessionStore.get().getSession(mState.mParentId);
+            Session parent = SessionStore.get().findSession(mState.mParentId);
             if (parent != null) {
                 parent.mSessionChangeListeners.remove(this);
             }
@@ -224,6 +234,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         mWebXRStateListeners.clear();
         mPopUpStateStateListeners.clear();
         mDrmStateStateListeners.clear();
+        mEventBus.clear();
 
         if (mPrefs != null) {
             mPrefs.unregisterOnSharedPreferenceChangeListener(this);
@@ -231,31 +242,13 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     private void dumpAllState() {
-        for (GeckoSession.NavigationDelegate listener: mNavigationListeners) {
-            dumpState(listener);
-        }
-        for (GeckoSession.ProgressDelegate listener: mProgressListeners) {
-            dumpState(listener);
-        }
-        for (GeckoSession.ContentDelegate listener: mContentListeners) {
-            dumpState(listener);
-        }
-
-        for (VideoAvailabilityListener listener: mVideoAvailabilityListeners) {
-            dumpState(listener);
-        }
-
-        for (WebXRStateChangedListener listener: mWebXRStateListeners) {
-            dumpState(listener);
-        }
-
-        for (PopUpStateChangedListener listener: mPopUpStateStateListeners) {
-            dumpState(listener);
-        }
-
-        for (DrmStateChangedListener listener: mDrmStateStateListeners) {
-            dumpState(listener);
-        }
+        mEventBus.post(mNavigationListeners, this::dumpState);
+        mEventBus.post(mProgressListeners, this::dumpState);
+        mEventBus.post(mContentListeners, this::dumpState);
+        mEventBus.post(mVideoAvailabilityListeners, this::dumpState);
+        mEventBus.post(mWebXRStateListeners, this::dumpState);
+        mEventBus.post(mPopUpStateStateListeners, this::dumpState);
+        mEventBus.post(mDrmStateStateListeners, this::dumpState);
     }
 
     private void dumpState(GeckoSession.NavigationDelegate aListener) {
@@ -300,6 +293,15 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         aListener.onDrmStateChanged(this, mState.mDrmState);
     }
 
+    private <L> void replayState(@NonNull ListenerList<L> aListeners, @NonNull L aListener, @NonNull SessionEventBus.Event<L> aReplay) {
+        mEventBus.replay(() -> {
+            // The listener may have been removed while the replay was deferred.
+            if (aListeners.contains(aListener)) {
+                aReplay.dispatch(aListener);
+            }
+        });
+    }
+
     private void flushQueuedEvents() {
         for (Runnable call: mQueuedCalls) {
             call.run();
@@ -324,8 +326,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addNavigationListener(GeckoSession.NavigationDelegate aListener) {
-        mNavigationListeners.addIfAbsent(aListener);
-        dumpState(aListener);
+        mNavigationListeners.add(aListener);
+        replayState(mNavigationListeners, aListener, this::dumpState);
     }
 
     public void removeNavigationListener(GeckoSession.NavigationDelegate aListener) {
@@ -333,8 +335,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addProgressListener(GeckoSession.ProgressDelegate aListener) {
-        mProgressListeners.addIfAbsent(aListener);
-        dumpState(aListener);
+        mProgressListeners.add(aListener);
+        replayState(mProgressListeners, aListener, this::dumpState);
     }
 
     public void removeProgressListener(GeckoSession.ProgressDelegate aListener) {
@@ -342,8 +344,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addContentListener(GeckoSession.ContentDelegate aListener) {
-        mContentListeners.addIfAbsent(aListener);
-        dumpState(aListener);
+        mContentListeners.add(aListener);
+        replayState(mContentListeners, aListener, this::dumpState);
     }
 
     public void removeContentListener(GeckoSession.ContentDelegate aListener) {
@@ -351,7 +353,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addSessionChangeListener(SessionChangeListener aListener) {
-        mSessionChangeListeners.addIfAbsent(aListener);
+        mSessionChangeListeners.add(aListener);
     }
 
     public void removeSessionChangeListener(SessionChangeListener aListener) {
@@ -359,7 +361,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addTextInputListener(GeckoSession.TextInputDelegate aListener) {
-        mTextInputListeners.addIfAbsent(aListener);
+        mTextInputListeners.add(aListener);
     }
 
     public void removeTextInputListener(GeckoSession.TextInputDelegate aListener) {
@@ -367,8 +369,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addVideoAvailabilityListener(VideoAvailabilityListener aListener) {
-        mVideoAvailabilityListeners.addIfAbsent(aListener);
-        dumpState(aListener);
+        mVideoAvailabilityListeners.add(aListener);
+        replayState(mVideoAvailabilityListeners, aListener, this::dumpState);
     }
 
     public void removeVideoAvailabilityListener(VideoAvailabilityListener aListener) {
@@ -376,7 +378,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addSelectionActionListener(GeckoSession.SelectionActionDelegate aListener) {
-        mSelectionActionListeners.addIfAbsent(aListener);
+        mSelectionActionListeners.add(aListener);
     }
 
     public void removeSelectionActionListener(GeckoSession.ContentDelegate aListener) {
@@ -384,7 +386,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addBitmapChangedListener(BitmapChangedListener aListener) {
-        mBitmapChangedListeners.addIfAbsent(aListener);
+        mBitmapChangedListeners.add(aListener);
     }
 
     public void removeBitmapChangedListener(BitmapChangedListener aListener) {
@@ -392,8 +394,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addWebXRStateChangedListener(WebXRStateChangedListener aListener) {
-        mWebXRStateListeners.addIfAbsent(aListener);
-        dumpState(aListener);
+        mWebXRStateListeners.add(aListener);
+        replayState(mWebXRStateListeners, aListener, this::dumpState);
     }
 
     public void removeWebXRStateChangedListener(WebXRStateChangedListener aListener) {
@@ -401,8 +403,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addPopUpStateChangedListener(PopUpStateChangedListener aListener) {
-        mPopUpStateStateListeners.addIfAbsent(aListener);
-        dumpState(aListener);
+        mPopUpStateStateListeners.add(aListener);
+        replayState(mPopUpStateStateListeners, aListener, this::dumpState);
     }
 
     public void removePopUpStateChangedListener(PopUpStateChangedListener aListener) {
@@ -410,8 +412,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void addDrmStateChangedListener(DrmStateChangedListener aListener) {
-        mDrmStateStateListeners.addIfAbsent(aListener);
-        dumpState(aListener);
+        mDrmStateStateListeners.add(aListener);
+        replayState(mDrmStateStateListeners, aListener, this::dumpState);
     }
 
     public void removeDrmStateChangedListener(DrmStateChangedListener aListener) {
@@ -457,35 +459,62 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void suspend() {
+        if (!canSuspend() || mSuspendPending) {
+            return;
+        }
+
+        if (!isPrivateMode() && mFirstContentfulPaint && mState.mDisplay == null && mSurfaceWidth > 0 && mSurfaceHeight > 0) {
+            // Keep the last frame so the window can show it while the session is restored.
+            mSuspendPending = true;
+            captureLastFrame(mSurfaceWidth, mSurfaceHeight).thenRun(() -> {
+                mSuspendPending = false;
+                // The session may have been activated while the frame was captured.
+                if (canSuspend()) {
+                    suspendNow();
+                }
+            });
+            return;
+        }
+
+        suspendNow();
+    }
+
+    private boolean canSuspend() {
         if (mState.isActive()) {
             Log.e(LOGTAG, "Active Sessions can not be suspended");
-            return;
+            return false;
         }
         if (mState.mSession == null) {
-            return;
+            return false;
         }
         if (mKeepAlive > System.currentTimeMillis()) {
             Log.e(LOGTAG, "Unable to suspend activity with active keep alive time.");
-            return;
+            return false;
         }
+        return true;
+    }
 
+    private void suspendNow() {
         Log.d(LOGTAG, "Suspending Session: " + mState.mId);
         closeSession(mState);
         mState.mSession = null;
+        mThrottled = false;
+        SessionStore.get().onSessionSuspended(this);
 
-        mSessionChangeListeners.forEach(listener -> listener.onSessionRemoved(mState.mId));
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionRemoved(mState.mId));
     }
 
     private boolean shouldLoadDefaultPage(@NonNull SessionState aState) {
         // data:text URLs can not be restored.
-        if (mState.mSessionState != null && ((mState.mUri == null) || mState.mUri.startsWith("data:text"))) {
+        if (mState.hasGeckoSessionState() && ((mState.mUri == null) || mState.mUri.startsWith("data:text"))) {
             return true;
         }
 
         if (aState.mUri != null && aState.mUri.length() != 0 && !aState.mUri.equals(mContext.getString(R.string.about_blank))) {
             return false;
         }
-        if (aState.mSessionState != null && aState.mSessionState.size() != 0) {
+        GeckoSession.SessionState history = aState.getGeckoSessionState();
+        if (history != null && history.size() != 0) {
             return false;
         }
         return true;
@@ -500,6 +529,32 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     private void restore() {
+        restoreGeckoSession();
+
+        mState.setActive(true);
+
+        if (!mState.mIsWebExtensionSession) {
+            mRuntime.getWebExtensionController().setTabActive(mState.mSession, true);
+        }
+    }
+
+    /**
+     * Speculatively restores a suspended session without activating it, so a later
+     * setActive(true) only needs to resume the already restored GeckoSession.
+     */
+    void prewarm() {
+        if (mState.mSession != null || mState.isActive()) {
+            return;
+        }
+        restoreGeckoSession();
+        if (!mGeckoSessionInactive) {
+            // Spares are already parked inactive by the SessionPrewarmer.
+            mState.mSession.setActive(false);
+            mGeckoSessionInactive = true;
+        }
+    }
+
+    private void restoreGeckoSession() {
         SessionSettings settings = mState.mSettings;
         if (settings == null) {
             settings = new SessionSettings.Builder()
@@ -511,14 +566,14 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
         mState.mSession = createGeckoSession(settings);
 
-        mSessionChangeListeners.forEach(listener -> listener.onSessionAdded(this));
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionAdded(this));
 
         openSession();
 
         if (shouldLoadDefaultPage(mState)) {
             loadDefaultPage();
-        } else if (mState.mSessionState != null) {
-            mState.mSession.restoreState(mState.mSessionState);
+        } else if (mState.getGeckoSessionState() != null) {
+            mState.mSession.restoreState(mState.getGeckoSessionState());
             if (mState.mUri != null && mState.mUri.contains(".youtube.com")) {
                 mState.mSession.loadUri(mState.mUri, GeckoSession.LOAD_FLAGS_REPLACE_HISTORY);
             }
@@ -529,12 +584,6 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         }
 
         dumpAllState();
-
-        mState.setActive(true);
-
-        if (!mState.mIsWebExtensionSession) {
-            mRuntime.getWebExtensionController().setTabActive(mState.mSession, true);
-        }
     }
 
 
@@ -556,10 +605,16 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
                 .build();
 
         GeckoSession session;
+        mGeckoSessionInactive = false;
         if (aSettings.isServoEnabled() && isServoAvailable()) {
             session = createServoSession(mContext);
         } else {
-            session = new GeckoSession(geckoSettings);
+            session = SessionStore.get().acquirePrewarmedSession(aSettings);
+            if (session == null) {
+                session = new GeckoSession(geckoSettings);
+            } else {
+                mGeckoSessionInactive = true;
+            }
         }
 
         if (session != null) {
@@ -573,30 +628,23 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     void recreateSession() {
         boolean wasFullScreen = mState.mFullScreen;
 
-        GeckoSession previousGeckoSession = null;
+        final GeckoSession previousGeckoSession = mState.mSession;
         if (mState.mSession != null) {
-            previousGeckoSession = mState.mSession;
             closeSession(mState);
         }
 
         mState = mState.recreate();
 
-        mSessionChangeListeners.forEach(listener -> listener.onSessionRemoved(mState.mId));
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionRemoved(mState.mId));
 
         restore();
 
-        for (SessionChangeListener listener: mSessionChangeListeners) {
-            listener.onSessionStateChanged(this, true);
-        }
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionStateChanged(this, true));
 
-        for (SessionChangeListener listener : mSessionChangeListeners) {
-            listener.onCurrentSessionChange(previousGeckoSession, mState.mSession);
-        }
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onCurrentSessionChange(previousGeckoSession, mState.mSession));
 
         if (wasFullScreen != mState.mFullScreen) {
-            for (GeckoSession.ContentDelegate listener : mContentListeners) {
-                listener.onFullScreen(mState.mSession, mState.mFullScreen);
-            }
+            mEventBus.post(mContentListeners, listener -> listener.onFullScreen(mState.mSession, mState.mFullScreen));
         }
     }
 
@@ -605,7 +653,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             mState.mSession.open(mRuntime);
         }
 
-        mSessionChangeListeners.forEach(listener -> listener.onSessionOpened(this));
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionOpened(this));
     }
 
     private void closeSession(@NonNull SessionState aState) {
@@ -613,7 +661,10 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             return;
         }
         cleanSessionListeners(aState.mSession);
-        aState.mSession.setActive(false);
+        if (aState != mState || !mGeckoSessionInactive) {
+            // Avoid a duplicated setActive(false) call, see setActive().
+            aState.mSession.setActive(false);
+        }
         aState.mSession.stop();
         if (aState.mDisplay != null) {
             aState.mDisplay.surfaceDestroyed();
@@ -624,7 +675,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         aState.setActive(false);
         mFirstContentfulPaint = false;
 
-        mSessionChangeListeners.forEach(listener -> listener.onSessionClosed(this));
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionClosed(this));
     }
 
     public void captureBitmap() {
@@ -635,9 +686,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             mState.mDisplay.screenshot().aspectPreservingSize(500).capture().then(bitmap -> {
                 if (bitmap != null) {
                     BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap);
-                    for (BitmapChangedListener listener: mBitmapChangedListeners) {
-                        listener.onBitmapChanged(Session.this, bitmap);
-                    }
+                    mEventBus.post(mBitmapChangedListeners, listener -> listener.onBitmapChanged(Session.this, bitmap));
                 }
                 return null;
             }).exceptionally(throwable -> {
@@ -653,6 +702,18 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public CompletableFuture<Void> captureBackgroundBitmap(int displayWidth, int displayHeight) {
+        return captureBackgroundBitmap(displayWidth, displayHeight, false);
+    }
+
+    /**
+     * Captures the full resolution frame of the session into the {@link LastFrameCache}, and a
+     * downscaled copy of it as the session thumbnail.
+     */
+    private CompletableFuture<Void> captureLastFrame(int displayWidth, int displayHeight) {
+        return captureBackgroundBitmap(displayWidth, displayHeight, true);
+    }
+
+    private CompletableFuture<Void> captureBackgroundBitmap(int displayWidth, int displayHeight, boolean aFullSize) {
         if (mState.mSession == null || !mFirstContentfulPaint) {
             return CompletableFuture.completedFuture(null);
         }
@@ -674,12 +735,18 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         };
 
         try {
-            display.screenshot().aspectPreservingSize(500).capture().then(bitmap -> {
+            GeckoDisplay.ScreenshotBuilder screenshot = display.screenshot();
+            if (!aFullSize) {
+                screenshot.aspectPreservingSize(500);
+            }
+            screenshot.capture().then(frame -> {
+                if (frame != null && aFullSize) {
+                    LastFrameCache.getInstance(mContext).putFrame(getId(), frame, isPrivateMode());
+                }
+                Bitmap bitmap = frame != null && aFullSize ? scaleToThumbnail(frame) : frame;
                 if (bitmap != null) {
                     BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap);
-                    for (BitmapChangedListener listener : mBitmapChangedListeners) {
-                        listener.onBitmapChanged(Session.this, bitmap);
-                    }
+                    mEventBus.post(mBitmapChangedListeners, listener -> listener.onBitmapChanged(Session.this, bitmap));
                 }
                 cleanResources.run();
                 result.complete(null);
@@ -701,6 +768,17 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         return result;
     }
 
+    @NonNull
+    private static Bitmap scaleToThumbnail(@NonNull Bitmap aFrame) {
+        int width = aFrame.getWidth();
+        int height = aFrame.getHeight();
+        // Same size as the aspectPreservingSize(500) screenshots.
+        if (width <= 500 || height <= 0) {
+            return aFrame;
+        }
+        return Bitmap.createScaledBitmap(aFrame, 500, Math.max(1, height * 500 / width), true);
+    }
+
     public boolean hasCapturedBitmap() {
         return BitmapCache.getInstance(mContext).hasBitmap(mState.mId);
     }
@@ -726,9 +804,13 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public String getHomeUri() {
-        String homepage = SettingsStore.getInstance(mContext).getHomepage();
-        if (homepage.equals(mContext.getString(R.string.homepage_url)) && mState.mRegion != null) {
-            homepage = homepage + "?region=" + mState.mRegion;
+        return getHomeUri(mContext, mState.mRegion);
+    }
+
+    static String getHomeUri(@NonNull Context aContext, @Nullable String aRegion) {
+        String homepage = SettingsStore.getInstance(aContext).getHomepage();
+        if (homepage.equals(aContext.getString(R.string.homepage_url)) && aRegion != null) {
+            homepage = homepage + "?region=" + aRegion;
         }
         return homepage;
     }
@@ -817,9 +899,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         } else if (mState.mParentId != null) {
           Session parent = SessionStore.get().getSession(mState.mParentId);
           if (parent != null && parent.mState.mDisplay == null) {
-              for (SessionChangeListener listener: mSessionChangeListeners) {
-                  listener.onUnstackSession(this, parent);
-              }
+              mEventBus.post(mSessionChangeListeners, listener -> listener.onUnstackSession(this, parent));
           }
         }
     }
@@ -831,6 +911,10 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void setActive(boolean aActive) {
+        if (mThrottled) {
+            // Undo the throttling first so the GeckoSession never gets two setActive(false) calls in a row.
+            setThrottled(false);
+        }
         if (!aActive && mState.mSession != null && !mState.isActive()) {
             // Prevent duplicated setActive(false) calls. There is a GV
             // bug that makes the session not to be resumed correctly.
@@ -842,8 +926,13 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             flushQueuedEvents();
         }
 
+        if (aActive) {
+            SessionStore.get().onSessionActivated(this);
+        }
+
         if (mState.mSession != null) {
             mState.mSession.setActive(aActive);
+            mGeckoSessionInactive = !aActive;
             mState.setActive(aActive);
             if (!mState.mIsWebExtensionSession) {
                 mRuntime.getWebExtensionController().setTabActive(mState.mSession, aActive);
@@ -856,11 +945,29 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             Log.e(LOGTAG, "ERROR: Setting null GeckoView to inactive!");
         }
 
-        for (SessionChangeListener listener: mSessionChangeListeners) {
-            listener.onSessionStateChanged(this, aActive);
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionStateChanged(this, aActive));
+    }
+
+    /**
+     * Stops painting the content of an active session, e.g. while its window is visible but
+     * not being looked at. Unlike setActive(false) the session is still considered active, so it
+     * isn't suspended, and the compositor surface is kept.
+     */
+    public void setThrottled(boolean aThrottled) {
+        if (mThrottled == aThrottled || (aThrottled && (mState.mSession == null || !mState.isActive()))) {
+            return;
+        }
+        mThrottled = aThrottled;
+        if (mState.mSession != null) {
+            mState.mSession.setActive(!aThrottled);
+            mGeckoSessionInactive = aThrottled;
         }
     }
 
+    public boolean isThrottled() {
+        return mThrottled;
+    }
+
     public void reload() {
         reload(GeckoSession.LOAD_FLAGS_NONE);
     }
@@ -922,9 +1029,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         closeSession(previous);
 
         mState.setActive(true);
-        for (SessionChangeListener listener: mSessionChangeListeners) {
-            listener.onSessionStateChanged(this, true);
-        }
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onSessionStateChanged(this, true));
 
         loadUri(uri);
     }
@@ -959,9 +1064,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     public void setWebXRState(@SessionState.WebXRState int aWebXRState) {
         if (aWebXRState != mState.mWebXRState) {
             mState.mWebXRState = aWebXRState;
-            for (WebXRStateChangedListener listener: mWebXRStateListeners) {
-                dumpState(listener);
-            }
+            mEventBus.post(mWebXRStateListeners, this::dumpState);
         }
     }
 
@@ -971,9 +1074,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
     public void setPopUpState(@SessionState.PopupState int aPopUpstate) {
         mState.mPopUpState = aPopUpstate;
-        for (PopUpStateChangedListener listener: mPopUpStateStateListeners) {
-            dumpState(listener);
-        }
+        mEventBus.post(mPopUpStateStateListeners, this::dumpState);
     }
 
     public @SessionState.PopupState int getPopUpState() {
@@ -982,9 +1083,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
     public void setDrmState(@SessionState.DrmState int aDrmState) {
         mState.mDrmState = aDrmState;
-        for (DrmStateChangedListener listener: mDrmStateStateListeners) {
-            dumpState(listener);
-        }
+        mEventBus.post(mDrmStateStateListeners, this::dumpState);
     }
 
     public @SessionState.DrmState int getDrmState() {
@@ -1105,9 +1204,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             mState.mSession.getSettings().setViewportMode(mState.mSettings.getViewportMode());
         }
 
-        for (GeckoSession.NavigationDelegate listener : mNavigationListeners) {
-            listener.onLocationChange(aSession, aUri);
-        }
+        mEventBus.post(mNavigationListeners, listener -> listener.onLocationChange(aSession, aUri));
 
         // The homepage finishes loading after the region has been updated
         if (mState.mRegion != null && aUri.equalsIgnoreCase(SettingsStore.getInstance(mContext).getHomepage())) {
@@ -1123,9 +1220,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Log.d(LOGTAG, "Session onCanGoBack: " + (aGeckoSessionCanGoBack ? "true" : "false"));
         mState.mCanGoBack = aGeckoSessionCanGoBack;
 
-        for (GeckoSession.NavigationDelegate listener : mNavigationListeners) {
-            listener.onCanGoBack(aSession, canGoBack());
-        }
+        mEventBus.post(mNavigationListeners, listener -> listener.onCanGoBack(aSession, canGoBack()));
     }
 
     @Override
@@ -1136,9 +1231,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Log.d(LOGTAG, "Session onCanGoForward: " + (aCanGoForward ? "true" : "false"));
         mState.mCanGoForward = aCanGoForward;
 
-        for (GeckoSession.NavigationDelegate listener : mNavigationListeners) {
-            listener.onCanGoForward(aSession, aCanGoForward);
-        }
+        mEventBus.post(mNavigationListeners, listener -> listener.onCanGoForward(aSession, aCanGoForward));
     }
 
     @Override
@@ -1213,9 +1306,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Session session = SessionStore.get().createSession(mState.mSettings, SESSION_DO_NOT_OPEN);
         session.mState.mParentId = mState.mId;
         session.mKeepAlive = mKeepAlive;
-        for (SessionChangeListener listener: mSessionChangeListeners) {
-            listener.onStackSession(session);
-        }
+        mEventBus.post(mSessionChangeListeners, listener -> listener.onStackSession(session));
         mSessionChangeListeners.add(session);
         return GeckoResult.fromValue(session.getGeckoSession());
     }
@@ -1239,9 +1330,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         GleanMetricsService.startPageLoadTime(aUri);
 
         setWebXRState(SessionState.WEBXR_UNUSED);
-        for (GeckoSession.ProgressDelegate listener : mProgressListeners) {
-            listener.onPageStart(aSession, aUri);
-        }
+        mEventBus.post(mProgressListeners, listener -> listener.onPageStart(aSession, aUri));
     }
 
     @Override
@@ -1255,9 +1344,16 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             GleanMetricsService.stopPageLoadTimeWithURI(mState.mUri);
         }
 
-        for (GeckoSession.ProgressDelegate listener : mProgressListeners) {
-            listener.onPageStop(aSession, b);
+        mEventBus.post(mProgressListeners, listener -> listener.onPageStop(aSession, b));
+    }
+
+    @Override
+    public void onProgressChange(@NonNull GeckoSession aSession, int aProgress) {
+        if (mState.mSession != aSession) {
+            return;
         }
+        // Gecko reports progress many times per page load, listeners only need the latest value.
+        mEventBus.postCoalesced(SessionEventBus.COALESCED_PROGRESS, mProgressListeners, listener -> listener.onProgressChange(aSession, aProgress));
     }
 
     @Override
@@ -1268,16 +1364,14 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Log.d(LOGTAG, "Session onPageStop");
         mState.mSecurityInformation = aInformation;
 
-        for (GeckoSession.ProgressDelegate listener : mProgressListeners) {
-            listener.onSecurityChange(aSession, aInformation);
-        }
+        mEventBus.post(mProgressListeners, listener -> listener.onSecurityChange(aSession, aInformation));
     }
 
     @Override
     public void onSessionStateChange(@NonNull GeckoSession aSession,
                                      @NonNull GeckoSession.SessionState aSessionState) {
         if (mState.mSession == aSession) {
-            mState.mSessionState = aSessionState;
+            mState.setGeckoSessionState(aSessionState);
         }
     }
 
@@ -1291,16 +1385,12 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
         mState.mTitle = aTitle;
 
-        for (GeckoSession.ContentDelegate listener : mContentListeners) {
-            listener.onTitleChange(aSession, aTitle);
-        }
+        mEventBus.post(mContentListeners, listener -> listener.onTitleChange(aSession, aTitle));
     }
 
     @Override
     public void onCloseRequest(@NonNull GeckoSession aSession) {
-        for (GeckoSession.ContentDelegate listener : mContentListeners) {
-            listener.onCloseRequest(aSession);
-        }
+        mEventBus.post(mContentListeners, listener -> listener.onCloseRequest(aSession));
     }
 
     @Override
@@ -1311,17 +1401,13 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Log.d(LOGTAG, "Session onFullScreen");
         mState.mFullScreen = aFullScreen;
 
-        for (GeckoSession.ContentDelegate listener : mContentListeners) {
-            listener.onFullScreen(aSession, aFullScreen);
-        }
+        mEventBus.post(mContentListeners, listener -> listener.onFullScreen(aSession, aFullScreen));
     }
 
     @Override
     public void onContextMenu(@NonNull GeckoSession session, int screenX, int screenY, @NonNull ContextElement element) {
         if (mState.mSession == session) {
-            for (GeckoSession.ContentDelegate listener : mContentListeners) {
-                listener.onContextMenu(session, screenX, screenY, element);
-            }
+            mEventBus.post(mContentListeners, listener -> listener.onContextMenu(session, screenX, screenY, element));
         }
     }
 
@@ -1340,16 +1426,12 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     @Override
     public void onFirstComposite(@NonNull GeckoSession aSession) {
         if (mState.mSession == aSession) {
-            for (GeckoSession.ContentDelegate listener : mContentListeners) {
-                listener.onFirstComposite(aSession);
-            }
+            mEventBus.post(mContentListeners, listener -> listener.onFirstComposite(aSession));
             if (mFirstContentfulPaint) {
                 // onFirstContentfulPaint is only called once after a session is opened.
                 // Notify onFirstContentfulPaint after a session is reattached before
                 // being closed ((e.g. tab selected)
-                for (GeckoSession.ContentDelegate listener : mContentListeners) {
-                    listener.onFirstContentfulPaint(aSession);
-                }
+                mEventBus.post(mContentListeners, listener -> listener.onFirstContentfulPaint(aSession));
             }
         }
     }
@@ -1358,9 +1440,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     public void onFirstContentfulPaint(@NonNull GeckoSession aSession) {
         mFirstContentfulPaint = true;
         if (mState.mSession == aSession) {
-            for (GeckoSession.ContentDelegate listener : mContentListeners) {
-                listener.onFirstContentfulPaint(aSession);
-            }
+            mEventBus.post(mContentListeners, listener -> listener.onFirstContentfulPaint(aSession));
         }
     }
 
@@ -1380,9 +1460,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
     @Override
     public void onExternalResponse(@NonNull GeckoSession geckoSession, @NonNull GeckoSession.WebResponseInfo webResponseInfo) {
-        for (GeckoSession.ContentDelegate listener : mContentListeners) {
-            listener.onExternalResponse(geckoSession, webResponseInfo);
-        }
+        mEventBus.post(mContentListeners, listener -> listener.onExternalResponse(geckoSession, webResponseInfo));
     }
 
     // TextInput Delegate
@@ -1390,9 +1468,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     @Override
     public void restartInput(@NonNull GeckoSession aSession, int reason) {
         if (mState.mSession == aSession) {
-            for (GeckoSession.TextInputDelegate listener : mTextInputListeners) {
-                listener.restartInput(aSession, reason);
-            }
+            mEventBus.post(mTextInputListeners, listener -> listener.restartInput(aSession, reason));
         }
     }
 
@@ -1400,9 +1476,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     public void showSoftInput(@NonNull GeckoSession aSession) {
         if (mState.mSession == aSession) {
             mState.mIsInputActive = true;
-            for (GeckoSession.TextInputDelegate listener : mTextInputListeners) {
-                listener.showSoftInput(aSession);
-            }
+            mEventBus.post(mTextInputListeners, listener -> listener.showSoftInput(aSession));
         }
     }
 
@@ -1410,36 +1484,28 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     public void hideSoftInput(@NonNull GeckoSession aSession) {
         if (mState.mSession == aSession) {
             mState.mIsInputActive = false;
-            for (GeckoSession.TextInputDelegate listener : mTextInputListeners) {
-                listener.hideSoftInput(aSession);
-            }
+            mEventBus.post(mTextInputListeners, listener -> listener.hideSoftInput(aSession));
         }
     }
 
     @Override
     public void updateSelection(@NonNull GeckoSession aSession, int selStart, int selEnd, int compositionStart, int compositionEnd) {
         if (mState.mSession == aSession) {
-            for (GeckoSession.TextInputDelegate listener : mTextInputListeners) {
-                listener.updateSelection(aSession, selStart, selEnd, compositionStart, compositionEnd);
-            }
+            mEventBus.post(mTextInputListeners, listener -> listener.updateSelection(aSession, selStart, selEnd, compositionStart, compositionEnd));
         }
     }
 
     @Override
     public void updateExtractedText(@NonNull GeckoSession aSession, @NonNull ExtractedTextRequest request, @NonNull ExtractedText text) {
         if (mState.mSession == aSession) {
-            for (GeckoSession.TextInputDelegate listener : mTextInputListeners) {
-                listener.updateExtractedText(aSession, request, text);
-            }
+            mEventBus.post(mTextInputListeners, listener -> listener.updateExtractedText(aSession, request, text));
         }
     }
 
     @Override
     public void updateCursorAnchorInfo(@NonNull GeckoSession aSession, @NonNull CursorAnchorInfo info) {
         if (mState.mSession == aSession) {
-            for (GeckoSession.TextInputDelegate listener : mTextInputListeners) {
-                listener.updateCursorAnchorInfo(aSession, info);
-            }
+            mEventBus.post(mTextInputListeners, listener -> listener.updateCursorAnchorInfo(aSession, info));
         }
     }
 
@@ -1601,9 +1667,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Media media = new Media(element);
         mState.mMediaElements.add(media);
 
-        for (VideoAvailabilityListener listener: mVideoAvailabilityListeners) {
-            listener.onVideoAvailabilityChanged(media, true);
-        }
+        mEventBus.post(mVideoAvailabilityListeners, listener -> listener.onVideoAvailabilityChanged(media, true));
     }
 
     @Override
@@ -1616,9 +1680,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             if (media.getMediaElement() == element) {
                 media.unload();
                 mState.mMediaElements.remove(i);
-                for (VideoAvailabilityListener listener: mVideoAvailabilityListeners) {
-                    listener.onVideoAvailabilityChanged(media, false);
-                }
+                mEventBus.post(mVideoAvailabilityListeners, listener -> listener.onVideoAvailabilityChanged(media, false));
                 return;
             }
         }
@@ -1751,18 +1813,14 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     @Override
     public void onShowActionRequest(@NonNull GeckoSession aSession, @NonNull Selection selection) {
         if (mState.mSession == aSession) {
-            for (GeckoSession.SelectionActionDelegate listener : mSelectionActionListeners) {
-                listener.onShowActionRequest(aSession, selection);
-            }
+            mEventBus.post(mSelectionActionListeners, listener -> listener.onShowActionRequest(aSession, selection));
         }
     }
 
     @Override
     public void onHideAction(@NonNull GeckoSession aSession, int aHideReason) {
         if (mState.mSession == aSession) {
-            for (GeckoSession.SelectionActionDelegate listener : mSelectionActionListeners) {
-                listener.onHideAction(aSession, aHideReason);
-            }
+            mEventBus.post(mSelectionActionListeners, listener -> listener.onHideAction(aSession, aHideReason));
         }
     }
 
@@ -1773,9 +1831,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         if (mState.mParentId != null) {
             mState.mParentId = null;
             // Parent stack session closed. Notify canGoBack state changed
-            for (GeckoSession.NavigationDelegate listener : mNavigationListeners) {
-                listener.onCanGoBack(this.getGeckoSession(), canGoBack());
-            }
+            mEventBus.post(mNavigationListeners, listener -> listener.onCanGoBack(this.getGeckoSession(), canGoBack()));
         }
     }
 
@@ -1783,9 +1839,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     public void onSessionStateChanged(Session aSession, boolean aActive) {
         if (mState.mParentId != null) {
             // Parent stack session has been attached/detached. Notify canGoBack state changed
-            for (GeckoSession.NavigationDelegate listener : mNavigationListeners) {
-                listener.onCanGoBack(this.getGeckoSession(), canGoBack());
-            }
+            mEventBus.post(mNavigationListeners, listener -> listener.onCanGoBack(this.getGeckoSession(), canGoBack()));
         }
     }
 
@@ -1814,6 +1868,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         if (mState.mDisplay == null) {
             mState.mDisplay = mState.mSession.acquireDisplay();
         }
+        mSurfaceWidth = width;
+        mSurfaceHeight = height;
         mState.mDisplay.surfaceChanged(surface, left, top, width, height);
     }
 
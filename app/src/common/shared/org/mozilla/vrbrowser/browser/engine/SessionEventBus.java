@@ -0,0 +1,141 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.browser.engine;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches the events of a Session to its listeners. All calls must happen in the UI thread.
+ *  - Each event is delivered in a single loop over the listener snapshot.
+ *  - State replays requested while an event is being dispatched (e.g. a listener registered from
+ *    a callback) are batched and run once the outermost dispatch finishes, so new listeners never
+ *    receive the state in the middle of an event.
+ *  - High frequency events can be coalesced: only the latest event of each type is delivered,
+ *    at most once per scheduler turn. Pending coalesced events are flushed before any other
+ *    event so listeners always see them in order.
+ */
+class SessionEventBus {
+
+    @IntDef(value = { COALESCED_PROGRESS })
+    @interface CoalescedEvent {}
+    static final int COALESCED_PROGRESS = 0;
+    private static final int COALESCED_EVENT_COUNT = 1;
+
+    interface Event<L> {
+        void dispatch(@NonNull L aListener);
+    }
+
+    // Latest undelivered event of each coalesced type.
+    private static class PendingEvent<L> {
+        ListenerList<L> listeners;
+        Event<L> event;
+    }
+
+    private final Executor mScheduler;
+    private final PendingEvent<?>[] mPending = new PendingEvent<?>[COALESCED_EVENT_COUNT];
+    private boolean mFlushScheduled;
+    private int mDispatchDepth;
+    private final ArrayList<Runnable> mDeferredReplays = new ArrayList<>();
+    private final Runnable mFlushRunnable = () -> {
+        mFlushScheduled = false;
+        flushCoalesced();
+    };
+
+    /**
+     * @param aScheduler Executor that runs the coalesced event flushes in the UI thread.
+     */
+    SessionEventBus(@NonNull Executor aScheduler) {
+        mScheduler = aScheduler;
+        for (int i = 0; i < COALESCED_EVENT_COUNT; i++) {
+            mPending[i] = new PendingEvent<>();
+        }
+    }
+
+    /**
+     * Delivers the event to every listener registered at the time of the call.
+     */
+    <L> void post(@NonNull ListenerList<L> aListeners, @NonNull Event<L> aEvent) {
+        flushCoalesced();
+        dispatch(aListeners, aEvent);
+    }
+
+    /**
+     * Queues the event replacing any undelivered event of the same type.
+     */
+    @SuppressWarnings("unchecked")
+    <L> void postCoalesced(@CoalescedEvent int aType, @NonNull ListenerList<L> aListeners, @NonNull Event<L> aEvent) {
+        PendingEvent<L> pending = (PendingEvent<L>) mPending[aType];
+        pending.listeners = aListeners;
+        pending.event = aEvent;
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mScheduler.execute(mFlushRunnable);
+        }
+    }
+
+    /**
+     * Runs a state replay for a new listener, deferred if an event is being dispatched.
+     */
+    void replay(@NonNull Runnable aReplay) {
+        if (mDispatchDepth > 0) {
+            mDeferredReplays.add(aReplay);
+        } else {
+            aReplay.run();
+        }
+    }
+
+    /**
+     * Drops any undelivered coalesced event, e.g. when the session is shut down.
+     */
+    void clear() {
+        for (PendingEvent<?> pending: mPending) {
+            pending.listeners = null;
+            pending.event = null;
+        }
+        mDeferredReplays.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flushCoalesced() {
+        for (PendingEvent<?> pending: mPending) {
+            if (pending.event != null) {
+                PendingEvent<Object> event = (PendingEvent<Object>) pending;
+                ListenerList<Object> listeners = event.listeners;
+                Event<Object> dispatched = event.event;
+                event.listeners = null;
+                event.event = null;
+                dispatch(listeners, dispatched);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <L> void dispatch(@NonNull ListenerList<L> aListeners, @NonNull Event<L> aEvent) {
+        Object[] snapshot = aListeners.snapshot();
+        if (snapshot.length == 0) {
+            return;
+        }
+        mDispatchDepth++;
+        try {
+            for (Object listener: snapshot) {
+                aEvent.dispatch((L) listener);
+            }
+        } finally {
+            mDispatchDepth--;
+        }
+        if (mDispatchDepth == 0 && !mDeferredReplays.isEmpty()) {
+            Runnable[] replays = mDeferredReplays.toArray(new Runnable[0]);
+            mDeferredReplays.clear();
+            for (Runnable replay: replays) {
+                replay.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.geckoview.GeckoRuntime;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.geckoview.GeckoSessionSettings;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.Objects;
+
+/**
+ * Keeps GeckoSessions ready ahead of time so tab creation and tab switches don't pay the full
+ * GeckoSession creation and restore latency:
+ *  - A spare, already opened GeckoSession with the default settings (regular and private variants)
+ *    that is handed to the next Session created with matching settings.
+ *  - A speculative restore of the suspended Session the user is most likely to switch to next,
+ *    started when a tab or a window is hovered.
+ * Prewarming only happens while the SessionStore reports available budget.
+ */
+class SessionPrewarmer {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionPrewarmer.class);
+    private static final long REFILL_DELAY_MS = 3000;
+    private static final long HOVER_DELAY_MS = 300;
+
+    interface BudgetProvider {
+        /**
+         * @param aCount Number of extra GeckoSessions that the prewarmer wants to keep alive.
+         * @return true if the extra GeckoSessions fit the current memory budget.
+         */
+        boolean hasPrewarmBudget(int aCount);
+    }
+
+    private Context mContext;
+    private GeckoRuntime mRuntime;
+    private BudgetProvider mBudgetProvider;
+    private Handler mHandler;
+    private GeckoSession mSpare;
+    private SessionSettings mSpareSettings;
+    private GeckoSession mPrivateSpare;
+    private SessionSettings mPrivateSpareSettings;
+    private boolean mPrivateSpareEnabled;
+    private Session mSpeculativeSession;
+    private Session mPendingSpeculativeSession;
+    private int mSpareHits;
+    private int mSpareMisses;
+    private int mSpeculativeHits;
+    private int mSpeculativeMisses;
+
+    SessionPrewarmer(@NonNull Context aContext, @NonNull GeckoRuntime aRuntime, @NonNull BudgetProvider aBudgetProvider) {
+        mContext = aContext;
+        mRuntime = aRuntime;
+        mBudgetProvider = aBudgetProvider;
+        mHandler = new Handler(Looper.getMainLooper());
+        scheduleRefill();
+    }
+
+    /**
+     * Returns the spare GeckoSession if it was created with settings matching the provided ones.
+     * The returned session is already opened and has no delegates set.
+     */
+    @Nullable
+    GeckoSession acquireSpare(@NonNull SessionSettings aSettings) {
+        GeckoSession result = null;
+        if (aSettings.isPrivateBrowsingEnabled()) {
+            mPrivateSpareEnabled = true;
+            if (mPrivateSpare != null && isCompatible(mPrivateSpareSettings, aSettings)) {
+                result = mPrivateSpare;
+                mPrivateSpare = null;
+            } else {
+                releaseSpare(true);
+            }
+
+        } else {
+            if (mSpare != null && isCompatible(mSpareSettings, aSettings)) {
+                result = mSpare;
+                mSpare = null;
+            } else {
+                releaseSpare(false);
+            }
+        }
+
+        if (result != null) {
+            mSpareHits++;
+        } else {
+            mSpareMisses++;
+        }
+        Log.d(LOGTAG, "Spare session " + (result != null ? "hit" : "miss") + ". Hit rate: " + getSpareHitRate());
+
+        scheduleRefill();
+        return result;
+    }
+
+    /**
+     * Starts restoring a suspended Session after a short hover delay.
+     * Only one speculative Session is kept, the previous one is suspended if it was never activated.
+     */
+    void prewarmSession(@NonNull Session aSession) {
+        if (aSession == mSpeculativeSession || aSession == mPendingSpeculativeSession) {
+            return;
+        }
+        if (aSession.getGeckoSession() != null || aSession.isActive()) {
+            // Already alive, nothing to prewarm.
+            return;
+        }
+        mHandler.removeCallbacks(mSpeculativeRunnable);
+        mPendingSpeculativeSession = aSession;
+        mHandler.postDelayed(mSpeculativeRunnable, HOVER_DELAY_MS);
+    }
+
+    void cancelPrewarm(@NonNull Session aSession) {
+        if (aSession == mPendingSpeculativeSession) {
+            mHandler.removeCallbacks(mSpeculativeRunnable);
+            mPendingSpeculativeSession = null;
+        }
+    }
+
+    private Runnable mSpeculativeRunnable = () -> {
+        Session session = mPendingSpeculativeSession;
+        mPendingSpeculativeSession = null;
+        if (session == null || session.getGeckoSession() != null) {
+            return;
+        }
+        discardSpeculativeSession();
+        if (!mBudgetProvider.hasPrewarmBudget(1)) {
+            Log.d(LOGTAG, "Not enough budget to prewarm session: " + session.getId());
+            return;
+        }
+        Log.d(LOGTAG, "Prewarming session: " + session.getId());
+        mSpeculativeSession = session;
+        session.prewarm();
+    };
+
+    void onSessionActivated(@NonNull Session aSession) {
+        if (aSession == mSpeculativeSession) {
+            mSpeculativeHits++;
+            mSpeculativeSession = null;
+            Log.d(LOGTAG, "Speculative session hit. Hit rate: " + getSpeculativeHitRate());
+        }
+    }
+
+    void onSessionSuspended(@NonNull Session aSession) {
+        if (aSession == mSpeculativeSession) {
+            mSpeculativeMisses++;
+            mSpeculativeSession = null;
+            Log.d(LOGTAG, "Speculative session miss. Hit rate: " + getSpeculativeHitRate());
+        }
+        cancelPrewarm(aSession);
+    }
+
+    private void discardSpeculativeSession() {
+        if (mSpeculativeSession != null) {
+            Session session = mSpeculativeSession;
+            // suspend() reports the miss through onSessionSuspended()
+            session.suspend();
+            mSpeculativeSession = null;
+        }
+    }
+
+    /**
+     * Drops the private spare so no private browsing context is kept alive
+     * once all the private sessions are gone.
+     */
+    void onPrivateSessionsDestroyed() {
+        mPrivateSpareEnabled = false;
+        releaseSpare(true);
+    }
+
+    void onMemoryPressure() {
+        mHandler.removeCallbacks(mRefillRunnable);
+        mHandler.removeCallbacks(mSpeculativeRunnable);
+        mPendingSpeculativeSession = null;
+        discardSpeculativeSession();
+        releaseSpare(false);
+        releaseSpare(true);
+    }
+
+    void release() {
+        onMemoryPressure();
+    }
+
+    float getSpareHitRate() {
+        int total = mSpareHits + mSpareMisses;
+        return total > 0 ? (float) mSpareHits / total : 0.0f;
+    }
+
+    float getSpeculativeHitRate() {
+        int total = mSpeculativeHits + mSpeculativeMisses;
+        return total > 0 ? (float) mSpeculativeHits / total : 0.0f;
+    }
+
+    private void scheduleRefill() {
+        mHandler.removeCallbacks(mRefillRunnable);
+        mHandler.postDelayed(mRefillRunnable, REFILL_DELAY_MS);
+    }
+
+    private Runnable mRefillRunnable = () -> {
+        if (mSpare == null && mBudgetProvider.hasPrewarmBudget(1)) {
+            mSpareSettings = new SessionSettings.Builder().withDefaultSettings(mContext).build();
+            mSpare = createSpare(mSpareSettings);
+        }
+        if (mPrivateSpareEnabled && mPrivateSpare == null && mBudgetProvider.hasPrewarmBudget(1)) {
+            mPrivateSpareSettings = new SessionSettings.Builder().withDefaultSettings(mContext).withPrivateBrowsing(true).build();
+            mPrivateSpare = createSpare(mPrivateSpareSettings);
+        }
+    };
+
+    int getSpareCount() {
+        return (mSpare != null ? 1 : 0) + (mPrivateSpare != null ? 1 : 0);
+    }
+
+    private GeckoSession createSpare(@NonNull SessionSettings aSettings) {
+        GeckoSessionSettings geckoSettings = new GeckoSessionSettings.Builder()
+                .usePrivateMode(aSettings.isPrivateBrowsingEnabled())
+                .useTrackingProtection(aSettings.isTrackingProtectionEnabled())
+                .userAgentMode(aSettings.getUserAgentMode())
+                .viewportMode(aSettings.getViewportMode())
+                .suspendMediaWhenInactive(aSettings.isSuspendMediaWhenInactiveEnabled())
+                .build();
+        GeckoSession session = new GeckoSession(geckoSettings);
+        session.open(mRuntime);
+        session.setActive(false);
+        Log.d(LOGTAG, "Created spare session" + (aSettings.isPrivateBrowsingEnabled() ? " (PB)" : ""));
+        return session;
+    }
+
+    private void releaseSpare(boolean aPrivate) {
+        GeckoSession spare = aPrivate ? mPrivateSpare : mSpare;
+        if (spare != null && spare.isOpen()) {
+            spare.close();
+        }
+        if (aPrivate) {
+            mPrivateSpare = null;
+        } else {
+            mSpare = null;
+        }
+    }
+
+    private static boolean isCompatible(@Nullable SessionSettings aSpare, @NonNull SessionSettings aSettings) {
+        return aSpare != null &&
+                !aSettings.isServoEnabled() &&
+                aSpare.isPrivateBrowsingEnabled() == aSettings.isPrivateBrowsingEnabled() &&
+                aSpare.isTrackingProtectionEnabled() == aSettings.isTrackingProtectionEnabled() &&
+                aSpare.isSuspendMediaWhenInactiveEnabled() == aSettings.isSuspendMediaWhenInactiveEnabled() &&
+                aSpare.getUserAgentMode() == aSettings.getUserAgentMode() &&
+                aSpare.getViewportMode() == aSettings.getViewportMode() &&
+                Objects.equals(aSpare.getUserAgentOverride(), aSettings.getUserAgentOverride());
+    }
+}
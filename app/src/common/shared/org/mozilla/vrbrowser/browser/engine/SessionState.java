@@ -2,7 +2,10 @@ package org.mozilla.vrbrowser.browser.engine;
 
 import androidx.annotation.IntDef;
 
+import androidx.annotation.Nullable;
+
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
@@ -58,7 +61,9 @@ public class SessionState {
     public transient @PopupState int mPopUpState = POPUP_UNUSED;
     public transient @DrmState int mDrmState = DRM_UNUSED;
     @JsonAdapter(SessionState.GeckoSessionStateAdapter.class)
-    public GeckoSession.SessionState mSessionState;
+    private GeckoSession.SessionState mSessionState;
+    // Restored navigation history, kept serialized until the session is restored.
+    private transient String mSerializedSessionState;
     public long mLastUse;
     public String mRegion;
     public String mId = UUID.randomUUID().toString();
@@ -72,6 +77,7 @@ public class SessionState {
         result.mTitle = mTitle;
         result.mSettings = mSettings;
         result.mSessionState = mSessionState;
+        result.mSerializedSessionState = mSerializedSessionState;
         result.mLastUse = mLastUse;
         result.mRegion = mRegion;
         result.mId = mId;
@@ -99,6 +105,32 @@ public class SessionState {
         }
     }
 
+    /**
+     * @return The navigation history, decoded on first use for restored sessions.
+     */
+    @Nullable
+    public GeckoSession.SessionState getGeckoSessionState() {
+        if (mSessionState == null && mSerializedSessionState != null) {
+            try {
+                mSessionState = GeckoSession.SessionState.fromString(mSerializedSessionState);
+
+            } catch (JSONException e) {
+                mSessionState = null;
+            }
+            mSerializedSessionState = null;
+        }
+        return mSessionState;
+    }
+
+    public void setGeckoSessionState(@Nullable GeckoSession.SessionState aSessionState) {
+        mSessionState = aSessionState;
+        mSerializedSessionState = null;
+    }
+
+    public boolean hasGeckoSessionState() {
+        return mSessionState != null || mSerializedSessionState != null;
+    }
+
     boolean isActive() {
         return mIsActive;
     }
@@ -142,6 +174,9 @@ public class SessionState {
                                     if (session.mSessionState != null) {
                                         out.name("mSessionState").jsonValue(gsDelegate.toJson(session.mSessionState));
 
+                                    } else if (session.mSerializedSessionState != null) {
+                                        out.name("mSessionState").jsonValue(session.mSerializedSessionState);
+
                                     } else {
                                         out.name("mSessionState").jsonValue(null);
                                     }
@@ -162,12 +197,37 @@ public class SessionState {
                 }
 
                 public T read(JsonReader in) throws IOException {
+                    if (!SessionState.class.isAssignableFrom(type.getRawType())) {
+                        try {
+                            return delegate.read(in);
+                        } catch (Exception e) {
+                            in.skipValue();
+                            return null;
+                        }
+                    }
+
+                    JsonElement tree;
                     try {
-                        return delegate.read(in);
+                        tree = new JsonParser().parse(in);
                     } catch (Exception e) {
                         in.skipValue();
                         return null;
                     }
+                    try {
+                        // Keep the navigation history serialized, it's only decoded if the session is restored.
+                        JsonElement history = null;
+                        if (tree.isJsonObject()) {
+                            history = tree.getAsJsonObject().remove("mSessionState");
+                        }
+                        T value = delegate.fromJsonTree(tree);
+                        if (value != null && history != null && !history.isJsonNull()) {
+                            ((SessionState) value).mSerializedSessionState = history.toString();
+                        }
+                        return value;
+
+                    } catch (Exception e) {
+                        return null;
+                    }
                 }
             };
         }
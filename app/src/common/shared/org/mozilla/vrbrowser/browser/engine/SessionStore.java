@@ -1,5 +1,6 @@
 package org.mozilla.vrbrowser.browser.engine;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.util.Log;
@@ -23,14 +24,19 @@ import org.mozilla.vrbrowser.browser.components.GeckoWebExtensionRuntime;
 import org.mozilla.vrbrowser.browser.content.TrackingProtectionStore;
 import org.mozilla.vrbrowser.browser.extensions.BuiltinExtension;
 import org.mozilla.vrbrowser.db.SitePermission;
+import org.mozilla.vrbrowser.performance.SessionResourceMonitor;
+import org.mozilla.vrbrowser.utils.LastFrameCache;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
@@ -48,6 +54,7 @@ public class SessionStore implements
 
     private static final String LOGTAG = SystemUtils.createLogtag(SessionStore.class);
     private static final int MAX_GECKO_SESSIONS = 5;
+    private static final long PREWARM_MEMORY_PRESSURE_COOLDOWN_MS = 60 * 1000;
 
     private static final List<Pair<String, String>> BUILTIN_WEB_EXTENSIONS = Arrays.asList(
             new Pair<>("fxr-webcompat_youtube@mozilla.org", "resource://android/assets/extensions/fxr_youtube/")
@@ -65,7 +72,10 @@ public class SessionStore implements
     private Executor mMainExecutor;
     private Context mContext;
     private GeckoRuntime mRuntime;
+    // Materialized sessions.
     private ArrayList<Session> mSessions;
+    // Every tab by id, including the restored tabs that haven't been materialized yet.
+    private LinkedHashMap<String, TabDescriptor> mTabs;
     private Session mActiveSession;
     private PermissionDelegate mPermissionDelegate;
     private BookmarksStore mBookmarksStore;
@@ -76,9 +86,13 @@ public class SessionStore implements
     private GeckoWebExtensionRuntime mWebExtensionRuntime;
     private FxaWebChannelFeature mWebChannelsFeature;
     private Store.Subscription mStoreSubscription;
+    private SessionPrewarmer mPrewarmer;
+    private SessionResourceMonitor mResourceMonitor;
+    private long mLastMemoryPressure;
 
     private SessionStore() {
         mSessions = new ArrayList<>();
+        mTabs = new LinkedHashMap<>();
     }
 
     public static void prefOverrides(Context context) {
@@ -125,6 +139,9 @@ public class SessionStore implements
         mBookmarksStore = new BookmarksStore(context);
         mHistoryStore = new HistoryStore(context);
 
+        mPrewarmer = new SessionPrewarmer(context, mRuntime, this::hasPrewarmBudget);
+        mResourceMonitor = ((VRBrowserApplication)context.getApplicationContext()).getSessionResourceMonitor();
+
         // Web Extensions initialization
         BUILTIN_WEB_EXTENSIONS.forEach(extension -> BuiltinExtension.install(mWebExtensionRuntime, extension.first, extension.second));
         WebCompatFeature.INSTANCE.install(mWebExtensionRuntime);
@@ -163,6 +180,7 @@ public class SessionStore implements
                     }
                 }
                 Log.d(LOGTAG, "[Alive] BrowserStore: " + browserState.getTabs().size() + ", SessionStore: " + (mSessions.size() - suspendedCount));
+                Log.d(LOGTAG, "[Not materialized] SessionStore: " + (mTabs.size() - mSessions.size()));
                 Log.d(LOGTAG, "Session status END");
                 return null;
             });
@@ -175,6 +193,12 @@ public class SessionStore implements
         aSession.setPermissionDelegate(this);
         aSession.addNavigationListener(mServices);
         mSessions.add(aSession);
+        TabDescriptor tab = mTabs.get(aSession.getId());
+        if (tab != null) {
+            tab.setSession(aSession);
+        } else {
+            mTabs.put(aSession.getId(), new TabDescriptor(aSession));
+        }
         sessionActiveStateChanged();
 
         if (BuildConfig.DEBUG) {
@@ -231,6 +255,17 @@ public class SessionStore implements
         return addSession(session);
     }
 
+    /**
+     * Registers a saved tab without creating its Session. The Session is materialized when the
+     * tab is requested through {@link #getSession(TabDescriptor)} or {@link #getSession(String)}.
+     */
+    @NonNull
+    public TabDescriptor restoreTab(@NonNull SessionState aRestoreState) {
+        TabDescriptor tab = new TabDescriptor(aRestoreState);
+        mTabs.put(tab.getId(), tab);
+        return tab;
+    }
+
     @NonNull
     public Session createSuspendedSession(final String aUri, final boolean aPrivateMode) {
         SessionState state = new SessionState();
@@ -251,11 +286,20 @@ public class SessionStore implements
     public void destroySession(Session aSession) {
         mSessions.remove(aSession);
         if (aSession != null) {
+            // Removed by value, the id changes if the session state is recreated.
+            mTabs.values().removeIf(tab -> tab.getSession() == aSession);
+            LastFrameCache.getInstance(mContext).removeFrame(aSession.getId());
             shutdownSession(aSession);
         }
     }
 
     public void destroySession(@NonNull String sessionId) {
+        TabDescriptor tab = mTabs.get(sessionId);
+        if (tab != null && !tab.isMaterialized()) {
+            mTabs.remove(sessionId);
+            LastFrameCache.getInstance(mContext).removeFrame(sessionId);
+            return;
+        }
         mSessions.stream().filter(session -> session.getId().equals(sessionId)).findFirst().ifPresent(this::destroySession);
     }
 
@@ -264,9 +308,13 @@ public class SessionStore implements
             if (!session.isPrivateMode()) {
                 return false;
             }
+            mTabs.values().removeIf(tab -> tab.getSession() == session);
             shutdownSession(session);
             return true;
         });
+        if (mPrewarmer != null) {
+            mPrewarmer.onPrivateSessionsDestroyed();
+        }
     }
 
     public void suspendAllInactiveSessions() {
@@ -280,7 +328,114 @@ public class SessionStore implements
         }
     }
 
+    public void onMemoryPressure() {
+        mLastMemoryPressure = System.currentTimeMillis();
+        if (mPrewarmer != null) {
+            mPrewarmer.onMemoryPressure();
+        }
+        suspendAllInactiveSessions();
+    }
+
+    // Session prewarming
+
+    /**
+     * Starts restoring a suspended session that the user is likely to switch to, e.g. a hovered tab.
+     */
+    public void prewarmSession(@NonNull Session aSession) {
+        if (aSession.getGeckoSession() == null && !aSession.isPrivateMode()) {
+            // Decode the last frame so it can be shown as soon as the session is restored.
+            LastFrameCache.getInstance(mContext).prefetchFrame(aSession.getId());
+        }
+        if (mPrewarmer != null) {
+            mPrewarmer.prewarmSession(aSession);
+        }
+    }
+
+    /**
+     * Prepares a tab the user is likely to switch to, e.g. a hovered tab in the tray. Restored
+     * tabs that haven't been materialized only get their last frame decoded, their Session is
+     * created once the tab is selected.
+     */
+    public void prewarmTab(@NonNull TabDescriptor aTab) {
+        Session session = aTab.getSession();
+        if (session != null) {
+            prewarmSession(session);
+        } else if (!aTab.isPrivateMode()) {
+            LastFrameCache.getInstance(mContext).prefetchFrame(aTab.getId());
+        }
+    }
+
+    public void cancelPrewarm(@NonNull Session aSession) {
+        if (mPrewarmer != null) {
+            mPrewarmer.cancelPrewarm(aSession);
+        }
+    }
+
+    @Nullable
+    GeckoSession acquirePrewarmedSession(@NonNull SessionSettings aSettings) {
+        return mPrewarmer != null ? mPrewarmer.acquireSpare(aSettings) : null;
+    }
+
+    void onSessionActivated(@NonNull Session aSession) {
+        if (mPrewarmer != null) {
+            mPrewarmer.onSessionActivated(aSession);
+        }
+    }
+
+    void onSessionSuspended(@NonNull Session aSession) {
+        if (mPrewarmer != null) {
+            mPrewarmer.onSessionSuspended(aSession);
+        }
+    }
+
+    private boolean hasPrewarmBudget(int aCount) {
+        if (System.currentTimeMillis() - mLastMemoryPressure < PREWARM_MEMORY_PRESSURE_COOLDOWN_MS) {
+            return false;
+        }
+        ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager != null) {
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            activityManager.getMemoryInfo(memoryInfo);
+            if (memoryInfo.lowMemory) {
+                return false;
+            }
+        }
+        int alive = mPrewarmer != null ? mPrewarmer.getSpareCount() : 0;
+        for (Session session: mSessions) {
+            if (session.getGeckoSession() != null) {
+                alive++;
+            }
+        }
+        return alive + aCount <= MAX_GECKO_SESSIONS;
+    }
+
+    /**
+     * @return The Session with the given id, materializing it if it's a restored tab.
+     */
     public @Nullable Session getSession(String aId) {
+        Session session = findSession(aId);
+        if (session == null) {
+            TabDescriptor tab = mTabs.get(aId);
+            if (tab != null) {
+                session = getSession(tab);
+            }
+        }
+        return session;
+    }
+
+    public @NonNull Session getSession(@NonNull TabDescriptor aTab) {
+        Session session = aTab.getSession();
+        if (session == null) {
+            Log.d(LOGTAG, "Materializing session: " + aTab.getId());
+            session = addSession(Session.createSuspendedSession(mContext, mRuntime, aTab.getSessionState(), this));
+        }
+        return session;
+    }
+
+    /**
+     * @return The materialized Session with the given id, null if there is none.
+     */
+    @Nullable Session findSession(String aId) {
         return mSessions.stream().filter(session -> session.getId().equals(aId)).findFirst().orElse(null);
     }
 
@@ -288,6 +443,18 @@ public class SessionStore implements
         return mSessions.stream().filter(session -> session.getGeckoSession() == aGeckoSession).findFirst().orElse(null);
     }
 
+    /**
+     * @return The sessions that have a GeckoSession.
+     */
+    public @NonNull List<Session> getLoadedSessions() {
+        return mSessions.stream()
+                .filter(session -> session.getGeckoSession() != null)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Only materialized sessions are considered, restored tabs load their page when materialized.
+     */
     public @NonNull List<Session> getSessionsByHost(@NonNull String aHost, boolean aIsPrivate) {
         return mSessions.stream()
                 .filter(session -> session.isPrivateMode() == aIsPrivate)
@@ -309,9 +476,24 @@ public class SessionStore implements
         }
     }
 
+    /**
+     * Suspends inactive sessions, the heaviest first, until the GeckoSession limit is met.
+     */
     private void limitInactiveSessions() {
         Log.d(LOGTAG, "Limiting Inactive Sessions");
-        suspendAllInactiveSessions();
+        List<Session> loaded = getLoadedSessions();
+        List<Session> inactive = loaded.stream().filter(session -> !session.isActive()).collect(Collectors.toList());
+        int excess = loaded.size() - MAX_GECKO_SESSIONS;
+        for (Session session: mResourceMonitor.sortByMemory(inactive)) {
+            if (excess <= 0) {
+                break;
+            }
+            session.suspend();
+            excess--;
+        }
+        if (BuildConfig.DEBUG) {
+            mStoreSubscription.resume();
+        }
         mSuspendPending = false;
     }
 
@@ -346,9 +528,12 @@ public class SessionStore implements
         return mActiveSession;
     }
 
-    public ArrayList<Session> getSortedSessions(boolean aPrivateMode) {
-        ArrayList<Session> result = new ArrayList<>(mSessions);
-        result.removeIf(session -> session.isPrivateMode() != aPrivateMode);
+    /**
+     * @return The tabs sorted by last use. Restored tabs are not materialized.
+     */
+    public ArrayList<TabDescriptor> getSortedTabs(boolean aPrivateMode) {
+        ArrayList<TabDescriptor> result = new ArrayList<>(mTabs.values());
+        result.removeIf(tab -> tab.isPrivateMode() != aPrivateMode);
         result.sort((o1, o2) -> {
             if (o2.getLastUse() < o1.getLastUse()) {
                 return -1;
@@ -385,15 +570,21 @@ public class SessionStore implements
     }
 
     public void onDestroy() {
+        if (mPrewarmer != null) {
+            mPrewarmer.release();
+        }
+
         for (int i = mSessions.size() - 1; i >= 0; --i) {
             destroySession(mSessions.get(i));
         }
+        mTabs.clear();
 
         if (mBookmarksStore != null) {
             mBookmarksStore.removeAllListeners();
         }
 
         if (mHistoryStore != null) {
+            mHistoryStore.flushPendingWrites();
             mHistoryStore.removeAllListeners();
         }
 
@@ -460,6 +651,25 @@ public class SessionStore implements
         });
     }
 
+    /**
+     * Re-keys the tab of a Session whose state has been replaced with a new id (e.g. toggleServo).
+     */
+    private void updateTabId(@NonNull Session aSession) {
+        TabDescriptor tab = mTabs.get(aSession.getId());
+        if (tab != null && tab.getSession() == aSession) {
+            return;
+        }
+        Iterator<Map.Entry<String, TabDescriptor>> it = mTabs.entrySet().iterator();
+        while (it.hasNext()) {
+            TabDescriptor item = it.next().getValue();
+            if (item.getSession() == aSession) {
+                it.remove();
+                mTabs.put(aSession.getId(), item);
+                return;
+            }
+        }
+    }
+
     // Permission Delegate
 
     @Override
@@ -519,6 +729,7 @@ public class SessionStore implements
 
     @Override
     public void onSessionStateChanged(Session aSession, boolean aActive) {
+        updateTabId(aSession);
         if (aActive) {
             ComponentsAdapter.get().selectSession(aSession);
         }
@@ -0,0 +1,95 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Compact description of a tab, enough to list and sort the tabs. Restored tabs only keep their
+ * saved {@link SessionState}, with the navigation history still serialized, until the
+ * {@link SessionStore} materializes a {@link Session} for them.
+ */
+public class TabDescriptor {
+
+    private SessionState mState;
+    private Session mSession;
+
+    TabDescriptor(@NonNull SessionState aState) {
+        mState = aState;
+    }
+
+    TabDescriptor(@NonNull Session aSession) {
+        mSession = aSession;
+        mState = aSession.getSessionState();
+    }
+
+    @NonNull
+    public String getId() {
+        return getSessionState().mId;
+    }
+
+    @NonNull
+    public String getUri() {
+        String uri = getSessionState().mUri;
+        return uri != null ? uri : "";
+    }
+
+    @NonNull
+    public String getTitle() {
+        String title = getSessionState().mTitle;
+        return title != null ? title : "";
+    }
+
+    public long getLastUse() {
+        return getSessionState().mLastUse;
+    }
+
+    @Nullable
+    public String getParentId() {
+        return getSessionState().mParentId;
+    }
+
+    @NonNull
+    public String getHomeUri(@NonNull Context aContext) {
+        return Session.getHomeUri(aContext, getSessionState().mRegion);
+    }
+
+    public boolean isPrivateMode() {
+        if (mSession != null) {
+            return mSession.isPrivateMode();
+        }
+        return mState.mSettings != null && mState.mSettings.isPrivateBrowsingEnabled();
+    }
+
+    public boolean isMaterialized() {
+        return mSession != null;
+    }
+
+    /**
+     * @return The Session of this tab, null if it hasn't been materialized yet.
+     * Use {@link SessionStore#getSession(TabDescriptor)} to materialize it.
+     */
+    @Nullable
+    public Session getSession() {
+        return mSession;
+    }
+
+    /**
+     * @return The state to save for this tab. The Session replaces its state when it's recreated.
+     */
+    @NonNull
+    public SessionState getSessionState() {
+        return mSession != null ? mSession.getSessionState() : mState;
+    }
+
+    void setSession(@NonNull Session aSession) {
+        mSession = aSession;
+        mState = aSession.getSessionState();
+    }
+}
@@ -14,6 +14,7 @@ import org.mozilla.vrbrowser.BuildConfig;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserActivity;
 import org.mozilla.vrbrowser.browser.SettingsStore;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.io.FileOutputStream;
@@ -49,7 +50,10 @@ public class CrashReporterService extends JobIntentService {
     @NonNull
     public static ArrayList<String> findCrashFiles(@NonNull Context aContext) {
         ArrayList<String> files = new ArrayList<>();
-        String[] allFiles = aContext.fileList();
+        String[] allFiles;
+        try (MainThreadIO.Trace trace = MainThreadIO.trace("CrashReporterService.findCrashFiles", MainThreadIO.DISK_READ)) {
+            allFiles = aContext.fileList();
+        }
         for (String value: allFiles) {
             if (value.startsWith(CRASH_FILE_PREFIX)) {
                 files.add(value);
@@ -13,7 +13,7 @@ import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import org.mozilla.vrbrowser.AppExecutors;
 
-@Database(entities = {SitePermission.class}, version = 4)
+@Database(entities = {SitePermission.class, Download.class}, version = 6)
 public abstract class AppDatabase extends RoomDatabase {
 
     private static final String DATABASE_NAME = "app";
@@ -24,6 +24,8 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract SitePermissionDao sitePermissionDao();
 
+    public abstract DownloadDao downloadDao();
+
     public static AppDatabase getAppDatabase(Context context, final AppExecutors executors) {
         if (mInstance == null) {
             synchronized (AppDatabase.class) {
@@ -38,7 +40,8 @@ public abstract class AppDatabase extends RoomDatabase {
     @NonNull
     private static AppDatabase buildDatabase(final @NonNull Context appContext, final @NonNull AppExecutors executors) {
         return Room.databaseBuilder(appContext, AppDatabase.class, DATABASE_NAME)
-                .addMigrations(MIGRATION_1_2, MIGRATION_2_4)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_4, MIGRATION_4_5, MIGRATION_5_6)
+                .setQueryExecutor(executors.databaseIO())
                 .addCallback(new Callback() {
                     @Override
                     public void onCreate(@NonNull SupportSQLiteDatabase db) {
@@ -95,4 +98,21 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     };
 
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_SitePermission_category_url ON SitePermission (category, url)");
+        }
+    };
+
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS Download (id INTEGER NOT NULL, uri TEXT, title TEXT, " +
+                    "description TEXT, mediaType TEXT, outputUri TEXT, filename TEXT NOT NULL, sizeBytes INTEGER NOT NULL, " +
+                    "downloadedBytes INTEGER NOT NULL, status INTEGER NOT NULL, reason TEXT, lastModified INTEGER NOT NULL, " +
+                    "PRIMARY KEY(id))");
+        }
+    };
+
 }
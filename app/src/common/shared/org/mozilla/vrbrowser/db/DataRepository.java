@@ -58,26 +58,66 @@ public class DataRepository implements LifecycleOwner {
         return mObservablePopUps;
     }
 
+    public LiveData<List<SitePermission>> getSitePermissions(@SitePermission.Category int category) {
+        return mDatabase.sitePermissionDao().loadAll(category);
+    }
+
+    public LiveData<SitePermission> getSitePermissionLiveData(String aURL, @SitePermission.Category int category) {
+        return mDatabase.sitePermissionDao().findByUrl(aURL, category);
+    }
+
     public CompletableFuture<SitePermission> getSitePermission(String aURL, @SitePermission.Category int category) {
-        CompletableFuture<SitePermission> future = new CompletableFuture<>();
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().findByUrl(aURL, category));
-        return future;
+        return CompletableFuture.supplyAsync(
+                () -> mDatabase.sitePermissionDao().getByUrl(aURL, category),
+                mExecutors.databaseIO());
+    }
+
+    public CompletableFuture<Void> insertSitePermission(final @NonNull SitePermission site) {
+        return CompletableFuture.runAsync(
+                () -> mDatabase.sitePermissionDao().insert(site),
+                mExecutors.databaseIO());
+    }
+
+    public CompletableFuture<Void> insertSitePermissions(final @NonNull List<SitePermission> sites) {
+        return CompletableFuture.runAsync(
+                () -> mDatabase.sitePermissionDao().insert(sites),
+                mExecutors.databaseIO());
+    }
+
+    public CompletableFuture<Void> deleteSitePermission(final @NonNull SitePermission site) {
+        return CompletableFuture.runAsync(
+                () -> mDatabase.sitePermissionDao().delete(site),
+                mExecutors.databaseIO());
     }
 
-    public void insertSitePermission(final @NonNull SitePermission site) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().insert(site));
+    public CompletableFuture<Void> deleteSites(final @NonNull List<SitePermission> sites) {
+        return CompletableFuture.runAsync(
+                () -> mDatabase.sitePermissionDao().delete(sites),
+                mExecutors.databaseIO());
     }
 
-    public void deleteSitePermission(final @NonNull SitePermission site) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().delete(site));
+    public CompletableFuture<Void> deleteSitePermissions(final @NonNull List<String> urls, @SitePermission.Category int category) {
+        return CompletableFuture.runAsync(
+                () -> mDatabase.sitePermissionDao().deleteByUrls(urls, category),
+                mExecutors.databaseIO());
     }
 
-    public void deleteSites(final @NonNull List<SitePermission> sites) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().delete(sites));
+    public CompletableFuture<Void> deleteAllSitePermission(@SitePermission.Category int category) {
+        return CompletableFuture.runAsync(
+                () -> mDatabase.sitePermissionDao().deleteAll(category),
+                mExecutors.databaseIO());
     }
 
-    public void deleteAllSitePermission(@SitePermission.Category int category) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().deleteAll(category));
+    /**
+     * Replaces all the site permissions of a category in a single transaction.
+     */
+    public CompletableFuture<Void> replaceSitePermissions(final @NonNull List<SitePermission> sites, @SitePermission.Category int category) {
+        return CompletableFuture.runAsync(
+                () -> mDatabase.runInTransaction(() -> {
+                    mDatabase.sitePermissionDao().deleteAll(category);
+                    mDatabase.sitePermissionDao().insert(sites);
+                }),
+                mExecutors.databaseIO());
     }
 
 }
@@ -1,4 +1,57 @@
 package org.mozilla.vrbrowser.db;
 
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Local index of the downloads tracked by the system DownloadManager, so listing them
+ * doesn't require querying its content provider.
+ */
+@Entity
 public class Download {
+
+    public Download(long id, @NonNull String filename) {
+        this.id = id;
+        this.filename = filename;
+    }
+
+    // DownloadManager id
+    @PrimaryKey
+    public long id;
+
+    @ColumnInfo(name = "uri")
+    public String uri;
+
+    @ColumnInfo(name = "title")
+    public String title;
+
+    @ColumnInfo(name = "description")
+    public String description;
+
+    @ColumnInfo(name = "mediaType")
+    public String mediaType;
+
+    @ColumnInfo(name = "outputUri")
+    public String outputUri;
+
+    @NonNull
+    @ColumnInfo(name = "filename")
+    public String filename;
+
+    @ColumnInfo(name = "sizeBytes")
+    public long sizeBytes;
+
+    @ColumnInfo(name = "downloadedBytes")
+    public long downloadedBytes;
+
+    @ColumnInfo(name = "status")
+    public int status;
+
+    @ColumnInfo(name = "reason")
+    public String reason;
+
+    @ColumnInfo(name = "lastModified")
+    public long lastModified;
 }
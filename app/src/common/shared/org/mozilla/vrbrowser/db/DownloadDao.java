@@ -1,4 +1,33 @@
 package org.mozilla.vrbrowser.db;
 
-public class DownloadDao {
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+@Dao
+public abstract class DownloadDao {
+    @Query("SELECT * FROM Download ORDER BY id")
+    public abstract List<Download> getAll();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    public abstract void insert(List<Download> downloads);
+
+    @Query("DELETE FROM Download WHERE id IN (:ids)")
+    public abstract void deleteByIds(List<Long> ids);
+
+    @Query("DELETE FROM Download")
+    public abstract void deleteAll();
+
+    /**
+     * Replaces the whole index, used after a full resync with the DownloadManager.
+     */
+    @Transaction
+    public void replaceAll(List<Download> downloads) {
+        deleteAll();
+        insert(downloads);
+    }
 }
@@ -0,0 +1,60 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Set;
+
+/**
+ * Small typed key-value storage for app state. Reads are served from memory, writes are persisted
+ * without blocking on the disk. Getters return the default value when the key is missing or has
+ * a different type.
+ */
+public interface KeyValueStore {
+
+    boolean contains(@NonNull String aKey);
+
+    boolean getBoolean(@NonNull String aKey, boolean aDefault);
+
+    int getInt(@NonNull String aKey, int aDefault);
+
+    long getLong(@NonNull String aKey, long aDefault);
+
+    float getFloat(@NonNull String aKey, float aDefault);
+
+    @Nullable
+    String getString(@NonNull String aKey, @Nullable String aDefault);
+
+    @Nullable
+    Set<String> getStringSet(@NonNull String aKey, @Nullable Set<String> aDefault);
+
+    void putBoolean(@NonNull String aKey, boolean aValue);
+
+    void putInt(@NonNull String aKey, int aValue);
+
+    void putLong(@NonNull String aKey, long aValue);
+
+    void putFloat(@NonNull String aKey, float aValue);
+
+    /**
+     * @param aValue The value, null removes the key.
+     */
+    void putString(@NonNull String aKey, @Nullable String aValue);
+
+    /**
+     * @param aValue The value, null removes the key.
+     */
+    void putStringSet(@NonNull String aKey, @Nullable Set<String> aValue);
+
+    void remove(@NonNull String aKey);
+
+    /**
+     * Makes the previous writes durable, e.g. when the app goes to the background.
+     */
+    void flush();
+}
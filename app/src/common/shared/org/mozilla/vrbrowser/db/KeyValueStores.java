@@ -0,0 +1,67 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.db;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.mozilla.vrbrowser.AppExecutors;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
+import org.mozilla.vrbrowser.ui.widgets.AppServicesProvider;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Provides the KeyValueStore used for the app state. The state is stored in a memory-mapped log,
+ * SharedPreferences are used if the log can't be opened. The log can only be used by the main
+ * process, other processes must keep using SharedPreferences.
+ */
+public class KeyValueStores {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(KeyValueStores.class);
+
+    private static final String LOG_FILENAME = "app_state.kvlog";
+    private static final String FALLBACK_PREFS_NAME = "app_state";
+
+    private static KeyValueStore mDefault;
+
+    @NonNull
+    public static synchronized KeyValueStore getDefault(@NonNull Context aContext) {
+        if (mDefault == null) {
+            Context context = aContext.getApplicationContext();
+            File file = new File(context.getFilesDir(), LOG_FILENAME);
+            try (MainThreadIO.Trace trace = MainThreadIO.trace("KeyValueStores.getDefault", MainThreadIO.DISK_READ)) {
+                mDefault = new LogKeyValueStore(file, runnable -> runInDiskIO(context, runnable));
+
+            } catch (IOException e) {
+                Log.e(LOGTAG, "Error opening the app state log, using SharedPreferences: " + e.getLocalizedMessage());
+                mDefault = new PreferencesKeyValueStore(context.getSharedPreferences(FALLBACK_PREFS_NAME, Context.MODE_PRIVATE));
+            }
+        }
+        return mDefault;
+    }
+
+    // The executors are created with the activity, the store can be opened before.
+    private static void runInDiskIO(@NonNull Context aContext, @NonNull Runnable aRunnable) {
+        AppExecutors executors = aContext instanceof AppServicesProvider ? ((AppServicesProvider) aContext).getExecutors() : null;
+        if (executors != null) {
+            executors.diskIO().execute(aRunnable);
+        } else {
+            aRunnable.run();
+        }
+    }
+
+    @VisibleForTesting
+    public static synchronized void setDefault(@Nullable KeyValueStore aStore) {
+        mDefault = aStore;
+    }
+}
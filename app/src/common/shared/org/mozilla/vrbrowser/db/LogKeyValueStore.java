@@ -0,0 +1,597 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.db;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * KeyValueStore backed by a memory-mapped append-only log. Every write appends a record to the
+ * mapped file, so it only costs a memory copy and survives a crash of the process. The values are
+ * indexed in memory when the log is opened.
+ * Each record is stored as [payload length][payload CRC32][type, key, value]. The length is written
+ * last, so a record interrupted by a crash reads as the end of the log, and a record with a wrong
+ * checksum ends the log when it is opened. The log is compacted in the background when most of it
+ * is overwritten records, the compacted log is written to a new file that replaces the old one.
+ * The file is locked, so it can only be opened by one process.
+ */
+public class LogKeyValueStore implements KeyValueStore {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(LogKeyValueStore.class);
+
+    private static final int MAGIC = 0x46524b56; // "FRKV"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MIN_COMPACTION_SIZE = 32 * 1024;
+    private static final float MIN_LIVE_RATIO = 0.5f;
+
+    private static final byte TYPE_REMOVED = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_STRING = 5;
+    private static final byte TYPE_STRING_SET = 6;
+
+    private final File mFile;
+    private final Executor mExecutor;
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    private FileLock mLock;
+    private MappedByteBuffer mBuffer;
+    private int mWritePosition;
+    private final HashMap<String, Object> mValues = new HashMap<>();
+    // Size of the record that holds the current value of each key.
+    private final HashMap<String, Integer> mRecordSizes = new HashMap<>();
+    private int mLiveBytes;
+    private boolean mClosed;
+    private boolean mCompacting;
+    private boolean mCompactionScheduled;
+    private boolean mReopenScheduled;
+
+    /**
+     * Opens the log, creating it if it doesn't exist. The log is compacted in the calling thread.
+     * @throws IOException If the file can't be mapped or another process has it open.
+     */
+    @VisibleForTesting
+    public LogKeyValueStore(@NonNull File aFile) throws IOException {
+        this(aFile, Runnable::run);
+    }
+
+    /**
+     * Opens the log, creating it if it doesn't exist.
+     * @param aExecutor Executor used to compact the log, and to reopen it if that fails.
+     * @throws IOException If the file can't be mapped or another process has it open.
+     */
+    public LogKeyValueStore(@NonNull File aFile, @NonNull Executor aExecutor) throws IOException {
+        mFile = aFile;
+        mExecutor = aExecutor;
+        open(INITIAL_CAPACITY);
+    }
+
+    @Override
+    public synchronized boolean contains(@NonNull String aKey) {
+        return mValues.containsKey(aKey);
+    }
+
+    @Override
+    public synchronized boolean getBoolean(@NonNull String aKey, boolean aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Boolean ? (Boolean) value : aDefault;
+    }
+
+    @Override
+    public synchronized int getInt(@NonNull String aKey, int aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Integer ? (Integer) value : aDefault;
+    }
+
+    @Override
+    public synchronized long getLong(@NonNull String aKey, long aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Long ? (Long) value : aDefault;
+    }
+
+    @Override
+    public synchronized float getFloat(@NonNull String aKey, float aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Float ? (Float) value : aDefault;
+    }
+
+    @Nullable
+    @Override
+    public synchronized String getString(@NonNull String aKey, @Nullable String aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof String ? (String) value : aDefault;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(@NonNull String aKey, @Nullable Set<String> aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Set ? (Set<String>) value : aDefault;
+    }
+
+    @Override
+    public synchronized void putBoolean(@NonNull String aKey, boolean aValue) {
+        put(aKey, aValue);
+    }
+
+    @Override
+    public synchronized void putInt(@NonNull String aKey, int aValue) {
+        put(aKey, aValue);
+    }
+
+    @Override
+    public synchronized void putLong(@NonNull String aKey, long aValue) {
+        put(aKey, aValue);
+    }
+
+    @Override
+    public synchronized void putFloat(@NonNull String aKey, float aValue) {
+        put(aKey, aValue);
+    }
+
+    @Override
+    public synchronized void putString(@NonNull String aKey, @Nullable String aValue) {
+        put(aKey, aValue);
+    }
+
+    @Override
+    public synchronized void putStringSet(@NonNull String aKey, @Nullable Set<String> aValue) {
+        put(aKey, aValue != null ? Collections.unmodifiableSet(new HashSet<>(aValue)) : null);
+    }
+
+    @Override
+    public synchronized void remove(@NonNull String aKey) {
+        put(aKey, null);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    public synchronized void close() {
+        mClosed = true;
+        flush();
+        closeFile();
+    }
+
+    /**
+     * Rewrites the log with only the current values. The file is written outside of the lock, the
+     * values written meanwhile are appended to the compacted log once it replaces the old one.
+     */
+    public void compact() {
+        HashMap<String, Object> values;
+        synchronized (this) {
+            if (mBuffer == null || mCompacting) {
+                return;
+            }
+            mCompacting = true;
+            values = new HashMap<>(mValues);
+        }
+
+        File tmp = new File(mFile.getPath() + ".tmp");
+        boolean written = false;
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            out.write(header.array());
+            for (Map.Entry<String, Object> entry: values.entrySet()) {
+                out.write(encodeRecord(entry.getKey(), entry.getValue()));
+            }
+            out.getFD().sync();
+            written = true;
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error compacting the log: " + e.getLocalizedMessage());
+        }
+
+        synchronized (this) {
+            mCompacting = false;
+            if (!written || mClosed) {
+                tmp.delete();
+                return;
+            }
+            closeFile();
+            if (!tmp.renameTo(mFile)) {
+                Log.e(LOGTAG, "Error replacing the log with the compacted one");
+                tmp.delete();
+            }
+            reopen();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getWritePosition() {
+        return mWritePosition;
+    }
+
+    /**
+     * Opens the log again and appends the values that are only in memory, e.g. the ones written
+     * during a compaction. If it fails the values are kept in memory and it's retried on the next write.
+     */
+    private void reopen() {
+        HashMap<String, Object> values = new HashMap<>(mValues);
+        HashMap<String, Integer> recordSizes = new HashMap<>(mRecordSizes);
+        int liveBytes = mLiveBytes;
+        try {
+            open(Math.max(INITIAL_CAPACITY, (HEADER_SIZE + liveBytes) * 2));
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error reopening the log: " + e.getLocalizedMessage());
+            closeFile();
+            mValues.clear();
+            mValues.putAll(values);
+            mRecordSizes.clear();
+            mRecordSizes.putAll(recordSizes);
+            mLiveBytes = liveBytes;
+            return;
+        }
+
+        HashSet<String> removed = new HashSet<>(mValues.keySet());
+        removed.removeAll(values.keySet());
+        for (String key: removed) {
+            put(key, null);
+        }
+        for (Map.Entry<String, Object> entry: values.entrySet()) {
+            if (!Objects.equals(entry.getValue(), mValues.get(entry.getKey()))) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void scheduleReopen() {
+        if (mClosed || mReopenScheduled) {
+            return;
+        }
+        mReopenScheduled = true;
+        mExecutor.execute(() -> {
+            synchronized (this) {
+                mReopenScheduled = false;
+                if (!mClosed && mBuffer == null && !mCompacting) {
+                    reopen();
+                }
+            }
+        });
+    }
+
+    private void scheduleCompaction() {
+        if (mClosed || mCompactionScheduled) {
+            return;
+        }
+        mCompactionScheduled = true;
+        mExecutor.execute(() -> {
+            synchronized (this) {
+                mCompactionScheduled = false;
+            }
+            compact();
+        });
+    }
+
+    private void open(int aMinCapacity) throws IOException {
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        try {
+            mLock = mChannel.tryLock();
+
+        } catch (OverlappingFileLockException e) {
+            // Already open in this process.
+            mLock = null;
+        }
+        if (mLock == null) {
+            closeFile();
+            throw new IOException("The log is already open");
+        }
+        long length = mChannel.size();
+        int capacity = (int) Math.max(length, aMinCapacity);
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        mValues.clear();
+        mRecordSizes.clear();
+        mLiveBytes = 0;
+        if (length >= HEADER_SIZE && mBuffer.getInt(0) == MAGIC && mBuffer.getInt(4) == VERSION) {
+            load();
+
+        } else {
+            if (length > 0) {
+                Log.e(LOGTAG, "Unknown log format, starting a new one");
+            }
+            clear(0);
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, VERSION);
+            mWritePosition = HEADER_SIZE;
+        }
+    }
+
+    private void closeFile() {
+        try {
+            if (mLock != null) {
+                mLock.release();
+            }
+            if (mRandomAccessFile != null) {
+                mRandomAccessFile.close();
+            }
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error closing the log: " + e.getLocalizedMessage());
+        }
+        mLock = null;
+        mChannel = null;
+        mRandomAccessFile = null;
+        mBuffer = null;
+    }
+
+    private void load() {
+        int position = HEADER_SIZE;
+        final int capacity = mBuffer.capacity();
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = mBuffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int start = position + RECORD_HEADER_SIZE;
+            if (length < 0 || start + length > capacity) {
+                Log.e(LOGTAG, "Invalid record length at " + position);
+                clear(position);
+                break;
+            }
+            byte[] payload = new byte[length];
+            ByteBuffer source = mBuffer.duplicate();
+            source.position(start);
+            source.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != mBuffer.getInt(position + 4) || !apply(payload)) {
+                Log.e(LOGTAG, "Corrupted record at " + position);
+                clear(position);
+                break;
+            }
+            position = start + length;
+        }
+        mWritePosition = position;
+        Log.d(LOGTAG, "Loaded " + mValues.size() + " values, " + mWritePosition + " bytes");
+    }
+
+    /**
+     * Zeroes the log from the given position so a partial record is never read again.
+     */
+    private void clear(int aPosition) {
+        for (int i = aPosition; i < mBuffer.capacity(); i++) {
+            mBuffer.put(i, (byte) 0);
+        }
+    }
+
+    /**
+     * Applies a record read from the log to the index.
+     * @return false if the record can't be decoded.
+     */
+    private boolean apply(@NonNull byte[] aPayload) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(aPayload);
+            byte type = buffer.get();
+            String key = readString(buffer);
+            Object value;
+            switch (type) {
+                case TYPE_REMOVED:
+                    value = null;
+                    break;
+                case TYPE_BOOLEAN:
+                    value = buffer.get() != 0;
+                    break;
+                case TYPE_INT:
+                    value = buffer.getInt();
+                    break;
+                case TYPE_LONG:
+                    value = buffer.getLong();
+                    break;
+                case TYPE_FLOAT:
+                    value = buffer.getFloat();
+                    break;
+                case TYPE_STRING:
+                    value = readString(buffer);
+                    break;
+                case TYPE_STRING_SET:
+                    int count = buffer.getInt();
+                    HashSet<String> set = new HashSet<>();
+                    for (int i = 0; i < count; i++) {
+                        set.add(readString(buffer));
+                    }
+                    value = Collections.unmodifiableSet(set);
+                    break;
+                default:
+                    return false;
+            }
+            index(key, value, RECORD_HEADER_SIZE + aPayload.length);
+            return true;
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @NonNull
+    private static String readString(@NonNull ByteBuffer aBuffer) {
+        int length = aBuffer.getInt();
+        if (length < 0 || length > aBuffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length");
+        }
+        String value = new String(aBuffer.array(), aBuffer.position(), length, StandardCharsets.UTF_8);
+        aBuffer.position(aBuffer.position() + length);
+        return value;
+    }
+
+    private void index(@NonNull String aKey, @Nullable Object aValue, int aRecordSize) {
+        Integer previous = mRecordSizes.remove(aKey);
+        if (previous != null) {
+            mLiveBytes -= previous;
+        }
+        if (aValue == null) {
+            mValues.remove(aKey);
+        } else {
+            mValues.put(aKey, aValue);
+            mRecordSizes.put(aKey, aRecordSize);
+            mLiveBytes += aRecordSize;
+        }
+    }
+
+    private void put(@NonNull String aKey, @Nullable Object aValue) {
+        if (aValue == null && !mValues.containsKey(aKey)) {
+            return;
+        }
+        if (aValue != null && aValue.equals(mValues.get(aKey))) {
+            return;
+        }
+        byte[] record;
+        try {
+            record = encodeRecord(aKey, aValue);
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error encoding " + aKey + ": " + e.getLocalizedMessage());
+            return;
+        }
+        // Update the index first, so the value is kept in memory even if it can't be persisted.
+        index(aKey, aValue, record.length);
+        if (mBuffer == null) {
+            // A compaction couldn't reopen the log, the value is written once it's reopened.
+            scheduleReopen();
+            return;
+        }
+        if (!ensureCapacity(record.length)) {
+            return;
+        }
+        append(record);
+        if (mWritePosition > MIN_COMPACTION_SIZE && HEADER_SIZE + mLiveBytes < mWritePosition * MIN_LIVE_RATIO) {
+            scheduleCompaction();
+        }
+    }
+
+    private void append(@NonNull byte[] aRecord) {
+        final int position = mWritePosition;
+        ByteBuffer target = mBuffer.duplicate();
+        target.position(position + 4);
+        target.put(aRecord, 4, aRecord.length - 4);
+        // The length goes last, until then the record reads as the end of the log.
+        mBuffer.putInt(position, ByteBuffer.wrap(aRecord).getInt(0));
+        mWritePosition = position + aRecord.length;
+    }
+
+    /**
+     * Makes room for a record, growing the log. A pending compaction shrinks it again.
+     * @return false if the log can't be written.
+     */
+    private boolean ensureCapacity(int aSize) {
+        if (mWritePosition + aSize <= mBuffer.capacity()) {
+            return true;
+        }
+        int capacity = mBuffer.capacity();
+        while (capacity < mWritePosition + aSize) {
+            capacity *= 2;
+        }
+        try {
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return true;
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error growing the log: " + e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    @NonNull
+    @SuppressWarnings("unchecked")
+    private static byte[] encodeRecord(@NonNull String aKey, @Nullable Object aValue) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        // Room for the record header.
+        out.writeLong(0);
+        if (aValue == null) {
+            out.writeByte(TYPE_REMOVED);
+            writeString(out, aKey);
+        } else if (aValue instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            writeString(out, aKey);
+            out.writeBoolean((Boolean) aValue);
+        } else if (aValue instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            writeString(out, aKey);
+            out.writeInt((Integer) aValue);
+        } else if (aValue instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            writeString(out, aKey);
+            out.writeLong((Long) aValue);
+        } else if (aValue instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            writeString(out, aKey);
+            out.writeFloat((Float) aValue);
+        } else if (aValue instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, aKey);
+            writeString(out, (String) aValue);
+        } else if (aValue instanceof Set) {
+            Set<String> set = (Set<String>) aValue;
+            out.writeByte(TYPE_STRING_SET);
+            writeString(out, aKey);
+            out.writeInt(set.size());
+            for (String value: set) {
+                writeString(out, value);
+            }
+        } else {
+            throw new IOException("Unsupported type " + aValue.getClass().getName());
+        }
+        out.flush();
+
+        byte[] record = bytes.toByteArray();
+        int length = record.length - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(record, RECORD_HEADER_SIZE, length);
+        ByteBuffer header = ByteBuffer.wrap(record);
+        header.putInt(0, length);
+        header.putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    private static void writeString(@NonNull DataOutputStream aOut, @NonNull String aValue) throws IOException {
+        byte[] bytes = aValue.getBytes(StandardCharsets.UTF_8);
+        aOut.writeInt(bytes.length);
+        aOut.write(bytes);
+    }
+}
@@ -0,0 +1,129 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.db;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * KeyValueStore backed by SharedPreferences, used when the log file can't be opened.
+ */
+public class PreferencesKeyValueStore implements KeyValueStore {
+
+    private SharedPreferences mPrefs;
+
+    public PreferencesKeyValueStore(@NonNull SharedPreferences aPrefs) {
+        mPrefs = aPrefs;
+    }
+
+    @Override
+    public boolean contains(@NonNull String aKey) {
+        return mPrefs.contains(aKey);
+    }
+
+    @Override
+    public boolean getBoolean(@NonNull String aKey, boolean aDefault) {
+        try {
+            return mPrefs.getBoolean(aKey, aDefault);
+        } catch (ClassCastException e) {
+            return aDefault;
+        }
+    }
+
+    @Override
+    public int getInt(@NonNull String aKey, int aDefault) {
+        try {
+            return mPrefs.getInt(aKey, aDefault);
+        } catch (ClassCastException e) {
+            return aDefault;
+        }
+    }
+
+    @Override
+    public long getLong(@NonNull String aKey, long aDefault) {
+        try {
+            return mPrefs.getLong(aKey, aDefault);
+        } catch (ClassCastException e) {
+            return aDefault;
+        }
+    }
+
+    @Override
+    public float getFloat(@NonNull String aKey, float aDefault) {
+        try {
+            return mPrefs.getFloat(aKey, aDefault);
+        } catch (ClassCastException e) {
+            return aDefault;
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getString(@NonNull String aKey, @Nullable String aDefault) {
+        try {
+            return mPrefs.getString(aKey, aDefault);
+        } catch (ClassCastException e) {
+            return aDefault;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Set<String> getStringSet(@NonNull String aKey, @Nullable Set<String> aDefault) {
+        try {
+            Set<String> value = mPrefs.getStringSet(aKey, null);
+            // The returned set must not be modified.
+            return value != null ? new HashSet<>(value) : aDefault;
+        } catch (ClassCastException e) {
+            return aDefault;
+        }
+    }
+
+    @Override
+    public void putBoolean(@NonNull String aKey, boolean aValue) {
+        mPrefs.edit().putBoolean(aKey, aValue).apply();
+    }
+
+    @Override
+    public void putInt(@NonNull String aKey, int aValue) {
+        mPrefs.edit().putInt(aKey, aValue).apply();
+    }
+
+    @Override
+    public void putLong(@NonNull String aKey, long aValue) {
+        mPrefs.edit().putLong(aKey, aValue).apply();
+    }
+
+    @Override
+    public void putFloat(@NonNull String aKey, float aValue) {
+        mPrefs.edit().putFloat(aKey, aValue).apply();
+    }
+
+    @Override
+    public void putString(@NonNull String aKey, @Nullable String aValue) {
+        mPrefs.edit().putString(aKey, aValue).apply();
+    }
+
+    @Override
+    public void putStringSet(@NonNull String aKey, @Nullable Set<String> aValue) {
+        mPrefs.edit().putStringSet(aKey, aValue).apply();
+    }
+
+    @Override
+    public void remove(@NonNull String aKey) {
+        mPrefs.edit().remove(aKey).apply();
+    }
+
+    @Override
+    public void flush() {
+        // SharedPreferences flushes the applied changes by itself.
+    }
+}
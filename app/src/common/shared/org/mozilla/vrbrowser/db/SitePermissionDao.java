@@ -14,12 +14,28 @@ public interface SitePermissionDao {
     @Query("SELECT * FROM SitePermission")
     LiveData<List<SitePermission>> loadAll();
 
-    @Query("SELECT * FROM SitePermission WHERE category = :category AND url LIKE :url LIMIT 1")
+    @Query("SELECT * FROM SitePermission WHERE category = :category")
+    LiveData<List<SitePermission>> loadAll(@SitePermission.Category int category);
+
+    @Query("SELECT * FROM SitePermission WHERE category = :category")
+    List<SitePermission> getAll(@SitePermission.Category int category);
+
+    @Query("SELECT * FROM SitePermission WHERE category = :category AND url = :url LIMIT 1")
     LiveData<SitePermission> findByUrl(String url, @SitePermission.Category int category);
 
+    @Query("SELECT * FROM SitePermission WHERE category = :category AND url = :url LIMIT 1")
+    SitePermission getByUrl(String url, @SitePermission.Category int category);
+
+    @Query("SELECT COUNT(*) FROM SitePermission WHERE category = :category")
+    int count(@SitePermission.Category int category);
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insert(SitePermission site);
 
+    // Room runs list operations in a single transaction.
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(List<SitePermission> sites);
+
     @Delete
     void delete(SitePermission site);
 
@@ -29,7 +45,9 @@ public interface SitePermissionDao {
     @Query("DELETE FROM SitePermission WHERE url = :url AND category = :category")
     void deleteByUrl(String url, @SitePermission.Category int category);
 
+    @Query("DELETE FROM SitePermission WHERE category = :category AND url IN (:urls)")
+    void deleteByUrls(List<String> urls, @SitePermission.Category int category);
+
     @Query("DELETE FROM SitePermission WHERE category = :category")
     void deleteAll(@SitePermission.Category int category);
 }
-
@@ -76,6 +76,38 @@ public class Download {
         return download;
     }
 
+    public static Download from(@NonNull org.mozilla.vrbrowser.db.Download entity) {
+        Download download = new Download();
+        download.mId = entity.id;
+        download.mUri = entity.uri;
+        download.mStatus = entity.status;
+        download.mMediaType = entity.mediaType;
+        download.mTitle = entity.title;
+        download.mOutputFile = entity.outputUri;
+        download.mDescription = entity.description;
+        download.mSizeBytes = entity.sizeBytes;
+        download.mDownloadedBytes = entity.downloadedBytes;
+        download.mLastModified = entity.lastModified;
+        download.mReason = entity.reason;
+        return download;
+    }
+
+    @NonNull
+    public org.mozilla.vrbrowser.db.Download toEntity() {
+        org.mozilla.vrbrowser.db.Download entity = new org.mozilla.vrbrowser.db.Download(mId, getFilename());
+        entity.uri = mUri;
+        entity.status = mStatus;
+        entity.mediaType = mMediaType;
+        entity.title = mTitle;
+        entity.outputUri = mOutputFile;
+        entity.description = mDescription;
+        entity.sizeBytes = mSizeBytes;
+        entity.downloadedBytes = mDownloadedBytes;
+        entity.lastModified = mLastModified;
+        entity.reason = mReason;
+        return entity;
+    }
+
     public long getId() {
         return mId;
     }
@@ -16,21 +16,36 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.SettingsStore;
+import org.mozilla.vrbrowser.db.DownloadDao;
+import org.mozilla.vrbrowser.performance.BackgroundScheduler;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Downloads are kept in a local Room index mirroring the system DownloadManager, so the list can
+ * be served from memory without querying its content provider. The index is resynced at startup
+ * and then kept up to date from the download broadcasts and by polling the active downloads.
+ * All the DownloadManager and database accesses run in the manager executor.
+ */
 public class DownloadsManager {
 
     private static final String LOGTAG = DownloadsManager.class.getSimpleName();
 
     private static final int REFRESH_INTERVAL = 100;
+    private static final int ACTIVE_STATUS = Download.RUNNING | Download.PAUSED | Download.PENDING;
 
     public interface DownloadsListener {
         default void onDownloadsUpdate(@NonNull List<Download> downloads) {}
@@ -44,6 +59,11 @@ public class DownloadsManager {
     private DownloadManager mDownloadManager;
     private ScheduledThreadPoolExecutor mExecutor;
     private ScheduledFuture<?> mFuture;
+    private DownloadDao mDownloadDao;
+    // Only accessed from mExecutor, ordered by id.
+    private Map<Long, Download> mDownloads = new TreeMap<>();
+    // Immutable copy of mDownloads that can be read from any thread.
+    private volatile List<Download> mSnapshot = Collections.emptyList();
 
     public DownloadsManager(@NonNull Context context) {
         mMainHandler = new Handler(Looper.getMainLooper());
@@ -55,12 +75,14 @@ public class DownloadsManager {
 
     public  void init() {
         mContext.registerReceiver(mDownloadReceiver, new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE));
-        List<Download> downloads = getDownloads();
-        downloads.forEach(download -> {
-            if (mDownloadManager != null &&
-                    !new File(UrlUtils.stripProtocol(download.getOutputFileUri())).exists()) {
-                mDownloadManager.remove(download.getId());
-            }
+        mDownloadDao = ((VRBrowserApplication)mContext.getApplicationContext()).getDatabase().downloadDao();
+        mExecutor.execute(() -> {
+            // Show the indexed downloads right away, then catch up with the changes that
+            // happened while the app wasn't running once the headset is idle or charging.
+            mDownloadDao.getAll().forEach(entity -> mDownloads.put(entity.id, Download.from(entity)));
+            publishSnapshot();
+            ((VRBrowserApplication)mContext.getApplicationContext()).getBackgroundScheduler().schedule(
+                    "downloads-resync", BackgroundScheduler.PRIORITY_IDLE, false, mExecutor, this::resync);
         });
     }
 
@@ -92,7 +114,7 @@ public class DownloadsManager {
 
     private void stopUpdates() {
         if (mFuture != null) {
-            mFuture.cancel(true);
+            mFuture.cancel(false);
             mFuture = null;
         }
     }
@@ -132,12 +154,17 @@ public class DownloadsManager {
         }
 
         if (mDownloadManager != null) {
+            long downloadId;
             try {
-                mDownloadManager.enqueue(request);
+                downloadId = mDownloadManager.enqueue(request);
             } catch (SecurityException e) {
                 notifyDownloadError(mContext.getString(R.string.download_error_output), job.getFilename());
                 return;
             }
+            mExecutor.execute(() -> {
+                queryDownloads(new DownloadManager.Query().setFilterById(downloadId));
+                publishSnapshot();
+            });
             scheduleUpdates();
         }
     }
@@ -154,75 +181,32 @@ public class DownloadsManager {
     }
 
     public void removeDownload(long downloadId, boolean deleteFiles) {
-        Download download = getDownload(downloadId);
-        if (download != null) {
-            if (!deleteFiles) {
-                File file = new File(UrlUtils.stripProtocol(download.getOutputFileUri()));
-                if (file.exists()) {
-                    File newFile = new File(UrlUtils.stripProtocol(download.getOutputFileUri().concat(".bak")));
-                    file.renameTo(newFile);
-                    if (mDownloadManager != null) {
-                        mDownloadManager.remove(downloadId);
-                    }
-                    newFile.renameTo(file);
-
-                } else {
-                    if (mDownloadManager != null) {
-                        mDownloadManager.remove(downloadId);
-                    }
-                }
-
-            } else {
-                if (mDownloadManager != null) {
-                    mDownloadManager.remove(downloadId);
-                }
-            }
-        }
-        notifyDownloadsUpdate();
+        mExecutor.execute(() -> removeDownloads(Collections.singletonList(downloadId), deleteFiles));
     }
 
     public void removeAllDownloads(boolean deleteFiles) {
-        getDownloads().forEach(download -> removeDownload(download.getId(), deleteFiles));
+        mExecutor.execute(() -> removeDownloads(new ArrayList<>(mDownloads.keySet()), deleteFiles));
     }
 
     @Nullable
     public Download getDownload(long downloadId) {
-        Download download = null;
-
-        if (mDownloadManager != null) {
-            DownloadManager.Query query = new DownloadManager.Query();
-            query.setFilterById(downloadId);
-            Cursor c = mDownloadManager.query(query);
-            if (c != null) {
-                if (c.moveToFirst()) {
-                    download = Download.from(c);
-                }
-                c.close();
+        for (Download download: mSnapshot) {
+            if (download.getId() == downloadId) {
+                return download;
             }
         }
-
-        return download;
+        return null;
     }
 
+    /**
+     * @return The downloads ordered by id. Served from the local index, it doesn't query the DownloadManager.
+     */
     public List<Download> getDownloads() {
-        List<Download> downloads = new ArrayList<>();
-
-        if (mDownloadManager != null) {
-            DownloadManager.Query query = new DownloadManager.Query();
-            Cursor c = mDownloadManager.query(query);
-            if (c != null) {
-                while (c.moveToNext()) {
-                    downloads.add(Download.from(c));
-                }
-                c.close();
-            }
-        }
-
-        return downloads;
+        return mSnapshot;
     }
 
     public boolean isDownloading() {
-        return getDownloads().stream()
+        return mSnapshot.stream()
                 .filter(item ->
                         item.getStatus() == DownloadManager.STATUS_RUNNING)
                 .findFirst().orElse(null) != null;
@@ -235,24 +219,140 @@ public class DownloadsManager {
             long downloadId = intent.getLongExtra(DownloadManager.EXTRA_DOWNLOAD_ID, 0);
 
             if (mDownloadManager != null && DownloadManager.ACTION_DOWNLOAD_COMPLETE.equals(action)) {
-                DownloadManager.Query query = new DownloadManager.Query();
-                query.setFilterById(downloadId);
-                Cursor c = mDownloadManager.query(query);
-                if (c != null) {
-                    if (c.moveToFirst()) {
-                        notifyDownloadsUpdate();
-                        notifyDownloadCompleted(Download.from(c));
+                mExecutor.execute(() -> {
+                    queryDownloads(new DownloadManager.Query().setFilterById(downloadId));
+                    publishSnapshot();
+                    Download download = mDownloads.get(downloadId);
+                    if (download != null) {
+                        mMainHandler.post(() -> notifyDownloadCompleted(download));
                     }
-                    c.close();
-                }
+                });
             }
         }
     };
 
+    // Must be called in mExecutor.
+    private void resync() {
+        if (mDownloadManager == null) {
+            return;
+        }
+        Map<Long, Download> downloads = new TreeMap<>();
+        Cursor c = mDownloadManager.query(new DownloadManager.Query());
+        if (c != null) {
+            while (c.moveToNext()) {
+                Download download = Download.from(c);
+                downloads.put(download.getId(), download);
+            }
+            c.close();
+        }
+
+        // Drop the downloads whose files were removed outside of the app.
+        List<Long> missing = new ArrayList<>();
+        for (Download download: downloads.values()) {
+            if (!new File(UrlUtils.stripProtocol(download.getOutputFileUri())).exists()) {
+                missing.add(download.getId());
+            }
+        }
+        if (!missing.isEmpty()) {
+            mDownloadManager.remove(toArray(missing));
+            missing.forEach(downloads::remove);
+        }
+
+        mDownloads = downloads;
+        List<org.mozilla.vrbrowser.db.Download> entities = new ArrayList<>(downloads.size());
+        downloads.values().forEach(download -> entities.add(download.toEntity()));
+        mDownloadDao.replaceAll(entities);
+        publishSnapshot();
+    }
+
+    // Must be called in mExecutor.
+    private void queryDownloads(@NonNull DownloadManager.Query aQuery) {
+        if (mDownloadManager == null) {
+            return;
+        }
+        List<org.mozilla.vrbrowser.db.Download> entities = new ArrayList<>();
+        Cursor c = mDownloadManager.query(aQuery);
+        if (c != null) {
+            while (c.moveToNext()) {
+                Download download = Download.from(c);
+                Download previous = mDownloads.put(download.getId(), download);
+                // Progress is only kept in memory, the index is updated when the status changes.
+                if (previous == null || previous.getStatus() != download.getStatus()) {
+                    entities.add(download.toEntity());
+                }
+            }
+            c.close();
+        }
+        if (!entities.isEmpty()) {
+            mDownloadDao.insert(entities);
+        }
+    }
+
+    // Must be called in mExecutor.
+    private void updateActiveDownloads() {
+        List<Long> active = new ArrayList<>();
+        for (Download download: mDownloads.values()) {
+            if ((download.getStatus() & ACTIVE_STATUS) != 0) {
+                active.add(download.getId());
+            }
+        }
+        if (!active.isEmpty()) {
+            // Also picks up the downloads that finished since the last update.
+            queryDownloads(new DownloadManager.Query().setFilterById(toArray(active)));
+        }
+        publishSnapshot();
+    }
+
+    // Must be called in mExecutor.
+    private void removeDownloads(@NonNull List<Long> aIds, boolean deleteFiles) {
+        List<Long> ids = new ArrayList<>();
+        Set<File> keptFiles = new HashSet<>();
+        for (long id: aIds) {
+            Download download = mDownloads.get(id);
+            if (download == null) {
+                continue;
+            }
+            ids.add(id);
+            if (!deleteFiles) {
+                // The DownloadManager deletes the file on removal, move it out of the way meanwhile.
+                File file = new File(UrlUtils.stripProtocol(download.getOutputFileUri()));
+                if (file.exists() && file.renameTo(new File(file.getPath().concat(".bak")))) {
+                    keptFiles.add(file);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        if (mDownloadManager != null) {
+            mDownloadManager.remove(toArray(ids));
+        }
+        for (File file: keptFiles) {
+            new File(file.getPath().concat(".bak")).renameTo(file);
+        }
+        ids.forEach(mDownloads::remove);
+        mDownloadDao.deleteByIds(ids);
+        publishSnapshot();
+    }
+
+    // Must be called in mExecutor.
+    private void publishSnapshot() {
+        mSnapshot = Collections.unmodifiableList(new ArrayList<>(mDownloads.values()));
+        mMainHandler.post(this::notifyDownloadsUpdate);
+    }
+
+    private static long[] toArray(@NonNull List<Long> aIds) {
+        long[] result = new long[aIds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = aIds.get(i);
+        }
+        return result;
+    }
+
     private void notifyDownloadsUpdate() {
-        List<Download> downloads = getDownloads();
-        int filter = Download.RUNNING | Download.PAUSED | Download.PENDING;
-        boolean activeDownloads = downloads.stream().filter(d -> (d.getStatus() & filter) != 0).count()  > 0;
+        List<Download> downloads = mSnapshot;
+        boolean activeDownloads = downloads.stream().filter(d -> (d.getStatus() & ACTIVE_STATUS) != 0).count()  > 0;
         mListeners.forEach(listener -> listener.onDownloadsUpdate(downloads));
         if (!activeDownloads) {
             stopUpdates();
@@ -267,8 +367,6 @@ public class DownloadsManager {
         mListeners.forEach(listener -> listener.onDownloadError(error, file));
     }
 
-    private Runnable mDownloadUpdateTask = () -> {
-        mMainHandler.post(this::notifyDownloadsUpdate);
-    };
+    private Runnable mDownloadUpdateTask = this::updateActiveDownloads;
 
 }
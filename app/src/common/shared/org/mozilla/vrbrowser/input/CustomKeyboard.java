@@ -22,6 +22,10 @@ public class CustomKeyboard extends Keyboard {
     private Key mModeChangeKey;
     private int mMaxColumns;
     private int[] mDisabledKeysIndexes;
+    private KeyGridIndex mKeyIndex;
+    private int[][] mNearestKeysResults;
+
+    private static final int[] EMPTY_NEAREST_KEYS = new int[0];
 
     public static final int KEYCODE_SYMBOLS_CHANGE = -10;
     public static final int KEYCODE_VOICE_INPUT = -11;
@@ -186,17 +190,29 @@ public class CustomKeyboard extends Keyboard {
     }
 
     // Override to fix the bug of not all the touch area covered in wide buttons (e.g. space)
+    // The returned arrays are shared, callers must not modify them.
     @Override
     public int[] getNearestKeys(int x, int y) {
-        List<Key> keys = getKeys();
-        Key[] mKeys = keys.toArray(new Key[keys.size()]);
-        int i = 0;
-        for (Key key : mKeys) {
-            if(key.isInside(x, y))
-                return new int[]{i};
-            i++;
+        int index = getKeyIndexAt(x, y);
+        return index != KeyGridIndex.NOT_A_KEY ? mNearestKeysResults[index] : EMPTY_NEAREST_KEYS;
+    }
+
+    /**
+     * @return The index of the key that contains the point, or -1 if there isn't any.
+     * The key grid is built on first use and rebuilt when the keyboard is resized.
+     */
+    public int getKeyIndexAt(int x, int y) {
+        if (mKeyIndex == null || !mKeyIndex.matches(getMinWidth(), getHeight())) {
+            List<Key> keys = getKeys();
+            mKeyIndex = new KeyGridIndex(keys, getMinWidth(), getHeight());
+            if (mNearestKeysResults == null || mNearestKeysResults.length != keys.size()) {
+                mNearestKeysResults = new int[keys.size()][];
+                for (int i = 0; i < keys.size(); i++) {
+                    mNearestKeysResults[i] = new int[]{i};
+                }
+            }
         }
-        return new int[0];
+        return mKeyIndex.getKeyIndexAt(x, y);
     }
 
     public boolean setEnterKeyLabel(String aText) {
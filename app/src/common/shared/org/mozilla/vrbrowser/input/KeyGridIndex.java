@@ -0,0 +1,144 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.input;
+
+import android.inputmethodservice.Keyboard;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Uniform grid over the key rectangles of a keyboard layout. Each cell lists the keys that
+ * overlap it (edge keys are extended to the grid border, like {@link Keyboard.Key#isInside}
+ * does) so a hit query only tests the few keys of a single cell. Queries don't allocate.
+ */
+class KeyGridIndex {
+
+    static final int NOT_A_KEY = -1;
+
+    private static final int MAX_COLUMNS = 64;
+    private static final int MAX_ROWS = 32;
+
+    private final Keyboard.Key[] mKeys;
+    private final int mWidth;
+    private final int mHeight;
+    private int mCellWidth;
+    private int mCellHeight;
+    private int mColumns;
+    private int mRows;
+    // Compressed cell lists: keys of cell i are mCellKeys[mCellStart[i]..mCellStart[i + 1]).
+    private int[] mCellStart;
+    private int[] mCellKeys;
+
+    KeyGridIndex(@NonNull List<Keyboard.Key> aKeys, int aWidth, int aHeight) {
+        mKeys = aKeys.toArray(new Keyboard.Key[0]);
+        mWidth = aWidth;
+        mHeight = aHeight;
+        build();
+    }
+
+    /**
+     * @return Whether the index was built for the given keyboard size.
+     */
+    boolean matches(int aWidth, int aHeight) {
+        return mWidth == aWidth && mHeight == aHeight;
+    }
+
+    /**
+     * @return The index of the first key that contains the point, or {@link #NOT_A_KEY}.
+     */
+    int getKeyIndexAt(int x, int y) {
+        if (mColumns == 0) {
+            return NOT_A_KEY;
+        }
+        int column = x < 0 ? 0 : Math.min(x / mCellWidth, mColumns - 1);
+        int row = y < 0 ? 0 : Math.min(y / mCellHeight, mRows - 1);
+        int cell = row * mColumns + column;
+        for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+            int index = mCellKeys[i];
+            if (mKeys[index].isInside(x, y)) {
+                return index;
+            }
+        }
+        return NOT_A_KEY;
+    }
+
+    private void build() {
+        int width = mWidth;
+        int height = mHeight;
+        int minKeyWidth = Integer.MAX_VALUE;
+        int minKeyHeight = Integer.MAX_VALUE;
+        for (Keyboard.Key key: mKeys) {
+            width = Math.max(width, key.x + key.width);
+            height = Math.max(height, key.y + key.height);
+            if (key.width > 0) {
+                minKeyWidth = Math.min(minKeyWidth, key.width);
+            }
+            if (key.height > 0) {
+                minKeyHeight = Math.min(minKeyHeight, key.height);
+            }
+        }
+        if (mKeys.length == 0 || width <= 0 || height <= 0 || minKeyWidth == Integer.MAX_VALUE || minKeyHeight == Integer.MAX_VALUE) {
+            mColumns = 0;
+            return;
+        }
+
+        mColumns = Math.min(MAX_COLUMNS, Math.max(1, width / minKeyWidth));
+        mRows = Math.min(MAX_ROWS, Math.max(1, height / minKeyHeight));
+        mCellWidth = (width + mColumns - 1) / mColumns;
+        mCellHeight = (height + mRows - 1) / mRows;
+
+        // First pass counts the keys per cell, the second one fills the lists in key order so
+        // queries return the same key as a linear scan.
+        int[] counts = new int[mColumns * mRows];
+        int[] bounds = new int[4];
+        for (Keyboard.Key key: mKeys) {
+            if (getCellBounds(key, width, height, bounds)) {
+                for (int row = bounds[1]; row <= bounds[3]; row++) {
+                    for (int column = bounds[0]; column <= bounds[2]; column++) {
+                        counts[row * mColumns + column]++;
+                    }
+                }
+            }
+        }
+        mCellStart = new int[counts.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            mCellStart[i + 1] = mCellStart[i] + counts[i];
+        }
+        mCellKeys = new int[mCellStart[counts.length]];
+        int[] offsets = new int[counts.length];
+        for (int index = 0; index < mKeys.length; index++) {
+            if (getCellBounds(mKeys[index], width, height, bounds)) {
+                for (int row = bounds[1]; row <= bounds[3]; row++) {
+                    for (int column = bounds[0]; column <= bounds[2]; column++) {
+                        int cell = row * mColumns + column;
+                        mCellKeys[mCellStart[cell] + offsets[cell]++] = index;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean getCellBounds(@NonNull Keyboard.Key aKey, int aWidth, int aHeight, @NonNull int[] aBounds) {
+        if (aKey.width <= 0 || aKey.height <= 0) {
+            return false;
+        }
+        int left = (aKey.edgeFlags & Keyboard.EDGE_LEFT) != 0 ? 0 : aKey.x;
+        int top = (aKey.edgeFlags & Keyboard.EDGE_TOP) != 0 ? 0 : aKey.y;
+        int right = (aKey.edgeFlags & Keyboard.EDGE_RIGHT) != 0 ? aWidth : aKey.x + aKey.width;
+        int bottom = (aKey.edgeFlags & Keyboard.EDGE_BOTTOM) != 0 ? aHeight : aKey.y + aKey.height;
+        aBounds[0] = clamp(left / mCellWidth, mColumns);
+        aBounds[1] = clamp(top / mCellHeight, mRows);
+        aBounds[2] = clamp((right - 1) / mCellWidth, mColumns);
+        aBounds[3] = clamp((bottom - 1) / mCellHeight, mRows);
+        return true;
+    }
+
+    private static int clamp(int aValue, int aCount) {
+        return Math.max(0, Math.min(aValue, aCount - 1));
+    }
+}
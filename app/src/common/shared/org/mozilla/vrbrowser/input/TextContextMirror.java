@@ -0,0 +1,136 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.input;
+
+import android.view.inputmethod.InputConnection;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Local copy of the text right before the cursor of the focused editor, so the keyboard
+ * doesn't need to query the whole field contents on every key press.
+ * The mirror is updated with the edits the keyboard sends and validated against the selection
+ * updates reported by the editor. Any unexpected selection change (the user moved the cursor,
+ * the page changed the text...) invalidates it and only {@link #CAPACITY} characters are
+ * requested on the next read.
+ */
+public class TextContextMirror {
+
+    public static final int CAPACITY = 64;
+    // Edits sent but not yet reported back by the editor.
+    private static final int MAX_PENDING_EDITS = 8;
+
+    private final StringBuilder mText = new StringBuilder(CAPACITY * 2);
+    private boolean mValid;
+    // Whether there may be more text before the mirrored window.
+    private boolean mTruncated;
+    // Last cursor position reported by the editor, -1 if unknown.
+    private int mCursor = -1;
+    private final int[] mPendingCursors = new int[MAX_PENDING_EDITS];
+    private int mPendingCount;
+
+    /**
+     * @return The text before the cursor, at most {@link #CAPACITY} characters. Queries the
+     * connection only if the mirror is not in sync.
+     */
+    @NonNull
+    public synchronized String getTextBeforeCursor(@Nullable InputConnection aConnection) {
+        if (!mValid) {
+            mText.setLength(0);
+            CharSequence text = aConnection != null ? aConnection.getTextBeforeCursor(CAPACITY, 0) : null;
+            if (text != null) {
+                mText.append(text);
+            }
+            mTruncated = mText.length() >= CAPACITY;
+            mValid = aConnection != null;
+        }
+        return mText.toString();
+    }
+
+    /**
+     * Called when the keyboard commits text at the cursor.
+     */
+    public synchronized void onCommitText(@NonNull String aText) {
+        if (mValid) {
+            mText.append(aText);
+            if (mText.length() > CAPACITY) {
+                mText.delete(0, mText.length() - CAPACITY);
+                mTruncated = true;
+            }
+        }
+        addPendingEdit(aText.length());
+    }
+
+    /**
+     * Called when the keyboard deletes characters before the cursor.
+     */
+    public synchronized void onDeleteBeforeCursor(int aCount) {
+        if (mValid) {
+            if (aCount > mText.length()) {
+                mValid = false;
+            } else {
+                mText.setLength(mText.length() - aCount);
+                // Refill the window on the next read instead of running out of context.
+                if (mTruncated && mText.length() < CAPACITY / 2) {
+                    mValid = false;
+                }
+            }
+        }
+        addPendingEdit(-aCount);
+    }
+
+    /**
+     * Called with the selection reported by the editor. Selections produced by our own
+     * edits keep the mirror, anything else invalidates it.
+     */
+    public synchronized void onSelectionChanged(int aSelectionStart, int aSelectionEnd) {
+        boolean expected = false;
+        if (aSelectionStart == aSelectionEnd && mCursor >= 0) {
+            if (aSelectionStart == mCursor && mPendingCount == 0) {
+                expected = true;
+            }
+            for (int i = 0; i < mPendingCount; i++) {
+                if (mPendingCursors[i] == aSelectionStart) {
+                    // Edits are reported in order, drop the ones already applied.
+                    System.arraycopy(mPendingCursors, i + 1, mPendingCursors, 0, mPendingCount - i - 1);
+                    mPendingCount -= i + 1;
+                    expected = true;
+                    break;
+                }
+            }
+        }
+        if (!expected) {
+            mValid = false;
+            mPendingCount = 0;
+        }
+        mCursor = aSelectionStart;
+    }
+
+    /**
+     * Forces a resync on the next read, e.g. when the input is restarted or the cursor is
+     * moved without a selection update.
+     */
+    public synchronized void invalidate() {
+        mValid = false;
+        mCursor = -1;
+        mPendingCount = 0;
+    }
+
+    private void addPendingEdit(int aDelta) {
+        if (mCursor < 0) {
+            // Without a known cursor the next selection update can't be validated.
+            mValid = false;
+            return;
+        }
+        int last = mPendingCount > 0 ? mPendingCursors[mPendingCount - 1] : mCursor;
+        if (mPendingCount == MAX_PENDING_EDITS) {
+            System.arraycopy(mPendingCursors, 1, mPendingCursors, 0, MAX_PENDING_EDITS - 1);
+            mPendingCount--;
+        }
+        mPendingCursors[mPendingCount++] = last + aDelta;
+    }
+}
@@ -0,0 +1,304 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.performance;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the background work that doesn't need to happen right away (sync, remote properties,
+ * crash reports, housekeeping) when it doesn't compete with rendering:
+ *  - URGENT jobs run right away.
+ *  - NORMAL jobs are deferred while presenting immersive content or while the native frame rate
+ *    is below target.
+ *  - IDLE jobs additionally wait until the headset is idle (activity paused) or charging.
+ * Network jobs are batched: the first runnable network job opens a short window and every
+ * network job allowed to run at the end of it is started together, to reduce radio wake-ups.
+ * All the state is confined to the UI thread, jobs run in the Executor they were scheduled with.
+ */
+public class BackgroundScheduler {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(BackgroundScheduler.class);
+
+    @IntDef(value = { PRIORITY_URGENT, PRIORITY_NORMAL, PRIORITY_IDLE })
+    public @interface Priority {}
+    public static final int PRIORITY_URGENT = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_IDLE = 2;
+
+    @IntDef(value = { STATE_PENDING, STATE_DEFERRED })
+    public @interface State {}
+    public static final int STATE_PENDING = 0;
+    public static final int STATE_DEFERRED = 1;
+
+    private static final long NETWORK_BATCH_WINDOW_MS = 5000;
+    // NORMAL jobs deferred for longer than this only wait for immersive mode to end.
+    private static final long MAX_FRAME_PRESSURE_DEFERRAL_MS = 10 * 60 * 1000;
+    // Same thresholds as the PerformancePolicy sample periods.
+    private static final float PRESSURE_MISSED_RATIO = 0.10f;
+    private static final float NO_PRESSURE_MISSED_RATIO = 0.02f;
+
+    /**
+     * Snapshot of a queued job, for introspection.
+     */
+    public static class JobInfo {
+        public final String name;
+        public final @Priority int priority;
+        public final boolean network;
+        public final @State int state;
+        @Nullable
+        public final String deferReason;
+        public final long queuedMs;
+
+        JobInfo(@NonNull Job aJob, @Nullable String aDeferReason, long aNow) {
+            name = aJob.name;
+            priority = aJob.priority;
+            network = aJob.network;
+            deferReason = aDeferReason;
+            state = aDeferReason != null ? STATE_DEFERRED : STATE_PENDING;
+            queuedMs = aNow - aJob.scheduledTime;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "JobInfo{" +
+                    "name=" + name +
+                    ", priority=" + priority +
+                    ", network=" + network +
+                    ", state=" + (state == STATE_DEFERRED ? "deferred (" + deferReason + ")" : "pending") +
+                    ", queued=" + queuedMs + "ms" +
+                    '}';
+        }
+    }
+
+    private static class Job {
+        String name;
+        @Priority int priority;
+        boolean network;
+        Executor executor;
+        Runnable task;
+        long scheduledTime;
+    }
+
+    private Context mContext;
+    private Handler mHandler;
+    // Jobs by name, in scheduling order.
+    private LinkedHashMap<String, Job> mJobs = new LinkedHashMap<>();
+    private boolean mImmersive;
+    private boolean mFramePressure;
+    private boolean mHeadsetIdle;
+    private boolean mCharging;
+    private long mNetworkBatchDeadline;
+
+    public BackgroundScheduler(@NonNull Context aContext) {
+        mContext = aContext;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public void init() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        filter.addAction(Intent.ACTION_POWER_DISCONNECTED);
+        mContext.registerReceiver(mPowerReceiver, filter);
+        // ACTION_BATTERY_CHANGED is sticky, so this doesn't register anything.
+        Intent battery = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            mCharging = plugged != 0;
+        }
+    }
+
+    public void end() {
+        mContext.unregisterReceiver(mPowerReceiver);
+        mHandler.removeCallbacks(mProcessRunnable);
+    }
+
+    /**
+     * Queues a job. A job with the same name that hasn't run yet is replaced.
+     * Can be called from any thread.
+     */
+    public void schedule(@NonNull String aName, @Priority int aPriority, boolean aNetwork,
+                         @NonNull Executor aExecutor, @NonNull Runnable aTask) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mHandler.post(() -> schedule(aName, aPriority, aNetwork, aExecutor, aTask));
+            return;
+        }
+        if (aPriority == PRIORITY_URGENT) {
+            mJobs.remove(aName);
+            aExecutor.execute(aTask);
+            return;
+        }
+        Job job = new Job();
+        job.name = aName;
+        job.priority = aPriority;
+        job.network = aNetwork;
+        job.executor = aExecutor;
+        job.task = aTask;
+        job.scheduledTime = SystemClock.uptimeMillis();
+        mJobs.remove(aName);
+        mJobs.put(aName, job);
+        process();
+    }
+
+    @UiThread
+    public void cancel(@NonNull String aName) {
+        mJobs.remove(aName);
+    }
+
+    @UiThread
+    public void setImmersive(boolean aImmersive) {
+        mImmersive = aImmersive;
+        process();
+    }
+
+    @UiThread
+    public void setHeadsetIdle(boolean aIdle) {
+        mHeadsetIdle = aIdle;
+        if (aIdle) {
+            // Nothing is rendered while idle, the next frame stats will tell if there is pressure.
+            mFramePressure = false;
+        }
+        process();
+    }
+
+    /**
+     * Called with the frame timing of each PerformancePolicy sample period.
+     */
+    @UiThread
+    public void onFrameStats(@NonNull FrameStats aStats) {
+        final float missedRatio = aStats.getMissedVsyncRatio();
+        boolean pressure = mFramePressure;
+        if (missedRatio >= PRESSURE_MISSED_RATIO || aStats.isPoorPerformance()) {
+            pressure = true;
+
+        } else if (missedRatio <= NO_PRESSURE_MISSED_RATIO) {
+            pressure = false;
+        }
+        if (aStats.isImmersive() != mImmersive || pressure != mFramePressure) {
+            mImmersive = aStats.isImmersive();
+            mFramePressure = pressure;
+            process();
+        }
+    }
+
+    /**
+     * @return The jobs that haven't run yet and why they are waiting.
+     */
+    @UiThread
+    @NonNull
+    public List<JobInfo> getJobs() {
+        final long now = SystemClock.uptimeMillis();
+        ArrayList<JobInfo> result = new ArrayList<>(mJobs.size());
+        for (Job job: mJobs.values()) {
+            result.add(new JobInfo(job, getDeferReason(job, now), now));
+        }
+        return result;
+    }
+
+    /**
+     * @return null if the job can run now, otherwise the reason why it is deferred.
+     */
+    @Nullable
+    private String getDeferReason(@NonNull Job aJob, long aNow) {
+        if (mImmersive) {
+            return "immersive";
+        }
+        if (mFramePressure && (aJob.priority == PRIORITY_IDLE || aNow - aJob.scheduledTime < MAX_FRAME_PRESSURE_DEFERRAL_MS)) {
+            return "frame pressure";
+        }
+        if (aJob.priority == PRIORITY_IDLE && !mHeadsetIdle && !mCharging) {
+            return "waiting for idle or charging";
+        }
+        return null;
+    }
+
+    private Runnable mProcessRunnable = this::process;
+
+    private void process() {
+        mHandler.removeCallbacks(mProcessRunnable);
+        if (mJobs.isEmpty()) {
+            mNetworkBatchDeadline = 0;
+            return;
+        }
+
+        final long now = SystemClock.uptimeMillis();
+        boolean runNetworkBatch = false;
+        boolean networkJobsWaiting = false;
+        long nextCheck = Long.MAX_VALUE;
+        for (Job job: mJobs.values()) {
+            if (job.network && getDeferReason(job, now) == null) {
+                networkJobsWaiting = true;
+            }
+            if (job.priority == PRIORITY_NORMAL && mFramePressure && !mImmersive) {
+                // Recheck when the frame pressure deferral expires.
+                nextCheck = Math.min(nextCheck, job.scheduledTime + MAX_FRAME_PRESSURE_DEFERRAL_MS);
+            }
+        }
+        if (networkJobsWaiting) {
+            if (mNetworkBatchDeadline == 0) {
+                mNetworkBatchDeadline = now + NETWORK_BATCH_WINDOW_MS;
+            }
+            if (now >= mNetworkBatchDeadline) {
+                runNetworkBatch = true;
+                mNetworkBatchDeadline = 0;
+            } else {
+                nextCheck = Math.min(nextCheck, mNetworkBatchDeadline);
+            }
+        } else {
+            mNetworkBatchDeadline = 0;
+        }
+
+        ArrayList<Job> runnable = new ArrayList<>();
+        Iterator<Job> iterator = mJobs.values().iterator();
+        while (iterator.hasNext()) {
+            Job job = iterator.next();
+            if (getDeferReason(job, now) != null || (job.network && !runNetworkBatch)) {
+                continue;
+            }
+            iterator.remove();
+            runnable.add(job);
+        }
+        if (runnable.size() > 0) {
+            Log.d(LOGTAG, "Running " + runnable.size() + " background jobs, " + mJobs.size() + " left");
+        }
+        for (Job job: runnable) {
+            job.executor.execute(job.task);
+        }
+
+        if (nextCheck != Long.MAX_VALUE && !mJobs.isEmpty()) {
+            mHandler.postDelayed(mProcessRunnable, Math.max(0, nextCheck - now));
+        }
+    }
+
+    private BroadcastReceiver mPowerReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mCharging = Intent.ACTION_POWER_CONNECTED.equals(intent.getAction());
+            process();
+        }
+    };
+}
@@ -0,0 +1,107 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.performance;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Aggregated frame timing samples for a sampling period.
+ */
+public class FrameStats {
+    private int mFrameCount;
+    private float mTotalFrameTime;
+    private float mMaxFrameTime;
+    private int mMissedVsyncs;
+    private int mWidgetCount;
+    private int mLayerCount;
+    private int mCPULevel;
+    private boolean mPoorPerformance;
+    private boolean mImmersive;
+    private long mLastTimestamp;
+
+    void add(long aTimestamp, float aFrameTime, int aMissedVsyncs, int aFlags, int aWidgets, int aLayers) {
+        mFrameCount++;
+        mTotalFrameTime += aFrameTime;
+        mMaxFrameTime = Math.max(mMaxFrameTime, aFrameTime);
+        mMissedVsyncs += aMissedVsyncs;
+        mWidgetCount = aWidgets;
+        mLayerCount = aLayers;
+        mCPULevel = aFlags & FrameTimingBuffer.CPU_LEVEL_MASK;
+        mPoorPerformance = (aFlags & FrameTimingBuffer.FLAG_POOR_PERFORMANCE) != 0;
+        mImmersive = (aFlags & FrameTimingBuffer.FLAG_IMMERSIVE) != 0;
+        mLastTimestamp = aTimestamp;
+    }
+
+    public void reset() {
+        mFrameCount = 0;
+        mTotalFrameTime = 0;
+        mMaxFrameTime = 0;
+        mMissedVsyncs = 0;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public float getAverageFrameTime() {
+        return mFrameCount > 0 ? mTotalFrameTime / mFrameCount : 0.0f;
+    }
+
+    public float getMaxFrameTime() {
+        return mMaxFrameTime;
+    }
+
+    public int getMissedVsyncs() {
+        return mMissedVsyncs;
+    }
+
+    /**
+     * @return Ratio of missed vsyncs over the expected presented frames.
+     */
+    public float getMissedVsyncRatio() {
+        int expected = mFrameCount + mMissedVsyncs;
+        return expected > 0 ? (float) mMissedVsyncs / expected : 0.0f;
+    }
+
+    public int getWidgetCount() {
+        return mWidgetCount;
+    }
+
+    public int getLayerCount() {
+        return mLayerCount;
+    }
+
+    public int getCPULevel() {
+        return mCPULevel;
+    }
+
+    public boolean isPoorPerformance() {
+        return mPoorPerformance;
+    }
+
+    public boolean isImmersive() {
+        return mImmersive;
+    }
+
+    public long getLastTimestamp() {
+        return mLastTimestamp;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "FrameStats{" +
+                "frames=" + mFrameCount +
+                ", avg=" + getAverageFrameTime() +
+                ", max=" + mMaxFrameTime +
+                ", missed=" + mMissedVsyncs +
+                ", widgets=" + mWidgetCount +
+                ", layers=" + mLayerCount +
+                ", cpu=" + mCPULevel +
+                ", poor=" + mPoorPerformance +
+                '}';
+    }
+}
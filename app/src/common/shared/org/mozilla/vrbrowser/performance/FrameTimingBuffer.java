@@ -0,0 +1,103 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.performance;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Java side of the native frame timing ring buffer (see PerformanceTelemetry.h).
+ * The render thread is the only writer, the buffer is drained from a single reader thread
+ * without taking any lock: each record carries a sequence number that is validated before
+ * and after reading it, so records overwritten while they are read are discarded.
+ */
+public class FrameTimingBuffer {
+
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+    static final int FLAG_POOR_PERFORMANCE = 1 << 4;
+    static final int FLAG_IMMERSIVE = 1 << 5;
+    static final int CPU_LEVEL_MASK = 0x0F;
+
+    private static final int OFFSET_CAPACITY = 4;
+    private static final int OFFSET_WRITE_COUNT = 8;
+    private static final int RECORD_TIMESTAMP = 8;
+    private static final int RECORD_FRAME_TIME = 16;
+    private static final int RECORD_MISSED_VSYNCS = 20;
+    private static final int RECORD_FLAGS = 24;
+    private static final int RECORD_WIDGETS = 28;
+    private static final int RECORD_LAYERS = 30;
+
+    private final ByteBuffer mBuffer;
+    private final int mCapacity;
+    private long mReadCount;
+    private long mDroppedCount;
+
+    public FrameTimingBuffer(int aCapacity) {
+        mCapacity = aCapacity;
+        mBuffer = ByteBuffer.allocateDirect(HEADER_SIZE + aCapacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        mBuffer.putInt(0, VERSION);
+        mBuffer.putInt(OFFSET_CAPACITY, aCapacity);
+        mBuffer.putLong(OFFSET_WRITE_COUNT, 0);
+    }
+
+    /**
+     * @return The direct buffer that has to be handed to the native side.
+     */
+    @NonNull
+    public ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Accumulates all the records published since the last call into the provided stats.
+     * Doesn't allocate so it can be called periodically from the UI thread.
+     * @return the number of records read.
+     */
+    public int drain(@NonNull FrameStats aStats) {
+        final long writeCount = mBuffer.getLong(OFFSET_WRITE_COUNT);
+        if (writeCount < mReadCount) {
+            // The native side was reset.
+            mReadCount = 0;
+        }
+        if (writeCount - mReadCount > mCapacity) {
+            mDroppedCount += writeCount - mReadCount - mCapacity;
+            mReadCount = writeCount - mCapacity;
+        }
+
+        int read = 0;
+        for (long index = mReadCount; index < writeCount; index++) {
+            final int offset = HEADER_SIZE + (int)(index % mCapacity) * RECORD_SIZE;
+            final long sequence = mBuffer.getLong(offset);
+            if (sequence != index + 1) {
+                mDroppedCount++;
+                continue;
+            }
+            final float frameTime = mBuffer.getFloat(offset + RECORD_FRAME_TIME);
+            final int missedVsyncs = mBuffer.getInt(offset + RECORD_MISSED_VSYNCS);
+            final int flags = mBuffer.getInt(offset + RECORD_FLAGS);
+            final int widgets = mBuffer.getShort(offset + RECORD_WIDGETS);
+            final int layers = mBuffer.getShort(offset + RECORD_LAYERS);
+            final long timestamp = mBuffer.getLong(offset + RECORD_TIMESTAMP);
+            if (mBuffer.getLong(offset) != sequence) {
+                // Overwritten while reading it.
+                mDroppedCount++;
+                continue;
+            }
+            aStats.add(timestamp, frameTime, missedVsyncs, flags, widgets, layers);
+            read++;
+        }
+        mReadCount = writeCount;
+        return read;
+    }
+
+    public long getDroppedCount() {
+        return mDroppedCount;
+    }
+}
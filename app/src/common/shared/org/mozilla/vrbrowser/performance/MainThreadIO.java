@@ -0,0 +1,324 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.performance;
+
+import android.os.Build;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.os.strictmode.DiskReadViolation;
+import android.os.strictmode.DiskWriteViolation;
+import android.os.strictmode.NetworkViolation;
+import android.os.strictmode.Violation;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.mozilla.vrbrowser.BuildConfig;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Records the disk and network accesses done in the main thread. The known blocking entry points
+ * are wrapped in a {@link Trace}:
+ * <pre>
+ *     try (MainThreadIO.Trace trace = MainThreadIO.trace("Windows.saveState", MainThreadIO.DISK_WRITE)) {
+ *         ...
+ *     }
+ * </pre>
+ * In debug builds a StrictMode policy also reports the accesses that happen outside of the traced
+ * sites, named after the first app frame of the violation. Every site is recorded with its callers,
+ * count and duration. The sites that are still expected are listed in the test baseline: the unit
+ * tests check the traced sites, the instrumented test also checks the StrictMode ones.
+ * Recording is off by default, traces are a no-op when it's disabled or off the main thread.
+ */
+public class MainThreadIO {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(MainThreadIO.class);
+
+    private static final String APP_PACKAGE = "org.mozilla.vrbrowser.";
+    private static final int MAX_CALLERS = 8;
+
+    @IntDef(value = { DISK_READ, DISK_WRITE, NETWORK })
+    public @interface Type {}
+    public static final int DISK_READ = 0;
+    public static final int DISK_WRITE = 1;
+    public static final int NETWORK = 2;
+
+    /**
+     * The accesses of a site in the main thread.
+     */
+    public static class Record {
+        public final String site;
+        public final @Type int type;
+        public int count;
+        public long totalMs;
+        public long maxMs;
+        // Detected by StrictMode instead of a trace, the duration is unknown.
+        public boolean untraced;
+        // Number of accesses by caller frame.
+        public final LinkedHashMap<String, Integer> callers = new LinkedHashMap<>();
+
+        Record(@NonNull String aSite, @Type int aType) {
+            site = aSite;
+            type = aType;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return count + "x, " + totalMs + "ms total, " + maxMs + "ms max: " +
+                    typeToString(type) + " " + site + (untraced ? " (untraced)" : "") + " < " + callers.keySet();
+        }
+    }
+
+    /**
+     * Measures an access until it's closed.
+     */
+    public static class Trace implements AutoCloseable {
+        private static final Trace NO_OP = new Trace(null, DISK_READ, null);
+
+        private final String mSite;
+        private final @Type int mType;
+        private final String mCaller;
+        private final long mStart;
+
+        private Trace(@Nullable String aSite, @Type int aType, @Nullable String aCaller) {
+            mSite = aSite;
+            mType = aType;
+            mCaller = aCaller;
+            mStart = aSite != null ? SystemClock.uptimeMillis() : 0;
+        }
+
+        @Override
+        public void close() {
+            if (mSite != null) {
+                record(mSite, mType, mCaller, SystemClock.uptimeMillis() - mStart, false);
+            }
+        }
+    }
+
+    private static volatile boolean sEnabled;
+    private static boolean sStrictMode;
+    private static final HashMap<String, Record> sRecords = new HashMap<>();
+    // Sites that have been traced, their StrictMode violations are already recorded with a duration.
+    private static final HashSet<String> sTracedSites = new HashSet<>();
+
+    /**
+     * Starts recording the main thread accesses, enabling the StrictMode policy in debug builds.
+     * Must be called from the main thread.
+     */
+    public static void enable() {
+        sEnabled = true;
+        if (BuildConfig.DEBUG && !sStrictMode) {
+            StrictMode.ThreadPolicy.Builder builder = new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .detectNetwork();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                builder.penaltyListener(Runnable::run, MainThreadIO::onViolation);
+            } else {
+                builder.penaltyLog();
+            }
+            StrictMode.setThreadPolicy(builder.build());
+            sStrictMode = true;
+        }
+    }
+
+    /**
+     * Stops recording. Must be called from the main thread.
+     */
+    public static void disable() {
+        sEnabled = false;
+        if (sStrictMode) {
+            StrictMode.setThreadPolicy(StrictMode.ThreadPolicy.LAX);
+            sStrictMode = false;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Starts measuring an access to the disk or the network.
+     * @param aSite Name of the entry point, "Class.method".
+     * @return The trace to close when the access is done.
+     */
+    @NonNull
+    public static Trace trace(@NonNull String aSite, @Type int aType) {
+        if (!sEnabled || Looper.myLooper() != Looper.getMainLooper()) {
+            return Trace.NO_OP;
+        }
+        synchronized (sRecords) {
+            sTracedSites.add(aSite);
+        }
+        return new Trace(aSite, aType, getCaller(aSite, new Throwable().getStackTrace()));
+    }
+
+    /**
+     * @return The recorded sites sorted by total time.
+     */
+    @NonNull
+    public static List<Record> getRecords() {
+        ArrayList<Record> result;
+        synchronized (sRecords) {
+            result = new ArrayList<>(sRecords.values());
+        }
+        result.sort((o1, o2) -> Long.compare(o2.totalMs, o1.totalMs));
+        return result;
+    }
+
+    @NonNull
+    public static Set<String> getSites() {
+        synchronized (sRecords) {
+            return new TreeSet<>(sRecords.keySet());
+        }
+    }
+
+    public static void clear() {
+        synchronized (sRecords) {
+            sRecords.clear();
+            sTracedSites.clear();
+        }
+    }
+
+    private static void record(@NonNull String aSite, @Type int aType, @Nullable String aCaller, long aDuration, boolean aUntraced) {
+        synchronized (sRecords) {
+            Record record = sRecords.get(aSite);
+            if (record == null) {
+                record = new Record(aSite, aType);
+                record.untraced = aUntraced;
+                sRecords.put(aSite, record);
+                Log.w(LOGTAG, "Main thread " + typeToString(aType) + ": " + aSite + " < " + aCaller + " (" + aDuration + "ms)");
+            }
+            record.count++;
+            record.totalMs += aDuration;
+            record.maxMs = Math.max(record.maxMs, aDuration);
+            if (aCaller != null) {
+                Integer count = record.callers.get(aCaller);
+                if (count != null || record.callers.size() < MAX_CALLERS) {
+                    record.callers.put(aCaller, count != null ? count + 1 : 1);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("NewApi")
+    private static void onViolation(@NonNull Violation aViolation) {
+        if (!sEnabled) {
+            return;
+        }
+        @Type int type;
+        if (aViolation instanceof DiskReadViolation) {
+            type = DISK_READ;
+        } else if (aViolation instanceof DiskWriteViolation) {
+            type = DISK_WRITE;
+        } else if (aViolation instanceof NetworkViolation) {
+            type = NETWORK;
+        } else {
+            return;
+        }
+        // Violations on a looper thread are reported after the message is done, so the stack is
+        // used to know if the access happened inside a trace.
+        StackTraceElement[] stack = aViolation.getStackTrace();
+        String site = getSite(stack);
+        if (site != null && !isTraced(stack)) {
+            record(site, type, getCaller(site, stack), 0, true);
+        }
+    }
+
+    /**
+     * @return Whether any app frame of the stack is a traced site.
+     */
+    @VisibleForTesting
+    static boolean isTraced(@Nullable StackTraceElement[] aStack) {
+        if (aStack == null) {
+            return false;
+        }
+        synchronized (sRecords) {
+            for (StackTraceElement frame: aStack) {
+                if (frame.getClassName().startsWith(APP_PACKAGE) &&
+                        sTracedSites.contains(getSimpleClassName(frame.getClassName()) + "." + frame.getMethodName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The first app frame as "Class.method", null if there is none.
+     */
+    @VisibleForTesting
+    @Nullable
+    static String getSite(@Nullable StackTraceElement[] aStack) {
+        if (aStack == null) {
+            return null;
+        }
+        for (StackTraceElement frame: aStack) {
+            if (frame.getClassName().startsWith(APP_PACKAGE) && !frame.getClassName().equals(MainThreadIO.class.getName())) {
+                return getSimpleClassName(frame.getClassName()) + "." + frame.getMethodName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The first frame that calls into the class of the site, null if there is none.
+     */
+    @VisibleForTesting
+    @Nullable
+    static String getCaller(@NonNull String aSite, @Nullable StackTraceElement[] aStack) {
+        if (aStack == null) {
+            return null;
+        }
+        String siteClass = aSite.substring(0, Math.max(0, aSite.lastIndexOf('.')));
+        boolean inSite = false;
+        for (StackTraceElement frame: aStack) {
+            String className = getSimpleClassName(frame.getClassName());
+            if (frame.getClassName().equals(MainThreadIO.class.getName())) {
+                continue;
+            }
+            if (className.equals(siteClass)) {
+                inSite = true;
+
+            } else if (inSite) {
+                return className + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static String getSimpleClassName(@NonNull String aClassName) {
+        String name = aClassName.substring(aClassName.lastIndexOf('.') + 1);
+        int inner = name.indexOf('$');
+        return inner > 0 ? name.substring(0, inner) : name;
+    }
+
+    @NonNull
+    private static String typeToString(@Type int aType) {
+        switch (aType) {
+            case DISK_WRITE:
+                return "disk write";
+            case NETWORK:
+                return "network";
+            default:
+                return "disk read";
+        }
+    }
+}
@@ -0,0 +1,390 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.performance;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+/**
+ * Detects UI thread stalls. Every message dispatched by the main Looper is timestamped through the
+ * Looper message logging {@link Printer}. The dispatch arms a sampler on a low priority thread, which
+ * samples the main thread stack if the message is still running after the stall threshold, and the
+ * end of the dispatch disarms it. Stalls are aggregated by callback class and stack signature, and
+ * appended to a rotating log in the app files directory.
+ */
+public class MainThreadWatchdog {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(MainThreadWatchdog.class);
+
+    private static final long STALL_THRESHOLD_MS = 100;
+    private static final long SAMPLE_INTERVAL_MS = 50;
+    private static final int MAX_SAMPLES_PER_STALL = 20;
+    private static final int SIGNATURE_FRAMES = 3;
+    private static final int LOGGED_FRAMES = 12;
+    private static final int MAX_GROUPS = 64;
+
+    private static final String LOG_DIR = "watchdog";
+    private static final String LOG_FILE = "stalls.log";
+    private static final String ROTATED_LOG_FILE = "stalls.1.log";
+    private static final long MAX_LOG_SIZE = 256 * 1024;
+
+    private static final String APP_PACKAGE = "org.mozilla.vrbrowser.";
+    private static final String DISPATCH_START = ">>>>> Dispatching to ";
+    private static final String DISPATCH_END = "<<<<< Finished to ";
+
+    /**
+     * Stalls with the same callback class and stack signature.
+     */
+    public static class StallGroup {
+        public final String callback;
+        public final String signature;
+        public int count;
+        public long totalMs;
+        public long maxMs;
+        @Nullable
+        public StackTraceElement[] stack;
+
+        StallGroup(@NonNull String aCallback, @NonNull String aSignature) {
+            callback = aCallback;
+            signature = aSignature;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return count + "x, " + totalMs + "ms total, " + maxMs + "ms max: " + callback + " @ " + signature;
+        }
+    }
+
+    private Context mContext;
+    private Thread mMainThread;
+    private LongSupplier mClock;
+    private HandlerThread mThread;
+    private volatile Handler mHandler;
+    private boolean mStarted;
+
+    // Written by the main thread, read by the sampler.
+    private volatile boolean mDispatching;
+    private volatile long mDispatchStart;
+    private volatile int mDispatchSequence;
+    private String mDispatchMessage;
+
+    // Sampler thread state.
+    private int mSampledSequence = -1;
+    private final ArrayList<StackTraceElement[]> mSamples = new ArrayList<>();
+    private final HashMap<String, StallGroup> mGroups = new HashMap<>();
+
+    public MainThreadWatchdog(@NonNull Context aContext) {
+        mContext = aContext.getApplicationContext();
+        mMainThread = Looper.getMainLooper().getThread();
+        mClock = SystemClock::uptimeMillis;
+    }
+
+    /**
+     * Creates a watchdog that samples and records the stalls in the given Handler. The Looper
+     * messages are fed through {@link #getPrinter()}.
+     */
+    @VisibleForTesting
+    MainThreadWatchdog(@NonNull Context aContext, @NonNull Handler aHandler, @NonNull LongSupplier aClock) {
+        this(aContext);
+        mClock = aClock;
+        mHandler = aHandler;
+    }
+
+    @UiThread
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        mThread = new HandlerThread("MainThreadWatchdog", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        Looper.getMainLooper().setMessageLogging(mPrinter);
+        MainThreadIO.enable();
+        Log.d(LOGTAG, "Main thread watchdog started");
+    }
+
+    @UiThread
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        Looper.getMainLooper().setMessageLogging(null);
+        MainThreadIO.disable();
+        mDispatching = false;
+        mHandler.removeCallbacksAndMessages(null);
+        mThread.quitSafely();
+        mThread = null;
+        mHandler = null;
+    }
+
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * @return The stall groups sorted by total stall time.
+     */
+    @NonNull
+    public List<StallGroup> getStallGroups() {
+        ArrayList<StallGroup> result;
+        synchronized (mGroups) {
+            result = new ArrayList<>(mGroups.values());
+        }
+        result.sort((g1, g2) -> Long.compare(g2.totalMs, g1.totalMs));
+        return result;
+    }
+
+    public void clearStallGroups() {
+        synchronized (mGroups) {
+            mGroups.clear();
+        }
+    }
+
+    @NonNull
+    public File getLogFile() {
+        return new File(new File(mContext.getFilesDir(), LOG_DIR), LOG_FILE);
+    }
+
+    @VisibleForTesting
+    @NonNull
+    Printer getPrinter() {
+        return mPrinter;
+    }
+
+    private final Printer mPrinter = new Printer() {
+        @Override
+        public void println(String aMessage) {
+            final Handler handler = mHandler;
+            if (handler == null) {
+                return;
+            }
+            if (aMessage.startsWith(DISPATCH_START)) {
+                mDispatchMessage = aMessage;
+                mDispatchSequence++;
+                mDispatchStart = mClock.getAsLong();
+                mDispatching = true;
+                handler.postDelayed(mSampleRunnable, STALL_THRESHOLD_MS);
+                return;
+            }
+            if (!mDispatching || !aMessage.startsWith(DISPATCH_END)) {
+                return;
+            }
+            mDispatching = false;
+            handler.removeCallbacks(mSampleRunnable);
+            final long duration = mClock.getAsLong() - mDispatchStart;
+            if (duration >= STALL_THRESHOLD_MS) {
+                final int sequence = mDispatchSequence;
+                final String message = mDispatchMessage;
+                handler.post(() -> onStall(sequence, message, duration));
+            }
+        }
+    };
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final int sequence = mDispatchSequence;
+            // A sample rescheduled right before the dispatch finished may run early in the next one.
+            if (!mDispatching || mClock.getAsLong() - mDispatchStart < STALL_THRESHOLD_MS) {
+                return;
+            }
+            if (sequence != mSampledSequence) {
+                mSampledSequence = sequence;
+                mSamples.clear();
+            }
+            if (mSamples.size() < MAX_SAMPLES_PER_STALL) {
+                mSamples.add(mMainThread.getStackTrace());
+            }
+            Handler handler = mHandler;
+            if (handler != null) {
+                handler.postDelayed(this, SAMPLE_INTERVAL_MS);
+            }
+        }
+    };
+
+    private void onStall(int aSequence, @NonNull String aMessage, long aDuration) {
+        StackTraceElement[] stack = null;
+        if (aSequence == mSampledSequence && !mSamples.isEmpty()) {
+            stack = getMostFrequentStack(mSamples);
+        }
+        mSamples.clear();
+        mSampledSequence = -1;
+
+        String callback = parseCallback(aMessage);
+        String signature = getSignature(stack);
+        synchronized (mGroups) {
+            String key = callback + "|" + signature;
+            StallGroup group = mGroups.get(key);
+            if (group == null && mGroups.size() < MAX_GROUPS) {
+                group = new StallGroup(callback, signature);
+                mGroups.put(key, group);
+            }
+            if (group != null) {
+                group.count++;
+                group.totalMs += aDuration;
+                group.maxMs = Math.max(group.maxMs, aDuration);
+                if (stack != null) {
+                    group.stack = stack;
+                }
+            }
+        }
+
+        Log.w(LOGTAG, "Main thread stall: " + aDuration + "ms in " + callback + " @ " + signature);
+        appendToLog(aDuration, callback, signature, stack);
+    }
+
+    // The stack the main thread spent most of the stall in is the one most often sampled.
+    @NonNull
+    private static StackTraceElement[] getMostFrequentStack(@NonNull List<StackTraceElement[]> aSamples) {
+        HashMap<String, Integer> counts = new HashMap<>();
+        StackTraceElement[] result = aSamples.get(0);
+        int maxCount = 0;
+        for (StackTraceElement[] sample: aSamples) {
+            String signature = getSignature(sample);
+            Integer count = counts.get(signature);
+            count = count != null ? count + 1 : 1;
+            counts.put(signature, count);
+            if (count > maxCount) {
+                maxCount = count;
+                result = sample;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The callback of a Looper dispatch message, e.g.
+     * ">>>>> Dispatching to Handler (android.view.Choreographer$FrameHandler) {b1f4e2} android.view.Choreographer$FrameDisplayEventReceiver@1a2b3c: 0"
+     * is attributed to "android.view.Choreographer$FrameDisplayEventReceiver". Messages without a
+     * callback are attributed to the Handler class and the message code.
+     */
+    @VisibleForTesting
+    @NonNull
+    static String parseCallback(@NonNull String aMessage) {
+        String handler = "unknown";
+        int handlerStart = aMessage.indexOf('(');
+        int handlerEnd = aMessage.indexOf(')', handlerStart + 1);
+        if (handlerStart >= 0 && handlerEnd > handlerStart) {
+            handler = aMessage.substring(handlerStart + 1, handlerEnd);
+        }
+        int callbackStart = aMessage.indexOf("} ");
+        int callbackEnd = aMessage.lastIndexOf(": ");
+        if (callbackStart < 0 || callbackEnd < callbackStart) {
+            return handler;
+        }
+        String callback = aMessage.substring(callbackStart + 2, callbackEnd);
+        if (callback.equals("null")) {
+            return handler + " what=" + aMessage.substring(callbackEnd + 2).trim();
+        }
+        int hash = callback.lastIndexOf('@');
+        if (hash > 0) {
+            callback = callback.substring(0, hash);
+        }
+        // Lambda classes are numbered, keep only the enclosing class.
+        int lambda = callback.indexOf("$$Lambda$");
+        if (lambda > 0) {
+            callback = callback.substring(0, lambda + "$$Lambda".length());
+        }
+        return callback;
+    }
+
+    /**
+     * @return The top app frames of a stack, or the top frames if none of them are from the app.
+     */
+    @VisibleForTesting
+    @NonNull
+    static String getSignature(@Nullable StackTraceElement[] aStack) {
+        if (aStack == null || aStack.length == 0) {
+            return "unsampled";
+        }
+        StringBuilder builder = new StringBuilder();
+        int frames = 0;
+        for (StackTraceElement frame: aStack) {
+            if (frame.getClassName().startsWith(APP_PACKAGE)) {
+                appendFrame(builder, frame);
+                if (++frames == SIGNATURE_FRAMES) {
+                    break;
+                }
+            }
+        }
+        if (frames == 0) {
+            for (int i = 0; i < Math.min(SIGNATURE_FRAMES, aStack.length); i++) {
+                appendFrame(builder, aStack[i]);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void appendFrame(@NonNull StringBuilder aBuilder, @NonNull StackTraceElement aFrame) {
+        if (aBuilder.length() > 0) {
+            aBuilder.append(" < ");
+        }
+        String className = aFrame.getClassName();
+        aBuilder.append(className.substring(className.lastIndexOf('.') + 1))
+                .append('.')
+                .append(aFrame.getMethodName())
+                .append(':')
+                .append(aFrame.getLineNumber());
+    }
+
+    private void appendToLog(long aDuration, @NonNull String aCallback, @NonNull String aSignature, @Nullable StackTraceElement[] aStack) {
+        File file = getLogFile();
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            Log.e(LOGTAG, "Error creating the watchdog log directory");
+            return;
+        }
+        if (file.length() > MAX_LOG_SIZE) {
+            File rotated = new File(dir, ROTATED_LOG_FILE);
+            if (rotated.exists() && !rotated.delete()) {
+                Log.e(LOGTAG, "Error deleting the rotated watchdog log");
+            }
+            if (!file.renameTo(rotated)) {
+                Log.e(LOGTAG, "Error rotating the watchdog log");
+            }
+        }
+        try (Writer writer = new FileWriter(file, true)) {
+            String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US).format(new Date());
+            writer.write(time + " " + aDuration + "ms " + aCallback + " @ " + aSignature + "\n");
+            if (aStack != null) {
+                for (int i = 0; i < Math.min(LOGGED_FRAMES, aStack.length); i++) {
+                    writer.write("    at " + aStack[i] + "\n");
+                }
+            }
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error writing the watchdog log: " + e.getLocalizedMessage());
+        }
+    }
+}
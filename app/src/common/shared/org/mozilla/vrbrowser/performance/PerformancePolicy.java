@@ -0,0 +1,201 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.performance;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+/**
+ * Degrades the browser step by step when the native frame timing stream shows sustained
+ * frame drops, and restores it when there is headroom again. Blocking the page is the last step
+ * and it is only reached when the cheaper mitigations didn't help.
+ * The frame statistics are forwarded to the delegate every sample period, even when the
+ * mitigations are disabled.
+ */
+public class PerformancePolicy {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(PerformancePolicy.class);
+
+    @IntDef(value = { LEVEL_NORMAL, LEVEL_PAUSE_BACKGROUND_WINDOWS, LEVEL_BLOCK })
+    public @interface Level {}
+    public static final int LEVEL_NORMAL = 0;
+    public static final int LEVEL_PAUSE_BACKGROUND_WINDOWS = 1;
+    public static final int LEVEL_BLOCK = 2;
+
+    public interface Delegate {
+        void onPerformanceLevelChanged(@Level int aLevel, @Level int aPreviousLevel);
+        /**
+         * @return false if applying the level wouldn't change anything right now (e.g. there are no
+         * background windows to pause), so it is skipped.
+         */
+        default boolean isLevelEffective(@Level int aLevel) { return true; }
+        default void onFrameStats(@NonNull FrameStats aStats) {}
+    }
+
+    private static final int BUFFER_CAPACITY = 256;
+    private static final long SAMPLE_PERIOD_MS = 1000;
+    // Ratio of missed vsyncs in a sample period considered as a frame drop period.
+    private static final float DEGRADE_MISSED_RATIO = 0.10f;
+    // Ratio of missed vsyncs in a sample period considered as a period with headroom.
+    private static final float RESTORE_MISSED_RATIO = 0.02f;
+    private static final int DEGRADE_PERIODS = 2;
+    private static final int RESTORE_PERIODS = 10;
+
+    private FrameTimingBuffer mBuffer;
+    private FrameStats mStats;
+    private Delegate mDelegate;
+    private Handler mHandler;
+    private @Level int mLevel = LEVEL_NORMAL;
+    private int mBadPeriods;
+    private int mGoodPeriods;
+    private boolean mRunning;
+    private boolean mMitigationsEnabled = true;
+
+    public PerformancePolicy(@NonNull Delegate aDelegate) {
+        mDelegate = aDelegate;
+        mBuffer = new FrameTimingBuffer(BUFFER_CAPACITY);
+        mStats = new FrameStats();
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    @NonNull
+    public FrameTimingBuffer getFrameTimingBuffer() {
+        return mBuffer;
+    }
+
+    public @Level int getLevel() {
+        return mLevel;
+    }
+
+    public void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mBuffer.drain(mStats);
+        mStats.reset();
+        mHandler.postDelayed(mSampleRunnable, SAMPLE_PERIOD_MS);
+    }
+
+    /**
+     * Enables or disables the frame drop mitigations. The frame statistics keep being sampled.
+     */
+    public void setMitigationsEnabled(boolean aEnabled) {
+        mMitigationsEnabled = aEnabled;
+        if (!aEnabled) {
+            reset();
+        }
+    }
+
+    public void stop() {
+        mRunning = false;
+        mHandler.removeCallbacks(mSampleRunnable);
+        mBadPeriods = 0;
+        mGoodPeriods = 0;
+    }
+
+    /**
+     * Called when the native PerformanceMonitor reports poor performance.
+     * @return true if the page should be blocked, false if a cheaper mitigation was applied instead.
+     */
+    public boolean onPoorPerformance() {
+        mGoodPeriods = 0;
+        @Level int level = getNextLevel();
+        setLevel(level);
+        return level == LEVEL_BLOCK;
+    }
+
+    /**
+     * Returns to the normal level, for example when the page that caused the frame drops is gone.
+     */
+    public void reset() {
+        mBadPeriods = 0;
+        mGoodPeriods = 0;
+        setLevel(LEVEL_NORMAL);
+    }
+
+    private Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+            if (mRunning) {
+                mHandler.postDelayed(this, SAMPLE_PERIOD_MS);
+            }
+        }
+    };
+
+    private void sample() {
+        mStats.reset();
+        mBuffer.drain(mStats);
+        if (mStats.getFrameCount() == 0) {
+            return;
+        }
+        mDelegate.onFrameStats(mStats);
+        if (!mMitigationsEnabled) {
+            return;
+        }
+        if (mStats.isImmersive()) {
+            // Mitigations only affect the 2D UI, don't change them while presenting immersive content.
+            mBadPeriods = 0;
+            mGoodPeriods = 0;
+            return;
+        }
+
+        final float missedRatio = mStats.getMissedVsyncRatio();
+        if (missedRatio >= DEGRADE_MISSED_RATIO || mStats.isPoorPerformance()) {
+            mGoodPeriods = 0;
+            mBadPeriods++;
+            // Blocking the page is only triggered by the native PerformanceMonitor.
+            if (mBadPeriods >= DEGRADE_PERIODS) {
+                mBadPeriods = 0;
+                @Level int level = getNextLevel();
+                if (level < LEVEL_BLOCK) {
+                    Log.d(LOGTAG, "Frame drops detected: " + mStats);
+                    setLevel(level);
+                }
+            }
+
+        } else if (missedRatio <= RESTORE_MISSED_RATIO) {
+            mBadPeriods = 0;
+            mGoodPeriods++;
+            if (mGoodPeriods >= RESTORE_PERIODS && mLevel > LEVEL_NORMAL) {
+                mGoodPeriods = 0;
+                setLevel(mLevel - 1);
+            }
+
+        } else {
+            mBadPeriods = 0;
+            mGoodPeriods = 0;
+        }
+    }
+
+    /**
+     * @return The next level that has an effect, blocking the page if there are no cheaper ones left.
+     */
+    private @Level int getNextLevel() {
+        @Level int level = mLevel + 1;
+        while (level < LEVEL_BLOCK && !mDelegate.isLevelEffective(level)) {
+            level++;
+        }
+        return Math.min(level, LEVEL_BLOCK);
+    }
+
+    private void setLevel(@Level int aLevel) {
+        if (aLevel == mLevel) {
+            return;
+        }
+        @Level int previous = mLevel;
+        mLevel = aLevel;
+        Log.d(LOGTAG, "Performance level changed: " + previous + " -> " + aLevel);
+        mDelegate.onPerformanceLevelChanged(aLevel, previous);
+    }
+}
@@ -0,0 +1,483 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.performance;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import org.mozilla.vrbrowser.browser.engine.Session;
+import org.mozilla.vrbrowser.browser.engine.SessionStore;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Periodically samples the memory and CPU used by the GeckoView content processes and attributes
+ * it to the sessions that have a GeckoSession.
+ * GeckoView doesn't tell which content process renders each session, so the attribution is an
+ * estimate:
+ *  - Content memory growth is attributed to the sessions that were active while it happened, and
+ *    the estimates are scaled so they add up to the measured memory. Inactive tabs keep the share
+ *    they grew while they were used.
+ *  - CPU time is split between the active sessions, sessions playing media weigh more. Inactive
+ *    sessions are throttled by Gecko so they only get a small share.
+ * The /proc files are read in a low priority thread every {@link #SAMPLE_INTERVAL_MS}, PSS is only
+ * queried every few samples to scale the resident size, as it's expensive and rate limited.
+ * Attribution and the rolling history are confined to the UI thread.
+ */
+public class SessionResourceMonitor {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionResourceMonitor.class);
+
+    private static final long SAMPLE_INTERVAL_MS = 30 * 1000;
+    private static final int PSS_SAMPLE_PERIOD = 10;
+    private static final int HISTORY_SIZE = 10;
+    private static final String CONTENT_PROCESS_PREFIX = ":tab";
+
+    private static final float ACTIVE_WEIGHT = 1.0f;
+    private static final float MEDIA_WEIGHT = 2.0f;
+    private static final float INACTIVE_CPU_WEIGHT = 0.05f;
+
+    public static final long HEAVY_MEMORY_KB = 300 * 1024;
+    public static final float HEAVY_CPU_PERCENT = 30.0f;
+
+    public interface ResourceMonitorListener {
+        void onResourceUsageChanged();
+    }
+
+    /**
+     * Estimated resource usage of a session with its last {@link #HISTORY_SIZE} samples.
+     */
+    public static class Usage {
+        private final long[] mMemoryKb = new long[HISTORY_SIZE];
+        private final float[] mCpuPercent = new float[HISTORY_SIZE];
+        private int mCount;
+        private int mNext;
+        // Running memory estimate, before it is scaled to the measured memory.
+        private float mMemoryShare;
+
+        void add(long aMemoryKb, float aCpuPercent) {
+            mMemoryKb[mNext] = aMemoryKb;
+            mCpuPercent[mNext] = aCpuPercent;
+            mNext = (mNext + 1) % HISTORY_SIZE;
+            mCount = Math.min(mCount + 1, HISTORY_SIZE);
+        }
+
+        /**
+         * @return The latest memory estimate in KB.
+         */
+        public long getMemoryKb() {
+            return mCount > 0 ? mMemoryKb[(mNext + HISTORY_SIZE - 1) % HISTORY_SIZE] : 0;
+        }
+
+        public long getPeakMemoryKb() {
+            long peak = 0;
+            for (int i = 0; i < mCount; i++) {
+                peak = Math.max(peak, mMemoryKb[i]);
+            }
+            return peak;
+        }
+
+        /**
+         * @return The average CPU estimate over the history, as a percentage of one core.
+         */
+        public float getCpuPercent() {
+            if (mCount == 0) {
+                return 0;
+            }
+            float total = 0;
+            for (int i = 0; i < mCount; i++) {
+                total += mCpuPercent[i];
+            }
+            return total / mCount;
+        }
+
+        public int getSampleCount() {
+            return mCount;
+        }
+
+        public boolean isHeavy() {
+            return getMemoryKb() >= HEAVY_MEMORY_KB || getCpuPercent() >= HEAVY_CPU_PERCENT;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Usage{" +
+                    "memory=" + getMemoryKb() + "KB" +
+                    ", cpu=" + getCpuPercent() + "%" +
+                    ", samples=" + mCount +
+                    '}';
+        }
+    }
+
+    // Totals of the content processes at a point in time.
+    private static class ProcessSample {
+        int[] pids;
+        long rssKb;
+        long cpuTicks;
+        long uptime;
+    }
+
+    private Context mContext;
+    private Handler mMainHandler;
+    private HandlerThread mThread;
+    private volatile Handler mHandler;
+    private long mPageSizeKb;
+    private long mClockTicks;
+    private int mSampleCount;
+    // Last PSS / RSS ratio of the content processes, resident sizes overcount the shared pages.
+    private float mPssRatio = 1.0f;
+    // UI thread state.
+    private ProcessSample mLastSample;
+    private HashMap<String, Usage> mUsage = new HashMap<>();
+    private List<ResourceMonitorListener> mListeners = new CopyOnWriteArrayList<>();
+
+    public SessionResourceMonitor(@NonNull Context aContext) {
+        mContext = aContext.getApplicationContext();
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mPageSizeKb = Math.max(1, Os.sysconf(OsConstants._SC_PAGESIZE) / 1024);
+        mClockTicks = Math.max(1, Os.sysconf(OsConstants._SC_CLK_TCK));
+    }
+
+    public void addListener(@NonNull ResourceMonitorListener aListener) {
+        mListeners.add(aListener);
+    }
+
+    public void removeListener(@NonNull ResourceMonitorListener aListener) {
+        mListeners.remove(aListener);
+    }
+
+    public void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new HandlerThread("ResourceMonitor", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mHandler.post(mSampleRunnable);
+    }
+
+    public void stop() {
+        if (mThread == null) {
+            return;
+        }
+        mHandler.removeCallbacks(mSampleRunnable);
+        mHandler = null;
+        mThread.quitSafely();
+        mThread = null;
+        mMainHandler.removeCallbacksAndMessages(null);
+        // CPU deltas are meaningless across a pause.
+        mLastSample = null;
+    }
+
+    public boolean isStarted() {
+        return mThread != null;
+    }
+
+    /**
+     * @return The estimated usage of the session, null if it hasn't been sampled with a GeckoSession.
+     */
+    @UiThread
+    @Nullable
+    public Usage getUsage(@NonNull String aSessionId) {
+        Usage usage = mUsage.get(aSessionId);
+        return usage != null && usage.getSampleCount() > 0 ? usage : null;
+    }
+
+    /**
+     * @return The given sessions sorted by estimated memory, heaviest first. Sessions without
+     * samples are sorted last.
+     */
+    @UiThread
+    @NonNull
+    public List<Session> sortByMemory(@NonNull List<Session> aSessions) {
+        ArrayList<Session> result = new ArrayList<>(aSessions);
+        result.sort((o1, o2) -> Long.compare(getMemoryKb(o2), getMemoryKb(o1)));
+        return result;
+    }
+
+    /**
+     * @return The session with the highest CPU estimate if it's heavy, null otherwise.
+     */
+    @UiThread
+    @Nullable
+    public Session getHeaviestCpuSession(@NonNull List<Session> aSessions) {
+        Session heaviest = null;
+        float max = HEAVY_CPU_PERCENT;
+        for (Session session: aSessions) {
+            Usage usage = getUsage(session.getId());
+            if (usage != null && usage.getCpuPercent() >= max) {
+                max = usage.getCpuPercent();
+                heaviest = session;
+            }
+        }
+        return heaviest;
+    }
+
+    private long getMemoryKb(@NonNull Session aSession) {
+        Usage usage = getUsage(aSession.getId());
+        return usage != null ? usage.getMemoryKb() : 0;
+    }
+
+    private Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            Handler handler = mHandler;
+            if (handler == null) {
+                return;
+            }
+            ProcessSample sample = sampleContentProcesses();
+            mMainHandler.post(() -> onSample(sample));
+            handler.postDelayed(this, SAMPLE_INTERVAL_MS);
+        }
+    };
+
+    @WorkerThread
+    @NonNull
+    private ProcessSample sampleContentProcesses() {
+        ProcessSample sample = new ProcessSample();
+        sample.uptime = SystemClock.uptimeMillis();
+        sample.pids = getContentProcesses();
+        for (int pid: sample.pids) {
+            String stat = readProcFile("/proc/" + pid + "/stat");
+            String statm = readProcFile("/proc/" + pid + "/statm");
+            if (stat != null) {
+                sample.cpuTicks += parseCpuTicks(stat);
+            }
+            if (statm != null) {
+                sample.rssKb += parseResidentPages(statm) * mPageSizeKb;
+            }
+        }
+
+        if (mSampleCount++ % PSS_SAMPLE_PERIOD == 0 && sample.pids.length > 0 && sample.rssKb > 0) {
+            ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+            if (activityManager != null) {
+                long pss = 0;
+                for (Debug.MemoryInfo info: activityManager.getProcessMemoryInfo(sample.pids)) {
+                    pss += info.getTotalPss();
+                }
+                if (pss > 0) {
+                    mPssRatio = Math.min(1.0f, (float) pss / sample.rssKb);
+                }
+            }
+        }
+        sample.rssKb = (long) (sample.rssKb * mPssRatio);
+        return sample;
+    }
+
+    @WorkerThread
+    @NonNull
+    private int[] getContentProcesses() {
+        ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes = activityManager != null ? activityManager.getRunningAppProcesses() : null;
+        if (processes == null) {
+            return new int[0];
+        }
+        int[] pids = new int[processes.size()];
+        int count = 0;
+        for (ActivityManager.RunningAppProcessInfo info: processes) {
+            if (info.uid == Process.myUid() && isContentProcess(info.processName, mContext.getPackageName())) {
+                pids[count++] = info.pid;
+            }
+        }
+        return Arrays.copyOf(pids, count);
+    }
+
+    @Nullable
+    private static String readProcFile(@NonNull String aPath) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(aPath))) {
+            return reader.readLine();
+
+        } catch (IOException e) {
+            // The process may have exited since it was listed.
+            return null;
+        }
+    }
+
+    @UiThread
+    private void onSample(@NonNull ProcessSample aSample) {
+        if (!isStarted()) {
+            return;
+        }
+        ProcessSample last = mLastSample;
+        mLastSample = aSample;
+        List<Session> sessions = SessionStore.get().getLoadedSessions();
+        mUsage.keySet().retainAll(getIds(sessions));
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        float cpuPercent = 0;
+        long memoryDeltaKb = aSample.rssKb;
+        if (last != null && Arrays.equals(last.pids, aSample.pids) && aSample.uptime > last.uptime) {
+            float seconds = (aSample.uptime - last.uptime) / 1000.0f;
+            cpuPercent = Math.max(0, aSample.cpuTicks - last.cpuTicks) * 100.0f / mClockTicks / seconds;
+            memoryDeltaKb = aSample.rssKb - last.rssKb;
+        }
+
+        float[] memoryWeights = new float[sessions.size()];
+        float[] cpuWeights = new float[sessions.size()];
+        for (int i = 0; i < sessions.size(); i++) {
+            Session session = sessions.get(i);
+            float weight = session.getActiveVideo() != null ? MEDIA_WEIGHT : ACTIVE_WEIGHT;
+            memoryWeights[i] = session.isActive() ? weight : 0;
+            cpuWeights[i] = session.isActive() ? weight : (session.getActiveVideo() != null ? weight : INACTIVE_CPU_WEIGHT);
+        }
+        float[] memoryShares = new float[sessions.size()];
+        for (int i = 0; i < sessions.size(); i++) {
+            Usage usage = mUsage.get(sessions.get(i).getId());
+            memoryShares[i] = usage != null ? usage.mMemoryShare : 0;
+        }
+        long[] memoryKb = attributeMemory(memoryShares, memoryWeights, Math.max(0, memoryDeltaKb), aSample.rssKb);
+        float[] cpu = attributeCpu(cpuWeights, cpuPercent);
+
+        for (int i = 0; i < sessions.size(); i++) {
+            String id = sessions.get(i).getId();
+            Usage usage = mUsage.get(id);
+            if (usage == null) {
+                usage = new Usage();
+                mUsage.put(id, usage);
+            }
+            usage.mMemoryShare = memoryShares[i];
+            usage.add(memoryKb[i], cpu[i]);
+        }
+        Log.d(LOGTAG, "Content processes: " + aSample.pids.length + " memory: " + aSample.rssKb + "KB cpu: " + cpuPercent + "%");
+
+        for (ResourceMonitorListener listener: mListeners) {
+            listener.onResourceUsageChanged();
+        }
+    }
+
+    @NonNull
+    private static List<String> getIds(@NonNull List<Session> aSessions) {
+        ArrayList<String> ids = new ArrayList<>(aSessions.size());
+        for (Session session: aSessions) {
+            ids.add(session.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Adds the memory growth to the shares of the sessions with weight, or to every session if
+     * none has weight, and scales the shares to the measured total.
+     * @param aShares Running shares of each session, updated in place.
+     * @return The memory estimate of each session in KB.
+     */
+    @VisibleForTesting
+    @NonNull
+    static long[] attributeMemory(@NonNull float[] aShares, @NonNull float[] aWeights, long aGrowthKb, long aTotalKb) {
+        float totalWeight = 0;
+        for (float weight: aWeights) {
+            totalWeight += weight;
+        }
+        for (int i = 0; i < aShares.length; i++) {
+            if (totalWeight > 0) {
+                aShares[i] += aGrowthKb * aWeights[i] / totalWeight;
+            } else {
+                aShares[i] += (float) aGrowthKb / aShares.length;
+            }
+        }
+        float totalShares = 0;
+        for (float share: aShares) {
+            totalShares += share;
+        }
+        long[] result = new long[aShares.length];
+        for (int i = 0; i < aShares.length; i++) {
+            if (totalShares > 0) {
+                aShares[i] = aShares[i] * aTotalKb / totalShares;
+            } else {
+                aShares[i] = (float) aTotalKb / aShares.length;
+            }
+            result[i] = (long) aShares[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return The CPU percentage of each session, split by weight.
+     */
+    @VisibleForTesting
+    @NonNull
+    static float[] attributeCpu(@NonNull float[] aWeights, float aCpuPercent) {
+        float totalWeight = 0;
+        for (float weight: aWeights) {
+            totalWeight += weight;
+        }
+        float[] result = new float[aWeights.length];
+        for (int i = 0; i < aWeights.length; i++) {
+            result[i] = totalWeight > 0 ? aCpuPercent * aWeights[i] / totalWeight : 0;
+        }
+        return result;
+    }
+
+    @VisibleForTesting
+    static boolean isContentProcess(@Nullable String aProcessName, @NonNull String aPackageName) {
+        return aProcessName != null && aProcessName.startsWith(aPackageName + CONTENT_PROCESS_PREFIX);
+    }
+
+    /**
+     * @return The user and system time of a /proc/[pid]/stat line, in clock ticks.
+     */
+    @VisibleForTesting
+    static long parseCpuTicks(@NonNull String aStat) {
+        // The process name may contain spaces, the fields are counted after its closing parenthesis.
+        int end = aStat.lastIndexOf(')');
+        if (end < 0) {
+            return 0;
+        }
+        String[] fields = aStat.substring(end + 1).trim().split("\\s+");
+        // utime and stime are the fields 14 and 15, the first field after the name is the 3rd.
+        if (fields.length < 13) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return The resident set size of a /proc/[pid]/statm line, in pages.
+     */
+    @VisibleForTesting
+    static long parseResidentPages(@NonNull String aStatm) {
+        String[] fields = aStatm.trim().split("\\s+");
+        if (fields.length < 2) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(fields[1]);
+
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
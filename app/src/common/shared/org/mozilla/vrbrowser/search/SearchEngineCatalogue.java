@@ -0,0 +1,178 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.search;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mozilla.vrbrowser.BuildConfig;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import mozilla.components.browser.search.SearchEngine;
+import mozilla.components.browser.search.parser.SearchEngineParser;
+
+/**
+ * Caches the resolved default search engine for each locale/region configuration, so it can be
+ * restored at startup by parsing a single OpenSearch document instead of resolving and parsing
+ * the whole searchplugins catalogue. Entries are invalidated when the app version changes.
+ * The catalogue is stored in its own file in the app files directory and must only be accessed
+ * from a background thread.
+ */
+@WorkerThread
+class SearchEngineCatalogue {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SearchEngineCatalogue.class);
+
+    private static final String CATALOGUE_FILE = "search_engine_catalogue.json";
+    private static final String SEARCH_PLUGINS_PATH = "searchplugins/";
+    private static final int MAX_CONFIGURATIONS = 4;
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_CONFIGURATIONS = "configurations";
+    // Configuration keys from the least to the most recently stored.
+    private static final String KEY_ORDER = "order";
+    private static final String KEY_IDENTIFIER = "identifier";
+    private static final String KEY_XML = "xml";
+
+    private final Context mContext;
+    private final File mFile;
+
+    SearchEngineCatalogue(@NonNull Context aContext) {
+        mContext = aContext;
+        mFile = new File(aContext.getFilesDir(), CATALOGUE_FILE);
+    }
+
+    /**
+     * @param aConfiguration Locale, region and user preference the engine was resolved for.
+     * @return The cached default engine for the configuration or null if it's not cached.
+     */
+    @Nullable
+    SearchEngine getDefaultEngine(@NonNull String aConfiguration) {
+        try {
+            JSONObject catalogue = load();
+            if (catalogue == null || catalogue.optInt(KEY_VERSION) != BuildConfig.VERSION_CODE) {
+                return null;
+            }
+            JSONObject entry = catalogue.getJSONObject(KEY_CONFIGURATIONS).optJSONObject(aConfiguration);
+            return entry != null ? parseEntry(entry) : null;
+
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Error loading cached search engine: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The most recently cached engine for any configuration and app version, or null if
+     * the catalogue is empty. Used while the engine for the current configuration is resolved.
+     */
+    @Nullable
+    SearchEngine getLastEngine() {
+        try {
+            JSONObject catalogue = load();
+            if (catalogue == null) {
+                return null;
+            }
+            JSONArray order = catalogue.getJSONArray(KEY_ORDER);
+            if (order.length() == 0) {
+                return null;
+            }
+            String last = order.getString(order.length() - 1);
+            return parseEntry(catalogue.getJSONObject(KEY_CONFIGURATIONS).getJSONObject(last));
+
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Error loading cached search engine: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @NonNull
+    private SearchEngine parseEntry(@NonNull JSONObject aEntry) throws JSONException, IOException {
+        String identifier = aEntry.getString(KEY_IDENTIFIER);
+        byte[] xml = aEntry.getString(KEY_XML).getBytes(StandardCharsets.UTF_8);
+        return new SearchEngineParser().load(identifier, new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Stores the default engine resolved for the configuration.
+     */
+    void putDefaultEngine(@NonNull String aConfiguration, @NonNull SearchEngine aEngine) {
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put(KEY_IDENTIFIER, aEngine.getIdentifier());
+            entry.put(KEY_XML, readStream(mContext.getAssets().open(SEARCH_PLUGINS_PATH + aEngine.getIdentifier() + ".xml")));
+
+            JSONObject configurations = new JSONObject();
+            JSONArray order = new JSONArray();
+            JSONObject previous = load();
+            if (previous != null && previous.optInt(KEY_VERSION) == BuildConfig.VERSION_CODE) {
+                JSONObject previousConfigurations = previous.getJSONObject(KEY_CONFIGURATIONS);
+                JSONArray previousOrder = previous.getJSONArray(KEY_ORDER);
+                // Keep the most recent configurations, dropping the oldest ones.
+                int start = Math.max(0, previousOrder.length() - MAX_CONFIGURATIONS + 1);
+                for (int i = start; i < previousOrder.length(); i++) {
+                    String configuration = previousOrder.getString(i);
+                    JSONObject previousEntry = previousConfigurations.optJSONObject(configuration);
+                    if (!configuration.equals(aConfiguration) && previousEntry != null) {
+                        configurations.put(configuration, previousEntry);
+                        order.put(configuration);
+                    }
+                }
+            }
+            configurations.put(aConfiguration, entry);
+            order.put(aConfiguration);
+
+            JSONObject catalogue = new JSONObject();
+            catalogue.put(KEY_VERSION, BuildConfig.VERSION_CODE);
+            catalogue.put(KEY_CONFIGURATIONS, configurations);
+            catalogue.put(KEY_ORDER, order);
+            try (OutputStream out = new FileOutputStream(mFile)) {
+                out.write(catalogue.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+        } catch (IOException | JSONException e) {
+            Log.e(LOGTAG, "Error caching search engine: " + e.getMessage());
+        }
+    }
+
+    @Nullable
+    private JSONObject load() throws IOException, JSONException {
+        if (!mFile.exists()) {
+            return null;
+        }
+        return new JSONObject(readStream(new FileInputStream(mFile)));
+    }
+
+    @NonNull
+    private static String readStream(@NonNull InputStream aStream) throws IOException {
+        try (InputStream in = aStream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+}
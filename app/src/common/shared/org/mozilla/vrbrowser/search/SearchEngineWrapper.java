@@ -6,26 +6,35 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserActivity;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.geolocation.GeolocationData;
 import org.mozilla.vrbrowser.search.suggestions.SearchSuggestionsClientKt;
+import org.mozilla.vrbrowser.search.suggestions.SuggestionsCache;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import kotlinx.coroutines.Dispatchers;
 import mozilla.components.browser.search.SearchEngine;
@@ -51,6 +60,7 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     }};
 
     private static String EMPTY = "";
+    private static final String SUGGESTIONS_CACHE_FILE = "search_suggestions.json";
 
     private static SearchEngineWrapper mSearchEngineWrapperInstance;
 
@@ -63,16 +73,36 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
         return mSearchEngineWrapperInstance;
     }
 
+    private static class EngineState {
+        final SearchEngine engine;
+        final SearchSuggestionClient suggestionsClient;
+
+        EngineState(@NonNull SearchEngine aEngine, @NonNull SearchSuggestionClient aSuggestionsClient) {
+            engine = aEngine;
+            suggestionsClient = aSuggestionsClient;
+        }
+    }
+
     private Context mContext;
-    private SearchEngine mSearchEngine;
-    private SearchSuggestionClient mSuggestionsClient;
+    private volatile CompletableFuture<EngineState> mEngineState;
+    // Completed once the catalogue has been read for the engine being resolved.
+    private volatile CompletableFuture<Void> mCatalogueRead;
+    // Engine used while a new one is being resolved.
+    private volatile EngineState mFallbackState;
+    private SearchEngineCatalogue mCatalogue;
     private SharedPreferences mPrefs;
     private boolean mAutocompleteEnabled;
+    private SuggestionsCache mSuggestionsCache;
+    private final Set<String> mRevalidatingQueries = new HashSet<>();
 
     private SearchEngineWrapper(@NonNull Context aContext) {
         mContext = aContext;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         mAutocompleteEnabled = SettingsStore.getInstance(mContext).isAutocompleteEnabled();
+        mCatalogue = new SearchEngineCatalogue(aContext);
+        mSuggestionsCache = new SuggestionsCache(
+                new File(aContext.getCacheDir(), SUGGESTIONS_CACHE_FILE),
+                ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors().diskIO());
 
         setupSearchEngine(aContext, EMPTY);
     }
@@ -98,27 +128,117 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
                 mPrefs.unregisterOnSharedPreferenceChangeListener(this);
             }
         }
+        mSuggestionsCache.flush();
+    }
+
+    /**
+     * Forgets the cached suggestion responses, which are keyed by the typed queries.
+     */
+    public void clearSuggestionsCache() {
+        mSuggestionsCache.clear();
     }
 
     public String getSearchURL(String aQuery) {
-        return mSearchEngine.buildSearchUrl(aQuery);
+        return getEngineState().engine.buildSearchUrl(aQuery);
+    }
+
+    /**
+     * Returns the search suggestions for the query. Cached responses are served right away,
+     * stale ones are revalidated in the background. When only a shorter prefix of the query is
+     * cached its results are filtered locally and passed to the interim callback while the network
+     * request is in flight, the returned future completes with the network results.
+     * The cache is bypassed in private mode.
+     * @param aInterimCallback Called synchronously with the prefix results, if any.
+     */
+    public CompletableFuture<List<String>> getSuggestions(String aQuery, @Nullable Consumer<List<String>> aInterimCallback) {
+        final String query = aQuery != null ? aQuery : "";
+        if (!mAutocompleteEnabled || isPrivateMode() || query.trim().isEmpty()) {
+            return SearchSuggestionsClientKt.getSuggestionsAsync(getEngineState().suggestionsClient, query);
+        }
+
+        final String engine = getEngineState().engine.getIdentifier();
+        final String key = SuggestionsCache.key(engine, query);
+        SuggestionsCache.Entry entry = mSuggestionsCache.get(key);
+        if (entry != null) {
+            if (!entry.isFresh(System.currentTimeMillis())) {
+                revalidate(key, query);
+            }
+            return CompletableFuture.completedFuture(entry.suggestions);
+        }
+
+        List<String> prefixResults = mSuggestionsCache.getFromPrefix(engine, query);
+        if (prefixResults != null && !prefixResults.isEmpty()) {
+            if (aInterimCallback != null) {
+                aInterimCallback.accept(prefixResults);
+            }
+            // Keep the prefix results if the network request fails.
+            return fetchSuggestions(key, query).handle((suggestions, throwable) ->
+                    suggestions != null ? suggestions : prefixResults);
+        }
+
+        return fetchSuggestions(key, query);
+    }
+
+    private CompletableFuture<List<String>> fetchSuggestions(@NonNull String aKey, @NonNull String aQuery) {
+        final SearchSuggestionClient client = getEngineState().suggestionsClient;
+        return SearchSuggestionsClientKt.getSuggestionsAsync(client, aQuery).thenApply(suggestions -> {
+            // Don't cache responses from a previous engine or received after entering private mode.
+            if (suggestions != null && client == getEngineState().suggestionsClient && !isPrivateMode()) {
+                mSuggestionsCache.put(aKey, suggestions);
+            }
+            return suggestions;
+        });
     }
 
-    public CompletableFuture<List<String>> getSuggestions(String aQuery) {
-        return SearchSuggestionsClientKt.getSuggestionsAsync(mSuggestionsClient, aQuery != null ? aQuery : "");
+    private void revalidate(@NonNull String aKey, @NonNull String aQuery) {
+        synchronized (mRevalidatingQueries) {
+            if (!mRevalidatingQueries.add(aKey)) {
+                return;
+            }
+        }
+        fetchSuggestions(aKey, aQuery).whenComplete((suggestions, throwable) -> {
+            synchronized (mRevalidatingQueries) {
+                mRevalidatingQueries.remove(aKey);
+            }
+        });
+    }
+
+    private boolean isPrivateMode() {
+        return ((VRBrowserActivity)mContext).getWindows().isInPrivateMode();
     }
 
     public String getResourceURL() {
-        Uri uri = Uri.parse(mSearchEngine.buildSearchUrl("")) ;
+        Uri uri = Uri.parse(getEngineState().engine.buildSearchUrl("")) ;
         return uri.getScheme() + "://" + uri.getHost();
     }
 
     public String getIdentifier() {
-        return mSearchEngine.getIdentifier();
+        return getEngineState().engine.getIdentifier();
     }
 
     public String getEngineName() {
-        return mSearchEngine.getName();
+        return getEngineState().engine.getName();
+    }
+
+    /**
+     * Returns the current engine. While the engine for the current configuration is being
+     * resolved the previous engine is returned, or the last one cached by the catalogue.
+     * Waits for the catalogue to be read in the background, and only waits for the engine to be
+     * resolved on the first launch, when there isn't any engine to fall back to.
+     */
+    @NonNull
+    private EngineState getEngineState() {
+        CompletableFuture<Void> catalogueRead = mCatalogueRead;
+        CompletableFuture<EngineState> engineState = mEngineState;
+        if (engineState.isDone() && !engineState.isCompletedExceptionally()) {
+            return engineState.join();
+        }
+        catalogueRead.join();
+        if (engineState.isDone()) {
+            return engineState.join();
+        }
+        EngineState fallback = mFallbackState;
+        return fallback != null ? fallback : engineState.join();
     }
 
     // Receiver for locale updates
@@ -134,13 +254,59 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     /**
      * We cannot send system ACTION_LOCALE_CHANGED so the component refreshes the engines
      * with the updated SearchLocalizationProvider information so we have to update the whole manager.
+     * The default engine resolved for each configuration is kept in the {@link SearchEngineCatalogue}
+     * so in most cases only its OpenSearch document is parsed. Otherwise the whole catalogue is
+     * resolved. Both happen in the background.
      * @param aContext Activity context
      * @param userPref User preferred engine (among the available ones)
      */
     private void setupSearchEngine(@NonNull Context aContext, String userPref) {
+        final long start = SystemClock.uptimeMillis();
+        final GeolocationData data = GeolocationData.parse(SettingsStore.getInstance(aContext).getGeolocationData());
+        final String configuration = Locale.getDefault().toLanguageTag() + '|' +
+                (data != null ? data.getCountryCode() : EMPTY) + '|' + userPref;
+
+        CompletableFuture<EngineState> previous = mEngineState;
+        if (previous != null && previous.isDone() && !previous.isCompletedExceptionally()) {
+            mFallbackState = previous.join();
+        }
+
+        final CompletableFuture<Void> catalogueRead = new CompletableFuture<>();
+        mCatalogueRead = catalogueRead;
+        mEngineState = CompletableFuture.supplyAsync(() -> {
+            try {
+                SearchEngine cachedEngine = mCatalogue.getDefaultEngine(configuration);
+                if (cachedEngine != null) {
+                    Log.d(LOGTAG, "Search engine " + cachedEngine.getIdentifier() + " loaded from the catalogue in " +
+                            (SystemClock.uptimeMillis() - start) + "ms");
+                    return createEngineState(cachedEngine);
+                }
+                if (mFallbackState == null) {
+                    SearchEngine lastEngine = mCatalogue.getLastEngine();
+                    if (lastEngine != null) {
+                        mFallbackState = createEngineState(lastEngine);
+                    }
+                }
+            } finally {
+                catalogueRead.complete(null);
+            }
+
+            final long buildStart = SystemClock.uptimeMillis();
+            SearchEngineManager manager = createSearchEngineManager(aContext, data);
+            // A name can be used if the user get's to choose among the available engines
+            SearchEngine engine = manager.getDefaultSearchEngine(aContext, userPref);
+            Log.d(LOGTAG, "Search engine " + engine.getIdentifier() + " resolved from the assets in " +
+                    (SystemClock.uptimeMillis() - buildStart) + "ms");
+            mCatalogue.putDefaultEngine(configuration, engine);
+            return createEngineState(engine);
+
+        }, ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors().diskIO());
+    }
+
+    @NonNull
+    private SearchEngineManager createSearchEngineManager(@NonNull Context aContext, GeolocationData data) {
         List<SearchEngineFilter> engineFilterList = new ArrayList<>();
 
-        GeolocationData data = GeolocationData.parse(SettingsStore.getInstance(aContext).getGeolocationData());
         SearchLocalizationProvider mLocalizationProvider;
         if (data == null) {
             Log.d(LOGTAG, "Using Locale based search localization provider");
@@ -173,16 +339,20 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
             mSearchEngineManager = new SearchEngineManager();
         }
 
-        // A name can be used if the user get's to choose among the available engines
-        mSearchEngine = mSearchEngineManager.getDefaultSearchEngine(aContext, userPref);
-        mSuggestionsClient = new SearchSuggestionClient(
-                mSearchEngine,
+        return mSearchEngineManager;
+    }
+
+    @NonNull
+    private EngineState createEngineState(@NonNull SearchEngine aEngine) {
+        SearchSuggestionClient suggestionsClient = new SearchSuggestionClient(
+                aEngine,
                 (searchUrl, continuation) -> {
                     return (mAutocompleteEnabled && !((VRBrowserActivity)mContext).getWindows().isInPrivateMode()) ?
-                            SearchSuggestionsClientKt.fetchSearchSuggestions(mContext, searchUrl) :
+                            SearchSuggestionsClientKt.fetchSearchSuggestions(mContext, searchUrl, continuation) :
                             null;
                 }
         );
+        return new EngineState(aEngine, suggestionsClient);
     }
 
     private String getEngine(String aCountryCode) {
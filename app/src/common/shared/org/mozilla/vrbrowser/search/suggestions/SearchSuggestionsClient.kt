@@ -1,8 +1,10 @@
 package org.mozilla.vrbrowser.search.suggestions
 
 import android.content.Context
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.future.future
+import kotlinx.coroutines.withContext
 import mozilla.components.browser.search.suggestions.SearchSuggestionClient
 import mozilla.components.concept.fetch.Request
 import org.mozilla.vrbrowser.browser.engine.EngineProvider
@@ -14,7 +16,11 @@ fun getSuggestionsAsync(client: SearchSuggestionClient, query: String): Completa
             client.getSuggestions(query)
         }
 
-fun fetchSearchSuggestions(context: Context, searchUrl: String): String? {
-    val request = Request(searchUrl);
-    return EngineProvider.getDefaultClient(context).fetch(request).body.string(StandardCharsets.UTF_8)
+suspend fun fetchSearchSuggestions(context: Context, searchUrl: String): String? {
+    val request = Request(searchUrl)
+    // Doesn't hold a thread while waiting for the response, only while reading the small body.
+    val response = EngineProvider.getDefaultClient(context).fetchSuspend(request)
+    return withContext(Dispatchers.IO) {
+        response.body.string(StandardCharsets.UTF_8)
+    }
 }
\ No newline at end of file
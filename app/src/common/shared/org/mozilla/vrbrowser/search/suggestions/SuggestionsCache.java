@@ -0,0 +1,263 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.search.suggestions;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Search suggestion responses keyed by search engine identifier and normalised query.
+ * Entries are kept in a bounded memory cache and, optionally, in a small file so they survive
+ * restarts. Entries older than {@link #FRESH_TIME_MS} are stale: they can still be served while
+ * they are revalidated.
+ */
+public class SuggestionsCache {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SuggestionsCache.class);
+
+    static final long FRESH_TIME_MS = 5 * 60 * 1000;
+    static final long MAX_AGE_MS = 24 * 60 * 60 * 1000;
+    private static final int MAX_MEMORY_ENTRIES = 128;
+    private static final int MAX_DISK_ENTRIES = 64;
+    private static final int MAX_PREFIX_LOOKUP = 8;
+    // Number of updates after which the disk tier is written without waiting for a flush.
+    private static final int DISK_SAVE_UPDATES = 16;
+
+    static class Entry {
+        final List<String> suggestions;
+        final long timestamp;
+
+        Entry(@NonNull List<String> aSuggestions, long aTimestamp) {
+            suggestions = Collections.unmodifiableList(aSuggestions);
+            timestamp = aTimestamp;
+        }
+
+        boolean isFresh(long aNow) {
+            return aNow - timestamp < FRESH_TIME_MS;
+        }
+
+        boolean isExpired(long aNow) {
+            return aNow - timestamp >= MAX_AGE_MS;
+        }
+    }
+
+    private final LruCache<String, Entry> mMemoryCache = new LruCache<>(MAX_MEMORY_ENTRIES);
+    private final File mDiskFile;
+    private final Executor mDiskExecutor;
+    private volatile boolean mDiskLoaded;
+    private boolean mDiskSavePending;
+    private int mPendingUpdates;
+    // Incremented by clear() so a disk load in progress doesn't restore the cleared entries.
+    private int mGeneration;
+
+    /**
+     * @param aDiskFile File used for the disk tier, or null to keep the cache in memory only.
+     * @param aDiskExecutor Executor used to read and write the disk tier.
+     */
+    public SuggestionsCache(@Nullable File aDiskFile, @NonNull Executor aDiskExecutor) {
+        mDiskFile = aDiskFile;
+        mDiskExecutor = aDiskExecutor;
+        if (mDiskFile != null) {
+            mDiskExecutor.execute(this::loadFromDisk);
+        } else {
+            mDiskLoaded = true;
+        }
+    }
+
+    @NonNull
+    static String key(@NonNull String aEngine, @NonNull String aQuery) {
+        return aEngine + '\n' + normalize(aQuery);
+    }
+
+    @NonNull
+    static String normalize(@NonNull String aQuery) {
+        return aQuery.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    @Nullable
+    Entry get(@NonNull String aKey) {
+        Entry entry = mMemoryCache.get(aKey);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            mMemoryCache.remove(aKey);
+            return null;
+        }
+        return entry;
+    }
+
+    void put(@NonNull String aKey, @NonNull List<String> aSuggestions) {
+        mMemoryCache.put(aKey, new Entry(new ArrayList<>(aSuggestions), System.currentTimeMillis()));
+        synchronized (this) {
+            mPendingUpdates++;
+            if (mPendingUpdates < DISK_SAVE_UPDATES) {
+                return;
+            }
+        }
+        scheduleDiskSave();
+    }
+
+    /**
+     * Filters the results of the longest cached prefix of the query, so something can be shown
+     * while the network request for the full query is in flight.
+     * @return The filtered suggestions or null if no prefix is cached.
+     */
+    @Nullable
+    List<String> getFromPrefix(@NonNull String aEngine, @NonNull String aQuery) {
+        final String query = normalize(aQuery);
+        final long now = System.currentTimeMillis();
+        final int minLength = Math.max(1, query.length() - MAX_PREFIX_LOOKUP);
+        for (int length = query.length() - 1; length >= minLength; length--) {
+            Entry entry = mMemoryCache.get(aEngine + '\n' + query.substring(0, length));
+            if (entry == null || entry.isExpired(now)) {
+                continue;
+            }
+            List<String> result = new ArrayList<>();
+            for (String suggestion: entry.suggestions) {
+                if (suggestion.toLowerCase(Locale.ROOT).startsWith(query)) {
+                    result.add(suggestion);
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Removes every entry from the memory cache and deletes the disk tier. Called when the user
+     * clears the history or the site data, as the cached keys are the queries they typed.
+     */
+    public void clear() {
+        synchronized (this) {
+            mGeneration++;
+            mPendingUpdates = 0;
+            mMemoryCache.evictAll();
+        }
+        if (mDiskFile != null) {
+            mDiskExecutor.execute(() -> {
+                if (mDiskFile.exists() && !mDiskFile.delete()) {
+                    Log.e(LOGTAG, "Error deleting search suggestions cache");
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the pending updates to the disk tier.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (mPendingUpdates == 0) {
+                return;
+            }
+        }
+        scheduleDiskSave();
+    }
+
+    private synchronized void scheduleDiskSave() {
+        mPendingUpdates = 0;
+        if (mDiskFile == null || mDiskSavePending) {
+            return;
+        }
+        mDiskSavePending = true;
+        mDiskExecutor.execute(this::saveToDisk);
+    }
+
+    private void loadFromDisk() {
+        if (!mDiskFile.exists()) {
+            mDiskLoaded = true;
+            return;
+        }
+        final int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+        try (InputStream in = new FileInputStream(mDiskFile)) {
+            byte[] data = new byte[(int) mDiskFile.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = in.read(data, read, data.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            JSONObject json = new JSONObject(new String(data, 0, read, StandardCharsets.UTF_8));
+            final long now = System.currentTimeMillis();
+            JSONArray keys = json.names();
+            for (int i = 0; keys != null && i < keys.length(); i++) {
+                String key = keys.getString(i);
+                JSONObject item = json.getJSONObject(key);
+                long timestamp = item.getLong("t");
+                if (now - timestamp >= MAX_AGE_MS || mMemoryCache.get(key) != null) {
+                    continue;
+                }
+                JSONArray values = item.getJSONArray("s");
+                List<String> suggestions = new ArrayList<>(values.length());
+                for (int j = 0; j < values.length(); j++) {
+                    suggestions.add(values.getString(j));
+                }
+                synchronized (this) {
+                    if (generation != mGeneration) {
+                        break;
+                    }
+                    mMemoryCache.put(key, new Entry(suggestions, timestamp));
+                }
+            }
+
+        } catch (IOException | JSONException e) {
+            Log.e(LOGTAG, "Error loading search suggestions cache: " + e.getMessage());
+        }
+        mDiskLoaded = true;
+    }
+
+    private void saveToDisk() {
+        synchronized (this) {
+            mDiskSavePending = false;
+        }
+        if (!mDiskLoaded) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject();
+            // The snapshot is ordered from least to most recently used.
+            List<Map.Entry<String, Entry>> entries = new ArrayList<>(mMemoryCache.snapshot().entrySet());
+            int start = Math.max(0, entries.size() - MAX_DISK_ENTRIES);
+            for (Map.Entry<String, Entry> entry: entries.subList(start, entries.size())) {
+                JSONObject item = new JSONObject();
+                item.put("t", entry.getValue().timestamp);
+                item.put("s", new JSONArray(entry.getValue().suggestions));
+                json.put(entry.getKey(), item);
+            }
+            try (OutputStream out = new FileOutputStream(mDiskFile)) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+        } catch (IOException | JSONException e) {
+            Log.e(LOGTAG, "Error saving search suggestions cache: " + e.getMessage());
+        }
+    }
+}
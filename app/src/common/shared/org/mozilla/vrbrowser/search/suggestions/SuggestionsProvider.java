@@ -4,6 +4,7 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
@@ -17,6 +18,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class SuggestionsProvider {
@@ -130,7 +132,8 @@ public class SuggestionsProvider {
         return future;
     }
 
-    private CompletableFuture<List<SuggestionItem>> getSearchEngineSuggestions(@NonNull final List<SuggestionItem> items) {
+    private CompletableFuture<List<SuggestionItem>> getSearchEngineSuggestions(@NonNull final List<SuggestionItem> items,
+                                                                               @Nullable Consumer<List<SuggestionItem>> aInterimListener) {
         CompletableFuture<List<SuggestionItem>> future = new CompletableFuture<>();
 
         // Completion from browser-domains
@@ -154,20 +157,16 @@ public class SuggestionsProvider {
         ));
 
         // Suggestions
-        mSearchEngineWrapper.getSuggestions(mFilterText).thenAcceptAsync((suggestions) -> {
-            suggestions.forEach(s -> {
-                String url = mSearchEngineWrapper.getSearchURL(s);
-                items.add(SuggestionItem.create(
-                        s,
-                        url,
-                        null,
-                        Type.SUGGESTION,
-                        0
-                ));
-            });
-            if (mComparator != null) {
-                items.sort(mComparator);
-            }
+        Consumer<List<String>> interimCallback = null;
+        if (aInterimListener != null) {
+            interimCallback = (suggestions) -> {
+                List<SuggestionItem> interimItems = new ArrayList<>(items);
+                addSearchEngineSuggestions(interimItems, suggestions);
+                mUIThreadExecutor.execute(() -> aInterimListener.accept(interimItems));
+            };
+        }
+        mSearchEngineWrapper.getSuggestions(mFilterText, interimCallback).thenAcceptAsync((suggestions) -> {
+            addSearchEngineSuggestions(items, suggestions);
             future.complete(items);
 
         }, mUIThreadExecutor).exceptionally(throwable -> {
@@ -180,9 +179,33 @@ public class SuggestionsProvider {
         return future;
     }
 
+    private void addSearchEngineSuggestions(@NonNull List<SuggestionItem> items, @NonNull List<String> suggestions) {
+        suggestions.forEach(s -> {
+            String url = mSearchEngineWrapper.getSearchURL(s);
+            items.add(SuggestionItem.create(
+                    s,
+                    url,
+                    null,
+                    Type.SUGGESTION,
+                    0
+            ));
+        });
+        if (mComparator != null) {
+            items.sort(mComparator);
+        }
+    }
+
     public CompletableFuture<List<SuggestionItem>> getSuggestions() {
+        return getSuggestions(null);
+    }
+
+    /**
+     * @param aInterimListener Called in the UI thread with the search engine suggestions that are
+     * available locally while the complete suggestions are being fetched.
+     */
+    public CompletableFuture<List<SuggestionItem>> getSuggestions(@Nullable Consumer<List<SuggestionItem>> aInterimListener) {
         return CompletableFuture.supplyAsync((Supplier<ArrayList<SuggestionItem>>) ArrayList::new)
-                .thenComposeAsync(this::getSearchEngineSuggestions)
+                .thenComposeAsync(items -> getSearchEngineSuggestions(items, aInterimListener))
                 .thenComposeAsync(this::getBookmarkSuggestions)
                 .thenComposeAsync(this::getHistorySuggestions);
     }
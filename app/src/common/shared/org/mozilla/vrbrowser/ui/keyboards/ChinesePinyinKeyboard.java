@@ -12,6 +12,7 @@ import com.readystatesoftware.sqliteasset.SQLiteAssetHelper;
 
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.input.CustomKeyboard;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
@@ -361,7 +362,8 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
     private void loadKeymapTable(String aKey) {
         SQLiteDatabase reader = mDB.getReadableDatabase();
         sqliteArgs[0] = aKey;
-        try (Cursor cursor = reader.rawQuery("SELECT keymap, display, candidates FROM keymaps where keymap = ? ORDER BY _id ASC", sqliteArgs)) {
+        try (MainThreadIO.Trace trace = MainThreadIO.trace("ChinesePinyinKeyboard.loadKeymapTable", MainThreadIO.DISK_READ);
+             Cursor cursor = reader.rawQuery("SELECT keymap, display, candidates FROM keymaps where keymap = ? ORDER BY _id ASC", sqliteArgs)) {
             if (!cursor.moveToFirst()) {
                 return;
             }
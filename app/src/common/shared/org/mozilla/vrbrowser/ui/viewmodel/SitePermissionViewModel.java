@@ -14,8 +14,6 @@ import org.mozilla.vrbrowser.db.SitePermission;
 
 import java.util.HashMap;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class SitePermissionViewModel extends AndroidViewModel {
 
@@ -37,14 +35,11 @@ public class SitePermissionViewModel extends AndroidViewModel {
     public LiveData<List<SitePermission>> getAll(@SitePermission.Category int category) {
         MediatorLiveData<List<SitePermission>> result = mObservableSites.get(category);
         if (result == null) {
-            LiveData<List<SitePermission>> sites = mRepository.getSitePermissions();
+            // Filtered by the database using the (category, url) index.
+            LiveData<List<SitePermission>> sites = mRepository.getSitePermissions(category);
             final MediatorLiveData<List<SitePermission>> mediator = new MediatorLiveData<>();
             mediator.setValue(null);
-            mediator.addSource(sites, values -> {
-                mediator.setValue(values.stream()
-                                        .filter(sitePermission -> sitePermission.category == category)
-                                        .collect(Collectors.toList()));
-            });
+            mediator.addSource(sites, mediator::setValue);
             mObservableSites.put(category, mediator);
             result = mediator;
         }
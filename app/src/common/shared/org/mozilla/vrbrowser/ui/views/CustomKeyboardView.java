@@ -898,7 +898,10 @@ public class CustomKeyboardView extends View implements View.OnClickListener {
         int primaryIndex = NOT_A_KEY;
         int closestKey = NOT_A_KEY;
         int closestKeyDist = mProximityThreshold + 1;
-        java.util.Arrays.fill(mDistances, Integer.MAX_VALUE);
+        if (allKeys != null) {
+            java.util.Arrays.fill(mDistances, Integer.MAX_VALUE);
+        }
+        // Answered by the keyboard key grid, doesn't allocate.
         int [] nearestKeyIndices = mKeyboard.getNearestKeys(x, y);
         final int keyCount = nearestKeyIndices.length;
         for (int i = 0; i < keyCount; i++) {
@@ -17,6 +17,8 @@ import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
+import org.mozilla.vrbrowser.browser.engine.TabDescriptor;
+import org.mozilla.vrbrowser.performance.SessionResourceMonitor;
 import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.utils.AnimationHelper;
 import org.mozilla.vrbrowser.utils.BitmapCache;
@@ -36,11 +38,14 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
     protected ImageView mPreview;
     protected TextView mURL;
     protected TextView mTitle;
+    protected TextView mResources;
     protected UIButton mCloseButton;
     protected UIButton mSendTabButton;
     protected ImageView mSelectionImage;
     protected ImageView mUnselectImage;
     protected Delegate mDelegate;
+    protected TabDescriptor mTab;
+    // Only set when the tab has been materialized.
     protected Session mSession;
     protected ImageView mTabAddIcon;
     protected View mTabShadow;
@@ -53,6 +58,8 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
     protected CompletableFuture<Bitmap> mBitmapFuture;
     protected boolean mUsingPlaceholder;
     private boolean mSendTabEnabled;
+    private int mPreviewWidth;
+    private int mPreviewHeight;
     private static final int ICON_ANIMATION_DURATION = 100;
 
     public interface Delegate {
@@ -60,6 +67,7 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
         void onClick(TabView aSender);
         void onAdd(TabView aSender);
         void onSend(TabView aSender);
+        default void onHover(TabView aSender, boolean aHovered) {}
     }
 
     public TabView(Context context) {
@@ -111,6 +119,7 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
         mURL = findViewById(R.id.tabViewUrl);
         mTitle = findViewById(R.id.tabViewTitle);
         mTitle.setVisibility(View.GONE);
+        mResources = findViewById(R.id.tabViewResources);
         mTabAddIcon = findViewById(R.id.tabAddIcon);
         mTabOverlay = findViewById(R.id.tabOverlay);
         mTabShadow = findViewById(R.id.tabShadow);
@@ -125,7 +134,7 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
         @Override
         public void onClick(View v) {
             if (mDelegate != null) {
-                if (!mShowAddTab && mSession != null) {
+                if (!mShowAddTab && mTab != null) {
                     mDelegate.onClick(TabView.this);
                 } else {
                     mDelegate.onAdd(TabView.this);
@@ -134,24 +143,26 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
         }
     };
 
-    public void attachToSession(@Nullable Session aSession, @NonNull BitmapCache aBitmapCache) {
-        if (mSession != null) {
-            mSession.removeContentListener(this);
-            mSession.removeBitmapChangedListener(this);
-        }
-        if (mBitmapFuture != null) {
-            mBitmapFuture.cancel(false);
-            mBitmapFuture = null;
-        }
+    public void setPreviewSize(int aWidth, int aHeight) {
+        mPreviewWidth = aWidth;
+        mPreviewHeight = aHeight;
+    }
+
+    public void attachToTab(@NonNull TabDescriptor aTab, @NonNull BitmapCache aBitmapCache) {
+        detachFromTab();
         setAddTabMode(false);
-        mSession = aSession;
-        mSession.addContentListener(this);
-        mSession.addBitmapChangedListener(this);
+        mTab = aTab;
+        bindSession();
         mShowAddTab = false;
-        mBitmapFuture = aBitmapCache.getBitmap(mSession.getId());
+        final CompletableFuture<Bitmap> future = aBitmapCache.getBitmap(mTab.getId(), mPreviewWidth, mPreviewHeight, BitmapCache.PRIORITY_VISIBLE);
+        mBitmapFuture = future;
         mPreview.setImageResource(R.drawable.ic_icon_tabs_placeholder);
         mUsingPlaceholder = true;
-        mBitmapFuture.thenAccept(bitmap -> {
+        future.thenAccept(bitmap -> {
+            if (mBitmapFuture != future) {
+                // The view has been recycled or attached to another tab.
+                return;
+            }
             mBitmapFuture = null;
             if (bitmap != null) {
                 mPreview.setImageBitmap(bitmap);
@@ -160,26 +171,79 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
             }
 
         }).exceptionally(throwable -> {
+            if (future.isCancelled()) {
+                return null;
+            }
             Log.d(LOGTAG, "Error getting the bitmap: " + throwable.getLocalizedMessage());
             throwable.printStackTrace();
             return null;
         });
 
-        mURL.setText(UrlUtils.stripProtocol(aSession.getCurrentUri()));
+        mURL.setText(UrlUtils.stripProtocol(aTab.getUri()));
         if (!mShowAddTab) {
-            if (mSession.getCurrentUri().equals(mSession.getHomeUri())) {
+            if (aTab.getUri().equals(aTab.getHomeUri(getContext()))) {
                 mTitle.setText(getResources().getString(R.string.url_home_title, getResources().getString(R.string.app_name)));
             } else {
-                mTitle.setText(aSession.getCurrentTitle());
+                mTitle.setText(aTab.getTitle());
             }
         }
         updateState();
     }
 
+    /**
+     * Listens to the Session of the tab once it has been materialized.
+     */
+    private void bindSession() {
+        if (mSession == null && mTab != null && mTab.getSession() != null) {
+            mSession = mTab.getSession();
+            mSession.addContentListener(this);
+            mSession.addBitmapChangedListener(this);
+        }
+    }
+
+    public void detachFromTab() {
+        if (mSession != null) {
+            mSession.removeContentListener(this);
+            mSession.removeBitmapChangedListener(this);
+            mSession = null;
+        }
+        mTab = null;
+        mResources.setVisibility(View.GONE);
+        if (mBitmapFuture != null) {
+            mBitmapFuture.cancel(false);
+            mBitmapFuture = null;
+        }
+    }
+
+    @Nullable
+    public TabDescriptor getTab() {
+        return mTab;
+    }
+
+    /**
+     * @return The Session of the tab, null if it hasn't been materialized.
+     */
+    @Nullable
     public Session getSession() {
         return mSession;
     }
 
+    /**
+     * Shows the estimated resources used by the tab, heavy tabs are highlighted.
+     * @param aUsage The usage of the tab, null to hide the badge.
+     */
+    public void setResourceUsage(@Nullable SessionResourceMonitor.Usage aUsage) {
+        if (aUsage == null || mShowAddTab) {
+            mResources.setVisibility(View.GONE);
+            return;
+        }
+        mResources.setText(getResources().getString(R.string.tab_resource_usage,
+                String.valueOf(aUsage.getMemoryKb() / 1024),
+                String.valueOf(Math.round(aUsage.getCpuPercent()))));
+        mResources.setActivated(aUsage.isHeavy());
+        mResources.setVisibility(View.VISIBLE);
+    }
+
     public void setDelegate(Delegate aDelegate) {
         mDelegate = aDelegate;
     }
@@ -242,6 +306,9 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
     public void onHoverChanged(boolean aHovered) {
         super.onHoverChanged(aHovered);
         updateState();
+        if (mDelegate != null && !mShowAddTab && mTab != null) {
+            mDelegate.onHover(this, aHovered);
+        }
     }
 
     @Override
@@ -297,7 +364,7 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
 
     @Override
     public void onCloseRequest(@NonNull GeckoSession geckoSession) {
-        if (mSession.getGeckoSession() == geckoSession) {
+        if (mSession != null && mSession.getGeckoSession() == geckoSession) {
             mDelegate.onClose(this);
         }
     }
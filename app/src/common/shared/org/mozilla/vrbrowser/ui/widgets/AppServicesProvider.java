@@ -11,10 +11,16 @@ import org.mozilla.vrbrowser.browser.Services;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.db.AppDatabase;
 import org.mozilla.vrbrowser.db.DataRepository;
+import org.mozilla.vrbrowser.db.KeyValueStore;
 import org.mozilla.vrbrowser.downloads.DownloadsManager;
+import org.mozilla.vrbrowser.performance.BackgroundScheduler;
+import org.mozilla.vrbrowser.performance.MainThreadWatchdog;
+import org.mozilla.vrbrowser.performance.SessionResourceMonitor;
 import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.ConnectivityReceiver;
 import org.mozilla.vrbrowser.utils.EnvironmentsManager;
+import org.mozilla.vrbrowser.utils.ImagePipeline;
+import org.mozilla.vrbrowser.utils.LastFrameCache;
 
 public interface AppServicesProvider {
 
@@ -24,7 +30,13 @@ public interface AppServicesProvider {
     AppDatabase getDatabase();
     AppExecutors getExecutors();
     DataRepository getRepository();
+    KeyValueStore getKeyValueStore();
     BitmapCache getBitmapCache();
+    LastFrameCache getLastFrameCache();
+    ImagePipeline getImagePipeline();
+    BackgroundScheduler getBackgroundScheduler();
+    MainThreadWatchdog getMainThreadWatchdog();
+    SessionResourceMonitor getSessionResourceMonitor();
     Accounts getAccounts();
     DownloadsManager getDownloadsManager();
     SpeechService getSpeechService();
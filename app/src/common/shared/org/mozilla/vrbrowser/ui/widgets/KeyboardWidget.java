@@ -21,8 +21,6 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
-import android.view.inputmethod.ExtractedText;
-import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
 import android.widget.EditText;
 import android.widget.ImageButton;
@@ -39,6 +37,7 @@ import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.input.CustomKeyboard;
+import org.mozilla.vrbrowser.input.TextContextMirror;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.ui.keyboards.ChinesePinyinKeyboard;
 import org.mozilla.vrbrowser.ui.keyboards.ChineseZhuyinKeyboard;
@@ -66,6 +65,7 @@ import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.ViewUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Locale;
 
 
@@ -78,6 +78,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     private CustomKeyboardView mKeyboardNumericView;
     private CustomKeyboardView mPopupKeyboardView;
     private ArrayList<KeyboardInterface> mKeyboards;
+    private HashMap<String, CustomKeyboard> mPopupKeyboardCache = new HashMap<>();
     private KeyboardInterface mCurrentKeyboard;
     private CustomKeyboard mDefaultKeyboardSymbols;
     private CustomKeyboard mKeyboardNumeric;
@@ -91,6 +92,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     private WindowWidget mAttachedWindow;
     private InputConnection mInputConnection;
     private EditorInfo mEditorInfo = new EditorInfo();
+    private TextContextMirror mTextContext = new TextContextMirror();
     private VoiceSearchWidget mVoiceSearchWidget;
     private AutoCompletionView mAutoCompletionView;
     private KeyboardSelectorView mLanguageSelectorView;
@@ -454,6 +456,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             ((TextView)mFocusedView).removeTextChangedListener(this);
         }
         mFocusedView = aFocusedView;
+        mTextContext.invalidate();
         if (aFocusedView != null && aFocusedView.onCheckIsTextEditor()) {
             mInputConnection = aFocusedView.onCreateInputConnection(mEditorInfo);
             resetKeyboardLayout();
@@ -574,8 +577,18 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             }
             params.topMargin = popupKey.y + mKeyboardPopupTopMargin + mKeyboardView.getPaddingTop();
 
-            CustomKeyboard popupKeyboard = new CustomKeyboard(getContext(), popupKey.popupResId,
-                    popupCharacters, MAX_CHARS_PER_POPUP_LINE, 0, getContext().getResources().getDimensionPixelSize(R.dimen.keyboard_vertical_gap));
+            // Popup keyboards are reused so their layout and key grid are only built once.
+            String popupCacheKey = popupKey.popupResId + ":" + popupCharacters;
+            CustomKeyboard popupKeyboard = mPopupKeyboardCache.get(popupCacheKey);
+            if (popupKeyboard == null) {
+                popupKeyboard = new CustomKeyboard(getContext(), popupKey.popupResId,
+                        popupCharacters, MAX_CHARS_PER_POPUP_LINE, 0, getContext().getResources().getDimensionPixelSize(R.dimen.keyboard_vertical_gap));
+                mPopupKeyboardCache.put(popupCacheKey, popupKeyboard);
+            } else {
+                for (Keyboard.Key key: popupKeyboard.getKeys()) {
+                    key.pressed = false;
+                }
+            }
             mPopupKeyboardView.setKeyboard(popupKeyboard);
             mPopupKeyboardView.setLayoutParams(params);
             mPopupKeyboardView.setShifted(mIsCapsLock || mKeyboardView.isShifted());
@@ -805,21 +818,21 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             if (selectedText != null && selectedText.length() > 0) {
                 // Delete the selected text
                 connection.commitText("", 1);
+                mTextContext.invalidate();
                 return;
             }
 
             if (mCurrentKeyboard.usesTextOverride()) {
-                String beforeText = getTextBeforeCursor(connection);
+                String beforeText = mTextContext.getTextBeforeCursor(connection);
                 String newBeforeText = mCurrentKeyboard.overrideBackspace(beforeText);
                 if (newBeforeText != null) {
-                    // Replace whole before text
-                    connection.deleteSurroundingText(beforeText.length(), 0);
-                    connection.commitText(newBeforeText, 1);
+                    replaceTextBeforeCursor(connection, beforeText, newBeforeText);
                     return;
                 }
             }
             // Remove the character before the cursor.
             connection.deleteSurroundingText(1, 0);
+            mTextContext.onDeleteBeforeCursor(1);
         });
     }
 
@@ -944,7 +957,10 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         if (mCurrentKeyboard.usesComposingText() && mComposingText.length() == 0) {
             // Do not compose text when space is clicked on an empty composed text
             final InputConnection connection = mInputConnection;
-            postInputCommand(() -> connection.commitText(" ", 1));
+            postInputCommand(() -> {
+                connection.commitText(" ", 1);
+                mTextContext.onCommitText(" ");
+            });
         } else {
             handleText(" ");
         }
@@ -1047,21 +1063,24 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             }
             mComposingText += text;
         } else if (mCurrentKeyboard.usesTextOverride()) {
-            String beforeText = getTextBeforeCursor(mInputConnection);
-            final String newBeforeText = mCurrentKeyboard.overrideAddText(beforeText, text);
             final InputConnection connection = mInputConnection;
             postInputCommand(() -> {
+                String beforeText = mTextContext.getTextBeforeCursor(connection);
+                String newBeforeText = mCurrentKeyboard.overrideAddText(beforeText, text);
                 if (newBeforeText != null) {
-                    connection.deleteSurroundingText(beforeText.length(), 0);
-                    connection.commitText(newBeforeText, 1);
+                    replaceTextBeforeCursor(connection, beforeText, newBeforeText);
                 } else {
                     connection.commitText(text, 1);
+                    mTextContext.onCommitText(text);
                 }
             });
 
         } else {
             final InputConnection connection = mInputConnection;
-            postInputCommand(() -> connection.commitText(text, 1));
+            postInputCommand(() -> {
+                connection.commitText(text, 1);
+                mTextContext.onCommitText(text);
+            });
         }
 
         if (!mIsCapsLock) {
@@ -1088,18 +1107,22 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         mWidgetManager.updateWidget(this);
     }
 
-    private String getTextBeforeCursor(InputConnection aConnection) {
-        if (aConnection == null) {
-            return "";
+    // Must be called in the input thread, see postInputCommand.
+    private void replaceTextBeforeCursor(InputConnection aConnection, String aBeforeText, String aNewBeforeText) {
+        // Only send the part that changed, overrides usually just replace the last characters.
+        int common = 0;
+        int max = Math.min(aBeforeText.length(), aNewBeforeText.length());
+        while (common < max && aBeforeText.charAt(common) == aNewBeforeText.charAt(common)) {
+            common++;
         }
-
-        ExtractedText extracted = aConnection.getExtractedText(new ExtractedTextRequest(),0);
-        if ((extracted == null) || extracted.text == null) {
-            return "";
+        int deleteCount = aBeforeText.length() - common;
+        if (deleteCount > 0) {
+            aConnection.deleteSurroundingText(deleteCount, 0);
+            mTextContext.onDeleteBeforeCursor(deleteCount);
         }
-
-        String fullText = extracted.text.toString();
-        return aConnection.getTextBeforeCursor(fullText.length(),0).toString();
+        String newText = aNewBeforeText.substring(common);
+        aConnection.commitText(newText, 1);
+        mTextContext.onCommitText(newText);
     }
 
     private void postInputCommand(Runnable aRunnable) {
@@ -1144,8 +1167,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
                 });
             }
         } else {
-            String fullText = mInputConnection.getExtractedText(new ExtractedTextRequest(),0).text.toString();
-            String beforeText = mInputConnection.getTextBeforeCursor(fullText.length(),0).toString();
+            String beforeText = mTextContext.getTextBeforeCursor(mInputConnection);
             final KeyboardInterface.CandidatesResult candidates = mCurrentKeyboard.getCandidates(beforeText);
             setAutoCompletionVisible(candidates != null && candidates.words.size() > 0);
             mAutoCompletionView.setItems(candidates != null ? candidates.words : null);
@@ -1203,15 +1225,15 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         boolean succeeded = mInputConnection.setComposingText(aText, 1);
         if (!succeeded) {
             // Fix for InlineAutocompleteEditText failed setComposingText() calls
-            String fullText = mInputConnection.getExtractedText(new ExtractedTextRequest(),0).text.toString();
-            String beforeText = mInputConnection.getTextBeforeCursor(fullText.length(),0).toString();
-            if (beforeText.endsWith(mComposingDisplayText)) {
+            CharSequence beforeText = mInputConnection.getTextBeforeCursor(mComposingDisplayText.length(), 0);
+            if (beforeText != null && beforeText.toString().endsWith(mComposingDisplayText)) {
                 mInternalDeleteHint = true;
                 mInputConnection.deleteSurroundingText(mComposingDisplayText.length(), 0);
             }
             mInputConnection.setComposingText(aText, 1);
         }
         mComposingDisplayText = aText;
+        mTextContext.invalidate();
         if (aAction == ComposingAction.FINISH) {
             mInputConnection.finishComposingText();
             mComposingText = "";
@@ -1225,6 +1247,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             final int cursor = textView.getSelectionStart() + direction;
             if ((cursor <= textView.length()) && (cursor >= 0)) {
                 textView.setSelection(cursor);
+                mTextContext.invalidate();
             }
         }
     }
@@ -1239,6 +1262,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
                     return false;
                 } else {
                     connection.sendKeyEvent(event);
+                    mTextContext.invalidate();
                     hide(UIWidget.KEEP_WIDGET);
                 }
                 return true;
@@ -1268,6 +1292,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
                     KeyCharacterMap map = event.getKeyCharacterMap();
                     String value = String.valueOf((char) map.get(keyCode, event.getMetaState()));
                     connection.commitText(value, 1);
+                    mTextContext.onCommitText(value);
                     return true;
                 }
             }
@@ -1284,6 +1309,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
 
     @Override
     public void restartInput(@NonNull GeckoSession session, int reason) {
+        mTextContext.invalidate();
         resetKeyboardLayout();
         mInputRestarted = true;
     }
@@ -1309,6 +1335,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             return;
         }
 
+        mTextContext.onSelectionChanged(selStart, selEnd);
         final InputConnection connection = mInputConnection;
         postInputCommand(new Runnable() {
             @Override
@@ -1379,10 +1406,10 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     }
 
     // TextWatcher
-    private String mTextBefore = "";
+    private int mTextBeforeLength = 0;
     @Override
     public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-        mTextBefore = s.toString();
+        mTextBeforeLength = s.length();
     }
 
     @Override
@@ -1396,7 +1423,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             return;
         }
 
-        if (!mInternalDeleteHint && mCurrentKeyboard.usesComposingText() && mComposingText.length() > 0 && mTextBefore.length() > 0 && aEditable.toString().length() == 0) {
+        if (!mInternalDeleteHint && mCurrentKeyboard.usesComposingText() && mComposingText.length() > 0 && mTextBeforeLength > 0 && aEditable.length() == 0) {
             // Text has been cleared externally (e.g. URLBar text clear button)
             mComposingText = "";
             mCurrentKeyboard.clear();
@@ -63,6 +63,7 @@ import org.mozilla.vrbrowser.utils.RemoteProperties;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -992,25 +993,26 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
 
         mSuggestionsProvider.setText(text);
         mSuggestionsProvider.setFilterText(originalText);
-        mSuggestionsProvider.getSuggestions()
-                .whenCompleteAsync((items, ex) -> {
-                    if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
-                        mAwesomeBar.updateItems(items);
-                        mAwesomeBar.setHighlightedText(mBinding.navigationBarNavigation.urlBar.getOriginalText().trim());
-
-                        if (!mAwesomeBar.isVisible()) {
-                            mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
-                            mAwesomeBar.show(CLEAR_FOCUS);
-                        }
-                    }
-
-                }, mUIThreadExecutor).exceptionally(throwable -> {
+        mSuggestionsProvider.getSuggestions(this::showSuggestionItems)
+                .whenCompleteAsync((items, ex) -> showSuggestionItems(items), mUIThreadExecutor).exceptionally(throwable -> {
                     Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
                     throwable.printStackTrace();
                     return null;
         });
     }
 
+    private void showSuggestionItems(List<SuggestionsWidget.SuggestionItem> items) {
+        if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
+            mAwesomeBar.updateItems(items);
+            mAwesomeBar.setHighlightedText(mBinding.navigationBarNavigation.urlBar.getOriginalText().trim());
+
+            if (!mAwesomeBar.isVisible()) {
+                mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
+                mAwesomeBar.show(CLEAR_FOCUS);
+            }
+        }
+    }
+
     @Override
     public void onHideAwesomeBar() {
         if (mAwesomeBar != null) {
@@ -2,6 +2,7 @@ package org.mozilla.vrbrowser.ui.widgets;
 
 import android.content.Context;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -10,12 +11,16 @@ import android.webkit.URLUtil;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
+import org.mozilla.vrbrowser.browser.engine.TabDescriptor;
+import org.mozilla.vrbrowser.performance.SessionResourceMonitor;
 import org.mozilla.vrbrowser.ui.views.TabView;
 import org.mozilla.vrbrowser.ui.views.UIButton;
 import org.mozilla.vrbrowser.ui.views.UITextButton;
@@ -25,10 +30,18 @@ import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class TabsWidget extends UIDialog {
+    private static final String PAYLOAD_SELECTION = "selection";
+    private static final String PAYLOAD_RESOURCES = "resources";
+    private static final int COLUMNS = 4;
+
     protected BitmapCache mBitmapCache;
+    protected SessionResourceMonitor mResourceMonitor;
     protected RecyclerView mTabsList;
     protected GridLayoutManager mLayoutManager;
     protected TabAdapter mAdapter;
@@ -46,12 +59,16 @@ public class TabsWidget extends UIDialog {
     protected SendTabDialogWidget mSendTabDialog;
 
     protected boolean mSelecting;
-    protected ArrayList<Session> mSelectedTabs = new ArrayList<>();
+    protected ArrayList<TabDescriptor> mSelectedTabs = new ArrayList<>();
+    protected int mThumbnailWidth;
+    protected int mThumbnailHeight;
+    private ArrayList<CompletableFuture<Bitmap>> mPrefetches = new ArrayList<>();
+    private int mPrefetchedPosition;
 
     public interface TabDelegate {
         void onTabSelect(Session aTab);
         void onTabAdd();
-        void onTabsClose(List<Session> aTabs);
+        void onTabsClose(List<TabDescriptor> aTabs);
     }
 
     public TabsWidget(Context aContext) {
@@ -86,10 +103,15 @@ public class TabsWidget extends UIDialog {
 
         mTabsList = findViewById(R.id.tabsRecyclerView);
         mTabsList.setHasFixedSize(true);
-        final int columns = 4;
-        mLayoutManager = new GridLayoutManager(getContext(), columns);
+        mLayoutManager = new GridLayoutManager(getContext(), COLUMNS);
         mTabsList.setLayoutManager(mLayoutManager);
-        mTabsList.addItemDecoration(new GridSpacingItemDecoration(getContext(), columns));
+        mTabsList.addItemDecoration(new GridSpacingItemDecoration(getContext(), COLUMNS));
+        mTabsList.addOnScrollListener(mPrefetchScrollListener);
+
+        // Thumbnails are decoded to the size of the tab preview instead of the captured size.
+        mThumbnailWidth = WidgetPlacement.pixelDimension(getContext(), R.dimen.tabs_width) / COLUMNS;
+        mThumbnailHeight = WidgetPlacement.pixelDimension(getContext(), R.dimen.tab_view_height) -
+                WidgetPlacement.pixelDimension(getContext(), R.dimen.tab_view_url_height);
 
         mTabsAvailableCounter = findViewById(R.id.tabsAvailableCounter);
         mSelectedTabsCounter = findViewById(R.id.tabsSelectedCounter);
@@ -135,14 +157,14 @@ public class TabsWidget extends UIDialog {
         mSelectAllButton = findViewById(R.id.tabsSelectAllButton);
         mSelectAllButton.setOnClickListener(v -> {
             mSelectedTabs = new ArrayList<>(mAdapter.mTabs);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifySelectionChanged();
             updateSelectionMode();
         });
 
         mUnselectTabs = findViewById(R.id.tabsUnselectButton);
         mUnselectTabs.setOnClickListener(v -> {
             mSelectedTabs.clear();
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifySelectionChanged();
             updateSelectionMode();
         });
     }
@@ -171,29 +193,80 @@ public class TabsWidget extends UIDialog {
     @Override
     public void show(int aShowFlags) {
         super.show(aShowFlags);
+        mResourceMonitor = mWidgetManager.getServicesProvider().getSessionResourceMonitor();
+        mResourceMonitor.addListener(mResourceListener);
         refreshTabs();
         invalidate();
         mTabsList.requestFocusFromTouch();
+        mTabsList.post(this::prefetchNextPage);
     }
 
     @Override
     public void hide(@HideFlags int aHideFlags) {
         super.hide(aHideFlags);
+        if (mResourceMonitor != null) {
+            mResourceMonitor.removeListener(mResourceListener);
+        }
+        cancelPrefetches();
         if (mRenderer != null) {
             mRenderer.clearSurface();
         }
     }
 
+    private SessionResourceMonitor.ResourceMonitorListener mResourceListener = () -> mAdapter.notifyResourcesChanged();
+
     public void setTabDelegate(TabDelegate aDelegate) {
         mTabDelegate = aDelegate;
     }
 
     public void refreshTabs() {
-        mAdapter.updateTabs(SessionStore.get().getSortedSessions(mPrivateMode));
+        mAdapter.updateTabs(SessionStore.get().getSortedTabs(mPrivateMode));
+    }
+
+    private RecyclerView.OnScrollListener mPrefetchScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            prefetchNextPage();
+        }
+    };
+
+    /**
+     * Warms up the thumbnails of the page that follows the visible one so they are already decoded
+     * when the user scrolls. The first adapter position is the "add tab" item.
+     */
+    private void prefetchNextPage() {
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION || last <= mPrefetchedPosition) {
+            return;
+        }
+        cancelPrefetches();
+        int pageSize = last - first + 1;
+        int end = Math.min(last + pageSize, mAdapter.mTabs.size());
+        for (int position = last + 1; position <= end; position++) {
+            TabDescriptor tab = mAdapter.mTabs.get(position - 1);
+            if (!mBitmapCache.hasBitmap(tab.getId())) {
+                mPrefetches.add(mBitmapCache.getBitmap(tab.getId(), mThumbnailWidth, mThumbnailHeight, BitmapCache.PRIORITY_PREFETCH));
+            }
+        }
+        mPrefetchedPosition = last;
+    }
+
+    private void cancelPrefetches() {
+        for (CompletableFuture<Bitmap> future: mPrefetches) {
+            future.cancel(false);
+        }
+        mPrefetches.clear();
+        mPrefetchedPosition = 0;
     }
 
     public class TabAdapter extends RecyclerView.Adapter<TabAdapter.MyViewHolder> {
-        private ArrayList<Session> mTabs = new ArrayList<>();
+        private static final long ADD_TAB_ID = 0;
+
+        private ArrayList<TabDescriptor> mTabs = new ArrayList<>();
+        private HashMap<String, Long> mStableIds = new HashMap<>();
+        private long mNextStableId = ADD_TAB_ID + 1;
+        private HashMap<String, String> mBoundStates = new HashMap<>();
 
         class MyViewHolder extends RecyclerView.ViewHolder {
             // each data item is just a string in this case
@@ -205,14 +278,84 @@ public class TabsWidget extends UIDialog {
 
         }
 
-        TabAdapter() {}
+        TabAdapter() {
+            setHasStableIds(true);
+        }
+
+        void updateTabs(ArrayList<TabDescriptor> aTabs) {
+            final ArrayList<TabDescriptor> oldTabs = mTabs;
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldTabs.size() + 1;
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return aTabs.size() + 1;
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    if (oldItemPosition == 0 || newItemPosition == 0) {
+                        return oldItemPosition == newItemPosition;
+                    }
+                    return oldTabs.get(oldItemPosition - 1) == aTabs.get(newItemPosition - 1);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    if (oldItemPosition == 0) {
+                        return true;
+                    }
+                    // Tabs are mutable, so compare against the state they had when they were bound.
+                    TabDescriptor tab = aTabs.get(newItemPosition - 1);
+                    return Objects.equals(mBoundStates.get(tab.getId()), getBoundState(tab));
+                }
+            });
 
-        void updateTabs(ArrayList<Session> aTabs) {
             mTabs = aTabs;
-            notifyDataSetChanged();
+            List<String> ids = getTabIds(aTabs);
+            mStableIds.keySet().retainAll(ids);
+            mBoundStates.keySet().retainAll(ids);
+            result.dispatchUpdatesTo(this);
             updateTabCounter();
         }
 
+        private List<String> getTabIds(List<TabDescriptor> aTabs) {
+            ArrayList<String> ids = new ArrayList<>();
+            for (TabDescriptor tab: aTabs) {
+                ids.add(tab.getId());
+            }
+            return ids;
+        }
+
+        private String getBoundState(TabDescriptor aTab) {
+            return aTab.getUri() + "\n" + aTab.getTitle() + "\n" + isActiveTab(aTab);
+        }
+
+        private boolean isActiveTab(TabDescriptor aTab) {
+            Session active = SessionStore.get().getActiveSession();
+            return aTab != null && active != null && aTab.getSession() == active;
+        }
+
+        void notifySelectionChanged() {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+        }
+
+        void notifyResourcesChanged() {
+            notifyItemRangeChanged(1, mTabs.size(), PAYLOAD_RESOURCES);
+        }
+
+        private void bindResourceUsage(@NonNull TabView aView) {
+            TabDescriptor tab = aView.getTab();
+            if (tab == null || !tab.isMaterialized() || mResourceMonitor == null) {
+                aView.setResourceUsage(null);
+            } else {
+                aView.setResourceUsage(mResourceMonitor.getUsage(tab.getId()));
+            }
+        }
+
         void updateTabCounter() {
             if (mTabs.size() > 1) {
                 mTabsAvailableCounter.setText(getContext().getString(R.string.tabs_counter_plural, String.valueOf(mTabs.size())));
@@ -221,28 +364,67 @@ public class TabsWidget extends UIDialog {
             }
         }
 
+        @Override
+        public long getItemId(int position) {
+            if (position == 0) {
+                return ADD_TAB_ID;
+            }
+            String sessionId = mTabs.get(position - 1).getId();
+            Long id = mStableIds.get(sessionId);
+            if (id == null) {
+                id = mNextStableId++;
+                mStableIds.put(sessionId, id);
+            }
+            return id;
+        }
+
         @Override
         public TabAdapter.MyViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             TabView view = (TabView)LayoutInflater.from(parent.getContext()).inflate(R.layout.tab_view, parent, false);
+            view.setPreviewSize(mThumbnailWidth, mThumbnailHeight);
             parent.setClipToPadding(false);
             parent.setClipChildren(false);
             return new MyViewHolder(view);
         }
 
+        @Override
+        public void onViewRecycled(@NonNull MyViewHolder holder) {
+            // Cancels any pending thumbnail decode for a view that is no longer visible.
+            holder.tabView.detachFromTab();
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull MyViewHolder holder, int position, @NonNull List<Object> payloads) {
+            if (payloads.contains(PAYLOAD_SELECTION)) {
+                holder.tabView.setSelecting(mSelecting);
+                holder.tabView.setSelected(mSelectedTabs.contains(holder.tabView.getTab()));
+            }
+            if (payloads.contains(PAYLOAD_RESOURCES)) {
+                bindResourceUsage(holder.tabView);
+            }
+            if (!payloads.isEmpty()) {
+                return;
+            }
+            onBindViewHolder(holder, position);
+        }
+
         @Override
         public void onBindViewHolder(MyViewHolder holder, int position) {
             if (position > 0) {
-                Session session = mTabs.get(position - 1);
-                holder.tabView.attachToSession(session, mBitmapCache);
+                TabDescriptor tab = mTabs.get(position - 1);
+                holder.tabView.attachToTab(tab, mBitmapCache);
+                mBoundStates.put(tab.getId(), getBoundState(tab));
             } else {
+                holder.tabView.detachFromTab();
                 holder.tabView.setAddTabMode(true);
             }
 
             holder.tabView.setSelecting(mSelecting);
-            holder.tabView.setSelected(mSelectedTabs.contains(holder.tabView.getSession()));
-            holder.tabView.setActive(SessionStore.get().getActiveSession() == holder.tabView.getSession());
-            if (holder.tabView.getSession() != null) {
-                String uri = holder.tabView.getSession().getCurrentUri();
+            holder.tabView.setSelected(mSelectedTabs.contains(holder.tabView.getTab()));
+            holder.tabView.setActive(isActiveTab(holder.tabView.getTab()));
+            bindResourceUsage(holder.tabView);
+            if (holder.tabView.getTab() != null) {
+                String uri = holder.tabView.getTab().getUri();
                 holder.tabView.setSendTabEnabled(URLUtil.isHttpUrl(uri) || URLUtil.isHttpsUrl(uri));
             } else {
                 holder.tabView.setSendTabEnabled(false);
@@ -250,19 +432,19 @@ public class TabsWidget extends UIDialog {
             holder.tabView.setDelegate(new TabView.Delegate() {
                 @Override
                 public void onClose(TabView aSender) {
-                    if (aSender.getSession() != null) {
-                        String uri = aSender.getSession().getCurrentUri();
+                    if (aSender.getTab() != null) {
+                        String uri = aSender.getTab().getUri();
                         aSender.setSendTabEnabled(URLUtil.isHttpUrl(uri) || URLUtil.isHttpsUrl(uri));
                     }
                     if (mTabDelegate != null) {
-                        ArrayList<Session> closed = new ArrayList<>();
-                        closed.add(aSender.getSession());
+                        ArrayList<TabDescriptor> closed = new ArrayList<>();
+                        closed.add(aSender.getTab());
                         mTabDelegate.onTabsClose(closed);
                     }
                     if (mTabs.size() > 1) {
-                        ArrayList<Session> latestTabs = SessionStore.get().getSortedSessions(mPrivateMode);
+                        ArrayList<TabDescriptor> latestTabs = SessionStore.get().getSortedTabs(mPrivateMode);
                         if (latestTabs.size() != (mTabs.size() - 1) && latestTabs.size() > 0) {
-                            aSender.attachToSession(latestTabs.get(0), mBitmapCache);
+                            aSender.attachToTab(latestTabs.get(0), mBitmapCache);
                             return;
                         }
                         mTabs.remove(holder.getAdapterPosition() - 1);
@@ -279,16 +461,16 @@ public class TabsWidget extends UIDialog {
                     if (mSelecting) {
                         if (aSender.isSelected()) {
                             aSender.setSelected(false);
-                            mSelectedTabs.remove(aSender.getSession());
+                            mSelectedTabs.remove(aSender.getTab());
                         } else {
                             aSender.setSelected(true);
-                            mSelectedTabs.add(aSender.getSession());
+                            mSelectedTabs.add(aSender.getTab());
                         }
                         updateSelectionMode();
                         return;
                     }
                     if (mTabDelegate != null) {
-                        mTabDelegate.onTabSelect(aSender.getSession());
+                        mTabDelegate.onTabSelect(SessionStore.get().getSession(aSender.getTab()));
                     }
                     onDismiss();
                 }
@@ -304,13 +486,23 @@ public class TabsWidget extends UIDialog {
                 @Override
                 public void onSend(TabView aSender) {
                     mSendTabDialog = SendTabDialogWidget.getInstance(getContext());
-                    mSendTabDialog.setSessionId(aSender.getSession().getId());
+                    mSendTabDialog.setSessionId(aSender.getTab().getId());
                     mSendTabDialog.mWidgetPlacement.parentHandle = mWidgetManager.getFocusedWindow().getHandle();
                     mSendTabDialog.setDelegate(() -> show(REQUEST_FOCUS));
                     mSendTabDialog.show(UIWidget.REQUEST_FOCUS);
 
                     holder.tabView.reset();
                 }
+
+                @Override
+                public void onHover(TabView aSender, boolean aHovered) {
+                    // A hovered tab is the most likely next tab, start restoring it ahead of the click.
+                    if (aHovered) {
+                        SessionStore.get().prewarmTab(aSender.getTab());
+                    } else if (aSender.getSession() != null) {
+                        SessionStore.get().cancelPrewarm(aSender.getSession());
+                    }
+                }
             });
         }
 
@@ -332,7 +524,7 @@ public class TabsWidget extends UIDialog {
         updateSelectionMode();
         mWidgetManager.pushBackHandler(mSelectModeBackHandler);
 
-        post(() -> mAdapter.notifyDataSetChanged());
+        post(() -> mAdapter.notifySelectionChanged());
     }
 
     private void exitSelectMode() {
@@ -346,7 +538,7 @@ public class TabsWidget extends UIDialog {
         updateSelectionMode();
         mWidgetManager.popBackHandler(mSelectModeBackHandler);
 
-        post(() -> mAdapter.notifyDataSetChanged());
+        post(() -> mAdapter.notifySelectionChanged());
     }
 
     private void updateSelectionMode() {
@@ -0,0 +1,241 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per window compositor activity policy. Unfocused windows that are not playing media are
+ * first throttled (the session stops painting but keeps its compositor surface) and then frozen
+ * on their last frame, which releases the surface. Focusing or hovering a window resumes it
+ * right away.
+ */
+class WindowThrottler {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(WindowThrottler.class);
+
+    private static final long TICK_INTERVAL_MS = 1000;
+    private static final long THROTTLE_DELAY_MS = 5000;
+    private static final long FREEZE_DELAY_MS = 60000;
+
+    private static final int STATE_ACTIVE = 0;
+    private static final int STATE_THROTTLED = 1;
+    private static final int STATE_FROZEN = 2;
+
+    private static class Entry {
+        int state = STATE_ACTIVE;
+        long inactiveSince;
+        long pausedSince;
+    }
+
+    interface WindowsProvider {
+        @NonNull List<WindowWidget> getWindows();
+        @Nullable WindowWidget getFocusedWindow();
+        boolean isCompositorPaused();
+    }
+
+    private WindowsProvider mProvider;
+    private Handler mHandler;
+    private Map<WindowWidget, Entry> mEntries = new HashMap<>();
+    private boolean mRunning;
+    // Metrics
+    private long mSavedCompositorTime;
+    private int mThrottledCount;
+    private int mFrozenCount;
+
+    WindowThrottler(@NonNull WindowsProvider aProvider) {
+        mProvider = aProvider;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        final long now = SystemClock.uptimeMillis();
+        for (Map.Entry<WindowWidget, Entry> item: mEntries.entrySet()) {
+            if (item.getValue().state != STATE_ACTIVE && item.getKey().isContentThrottled()) {
+                item.getValue().pausedSince = now;
+            }
+        }
+        // The first tick re-evaluates the state kept while paused.
+        mHandler.post(mTickRunnable);
+    }
+
+    /**
+     * Stops ticking while the activity is paused. The windows keep their current state, so
+     * throttled and frozen windows aren't resumed just to be paused again.
+     */
+    void pause() {
+        mRunning = false;
+        mHandler.removeCallbacks(mTickRunnable);
+        final long now = SystemClock.uptimeMillis();
+        for (Entry entry: mEntries.values()) {
+            // Nothing is composited while paused, it doesn't count as saved time.
+            accumulatePausedTime(entry, now);
+        }
+    }
+
+    /**
+     * Stops ticking and resumes every window.
+     */
+    void stop() {
+        mRunning = false;
+        mHandler.removeCallbacks(mTickRunnable);
+        for (WindowWidget window: mEntries.keySet()) {
+            activate(window, mEntries.get(window));
+        }
+        mEntries.clear();
+    }
+
+    /**
+     * Resumes the window right away and restarts its inactivity delay.
+     */
+    void onWindowInteraction(@NonNull WindowWidget aWindow) {
+        Entry entry = mEntries.get(aWindow);
+        if (entry != null) {
+            activate(aWindow, entry);
+        }
+    }
+
+    void onWindowRemoved(@NonNull WindowWidget aWindow) {
+        Entry entry = mEntries.remove(aWindow);
+        if (entry != null) {
+            accumulatePausedTime(entry, SystemClock.uptimeMillis());
+        }
+    }
+
+    /**
+     * @return Estimation of the compositor time saved so far in ms: time during which
+     * windows were visible but not composited.
+     */
+    long getSavedCompositorTime() {
+        long now = SystemClock.uptimeMillis();
+        long result = mSavedCompositorTime;
+        for (Entry entry: mEntries.values()) {
+            if (entry.pausedSince > 0) {
+                result += now - entry.pausedSince;
+            }
+        }
+        return result;
+    }
+
+    private Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+            if (mRunning) {
+                mHandler.postDelayed(this, TICK_INTERVAL_MS);
+            }
+        }
+    };
+
+    private void tick() {
+        final List<WindowWidget> windows = mProvider.getWindows();
+        final WindowWidget focused = mProvider.getFocusedWindow();
+        final long now = SystemClock.uptimeMillis();
+
+        Iterator<Map.Entry<WindowWidget, Entry>> it = mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<WindowWidget, Entry> item = it.next();
+            if (!windows.contains(item.getKey())) {
+                accumulatePausedTime(item.getValue(), now);
+                it.remove();
+            }
+        }
+
+        for (WindowWidget window: windows) {
+            Entry entry = mEntries.get(window);
+            if (entry == null) {
+                entry = new Entry();
+                entry.inactiveSince = now;
+                mEntries.put(window, entry);
+            }
+
+            if (!canThrottle(window, focused)) {
+                activate(window, entry);
+                continue;
+            }
+            if (mProvider.isCompositorPaused()) {
+                // All the compositors are already paused.
+                continue;
+            }
+            if (window.isContentThrottled() != (entry.state != STATE_ACTIVE) ||
+                    window.isContentFrozen() != (entry.state == STATE_FROZEN)) {
+                // Resumed or paused by someone else (e.g. a session or view change), start over.
+                activate(window, entry);
+            }
+
+            final long inactiveTime = now - entry.inactiveSince;
+            if (entry.state == STATE_ACTIVE && inactiveTime >= THROTTLE_DELAY_MS) {
+                // Keep the tab tray thumbnail up to date before the content stops updating.
+                window.captureImage();
+                entry.state = STATE_THROTTLED;
+                mThrottledCount++;
+                window.throttleContent();
+                if (window.isContentThrottled()) {
+                    entry.pausedSince = now;
+                }
+                Log.d(LOGTAG, "Window " + window.getHandle() + " throttled");
+
+            } else if (entry.state == STATE_THROTTLED && inactiveTime >= FREEZE_DELAY_MS) {
+                // The surface is only released once, after a long inactivity.
+                entry.state = STATE_FROZEN;
+                mFrozenCount++;
+                window.freezeContent();
+                Log.d(LOGTAG, "Window " + window.getHandle() + " frozen. Saved compositor time: " + getSavedCompositorTime() + "ms");
+            }
+        }
+    }
+
+    private boolean canThrottle(@NonNull WindowWidget aWindow, @Nullable WindowWidget aFocused) {
+        return aWindow != aFocused &&
+                aWindow.canFreezeContent() &&
+                aWindow.isVisible() &&
+                !aWindow.isHovered() &&
+                !aWindow.isMediaPlaying() &&
+                aWindow.getSession() != null &&
+                !aWindow.getSession().isInFullScreen();
+    }
+
+    private void activate(@NonNull WindowWidget aWindow, @NonNull Entry aEntry) {
+        final long now = SystemClock.uptimeMillis();
+        if (aEntry.state != STATE_ACTIVE) {
+            Log.d(LOGTAG, "Window " + aWindow.getHandle() + " resumed");
+        }
+        aEntry.state = STATE_ACTIVE;
+        aEntry.inactiveSince = now;
+        accumulatePausedTime(aEntry, now);
+        aWindow.unfreezeContent();
+        aWindow.unthrottleContent();
+    }
+
+    private void accumulatePausedTime(@NonNull Entry aEntry, long aNow) {
+        if (aEntry.pausedSince > 0) {
+            mSavedCompositorTime += aNow - aEntry.pausedSince;
+            aEntry.pausedSince = 0;
+        }
+    }
+
+    @NonNull
+    String getMetrics() {
+        return "throttled=" + mThrottledCount + ", frozen=" + mFrozenCount + ", savedCompositorTime=" + getSavedCompositorTime() + "ms";
+    }
+}
@@ -11,7 +11,9 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
@@ -63,6 +65,7 @@ import org.mozilla.vrbrowser.ui.widgets.dialogs.PromptDialogWidget;
 import org.mozilla.vrbrowser.ui.widgets.dialogs.SelectionActionWidget;
 import org.mozilla.vrbrowser.ui.widgets.menus.ContextMenuWidget;
 import org.mozilla.vrbrowser.ui.widgets.prompts.PromptData;
+import org.mozilla.vrbrowser.utils.LastFrameCache;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 import org.mozilla.vrbrowser.utils.ViewUtils;
@@ -71,6 +74,7 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
@@ -99,6 +103,8 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     public static final int DEACTIVATE_CURRENT_SESSION = 0;
     public static final int LEAVE_CURRENT_SESSION_ACTIVE = 1;
 
+    private static final long LAST_FRAME_TIMEOUT_MS = 100;
+
     private Surface mSurface;
     private int mWidth;
     private int mHeight;
@@ -116,6 +122,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     private int mBorderWidth;
     private Runnable mFirstDrawCallback;
     private boolean mIsInVRVideoMode;
+    private boolean mContentFrozen;
     private View mView;
     private Session mSession;
     private int mWindowId;
@@ -145,6 +152,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         default void onSessionChanged(@NonNull Session aOldSession, @NonNull Session aSession) {}
         default void onFullScreen(@NonNull WindowWidget aWindow, boolean aFullScreen) {}
         default void onVideoAvailabilityChanged(@NonNull WindowWidget aWindow) {}
+        default void onHoverChanged(@NonNull WindowWidget aWindow, boolean aHovered) {}
     }
 
     @Override
@@ -546,6 +554,65 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         callSurfaceChanged();
     }
 
+    /**
+     * Stops compositing the web content. The window texture keeps showing the last composited
+     * frame so the window looks the same while it doesn't cost any GPU time.
+     * Only applies while the window shows web content.
+     */
+    void freezeContent() {
+        if (mContentFrozen || !canFreezeContent()) {
+            return;
+        }
+        mContentFrozen = true;
+        mSession.surfaceDestroyed();
+    }
+
+    void unfreezeContent() {
+        if (!mContentFrozen) {
+            return;
+        }
+        mContentFrozen = false;
+        if (mView == null) {
+            resumeCompositor();
+        }
+    }
+
+    /**
+     * Stops painting the web content but keeps the compositor surface, so the window can be
+     * resumed without re-creating it.
+     */
+    void throttleContent() {
+        if (canFreezeContent()) {
+            mSession.setThrottled(true);
+        }
+    }
+
+    void unthrottleContent() {
+        if (mSession != null) {
+            mSession.setThrottled(false);
+        }
+    }
+
+    boolean isContentThrottled() {
+        return mSession != null && mSession.isThrottled();
+    }
+
+    boolean canFreezeContent() {
+        return mView == null && mSession != null && mSurface != null;
+    }
+
+    boolean isContentFrozen() {
+        return mContentFrozen;
+    }
+
+    boolean isHovered() {
+        return mHovered;
+    }
+
+    public boolean isMediaPlaying() {
+        return mViewModel.getIsMediaPlaying().getValue().get();
+    }
+
     public void enableVRVideoMode(int aVideoWidth, int aVideoHeight, boolean aResetBorder) {
         if (!mIsInVRVideoMode) {
             mWidthBackup = mWidth;
@@ -736,6 +803,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     }
 
     private void callSurfaceChanged() {
+        mContentFrozen = false;
         if (mSession != null && mSurface != null) {
             mSession.surfaceChanged(mSurface, mBorderWidth, mBorderWidth, mWidth - mBorderWidth * 2, mHeight - mBorderWidth * 2);
             mSession.updateLastUse();
@@ -812,9 +880,15 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         if (aEvent.getAction() == MotionEvent.ACTION_HOVER_ENTER) {
             mHovered = true;
             updateBorder();
+            for (WindowListener listener: mListeners) {
+                listener.onHoverChanged(this, true);
+            }
         } else if (aEvent.getAction() == MotionEvent.ACTION_HOVER_EXIT) {
             mHovered = false;
             updateBorder();
+            for (WindowListener listener: mListeners) {
+                listener.onHoverChanged(this, false);
+            }
         }
 
         if (!mActive) {
@@ -1102,7 +1176,6 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
 
         mWidgetManager.setIsServoSession(isInstanceOfServoSession(aSession));
         Log.d(LOGTAG, "surfaceChanged: " + aSession.hashCode());
-        callSurfaceChanged();
         aSession.getTextInput().setView(this);
 
         mViewModel.setIsPrivateSession(aSession.getSettings().getUsePrivateMode());
@@ -1121,6 +1194,72 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         }
 
         waitForFirstPaint();
+        // The last frame must be drawn before Gecko connects to the surface, so hold the surface
+        // while a cached frame is decoded. Cache misses complete right away.
+        final Session session = mSession;
+        loadLastFrame(session).thenAccept(frame -> {
+            if (mSession != session || session.getGeckoSession() != aSession) {
+                // Superseded by another session change.
+                return;
+            }
+            boolean showLastFrame = frame != null && drawLastFrame(frame);
+            callSurfaceChanged();
+            if (showLastFrame) {
+                // Composite the last frame until Gecko renders the restored session on top of it.
+                setFirstPaintReady(true);
+                mWidgetManager.updateWidget(this);
+            }
+        });
+    }
+
+    /**
+     * Looks up the cached last frame of a restored session, in memory or on disk.
+     * Not supported with layers, where the surface is owned by the compositor.
+     * @return A future completed in the UI thread with the frame, or null if it can't be drawn.
+     */
+    private CompletableFuture<Bitmap> loadLastFrame(@NonNull Session aSession) {
+        if (mTexture == null || mView != null || mRenderer != null || aSession.isPrivateMode() || aSession.isFirstContentfulPaint()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Bitmap> frame = LastFrameCache.getInstance(getContext()).loadFrame(aSession.getId());
+        if (!frame.isDone()) {
+            // The frame is cached on disk, don't delay the restored content if the disk is busy.
+            CompletableFuture<Bitmap> result = new CompletableFuture<>();
+            frame.thenAccept(result::complete);
+            postDelayed(() -> result.complete(null), LAST_FRAME_TIMEOUT_MS);
+            return result;
+        }
+        return frame;
+    }
+
+    /**
+     * Draws the cached last frame of a restored session into the window texture, so it can be
+     * composited as a placeholder until Gecko's first composite replaces it.
+     * @return true if the placeholder frame was drawn.
+     */
+    private boolean drawLastFrame(@NonNull Bitmap aFrame) {
+        if (mTexture == null || mView != null) {
+            return false;
+        }
+        // Use a temporary producer, the texture only accepts a new one (Gecko) once it's released.
+        // Releasing it doesn't drop the queued frame: disconnecting a producer only marks the
+        // queued buffers as stale (API 24+), the consumer still acquires them.
+        Surface surface = new Surface(mTexture);
+        try {
+            Canvas canvas = surface.lockHardwareCanvas();
+            canvas.drawColor(Color.WHITE);
+            Rect bounds = new Rect(mBorderWidth, mBorderWidth, mWidth - mBorderWidth, mHeight - mBorderWidth);
+            canvas.drawBitmap(aFrame, null, bounds, null);
+            surface.unlockCanvasAndPost(canvas);
+            return true;
+
+        } catch (Exception ex) {
+            Log.e(LOGTAG, "Unable to draw the last frame: " + ex.getMessage());
+            return false;
+
+        } finally {
+            surface.release();
+        }
     }
 
     @Override
@@ -1597,7 +1736,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     @Override
     public void onCloseRequest(@NonNull GeckoSession geckoSession) {
         Session session = SessionStore.get().getSession(geckoSession);
-        mWidgetManager.getWindows().onTabsClose(Collections.singletonList(session));
+        mWidgetManager.getWindows().closeTabs(Collections.singletonList(session));
     }
 
     @Override
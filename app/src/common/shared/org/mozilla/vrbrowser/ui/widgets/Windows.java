@@ -25,7 +25,10 @@ import org.mozilla.vrbrowser.browser.components.GeckoEngineSession;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionState;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
+import org.mozilla.vrbrowser.browser.engine.TabDescriptor;
+import org.mozilla.vrbrowser.db.KeyValueStore;
 import org.mozilla.vrbrowser.downloads.DownloadsManager;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.ui.widgets.dialogs.PromptDialogWidget;
 import org.mozilla.vrbrowser.ui.widgets.dialogs.UIDialog;
@@ -36,10 +39,8 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.Writer;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -71,6 +72,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
 
     private static final String WINDOWS_SAVE_FILENAME = "windows_state.json";
+    private static final String WINDOWS_STATE_KEY = "windows_state";
 
     private static final int TAB_ADDED_NOTIFICATION_ID = 0;
     private static final int TAB_SENT_NOTIFICATION_ID = 1;
@@ -137,12 +139,15 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     private Services mServices;
     private PromptDialogWidget mNoInternetDialog;
     private boolean mCompositorPaused = false;
+    private boolean mBackgroundWindowsPaused = false;
+    private WindowThrottler mThrottler;
     private WindowsState mWindowsState;
     private boolean mIsRestoreEnabled;
     private boolean mAfterRestore;
     private String mAddedTabUri;
     private @NewTabLocation int mAddedTabLocation = OPEN_IN_FOREGROUND;
     private DownloadsManager mDownloadsManager;
+    private KeyValueStore mKeyValueStore;
     private ConnectivityReceiver mConnectivityReceived;
 
     @IntDef(value = { NONE, BOOKMARKS, HISTORY, DOWNLOADS, ADDONS})
@@ -196,63 +201,100 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
         mDownloadsManager = mWidgetManager.getServicesProvider().getDownloadsManager();
 
+        mKeyValueStore = mWidgetManager.getServicesProvider().getKeyValueStore();
         mIsRestoreEnabled = SettingsStore.getInstance(mContext).isRestoreTabsEnabled();
         mWindowsState = restoreState();
         restoreWindows();
-    }
 
-    public void saveState() {
-        File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
-        try (Writer writer = new FileWriter(file)) {
-            WindowsState state = new WindowsState();
-            state.privateMode = mPrivateMode;
-            state.focusedWindowPlacement = mFocusedWindow.isFullScreen() ?  mFocusedWindow.getWindowPlacementBeforeFullscreen() : mFocusedWindow.getWindowPlacement();
-            ArrayList<Session> sessions = SessionStore.get().getSortedSessions(false);
-            state.tabs = sessions.stream()
-                    .map(Session::getSessionState)
-                    .filter(sessionState -> HistoryStore.getBLOCK_LIST().stream().noneMatch(uri ->
-                        sessionState.mUri != null && sessionState.mUri.startsWith(uri)
-                    ))
-                    .collect(Collectors.toCollection(ArrayList::new));
-            for (WindowWidget window : mRegularWindows) {
-                if (window.getSession() != null) {
-                    WindowState windowState = new WindowState();
-                    windowState.load(window, state, state.tabs.indexOf(window.getSession().getSessionState()));
-                    state.regularWindowsState.add(windowState);
-                }
+        mThrottler = new WindowThrottler(new WindowThrottler.WindowsProvider() {
+            @NonNull
+            @Override
+            public List<WindowWidget> getWindows() {
+                return getCurrentWindows();
             }
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            gson.toJson(state, writer);
 
-            Log.d(LOGTAG, "Windows state saved");
+            @Nullable
+            @Override
+            public WindowWidget getFocusedWindow() {
+                return mFocusedWindow;
+            }
 
-        } catch (IOException e) {
-            Log.e(LOGTAG, "Error saving windows state: " + e.getLocalizedMessage());
-            file.delete();
+            @Override
+            public boolean isCompositorPaused() {
+                return mCompositorPaused;
+            }
+        });
+        mThrottler.start();
+    }
+
+    public void saveState() {
+        WindowsState state = new WindowsState();
+        state.privateMode = mPrivateMode;
+        state.focusedWindowPlacement = mFocusedWindow.isFullScreen() ?  mFocusedWindow.getWindowPlacementBeforeFullscreen() : mFocusedWindow.getWindowPlacement();
+        ArrayList<TabDescriptor> tabs = SessionStore.get().getSortedTabs(false);
+        state.tabs = tabs.stream()
+                .map(TabDescriptor::getSessionState)
+                .filter(sessionState -> !HistoryStore.isBlocked(sessionState.mUri))
+                .collect(Collectors.toCollection(ArrayList::new));
+        for (WindowWidget window : mRegularWindows) {
+            if (window.getSession() != null) {
+                WindowState windowState = new WindowState();
+                windowState.load(window, state, state.tabs.indexOf(window.getSession().getSessionState()));
+                state.regularWindowsState.add(windowState);
+            }
         }
+        Gson gson = new GsonBuilder().create();
+        mKeyValueStore.putString(WINDOWS_STATE_KEY, gson.toJson(state));
+
+        Log.d(LOGTAG, "Windows state saved");
     }
 
     private WindowsState restoreState() {
         WindowsState restored = null;
 
-        File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
-        try (Reader reader = new FileReader(file)) {
+        String json = mKeyValueStore.getString(WINDOWS_STATE_KEY, null);
+        // The state is only restored once, it's saved again when the app goes to the background.
+        mKeyValueStore.remove(WINDOWS_STATE_KEY);
+        try {
             Gson gson = new GsonBuilder().create();
             Type type = new TypeToken<WindowsState>() {}.getType();
-            restored = gson.fromJson(reader, type);
+            if (json != null) {
+                restored = gson.fromJson(json, type);
+
+            } else {
+                restored = restoreLegacyState(gson, type);
+            }
 
-            Log.d(LOGTAG, "Windows state restored");
+            if (restored != null) {
+                Log.d(LOGTAG, "Windows state restored");
+            }
 
         } catch (Exception e) {
             Log.w(LOGTAG, "Error restoring windows state: " + e.getLocalizedMessage());
-
-        } finally {
-            file.delete();
         }
 
         return restored;
     }
 
+    /**
+     * Reads the state saved to a file by the previous versions.
+     */
+    @Nullable
+    private WindowsState restoreLegacyState(@NonNull Gson aGson, @NonNull Type aType) throws IOException {
+        File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
+        try (MainThreadIO.Trace trace = MainThreadIO.trace("Windows.restoreState", MainThreadIO.DISK_READ)) {
+            if (!file.exists()) {
+                return null;
+            }
+            try (Reader reader = new FileReader(file)) {
+                return aGson.fromJson(reader, aType);
+
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
     public void setDelegate(Delegate aDelegate) {
         mDelegate = aDelegate;
     }
@@ -465,7 +507,18 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             if (prev != null && getCurrentWindows().contains(prev)) {
                 prev.setActiveWindow(false);
             }
+            // The previous window may belong to the other mode after a private mode switch.
+            if (prev != null && mBackgroundWindowsPaused &&
+                    (mRegularWindows.contains(prev) || mPrivateWindows.contains(prev))) {
+                prev.onPause();
+            }
             mFocusedWindow.setActiveWindow(true);
+            if (mThrottler != null) {
+                mThrottler.onWindowInteraction(mFocusedWindow);
+            }
+            if (mBackgroundWindowsPaused) {
+                mFocusedWindow.onResume();
+            }
             if (mDelegate != null) {
                 mDelegate.onFocusedWindowChanged(mFocusedWindow, prev);
             }
@@ -500,6 +553,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
     public void onPause() {
         mIsPaused = true;
+        Log.d(LOGTAG, "Window throttling: " + mThrottler.getMetrics());
+        mThrottler.pause();
 
         saveState();
     }
@@ -509,6 +564,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         if (mCompositorPaused) {
             resumeCompositor();
         }
+        mThrottler.start();
 
         GleanMetricsService.resetOpenedWindowsCount(mRegularWindows.size(), false);
         GleanMetricsService.resetOpenedWindowsCount(mPrivateWindows.size(), true);
@@ -524,6 +580,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             mTabsWidget = null;
         }
         mDelegate = null;
+        mThrottler.stop();
         for (WindowWidget window: mRegularWindows) {
             window.close();
         }
@@ -567,7 +624,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     }
 
     public void exitImmersiveMode() {
-        if (mIsPaused) {
+        if (mIsPaused || mBackgroundWindowsPaused) {
             return;
         }
 
@@ -587,6 +644,39 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         }
     }
 
+    /**
+     * Deactivates the sessions of the windows that are not focused, in both the regular and
+     * the private mode, so they stop painting. Used to reduce the GPU load when the frame rate drops.
+     */
+    public void setBackgroundWindowsPaused(boolean aPaused) {
+        if (mBackgroundWindowsPaused == aPaused) {
+            return;
+        }
+        mBackgroundWindowsPaused = aPaused;
+        if (mIsPaused) {
+            return;
+        }
+        setBackgroundWindowsPaused(mRegularWindows, aPaused);
+        setBackgroundWindowsPaused(mPrivateWindows, aPaused);
+    }
+
+    private void setBackgroundWindowsPaused(@NonNull List<WindowWidget> aWindows, boolean aPaused) {
+        for (WindowWidget window: aWindows) {
+            if (window == mFocusedWindow) {
+                continue;
+            }
+            if (aPaused) {
+                window.onPause();
+            } else {
+                window.onResume();
+            }
+        }
+    }
+
+    public boolean areBackgroundWindowsPaused() {
+        return mBackgroundWindowsPaused;
+    }
+
     public void enterPrivateMode() {
         if (mPrivateMode) {
             return;
@@ -613,7 +703,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
             // Make sure that if the Window session it's been closed we restore a valid session
             if (SessionStore.get().getSession(window.getSession().getId()) == null) {
-                onTabsClose(Collections.singletonList(window.getSession()));
+                closeTabs(Collections.singletonList(window.getSession()));
             }
         }
 
@@ -635,6 +725,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             return;
         }
         mPrivateMode = false;
+        // Don't keep login lookups made by private pages around.
+        mWidgetManager.getServicesProvider().getLoginStorage().clearCache();
 
         if (mFocusedWindow != null) {
             mPrivateWindowPlacement = mFocusedWindow.getWindowPlacement();
@@ -656,7 +748,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
             // Make sure that if the Window session it's been closed we restore a valid session
             if (SessionStore.get().getSession(window.getSession().getId()) == null) {
-                onTabsClose(Collections.singletonList(window.getSession()));
+                closeTabs(Collections.singletonList(window.getSession()));
             }
         }
         WindowWidget window = getWindowWithPlacement(mRegularWindowPlacement);
@@ -769,10 +861,11 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
     public void restoreSessions() {
         if (mIsRestoreEnabled && mWindowsState != null) {
-            ArrayList<Session> restoredSessions = new ArrayList<>();
+            // Only the tabs shown in a window are materialized, the rest are restored as descriptors.
+            ArrayList<TabDescriptor> restoredTabs = new ArrayList<>();
             if (mWindowsState.tabs != null) {
                 mWindowsState.tabs.forEach(state -> {
-                    restoredSessions.add(SessionStore.get().createSuspendedSession(state));
+                    restoredTabs.add(SessionStore.get().restoreTab(state));
                     GleanMetricsService.Tabs.openedCounter(GleanMetricsService.Tabs.TabSource.PRE_EXISTING);
                 });
             }
@@ -780,9 +873,9 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             for (WindowState windowState : mWindowsState.regularWindowsState) {
                 WindowWidget targetWindow = getWindowWithPlacement(windowState.placement);
                 if (targetWindow != null) {
-                    if (windowState.tabIndex >= 0 && windowState.tabIndex < restoredSessions.size()) {
+                    if (windowState.tabIndex >= 0 && windowState.tabIndex < restoredTabs.size()) {
                         Session defaultSession = targetWindow.getSession();
-                        Session session = restoredSessions.get(windowState.tabIndex);
+                        Session session = SessionStore.get().getSession(restoredTabs.get(windowState.tabIndex));
                         targetWindow.setSession(session, WindowWidget.DEACTIVATE_CURRENT_SESSION);
                         session.setActive(true);
                         // Destroy the default blank session
@@ -811,6 +904,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
 
     private void removeWindow(@NonNull WindowWidget aWindow) {
         BitmapCache.getInstance(mContext).removeBitmap(aWindow.getSession().getId());
+        mThrottler.onWindowRemoved(aWindow);
         mWidgetManager.removeWidget(aWindow);
         mRegularWindows.remove(aWindow);
         mPrivateWindows.remove(aWindow);
@@ -1247,6 +1341,20 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         }
     }
 
+    @Override
+    public void onHoverChanged(@NonNull WindowWidget aWindow, boolean aHovered) {
+        if (aWindow == mFocusedWindow || aWindow.getSession() == null) {
+            return;
+        }
+        // Hovering an unfocused window usually precedes focusing it.
+        if (aHovered) {
+            mThrottler.onWindowInteraction(aWindow);
+            SessionStore.get().prewarmSession(aWindow.getSession());
+        } else {
+            SessionStore.get().cancelPrewarm(aWindow.getSession());
+        }
+    }
+
     @Override
     public void onFullScreen(@NonNull WindowWidget aWindow, boolean aFullScreen) {
         if (aFullScreen) {
@@ -1369,7 +1477,24 @@ public void selectTab(@NonNull Session aTab) {
     }
 
     @Override
-    public void onTabsClose(List<Session> aTabs) {
+    public void onTabsClose(List<TabDescriptor> aTabs) {
+        ArrayList<Session> sessions = new ArrayList<>();
+        BitmapCache cache = BitmapCache.getInstance(mContext);
+        for (TabDescriptor tab: aTabs) {
+            if (tab.getSession() != null) {
+                sessions.add(tab.getSession());
+            } else {
+                // Tabs that were never materialized are not shown in any window.
+                cache.removeBitmap(tab.getId());
+                SessionStore.get().destroySession(tab.getId());
+            }
+        }
+        if (!sessions.isEmpty()) {
+            closeTabs(sessions);
+        }
+    }
+
+    public void closeTabs(List<Session> aTabs) {
         closeTabs(aTabs, mPrivateMode, true);
     }
 
@@ -1384,9 +1509,10 @@ public void selectTab(@NonNull Session aTab) {
     private void closeTabs(List<Session> aTabs, boolean privateMode, boolean hidePanel) {
         WindowWidget targetWindow = mFocusedWindow;
         // Prepare available tabs to choose from
-        ArrayList<Session> available = SessionStore.get().getSortedSessions(privateMode);
-        available.removeAll(aTabs);
-        available.removeIf(session -> getWindowWithSession(session, privateMode) != null);
+        // Restored tabs that haven't been materialized can't be closed or shown in a window.
+        ArrayList<TabDescriptor> available = SessionStore.get().getSortedTabs(privateMode);
+        available.removeIf(tab -> tab.getSession() != null &&
+                (aTabs.contains(tab.getSession()) || getWindowWithSession(tab.getSession(), privateMode) != null));
 
         // Sort windows by priority to take an available tab
         WindowWidget front = getFrontWindow(privateMode);
@@ -1417,7 +1543,7 @@ public void selectTab(@NonNull Session aTab) {
             }
             if (available.size() > 0) {
                 // Window contains a closed tab and we have a tab available from the list
-                Session tab = available.get(0);
+                Session tab = SessionStore.get().getSession(available.get(0));
                 if (tab != null) {
                     setFirstPaint(window, tab);
                     window.setSession(tab, WindowWidget.LEAVE_CURRENT_SESSION_ACTIVE, hidePanel);
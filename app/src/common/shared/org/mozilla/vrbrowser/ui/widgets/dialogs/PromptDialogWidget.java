@@ -7,12 +7,11 @@ package org.mozilla.vrbrowser.ui.widgets.dialogs;
 
 import android.content.Context;
 import android.content.res.Configuration;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
@@ -20,14 +19,11 @@ import androidx.annotation.StringRes;
 import androidx.databinding.DataBindingUtil;
 
 import org.mozilla.vrbrowser.R;
-import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.databinding.PromptDialogBinding;
 import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
-import org.mozilla.vrbrowser.utils.BitmapCache;
+import org.mozilla.vrbrowser.utils.ImagePipeline;
 import org.mozilla.vrbrowser.utils.ViewUtils;
 
-import java.io.IOException;
-import java.net.URL;
 
 public class PromptDialogWidget extends UIDialog {
 
@@ -123,30 +119,13 @@ public class PromptDialogWidget extends UIDialog {
     }
 
     public void setIcon(String iconUrl) {
-        BitmapCache.getInstance(getContext()).getBitmap(iconUrl).thenAccept(bitmap -> {
-            if (bitmap == null) {
-                ((VRBrowserApplication) getContext().getApplicationContext()).getExecutors().backgroundThread().post(() -> {
-                    try {
-                        URL url = new URL(iconUrl);
-                        Bitmap icon = BitmapFactory.decodeStream(url.openStream());
-                        ((VRBrowserApplication) getContext().getApplicationContext()).getExecutors().mainThread().execute(() -> {
-                            BitmapDrawable iconDrawable = new BitmapDrawable(getContext().getResources(), icon);
-                            BitmapCache.getInstance(getContext()).addBitmap(iconUrl, icon);
-                            mBinding.icon.setImageDrawable(iconDrawable);
-                        });
-
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                });
-
-            } else {
-                BitmapDrawable iconDrawable = new BitmapDrawable(getContext().getResources(), bitmap);
-                mBinding.icon.setImageDrawable(iconDrawable);
+        // Decoded to the icon container size, the icon is fitted inside it.
+        ViewGroup.LayoutParams params = mBinding.imageContainer.getLayoutParams();
+        ImagePipeline.ImageRequest request = new ImagePipeline.ImageRequest(iconUrl).size(params.width, params.height);
+        ImagePipeline.getInstance(getContext()).load(request).thenAccept(icon -> {
+            if (icon != null) {
+                mBinding.icon.setImageDrawable(new BitmapDrawable(getContext().getResources(), icon));
             }
-        }).exceptionally(throwable -> {
-            throwable.printStackTrace();
-            return null;
         });
     }
 
@@ -9,6 +9,7 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 
+import androidx.annotation.NonNull;
 import androidx.databinding.DataBindingUtil;
 
 import org.mozilla.vrbrowser.BuildConfig;
@@ -16,13 +17,19 @@ import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.databinding.OptionsDeveloperBinding;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
+import org.mozilla.vrbrowser.performance.MainThreadWatchdog;
 import org.mozilla.vrbrowser.ui.views.settings.SwitchSetting;
 import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
 
+import java.util.List;
+
 import static org.mozilla.vrbrowser.utils.ServoUtils.isServoAvailable;
 
 class DeveloperOptionsView extends SettingsView {
 
+    private static final int MAX_STALL_GROUPS_SHOWN = 5;
+
     private OptionsDeveloperBinding mBinding;
 
     public DeveloperOptionsView(Context aContext, WidgetManagerDelegate aWidgetManager) {
@@ -63,6 +70,9 @@ class DeveloperOptionsView extends SettingsView {
         // Hide Performance Monitor switch until it can handle multiple windows.
         mBinding.performanceMonitorSwitch.setVisibility(View.GONE);
 
+        mBinding.mainThreadWatchdogSwitch.setOnCheckedChangeListener(mMainThreadWatchdogListener);
+        setMainThreadWatchdog(SettingsStore.getInstance(getContext()).isMainThreadWatchdogEnabled(), false);
+
         mBinding.hardwareAccelerationSwitch.setOnCheckedChangeListener(mUIHardwareAccelerationListener);
         setUIHardwareAcceleration(SettingsStore.getInstance(getContext()).isUIHardwareAccelerationEnabled(), false);
 
@@ -85,6 +95,13 @@ class DeveloperOptionsView extends SettingsView {
         }
     }
 
+    @Override
+    public void onShown() {
+        super.onShown();
+
+        updateMainThreadStalls(mWidgetManager.getServicesProvider().getMainThreadWatchdog());
+    }
+
     private SwitchSetting.OnCheckedChangeListener mRemoteDebuggingListener = (compoundButton, value, doApply) -> {
         setRemoteDebugging(value, doApply);
     };
@@ -93,6 +110,10 @@ class DeveloperOptionsView extends SettingsView {
         setPerformance(value, doApply);
     };
 
+    private SwitchSetting.OnCheckedChangeListener mMainThreadWatchdogListener = (compoundButton, value, doApply) -> {
+        setMainThreadWatchdog(value, doApply);
+    };
+
     private SwitchSetting.OnCheckedChangeListener mDebugLogginListener = (compoundButton, value, doApply) -> {
         setDebugLogging(value, doApply);
     };
@@ -127,6 +148,10 @@ class DeveloperOptionsView extends SettingsView {
             setPerformance(SettingsStore.PERFORMANCE_MONITOR_DEFAULT, true);
         }
 
+        if (mBinding.mainThreadWatchdogSwitch.isChecked() != SettingsStore.MAIN_THREAD_WATCHDOG_DEFAULT) {
+            setMainThreadWatchdog(SettingsStore.MAIN_THREAD_WATCHDOG_DEFAULT, true);
+        }
+
         if (mBinding.debugLoggingSwitch.isChecked() != SettingsStore.DEBUG_LOGGING_DEFAULT) {
             setDebugLogging(SettingsStore.DEBUG_LOGGING_DEFAULT, true);
             restart = true;
@@ -184,6 +209,51 @@ class DeveloperOptionsView extends SettingsView {
         }
     }
 
+    private void setMainThreadWatchdog(boolean value, boolean doApply) {
+        mBinding.mainThreadWatchdogSwitch.setOnCheckedChangeListener(null);
+        mBinding.mainThreadWatchdogSwitch.setValue(value, false);
+        mBinding.mainThreadWatchdogSwitch.setOnCheckedChangeListener(mMainThreadWatchdogListener);
+
+        MainThreadWatchdog watchdog = mWidgetManager.getServicesProvider().getMainThreadWatchdog();
+        if (doApply) {
+            SettingsStore.getInstance(getContext()).setMainThreadWatchdogEnabled(value);
+            if (value) {
+                watchdog.start();
+            } else {
+                watchdog.stop();
+            }
+        }
+        updateMainThreadStalls(watchdog);
+    }
+
+    private void updateMainThreadStalls(@NonNull MainThreadWatchdog aWatchdog) {
+        if (!aWatchdog.isStarted()) {
+            mBinding.mainThreadStallsText.setVisibility(View.GONE);
+            return;
+        }
+        List<MainThreadWatchdog.StallGroup> groups = aWatchdog.getStallGroups();
+        List<MainThreadIO.Record> records = MainThreadIO.getRecords();
+        if (groups.isEmpty() && records.isEmpty()) {
+            mBinding.mainThreadStallsText.setText(R.string.developer_options_main_thread_watchdog_no_stalls);
+        } else {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < Math.min(MAX_STALL_GROUPS_SHOWN, groups.size()); i++) {
+                if (builder.length() > 0) {
+                    builder.append('\n');
+                }
+                builder.append(groups.get(i));
+            }
+            for (int i = 0; i < Math.min(MAX_STALL_GROUPS_SHOWN, records.size()); i++) {
+                if (builder.length() > 0) {
+                    builder.append('\n');
+                }
+                builder.append(records.get(i));
+            }
+            mBinding.mainThreadStallsText.setText(builder.toString());
+        }
+        mBinding.mainThreadStallsText.setVisibility(View.VISIBLE);
+    }
+
     private void setDebugLogging(boolean value, boolean doApply) {
         mBinding.debugLoggingSwitch.setOnCheckedChangeListener(null);
         mBinding.debugLoggingSwitch.setValue(value, false);
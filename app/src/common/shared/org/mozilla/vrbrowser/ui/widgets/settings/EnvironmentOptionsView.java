@@ -6,8 +6,6 @@
 package org.mozilla.vrbrowser.ui.widgets.settings;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.view.LayoutInflater;
 
@@ -15,20 +13,17 @@ import androidx.annotation.NonNull;
 import androidx.databinding.DataBindingUtil;
 
 import org.mozilla.vrbrowser.R;
-import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.databinding.OptionsEnvironmentBinding;
 import org.mozilla.vrbrowser.ui.views.settings.ImageRadioGroupSetting;
 import org.mozilla.vrbrowser.ui.views.settings.SwitchSetting;
 import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
-import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.Environment;
 import org.mozilla.vrbrowser.utils.EnvironmentUtils;
 import org.mozilla.vrbrowser.utils.EnvironmentsManager;
+import org.mozilla.vrbrowser.utils.ImagePipeline;
 
-import java.io.IOException;
-import java.net.URL;
 import java.util.Arrays;
 
 class EnvironmentOptionsView extends SettingsView implements EnvironmentsManager.EnvironmentListener {
@@ -147,42 +142,23 @@ class EnvironmentOptionsView extends SettingsView implements EnvironmentsManager
 
         Environment[] properties = EnvironmentUtils.getExternalEnvironments(getContext());
         if (properties != null) {
+            int thumbnailSize = getResources().getDimensionPixelSize(R.dimen.settings_radio_item_image_size);
             Arrays.stream(properties).forEach(environment -> {
                 mEnvironmentsRadio.addOption(
                         environment.getValue(),
                         environment.getTitle(),
                         getContext().getDrawable(R.color.asphalt));
 
-                BitmapCache.getInstance(getContext()).getBitmap(environment.getThumbnail()).thenAccept(bitmap -> {
-                    if (bitmap == null) {
-                        ((VRBrowserApplication) getContext().getApplicationContext()).getExecutors().backgroundThread().post(() -> {
-                            try {
-                                URL url = new URL(environment.getThumbnail());
-                                Bitmap thumbnail = BitmapFactory.decodeStream(url.openStream());
-                                ((VRBrowserApplication) getContext().getApplicationContext()).getExecutors().mainThread().execute(() -> {
-                                    mEnvironmentsRadio.updateOption(
-                                            environment.getValue(),
-                                            environment.getTitle(),
-                                            new BitmapDrawable(getContext().getResources(), thumbnail)
-                                    );
-                                    BitmapCache.getInstance(getContext()).addBitmap(environment.getThumbnail(), thumbnail);
-                                });
-
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        });
-
-                    } else {
+                ImagePipeline.ImageRequest request = new ImagePipeline.ImageRequest(environment.getThumbnail())
+                        .size(thumbnailSize, thumbnailSize);
+                ImagePipeline.getInstance(getContext()).load(request).thenAccept(thumbnail -> {
+                    if (thumbnail != null) {
                         mEnvironmentsRadio.updateOption(
                                 environment.getValue(),
-                                environment.getValue(),
-                                new BitmapDrawable(getContext().getResources(), bitmap)
+                                environment.getTitle(),
+                                new BitmapDrawable(getContext().getResources(), thumbnail)
                         );
                     }
-                }).exceptionally(throwable -> {
-                    throwable.printStackTrace();
-                    return null;
                 });
             });
         }
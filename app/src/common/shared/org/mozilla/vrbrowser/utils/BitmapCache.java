@@ -17,10 +17,14 @@ import org.mozilla.vrbrowser.VRBrowserApplication;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedList;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
 public class BitmapCache {
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_PREFETCH = 1;
+
     private Context mContext;
     private LruCache<String, Bitmap> mMemoryCache;
     private DiskLruCache mDiskCache;
@@ -32,6 +36,21 @@ public class BitmapCache {
     private SurfaceTexture mCaptureSurfaceTexture;
     private Surface mCaptureSurface;
     private boolean mCapturedAcquired;
+    private final LinkedList<DecodeRequest> mPendingDecodes = new LinkedList<>();
+
+    private static class DecodeRequest {
+        String key;
+        int width;
+        int height;
+        CompletableFuture<Bitmap> result;
+
+        DecodeRequest(String aKey, int aWidth, int aHeight) {
+            key = aKey;
+            width = aWidth;
+            height = aHeight;
+            result = new CompletableFuture<>();
+        }
+    }
 
     public static BitmapCache getInstance(Context aContext) {
         return ((VRBrowserApplication)aContext.getApplicationContext()).getBitmapCache();
@@ -101,38 +120,102 @@ public class BitmapCache {
     }
 
     public @NonNull CompletableFuture<Bitmap> getBitmap(@NonNull String aKey) {
+        return getBitmap(aKey, 0, 0, PRIORITY_VISIBLE);
+    }
+
+    /**
+     * Gets a cached bitmap, decoding it from disk if required. Disk decodes are downsampled to the
+     * closest power of two that is not smaller than the requested size. Visible requests are decoded
+     * before any pending prefetch request, and a request cancelled before its decode starts is skipped.
+     * Note that the memory cache keeps the downsampled bitmap for the key.
+     * @param aKey Cache key.
+     * @param aWidth Target width in pixels or 0 to decode the full size bitmap.
+     * @param aHeight Target height in pixels or 0 to decode the full size bitmap.
+     * @param aPriority PRIORITY_VISIBLE or PRIORITY_PREFETCH.
+     * @return A future completed in the main thread with the bitmap or null if it's not cached.
+     */
+    public @NonNull CompletableFuture<Bitmap> getBitmap(@NonNull String aKey, int aWidth, int aHeight, int aPriority) {
         Bitmap cached = mMemoryCache.get(aKey);
         if (cached != null) {
             return CompletableFuture.completedFuture(cached);
-        } else {
-            CompletableFuture<Bitmap> result = new CompletableFuture<>();
-            runIO(() -> {
-                try (DiskLruCache.Snapshot snapshot = mDiskCache.get(aKey)){
+        }
+
+        DecodeRequest request = new DecodeRequest(aKey, aWidth, aHeight);
+        synchronized (mPendingDecodes) {
+            if (aPriority == PRIORITY_VISIBLE) {
+                // Most recently requested visible items go first, they are likely to be still on screen.
+                mPendingDecodes.addFirst(request);
+            } else {
+                mPendingDecodes.addLast(request);
+            }
+        }
+        runIO(this::decodeNext);
+        return request.result;
+    }
+
+    private void decodeNext() {
+        DecodeRequest request;
+        synchronized (mPendingDecodes) {
+            request = mPendingDecodes.pollFirst();
+        }
+        if (request == null || request.result.isDone()) {
+            return;
+        }
+
+        Bitmap cached = mMemoryCache.get(request.key);
+        if (cached != null) {
+            // A previous request already decoded this key.
+            mMainThreadExecutor.execute(() -> request.result.complete(cached));
+            return;
+        }
+
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            if (request.width > 0 && request.height > 0) {
+                options.inJustDecodeBounds = true;
+                try (DiskLruCache.Snapshot snapshot = mDiskCache.get(request.key)) {
                     if (snapshot != null) {
-                        Bitmap bitmap = BitmapFactory.decodeStream(snapshot.getInputStream(0));
-                        if (bitmap != null) {
-                            mMainThreadExecutor.execute(() -> {
-                                if (mMemoryCache.get(aKey) == null) {
-                                    // Do not update cache if it already contains a value
-                                    // A tab could have saved a new image while we were loading the cached disk image.
-                                    mMemoryCache.put(aKey, bitmap);
-                                }
-                                result.complete(bitmap);
-                            });
-
-                            return;
-                        }
+                        BitmapFactory.decodeStream(snapshot.getInputStream(0), null, options);
                     }
                 }
-                catch (Exception ex) {
-                    Log.e(LOGTAG, "Failed to get Bitmap from DiskLruCache:" + ex.getMessage());
+                options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight, request.width, request.height);
+                options.inJustDecodeBounds = false;
+            }
+
+            try (DiskLruCache.Snapshot snapshot = mDiskCache.get(request.key)) {
+                if (snapshot != null && !request.result.isDone()) {
+                    Bitmap bitmap = BitmapFactory.decodeStream(snapshot.getInputStream(0), null, options);
+                    if (bitmap != null) {
+                        mMainThreadExecutor.execute(() -> {
+                            if (mMemoryCache.get(request.key) == null) {
+                                // Do not update cache if it already contains a value
+                                // A tab could have saved a new image while we were loading the cached disk image.
+                                mMemoryCache.put(request.key, bitmap);
+                            }
+                            request.result.complete(bitmap);
+                        });
+
+                        return;
+                    }
                 }
+            }
+        }
+        catch (Exception ex) {
+            Log.e(LOGTAG, "Failed to get Bitmap from DiskLruCache:" + ex.getMessage());
+        }
 
-                mMainThreadExecutor.execute(() -> result.complete(null));
+        mMainThreadExecutor.execute(() -> request.result.complete(null));
+    }
 
-            });
-            return result;
+    private static int computeSampleSize(int aWidth, int aHeight, int aTargetWidth, int aTargetHeight) {
+        int sampleSize = 1;
+        if (aWidth <= 0 || aHeight <= 0) {
+            return sampleSize;
+        }
+        while ((aWidth / (sampleSize * 2)) >= aTargetWidth && (aHeight / (sampleSize * 2)) >= aTargetHeight) {
+            sampleSize *= 2;
         }
+        return sampleSize;
     }
 
     public void removeBitmap(@NonNull String aKey) {
@@ -8,13 +8,10 @@ import androidx.annotation.Nullable;
 import org.mozilla.vrbrowser.BuildConfig;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.SettingsStore;
+import org.mozilla.vrbrowser.performance.MainThreadIO;
 
 import java.io.File;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 public class EnvironmentUtils {
 
@@ -67,23 +64,25 @@ public class EnvironmentUtils {
      */
     @Nullable
     public static String getExternalEnvPath(@NonNull Context context, @NonNull String envId) {
-        File outputFolder = context.getExternalFilesDir(ENVS_FOLDER);
-        if (outputFolder != null) {
-            outputFolder = new File(outputFolder, envId);
-            if (!outputFolder.exists()) {
-                if (outputFolder.mkdirs()) {
-                    return outputFolder.getAbsolutePath();
+        try (MainThreadIO.Trace trace = MainThreadIO.trace("EnvironmentUtils.getExternalEnvPath", MainThreadIO.DISK_WRITE)) {
+            File outputFolder = context.getExternalFilesDir(ENVS_FOLDER);
+            if (outputFolder != null) {
+                outputFolder = new File(outputFolder, envId);
+                if (!outputFolder.exists()) {
+                    if (outputFolder.mkdirs()) {
+                        return outputFolder.getAbsolutePath();
+
+                    } else {
+                        return null;
+                    }
 
                 } else {
-                    return null;
+                    return outputFolder.getAbsolutePath();
                 }
 
             } else {
-                return outputFolder.getAbsolutePath();
+                return null;
             }
-
-        } else {
-            return null;
         }
     }
 
@@ -109,11 +108,13 @@ public class EnvironmentUtils {
         boolean isEnvReady = false;
         String envOutputPath = getExternalEnvPath(context, envId);
         if (envOutputPath != null) {
-            File file = new File(envOutputPath);
-            if (file.exists() && file.isDirectory()) {
-                File[] files = file.listFiles();
-                if (files != null && files.length == 6) {
-                    isEnvReady = true;
+            try (MainThreadIO.Trace trace = MainThreadIO.trace("EnvironmentUtils.isExternalEnvReady", MainThreadIO.DISK_READ)) {
+                File file = new File(envOutputPath);
+                if (file.exists() && file.isDirectory()) {
+                    File[] files = file.listFiles();
+                    if (files != null && files.length == 6) {
+                        isEnvReady = true;
+                    }
                 }
             }
         }
@@ -175,30 +176,9 @@ public class EnvironmentUtils {
      * @return The Remote environments list or null if they couldn't be found.
      */
     public static Environment[] getExternalEnvironments(@NonNull Context context, @NonNull String versionName) {
-        Map<String, RemoteProperties> properties = SettingsStore.getInstance(context).getRemoteProperties();
-        if (properties != null) {
-            // If there are environments for the current version we return those,
-            // otherwise return the ones from the most recent version
-            if (properties.containsKey(versionName)) {
-                RemoteProperties versionProperties = properties.get(versionName);
-                if (versionProperties != null && versionProperties.getEnvironments() != null) {
-                    return versionProperties.getEnvironments();
-                }
-            }
-
-            Set<String> keys = properties.keySet();
-            List<String> keysList = keys.stream()
-                    .sorted((o1, o2) -> o2.compareTo(o1))
-                    .collect(Collectors.toList());
-            for (String key : keysList) {
-                RemoteProperties props = properties.get(key);
-                if (props != null && props.getEnvironments() != null) {
-                    return props.getEnvironments();
-                }
-            }
-        }
-
-        return null;
+        // If there are environments for the current version we return those,
+        // otherwise return the ones from the most recent version
+        return SettingsStore.getInstance(context).getRemotePropertiesStore().getEnvironments(versionName);
     }
 
     /**
@@ -225,31 +205,11 @@ public class EnvironmentUtils {
      */
     @Nullable
     public static Environment getExternalEnvironmentById(@NonNull Context context, @NonNull String envId, @NonNull String versionName) {
-        Map<String, RemoteProperties> properties = SettingsStore.getInstance(context).getRemoteProperties();
-        if (properties != null) {
-            // If there are environments for the current version we return those,
-            // otherwise return the ones from the most recent version
-            if (properties.containsKey(versionName)) {
-                RemoteProperties versionProperties = properties.get(versionName);
-                if (versionProperties != null && versionProperties.getEnvironments() != null) {
-                    return Arrays.stream(versionProperties.getEnvironments())
-                            .filter(environment -> envId.equals(environment.getValue()))
-                            .findFirst()
-                            .orElse(null);
-                }
-            }
-
-            Set<String> keys = properties.keySet();
-            List<String> keysList = keys.stream()
-                    .sorted((o1, o2) -> o2.compareTo(o1))
-                    .collect(Collectors.toList());
-            for (String key : keysList) {
-                RemoteProperties props = properties.get(key);
-                if (props != null && props.getEnvironments() != null) {
-                    return Arrays.stream(props.getEnvironments())
-                            .filter(environment -> envId.equals(environment.getValue()))
-                            .findFirst()
-                            .orElse(null);
+        Environment[] environments = getExternalEnvironments(context, versionName);
+        if (environments != null) {
+            for (Environment environment : environments) {
+                if (envId.equals(environment.getValue())) {
+                    return environment;
                 }
             }
         }
@@ -281,31 +241,11 @@ public class EnvironmentUtils {
      */
     @Nullable
     public static Environment getExternalEnvironmentByPayload(@NonNull Context context, @NonNull String payloadUrl, @NonNull String versionName) {
-        Map<String, RemoteProperties> properties = SettingsStore.getInstance(context).getRemoteProperties();
-        if (properties != null) {
-            // If there are environments for the current version we return those,
-            // otherwise return the ones from the most recent version
-            if (properties.containsKey(versionName)) {
-                RemoteProperties versionProperties = properties.get(versionName);
-                if (versionProperties != null && versionProperties.getEnvironments() != null) {
-                    return Arrays.stream(versionProperties.getEnvironments())
-                            .filter(environment -> payloadUrl.equals(environment.getPayload()))
-                            .findFirst()
-                            .orElse(null);
-                }
-            }
-
-            Set<String> keys = properties.keySet();
-            List<String> keysList = keys.stream()
-                    .sorted((o1, o2) -> o2.compareTo(o1))
-                    .collect(Collectors.toList());
-            for (String key : keysList) {
-                RemoteProperties props = properties.get(key);
-                if (props != null && props.getEnvironments() != null) {
-                    return Arrays.stream(props.getEnvironments())
-                            .filter(environment -> payloadUrl.equals(environment.getPayload()))
-                            .findFirst()
-                            .orElse(null);
+        Environment[] environments = getExternalEnvironments(context, versionName);
+        if (environments != null) {
+            for (Environment environment : environments) {
+                if (payloadUrl.equals(environment.getPayload())) {
+                    return environment;
                 }
             }
         }
@@ -0,0 +1,378 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Shader;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import org.mozilla.vrbrowser.VRBrowserApplication;
+import org.mozilla.vrbrowser.browser.engine.EngineProvider;
+import org.mozilla.vrbrowser.browser.engine.GeckoViewFetchClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import mozilla.components.concept.fetch.Request;
+
+/**
+ * Loads remote images (avatars, favicons, thumbnails) for the UI. Images are fetched through the
+ * default fetch client with the HTTP cache enabled, decoded downsampled to the requested size and
+ * transformed once. The transformed result is cached in memory and on disk, keyed by URL, size
+ * and transform, so showing the same image again doesn't decode or transform it again.
+ */
+public class ImagePipeline {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(ImagePipeline.class);
+    private static final String DISK_CACHE_DIR = "images";
+    private static final long DISK_CACHE_SIZE = 1024 * 1024 * 20; // 20MB
+    private static final int MAX_MEMORY_CACHE_SIZE = 1024 * 1024 * 8; // 8MB
+    private static final int MAX_IMAGE_BYTES = 1024 * 1024 * 10; // 10MB
+
+    @IntDef(value = { TRANSFORM_NONE, TRANSFORM_ROUND_CROP })
+    public @interface Transform {}
+    public static final int TRANSFORM_NONE = 0;
+    public static final int TRANSFORM_ROUND_CROP = 1;
+
+    /**
+     * Image to load and the transforms to apply to it.
+     */
+    public static class ImageRequest {
+        final String url;
+        int width;
+        int height;
+        @Transform int transform = TRANSFORM_NONE;
+        @ColorInt int tint = Color.TRANSPARENT;
+
+        public ImageRequest(@NonNull String aUrl) {
+            url = aUrl;
+        }
+
+        /**
+         * The image is downsampled to the given size, keeping the aspect ratio. Round crops are
+         * scaled to fill it. If not set the image is decoded at full size.
+         */
+        public ImageRequest size(int aWidth, int aHeight) {
+            width = aWidth;
+            height = aHeight;
+            return this;
+        }
+
+        public ImageRequest transform(@Transform int aTransform) {
+            transform = aTransform;
+            return this;
+        }
+
+        public ImageRequest tint(@ColorInt int aColor) {
+            tint = aColor;
+            return this;
+        }
+
+        @NonNull
+        String getKey() {
+            return url + "|" + width + "x" + height + "|" + transform + "|" + Integer.toHexString(tint);
+        }
+    }
+
+    private Context mContext;
+    private Executor mImageExecutor;
+    private Executor mMainThreadExecutor;
+    private LruCache<String, Bitmap> mMemoryCache;
+    private final CompletableFuture<DiskLruCache> mDiskCache;
+    // Requests in flight, only accessed from the main thread.
+    private final HashMap<String, CompletableFuture<Bitmap>> mPendingRequests = new HashMap<>();
+
+    public static ImagePipeline getInstance(Context aContext) {
+        return ((VRBrowserApplication)aContext.getApplicationContext()).getImagePipeline();
+    }
+
+    public ImagePipeline(@NonNull Context aContext, @NonNull Executor aImageExecutor, @NonNull Executor aMainThreadExecutor) {
+        mContext = aContext;
+        mImageExecutor = aImageExecutor;
+        mMainThreadExecutor = aMainThreadExecutor;
+
+        final int cacheSize = (int) Math.min(MAX_MEMORY_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 32);
+        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+
+        String path = mContext.getCacheDir() + File.separator + DISK_CACHE_DIR;
+        mDiskCache = CompletableFuture.supplyAsync(() -> {
+            try {
+                return DiskLruCache.open(new File(path), 1, 1, DISK_CACHE_SIZE);
+
+            } catch (IOException ex) {
+                Log.e(LOGTAG, "Failed to initialize DiskLruCache:" + ex.getMessage());
+                return null;
+            }
+        }, mImageExecutor);
+    }
+
+    /**
+     * @return The image if it's already loaded in memory, null otherwise.
+     */
+    @UiThread
+    @Nullable
+    public Bitmap getCached(@NonNull ImageRequest aRequest) {
+        return mMemoryCache.get(aRequest.getKey());
+    }
+
+    /**
+     * Loads an image. Concurrent loads of the same request share the same result.
+     * @return A future completed in the main thread with the transformed image, or null if the
+     * image couldn't be loaded.
+     */
+    @UiThread
+    @NonNull
+    public CompletableFuture<Bitmap> load(@NonNull ImageRequest aRequest) {
+        final String key = aRequest.getKey();
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Bitmap> pending = mPendingRequests.get(key);
+        if (pending != null) {
+            return pending;
+        }
+
+        CompletableFuture<Bitmap> result = new CompletableFuture<>();
+        mPendingRequests.put(key, result);
+        mDiskCache.thenApplyAsync(diskCache -> loadFromDisk(diskCache, key), mImageExecutor)
+                .thenCompose(bitmap -> bitmap != null ? CompletableFuture.completedFuture(bitmap) : fetch(aRequest, key))
+                .whenCompleteAsync((bitmap, throwable) -> {
+                    if (throwable != null) {
+                        Log.e(LOGTAG, "Failed to load image " + aRequest.url + ": " + throwable.getMessage());
+                    }
+                    if (bitmap != null) {
+                        mMemoryCache.put(key, bitmap);
+                    }
+                    mPendingRequests.remove(key);
+                    result.complete(throwable == null ? bitmap : null);
+                }, mMainThreadExecutor);
+
+        return result;
+    }
+
+    @Nullable
+    private Bitmap loadFromDisk(@Nullable DiskLruCache aDiskCache, @NonNull String aKey) {
+        if (aDiskCache == null) {
+            return null;
+        }
+        try (DiskLruCache.Snapshot snapshot = aDiskCache.get(getDiskKey(aKey))) {
+            if (snapshot != null) {
+                // Disk entries are already downsampled and transformed.
+                return BitmapFactory.decodeStream(snapshot.getInputStream(0));
+            }
+
+        } catch (IOException ex) {
+            Log.e(LOGTAG, "Failed to read image from DiskLruCache:" + ex.getMessage());
+        }
+        return null;
+    }
+
+    @NonNull
+    private CompletableFuture<Bitmap> fetch(@NonNull ImageRequest aRequest, @NonNull String aKey) {
+        Request request = new Request(
+                aRequest.url,
+                Request.Method.GET,
+                null,
+                null,
+                null,
+                null,
+                Request.Redirect.FOLLOW,
+                Request.CookiePolicy.INCLUDE,
+                true
+        );
+        GeckoViewFetchClient client = EngineProvider.INSTANCE.getDefaultClient(mContext);
+        return client.fetchAsync(request).thenApplyAsync(response -> {
+            try {
+                if (response.getStatus() != 200) {
+                    Log.d(LOGTAG, "Image request failed with status " + response.getStatus() + ": " + aRequest.url);
+                    return null;
+                }
+                byte[] data = response.getBody().useStream(stream -> {
+                    try {
+                        return readBytes(stream);
+
+                    } catch (IOException ex) {
+                        Log.e(LOGTAG, "Failed to read image " + aRequest.url + ": " + ex.getMessage());
+                        return null;
+                    }
+                });
+                Bitmap bitmap = transform(decode(data, aRequest.width, aRequest.height), aRequest);
+                if (bitmap != null) {
+                    storeOnDisk(aKey, bitmap, aRequest);
+                }
+                return bitmap;
+
+            } finally {
+                response.close();
+            }
+        }, mImageExecutor);
+    }
+
+    private void storeOnDisk(@NonNull String aKey, @NonNull Bitmap aBitmap, @NonNull ImageRequest aRequest) {
+        DiskLruCache diskCache = mDiskCache.getNow(null);
+        if (diskCache == null) {
+            return;
+        }
+        DiskLruCache.Editor editor = null;
+        try {
+            editor = diskCache.edit(getDiskKey(aKey));
+            if (editor != null) {
+                try (OutputStream out = editor.newOutputStream(0)) {
+                    // Round crops need the alpha channel.
+                    boolean lossless = aRequest.transform != TRANSFORM_NONE || aBitmap.hasAlpha();
+                    aBitmap.compress(lossless ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, 90, out);
+                }
+                editor.commit();
+            }
+
+        } catch (IOException ex) {
+            Log.e(LOGTAG, "Failed to write image to DiskLruCache:" + ex.getMessage());
+            if (editor != null) {
+                try {
+                    editor.abort();
+
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static Bitmap decode(@Nullable byte[] aData, int aWidth, int aHeight) {
+        if (aData == null) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (aWidth > 0 && aHeight > 0) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(aData, 0, aData.length, options);
+            int sampleSize = 1;
+            while (options.outWidth / (sampleSize * 2) >= aWidth && options.outHeight / (sampleSize * 2) >= aHeight) {
+                sampleSize *= 2;
+            }
+            options.inSampleSize = sampleSize;
+            options.inJustDecodeBounds = false;
+        }
+        return BitmapFactory.decodeByteArray(aData, 0, aData.length, options);
+    }
+
+    @Nullable
+    private static Bitmap transform(@Nullable Bitmap aBitmap, @NonNull ImageRequest aRequest) {
+        if (aBitmap == null) {
+            return null;
+        }
+        boolean roundCrop = aRequest.transform == TRANSFORM_ROUND_CROP;
+        boolean tint = aRequest.tint != Color.TRANSPARENT;
+        int srcWidth = aBitmap.getWidth();
+        int srcHeight = aBitmap.getHeight();
+        int width = srcWidth;
+        int height = srcHeight;
+        if (aRequest.width > 0 && aRequest.height > 0) {
+            float scale = roundCrop ?
+                    Math.max((float) aRequest.width / srcWidth, (float) aRequest.height / srcHeight) :
+                    Math.min((float) aRequest.width / srcWidth, (float) aRequest.height / srcHeight);
+            scale = Math.min(scale, 1.0f);
+            width = roundCrop ? Math.min(aRequest.width, Math.round(srcWidth * scale)) : Math.round(srcWidth * scale);
+            height = roundCrop ? Math.min(aRequest.height, Math.round(srcHeight * scale)) : Math.round(srcHeight * scale);
+        }
+        if (!roundCrop && !tint && width == srcWidth && height == srcHeight) {
+            return aBitmap;
+        }
+        if (roundCrop) {
+            width = height = Math.min(width, height);
+        }
+
+        // Single pass: the scale, the crop and the tint are applied by the paint while drawing.
+        Bitmap output = Bitmap.createBitmap(Math.max(1, width), Math.max(1, height), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(output);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        if (tint) {
+            paint.setColorFilter(new PorterDuffColorFilter(aRequest.tint, PorterDuff.Mode.SRC_IN));
+        }
+        float scale = Math.max((float) output.getWidth() / srcWidth, (float) output.getHeight() / srcHeight);
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        // Center the image in the output, cropping the overflow.
+        matrix.postTranslate((output.getWidth() - srcWidth * scale) / 2, (output.getHeight() - srcHeight * scale) / 2);
+        if (roundCrop) {
+            BitmapShader shader = new BitmapShader(aBitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+            shader.setLocalMatrix(matrix);
+            paint.setShader(shader);
+            float radius = output.getWidth() / 2.0f;
+            canvas.drawCircle(radius, radius, radius, paint);
+        } else {
+            canvas.drawBitmap(aBitmap, matrix, paint);
+        }
+        aBitmap.recycle();
+        return output;
+    }
+
+    @Nullable
+    private static byte[] readBytes(@NonNull InputStream aStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = aStream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+            if (out.size() > MAX_IMAGE_BYTES) {
+                Log.e(LOGTAG, "Image too large");
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @NonNull
+    private static String getDiskKey(@NonNull String aKey) {
+        // DiskLruCache keys must match [a-z0-9_-]{1,120}
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(aKey.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b: hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(aKey.hashCode());
+        }
+    }
+}
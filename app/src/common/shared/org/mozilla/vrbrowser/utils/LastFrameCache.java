@@ -0,0 +1,262 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import org.mozilla.vrbrowser.VRBrowserApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the last full resolution frame rendered by each suspended session, so a window can show it
+ * as a placeholder while the session is restored instead of an empty surface.
+ * Frames are kept decoded in memory and compressed on disk, both tiers are LRU caches budgeted by
+ * total bytes. Private sessions are never cached.
+ */
+public class LastFrameCache {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(LastFrameCache.class);
+    private static final String DISK_CACHE_DIR = "last_frames";
+    private static final long DISK_CACHE_SIZE = 1024 * 1024 * 48; // 48MB
+    private static final int MAX_MEMORY_CACHE_SIZE = 1024 * 1024 * 32; // 32MB
+    private static final int COMPRESS_QUALITY = 80;
+
+    private Context mContext;
+    private LruCache<String, Bitmap> mMemoryCache;
+    private DiskLruCache mDiskCache;
+    private Executor mIOExecutor;
+    private Executor mMainThreadExecutor;
+    private final Object mLock = new Object();
+    // Frames being decoded from disk, only accessed from the main thread.
+    private final HashMap<String, CompletableFuture<Bitmap>> mPendingDecodes = new HashMap<>();
+    // Keys of the frames stored on disk, so misses don't need a disk lookup. Only accessed from
+    // the main thread, complete once the disk cache has been opened.
+    private final HashSet<String> mDiskKeys = new HashSet<>();
+    private boolean mDiskKeysLoaded;
+
+    public static LastFrameCache getInstance(Context aContext) {
+        return ((VRBrowserApplication)aContext.getApplicationContext()).getLastFrameCache();
+    }
+
+    public LastFrameCache(@NonNull Context aContext, @NonNull Executor aIOExecutor, @NonNull Executor aMainThreadExecutor) {
+        mContext = aContext;
+        mIOExecutor = aIOExecutor;
+        mMainThreadExecutor = aMainThreadExecutor;
+    }
+
+    public void onCreate() {
+        // Full resolution frames are large, use 1/16th of the available memory up to 32MB.
+        final int cacheSize = (int) Math.min(MAX_MEMORY_CACHE_SIZE, Runtime.getRuntime().maxMemory() / 16);
+        mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+
+        String path = mContext.getCacheDir() + File.separator + DISK_CACHE_DIR;
+        mIOExecutor.execute(() -> {
+            final HashSet<String> keys = new HashSet<>();
+            try {
+                mDiskCache = DiskLruCache.open(new File(path), 1, 1, DISK_CACHE_SIZE);
+                // DiskLruCache stores each entry in a "<key>.<index>" file.
+                File[] files = mDiskCache.getDirectory().listFiles();
+                if (files != null) {
+                    for (File file: files) {
+                        String name = file.getName();
+                        if (name.endsWith(".0")) {
+                            keys.add(name.substring(0, name.length() - 2));
+                        }
+                    }
+                }
+            }
+            catch (Exception ex) {
+                Log.e(LOGTAG, "Failed to initialize DiskLruCache:" + ex.getMessage());
+            }
+            mMainThreadExecutor.execute(() -> {
+                mDiskKeys.addAll(keys);
+                mDiskKeysLoaded = true;
+            });
+        });
+    }
+
+    /**
+     * Stores the last frame of a session. The frame is kept in memory and compressed to disk in
+     * the IO thread.
+     * @param aKey Session id.
+     * @param aFrame Full resolution frame, it must not be recycled by the caller.
+     * @param aPrivate Whether the frame belongs to a private session, these are discarded.
+     */
+    @UiThread
+    public void putFrame(@NonNull String aKey, @NonNull Bitmap aFrame, boolean aPrivate) {
+        if (aPrivate || mMemoryCache == null) {
+            return;
+        }
+        mMemoryCache.put(aKey, aFrame);
+        mDiskKeys.add(aKey);
+        completePendingDecode(aKey, aFrame);
+        runIO(() -> {
+            DiskLruCache.Editor editor = null;
+            try {
+                editor = mDiskCache.edit(aKey);
+                if (editor != null) {
+                    try (OutputStream out = editor.newOutputStream(0)) {
+                        aFrame.compress(Bitmap.CompressFormat.WEBP, COMPRESS_QUALITY, out);
+                    }
+                    editor.commit();
+                }
+            }
+            catch (Exception ex) {
+                Log.e(LOGTAG, "Failed to add frame to DiskLruCache:" + ex.getMessage());
+                if (editor != null) {
+                    try {
+                        editor.abort();
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @param aKey Session id.
+     * @return The frame if it's decoded in memory, null otherwise. Use {@link #loadFrame(String)}
+     * to also look it up on disk.
+     */
+    @UiThread
+    @Nullable
+    public Bitmap getFrame(@NonNull String aKey) {
+        return mMemoryCache != null ? mMemoryCache.get(aKey) : null;
+    }
+
+    /**
+     * Decodes a frame stored on disk into the memory cache, if it's not already there.
+     * @param aKey Session id.
+     */
+    @UiThread
+    public void prefetchFrame(@NonNull String aKey) {
+        loadFrame(aKey);
+    }
+
+    /**
+     * Looks up a frame in memory and then on disk, decoding it into the memory cache.
+     * @param aKey Session id.
+     * @return A future completed in the main thread with the frame, or null if it's not cached.
+     * The future is already completed if the frame is in memory or isn't cached at all.
+     */
+    @UiThread
+    @NonNull
+    public CompletableFuture<Bitmap> loadFrame(@NonNull String aKey) {
+        Bitmap cached = getFrame(aKey);
+        if (cached != null || mMemoryCache == null || (mDiskKeysLoaded && !mDiskKeys.contains(aKey))) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Bitmap> pending = mPendingDecodes.get(aKey);
+        if (pending != null) {
+            return pending;
+        }
+        final CompletableFuture<Bitmap> result = new CompletableFuture<>();
+        mPendingDecodes.put(aKey, result);
+        mIOExecutor.execute(() -> {
+            Bitmap frame = null;
+            synchronized (mLock) {
+                if (mDiskCache != null) {
+                    try (DiskLruCache.Snapshot snapshot = mDiskCache.get(aKey)) {
+                        if (snapshot != null) {
+                            frame = BitmapFactory.decodeStream(snapshot.getInputStream(0));
+                        }
+                    }
+                    catch (Exception ex) {
+                        Log.e(LOGTAG, "Failed to get frame from DiskLruCache:" + ex.getMessage());
+                    }
+                }
+            }
+            final Bitmap decoded = frame;
+            mMainThreadExecutor.execute(() -> {
+                // Otherwise the frame was removed or replaced while it was being decoded.
+                if (mPendingDecodes.remove(aKey, result)) {
+                    if (decoded != null) {
+                        mMemoryCache.put(aKey, decoded);
+                    } else {
+                        // Evicted from the disk cache.
+                        mDiskKeys.remove(aKey);
+                    }
+                    result.complete(decoded);
+                }
+            });
+        });
+        return result;
+    }
+
+    @UiThread
+    public void removeFrame(@NonNull String aKey) {
+        if (mMemoryCache == null) {
+            return;
+        }
+        mMemoryCache.remove(aKey);
+        mDiskKeys.remove(aKey);
+        completePendingDecode(aKey, null);
+        runIO(() -> {
+            try {
+                mDiskCache.remove(aKey);
+            } catch (Exception ex) {
+                Log.e(LOGTAG, "Failed to remove frame from DiskLruCache:" + ex.getMessage());
+            }
+        });
+    }
+
+    private void completePendingDecode(@NonNull String aKey, @Nullable Bitmap aFrame) {
+        CompletableFuture<Bitmap> pending = mPendingDecodes.remove(aKey);
+        if (pending != null) {
+            pending.complete(aFrame);
+        }
+    }
+
+    private void runIO(Runnable aRunnable) {
+        mIOExecutor.execute(() -> {
+            if (mDiskCache != null) {
+                synchronized (mLock) {
+                    aRunnable.run();
+                }
+            }
+        });
+    }
+
+    public void onDestroy() {
+        if (mMemoryCache != null) {
+            mMemoryCache.evictAll();
+        }
+        mPendingDecodes.values().forEach(pending -> pending.complete(null));
+        mPendingDecodes.clear();
+        runIO(() -> {
+            try {
+                mDiskCache.close();
+            } catch (IOException ex) {
+                Log.e(LOGTAG, "Failed to close DiskLruCache:" + ex.getMessage());
+            }
+            mDiskCache = null;
+        });
+    }
+}
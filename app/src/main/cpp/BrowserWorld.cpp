@@ -12,6 +12,7 @@
 #include "ExternalBlitter.h"
 #include "ExternalVR.h"
 #include "GeckoSurfaceTexture.h"
+#include "PerformanceTelemetry.h"
 #include "Skybox.h"
 #include "SplashAnimation.h"
 #include "Pointer.h"
@@ -127,18 +128,24 @@ typedef std::shared_ptr<PerformanceObserver> PerformanceObserverPtr;
 
 class PerformanceObserver : public PerformanceMonitorObserver {
 public:
+  explicit PerformanceObserver(const crow::PerformanceTelemetryPtr& aTelemetry);
   void PoorPerformanceDetected(const double& aTargetFrameRate, const double& aAverageFrameRate) override;
   void PerformanceRestored(const double& aTargetFrameRate, const double& aAverageFrameRate) override;
+protected:
+  crow::PerformanceTelemetryPtr mTelemetry;
 };
 
+PerformanceObserver::PerformanceObserver(const crow::PerformanceTelemetryPtr& aTelemetry) : mTelemetry(aTelemetry) {}
+
 void
 PerformanceObserver::PoorPerformanceDetected(const double& aTargetFrameRate, const double& aAverageFrameRate)  {
+  mTelemetry->SetPoorPerformance(true);
   crow::VRBrowser::HandlePoorPerformance();
 }
 
 void
 PerformanceObserver::PerformanceRestored(const double& aTargetFrameRate, const double& aAverageFrameRate)  {
-
+  mTelemetry->SetPoorPerformance(false);
 }
 
 } // namespace
@@ -185,6 +192,7 @@ struct BrowserWorld::State {
   SplashAnimationPtr splashAnimation;
   VRVideoPtr vrVideo;
   PerformanceMonitorPtr monitor;
+  PerformanceTelemetryPtr telemetry;
   WidgetMoverPtr movingWidget;
   WidgetResizerPtr widgetResizer;
   std::unordered_map<vrb::Node*, std::pair<Widget*, float>> depthSorting;
@@ -219,7 +227,8 @@ struct BrowserWorld::State {
     fadeAnimation = FadeAnimation::Create(create);
     splashAnimation = SplashAnimation::Create(create);
     monitor = PerformanceMonitor::Create(create);
-    monitor->AddPerformanceMonitorObserver(std::make_shared<PerformanceObserver>());
+    telemetry = PerformanceTelemetry::Create();
+    monitor->AddPerformanceMonitorObserver(std::make_shared<PerformanceObserver>(telemetry));
     wasInGazeMode = false;
     webXRInterstialState = WebXRInterstialState::FORCED;
     widgetsYaw = vrb::Matrix::Identity();
@@ -818,6 +827,7 @@ BrowserWorld::Pause() {
   m.paused = true;
   m.externalVR->OnPause();
   m.monitor->Pause();
+  m.telemetry->Reset();
 }
 
 void
@@ -1021,6 +1031,18 @@ BrowserWorld::EndFrame() {
   }
   m.drawHandler = nullptr;
 
+  int32_t widgetCount = 0;
+  int32_t layerCount = 0;
+  for (const WidgetPtr& widget: m.widgets) {
+    if (widget->IsVisible()) {
+      widgetCount++;
+      if (widget->GetLayer()) {
+        layerCount++;
+      }
+    }
+  }
+  m.telemetry->RecordFrame(m.externalVR->IsPresenting(), widgetCount, layerCount);
+
   // Update the 3d audio engine with the most recent head rotation.
   const vrb::Matrix &head = m.device->GetHeadTransform();
   const vrb::Vector p = head.GetTranslation();
@@ -1443,6 +1465,13 @@ BrowserWorld::SetCylinderDensity(const float aDensity) {
 void
 BrowserWorld::SetCPULevel(const device::CPULevel aLevel) {
   m.device->SetCPULevel(aLevel);
+  m.telemetry->SetCPULevel(aLevel);
+}
+
+void
+BrowserWorld::SetPerformanceBuffer(void* aAddress, const size_t aSize) {
+  ASSERT_ON_RENDER_THREAD();
+  m.telemetry->SetBuffer(aAddress, aSize);
 }
 
 void
@@ -1868,6 +1897,13 @@ JNI_METHOD(void, setCPULevelNative)
   crow::BrowserWorld::Instance().SetCPULevel(static_cast<crow::device::CPULevel>(aCPULevel));
 }
 
+JNI_METHOD(void, setPerformanceBufferNative)
+(JNIEnv* aEnv, jobject, jobject aBuffer) {
+  void* address = aBuffer ? aEnv->GetDirectBufferAddress(aBuffer) : nullptr;
+  const jlong size = aBuffer ? aEnv->GetDirectBufferCapacity(aBuffer) : 0;
+  crow::BrowserWorld::Instance().SetPerformanceBuffer(address, size > 0 ? (size_t)size : 0);
+}
+
 JNI_METHOD(void, setWebXRIntersitialStateNative)
 (JNIEnv*, jobject, jint aState) {
   crow::BrowserWorld::WebXRInterstialState value;
@@ -72,6 +72,7 @@ public:
   void SetWebXRInterstitalState(const WebXRInterstialState aState);
   void SetIsServo(const bool aIsServo);
   void SetCPULevel(const device::CPULevel aLevel);
+  void SetPerformanceBuffer(void* aAddress, const size_t aSize);
   JNIEnv* GetJNIEnv() const;
 protected:
   struct State;
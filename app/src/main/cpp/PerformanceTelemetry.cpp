@@ -0,0 +1,154 @@
+/* -*- Mode: C++; tab-width: 20; indent-tabs-mode: nil; c-basic-offset: 2 -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+#include "PerformanceTelemetry.h"
+#include "vrb/ConcreteClass.h"
+#include "vrb/Logger.h"
+
+#include <algorithm>
+#include <atomic>
+#include <chrono>
+#include <cmath>
+#include <cstring>
+
+namespace crow {
+
+// Number of frames used to estimate the vsync interval.
+static const int kVsyncWindow = 120;
+
+struct PerformanceTelemetry::State {
+  uint8_t* buffer;
+  int32_t capacity;
+  int64_t writeCount;
+  int32_t cpuLevel;
+  bool poorPerformance;
+  std::chrono::steady_clock::time_point lastFrame;
+  bool hasLastFrame;
+  float vsyncInterval;
+  float windowMinFrameTime;
+  int windowFrames;
+
+  State()
+      : buffer(nullptr)
+      , capacity(0)
+      , writeCount(0)
+      , cpuLevel(0)
+      , poorPerformance(false)
+      , hasLastFrame(false)
+      , vsyncInterval(0.0f)
+      , windowMinFrameTime(0.0f)
+      , windowFrames(0)
+  {}
+
+  // The vsync interval is estimated as the shortest frame time seen in the last window,
+  // the compositor never presents frames faster than the display refresh rate.
+  void UpdateVsyncInterval(const float aFrameTime) {
+    if (windowFrames == 0 || aFrameTime < windowMinFrameTime) {
+      windowMinFrameTime = aFrameTime;
+    }
+    windowFrames++;
+    if (vsyncInterval <= 0.0f) {
+      vsyncInterval = aFrameTime;
+    }
+    if (windowFrames >= kVsyncWindow) {
+      vsyncInterval = windowMinFrameTime;
+      windowFrames = 0;
+    }
+  }
+
+  template <typename T>
+  void Write(uint8_t* aDest, const T aValue) {
+    memcpy(aDest, &aValue, sizeof(T));
+  }
+};
+
+PerformanceTelemetryPtr
+PerformanceTelemetry::Create() {
+  return std::make_shared<vrb::ConcreteClass<PerformanceTelemetry, PerformanceTelemetry::State> >();
+}
+
+void
+PerformanceTelemetry::SetBuffer(void* aAddress, const size_t aSize) {
+  m.buffer = nullptr;
+  m.capacity = 0;
+  m.writeCount = 0;
+  if (!aAddress || aSize < kHeaderSize + kRecordSize) {
+    return;
+  }
+  int32_t version = 0;
+  memcpy(&version, aAddress, sizeof(int32_t));
+  if (version != kVersion) {
+    VRB_ERROR("Unexpected performance buffer version: %d", version);
+    return;
+  }
+  m.buffer = static_cast<uint8_t*>(aAddress);
+  m.capacity = (int32_t)((aSize - kHeaderSize) / kRecordSize);
+  m.Write<int32_t>(m.buffer + 4, m.capacity);
+}
+
+void
+PerformanceTelemetry::SetCPULevel(const device::CPULevel aLevel) {
+  m.cpuLevel = static_cast<int32_t>(aLevel);
+}
+
+void
+PerformanceTelemetry::SetPoorPerformance(const bool aPoorPerformance) {
+  m.poorPerformance = aPoorPerformance;
+}
+
+void
+PerformanceTelemetry::RecordFrame(const bool aImmersive, const int32_t aWidgetCount, const int32_t aLayerCount) {
+  const std::chrono::steady_clock::time_point now = std::chrono::steady_clock::now();
+  if (!m.hasLastFrame) {
+    m.lastFrame = now;
+    m.hasLastFrame = true;
+    return;
+  }
+  const float frameTime = std::chrono::duration<float, std::milli>(now - m.lastFrame).count();
+  m.lastFrame = now;
+  m.UpdateVsyncInterval(frameTime);
+
+  if (!m.buffer) {
+    return;
+  }
+
+  int32_t missed = 0;
+  if (m.vsyncInterval > 0.0f) {
+    missed = std::max(0, (int32_t)std::lround(frameTime / m.vsyncInterval) - 1);
+  }
+  int32_t flags = m.cpuLevel & kCPULevelMask;
+  if (m.poorPerformance) {
+    flags |= kFlagPoorPerformance;
+  }
+  if (aImmersive) {
+    flags |= kFlagImmersive;
+  }
+
+  const int64_t index = m.writeCount;
+  uint8_t* record = m.buffer + kHeaderSize + (index % m.capacity) * kRecordSize;
+  int64_t* sequence = reinterpret_cast<int64_t*>(record);
+  // Mark the record as being written so readers discard it.
+  __atomic_store_n(sequence, (int64_t)0, __ATOMIC_RELAXED);
+  std::atomic_thread_fence(std::memory_order_release);
+  m.Write<int64_t>(record + 8, std::chrono::duration_cast<std::chrono::nanoseconds>(now.time_since_epoch()).count());
+  m.Write<float>(record + 16, frameTime);
+  m.Write<int32_t>(record + 20, missed);
+  m.Write<int32_t>(record + 24, flags);
+  m.Write<int16_t>(record + 28, (int16_t)std::min(aWidgetCount, (int32_t)INT16_MAX));
+  m.Write<int16_t>(record + 30, (int16_t)std::min(aLayerCount, (int32_t)INT16_MAX));
+  __atomic_store_n(sequence, index + 1, __ATOMIC_RELEASE);
+
+  m.writeCount = index + 1;
+  __atomic_store_n(reinterpret_cast<int64_t*>(m.buffer + 8), m.writeCount, __ATOMIC_RELEASE);
+}
+
+void
+PerformanceTelemetry::Reset() {
+  m.hasLastFrame = false;
+}
+
+PerformanceTelemetry::PerformanceTelemetry(State& aState) : m(aState) {}
+
+} // namespace crow
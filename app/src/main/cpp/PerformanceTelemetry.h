@@ -0,0 +1,57 @@
+/* -*- Mode: C++; tab-width: 20; indent-tabs-mode: nil; c-basic-offset: 2 -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+#ifndef VRBROWSER_PERFORMANCE_TELEMETRY_H
+#define VRBROWSER_PERFORMANCE_TELEMETRY_H
+
+#include "vrb/MacroUtils.h"
+#include "Device.h"
+#include <cstddef>
+#include <cstdint>
+#include <memory>
+
+namespace crow {
+
+class PerformanceTelemetry;
+typedef std::shared_ptr<PerformanceTelemetry> PerformanceTelemetryPtr;
+
+// Publishes per-frame timing samples into a single producer ring buffer shared with Java.
+// The buffer is a direct ByteBuffer allocated by FrameTimingBuffer.java, both sides must
+// agree on the layout below.
+//
+// Header (16 bytes):
+//   int32 version, int32 capacity (records), int64 write count.
+// Record (32 bytes):
+//   int64 sequence, int64 timestamp (ns), float frame time (ms), int32 missed vsyncs,
+//   int32 flags, int16 widget count, int16 layer count.
+// A record is valid when its sequence equals its write index + 1 before and after reading it.
+class PerformanceTelemetry {
+public:
+  static const int32_t kVersion = 1;
+  static const size_t kHeaderSize = 16;
+  static const size_t kRecordSize = 32;
+  static const int32_t kFlagPoorPerformance = 1 << 4;
+  static const int32_t kFlagImmersive = 1 << 5;
+  static const int32_t kCPULevelMask = 0x0F;
+
+  static PerformanceTelemetryPtr Create();
+  void SetBuffer(void* aAddress, const size_t aSize);
+  void SetCPULevel(const device::CPULevel aLevel);
+  void SetPoorPerformance(const bool aPoorPerformance);
+  void RecordFrame(const bool aImmersive, const int32_t aWidgetCount, const int32_t aLayerCount);
+  void Reset();
+protected:
+  struct State;
+  PerformanceTelemetry(State& aState);
+  ~PerformanceTelemetry() = default;
+private:
+  State& m;
+  PerformanceTelemetry() = delete;
+  VRB_NO_DEFAULTS(PerformanceTelemetry);
+};
+
+} // namespace crow
+
+#endif //VRBROWSER_PERFORMANCE_TELEMETRY_H
@@ -8,7 +8,10 @@ import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mozilla.vrbrowser.browser.RemotePropertiesStore
 import org.mozilla.vrbrowser.browser.SettingsStore
+import org.mozilla.vrbrowser.db.KeyValueStores
+import org.mozilla.vrbrowser.db.LogKeyValueStore
 import org.mozilla.vrbrowser.utils.EnvironmentUtils
 import org.mozilla.vrbrowser.utils.TestFileUtils
 import org.robolectric.RobolectricTestRunner
@@ -120,6 +123,31 @@ class EnvironmentsTest {
         assertFalse(isExternal)
     }
 
+    @Test
+    fun `Remote properties are persisted and changes are notified once`() {
+        val store = RemotePropertiesStore(context)
+        val changes = ArrayList<RemotePropertiesStore.Change>()
+        store.addListener { changes.add(it) }
+
+        val json = TestFileUtils.readTextFile(javaClass.classLoader!!, "environments/targetVersionEnvs.json")
+        store.setPayload(json)
+        store.setPayload(json)
+        assertEquals(1, changes.size)
+        assertNotNull(changes[0].properties)
+
+        // A new store reads the payload back from disk.
+        (KeyValueStores.getDefault(context) as? LogKeyValueStore)?.close()
+        KeyValueStores.setDefault(null)
+        val reloaded = RemotePropertiesStore(context)
+        assertEquals(store.properties, reloaded.properties)
+        assertEquals(2, reloaded.getEnvironments("11")?.size)
+
+        store.setPayload(null)
+        assertEquals(2, changes.size)
+        assertNull(changes[1].properties)
+        assertNull(RemotePropertiesStore(context).properties)
+    }
+
     @Test
     fun `External environment path`() {
         var path = context.getExternalFilesDir(EnvironmentUtils.ENVS_FOLDER)
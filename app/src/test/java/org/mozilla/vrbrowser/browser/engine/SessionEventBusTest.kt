@@ -0,0 +1,144 @@
+package org.mozilla.vrbrowser.browser.engine
+
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class SessionEventBusTest {
+
+    private interface PageListener {
+        fun onPageStart(uri: String) {}
+        fun onProgressChange(progress: Int) {}
+        fun onPageStop() {}
+    }
+
+    private class CountingListener : PageListener {
+        var starts = 0
+        var stops = 0
+        var progressEvents = 0
+        var lastProgress = -1
+
+        override fun onPageStart(uri: String) { starts++ }
+        override fun onProgressChange(progress: Int) { progressEvents++; lastProgress = progress }
+        override fun onPageStop() { stops++ }
+    }
+
+    private val scheduled = ArrayList<Runnable>()
+    private lateinit var bus: SessionEventBus
+    private lateinit var listeners: ListenerList<PageListener>
+
+    @Before
+    fun setup() {
+        scheduled.clear()
+        bus = SessionEventBus { scheduled.add(it) }
+        listeners = ListenerList()
+    }
+
+    private fun runScheduled() {
+        val pending = ArrayList(scheduled)
+        scheduled.clear()
+        pending.forEach { it.run() }
+    }
+
+    @Test
+    fun testProgressIsCoalesced() {
+        val listener = CountingListener()
+        listeners.add(listener)
+
+        for (progress in 0..100) {
+            bus.postCoalesced(SessionEventBus.COALESCED_PROGRESS, listeners, SessionEventBus.Event<PageListener> { it.onProgressChange(progress) })
+        }
+        assertEquals(1, scheduled.size)
+        runScheduled()
+
+        assertEquals(1, listener.progressEvents)
+        assertEquals(100, listener.lastProgress)
+    }
+
+    @Test
+    fun testCoalescedEventsAreFlushedInOrder() {
+        val order = ArrayList<String>()
+        listeners.add(object : PageListener {
+            override fun onProgressChange(progress: Int) { order.add("progress $progress") }
+            override fun onPageStop() { order.add("stop") }
+        })
+
+        bus.postCoalesced(SessionEventBus.COALESCED_PROGRESS, listeners, SessionEventBus.Event<PageListener> { it.onProgressChange(90) })
+        bus.post(listeners, SessionEventBus.Event<PageListener> { it.onPageStop() })
+        runScheduled()
+
+        assertEquals(listOf("progress 90", "stop"), order)
+    }
+
+    @Test
+    fun testListenerChangesDuringDispatch() {
+        val added = CountingListener()
+        val removed = CountingListener()
+        listeners.add(object : PageListener {
+            override fun onPageStart(uri: String) {
+                listeners.add(added)
+                listeners.remove(removed)
+            }
+        })
+        listeners.add(removed)
+
+        bus.post(listeners, SessionEventBus.Event<PageListener> { it.onPageStart("https://example.com") })
+        // The snapshot taken when the event was posted is used for the whole dispatch.
+        assertEquals(0, added.starts)
+        assertEquals(1, removed.starts)
+
+        bus.post(listeners, SessionEventBus.Event<PageListener> { it.onPageStart("https://example.com") })
+        assertEquals(1, added.starts)
+        assertEquals(1, removed.starts)
+    }
+
+    @Test
+    fun testReplayIsDeferredUntilDispatchEnds() {
+        val order = ArrayList<String>()
+        listeners.add(object : PageListener {
+            override fun onPageStart(uri: String) {
+                order.add("start")
+                bus.replay { order.add("replay") }
+                order.add("start end")
+            }
+        })
+
+        bus.post(listeners, SessionEventBus.Event<PageListener> { it.onPageStart("https://example.com") })
+        assertEquals(listOf("start", "start end", "replay"), order)
+
+        bus.replay { order.add("direct replay") }
+        assertEquals("direct replay", order.last())
+    }
+
+    @Test
+    fun testPageLoadEventStorm() {
+        val pageLoads = 200
+        val progressPerLoad = 50
+        val listener = CountingListener()
+        listeners.add(listener)
+
+        for (load in 0 until pageLoads) {
+            // Listeners come and go while the page sends navigation and progress events.
+            val tabListener = CountingListener()
+            listeners.add(tabListener)
+            bus.post(listeners, SessionEventBus.Event<PageListener> { it.onPageStart("https://example.com/$load") })
+            for (progress in 1..progressPerLoad) {
+                bus.postCoalesced(SessionEventBus.COALESCED_PROGRESS, listeners, SessionEventBus.Event<PageListener> { it.onProgressChange(progress) })
+            }
+            runScheduled()
+            bus.post(listeners, SessionEventBus.Event<PageListener> { it.onPageStop() })
+            listeners.remove(tabListener)
+
+            assertEquals(1, tabListener.starts)
+            assertEquals(1, tabListener.progressEvents)
+            assertEquals(progressPerLoad, tabListener.lastProgress)
+            assertEquals(1, tabListener.stops)
+        }
+
+        assertEquals(pageLoads, listener.starts)
+        assertEquals(pageLoads, listener.stops)
+        // Progress is coalesced into a single delivery per page load.
+        assertEquals(pageLoads, listener.progressEvents)
+        assertTrue(scheduled.isEmpty())
+    }
+}
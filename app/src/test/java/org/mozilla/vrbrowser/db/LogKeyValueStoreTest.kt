@@ -0,0 +1,145 @@
+package org.mozilla.vrbrowser.db
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.mozilla.vrbrowser.TestApplication
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+import java.io.RandomAccessFile
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = TestApplication::class)
+class LogKeyValueStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var file: File
+    private lateinit var store: LogKeyValueStore
+
+    @Before
+    fun setup() {
+        file = File(folder.root, "test.kvlog")
+        store = LogKeyValueStore(file)
+    }
+
+    @After
+    fun tearDown() {
+        store.close()
+    }
+
+    @Test
+    fun testValuesAreReadBackAfterReopening() {
+        store.putBoolean("boolean", true)
+        store.putInt("int", 42)
+        store.putLong("long", Long.MAX_VALUE)
+        store.putFloat("float", 1.5f)
+        store.putString("string", "héllo")
+        store.putStringSet("set", setOf("a", "b"))
+        store.putString("removed", "value")
+        store.remove("removed")
+
+        reopen()
+        assertTrue(store.getBoolean("boolean", false))
+        assertEquals(42, store.getInt("int", 0))
+        assertEquals(Long.MAX_VALUE, store.getLong("long", 0))
+        assertEquals(1.5f, store.getFloat("float", 0f))
+        assertEquals("héllo", store.getString("string", null))
+        assertEquals(setOf("a", "b"), store.getStringSet("set", null))
+        assertFalse(store.contains("removed"))
+    }
+
+    @Test
+    fun testTypeMismatchReturnsTheDefault() {
+        store.putString("key", "value")
+        assertEquals(7, store.getInt("key", 7))
+        assertNull(store.getStringSet("key", null))
+    }
+
+    @Test
+    fun testCorruptedTailIsDropped() {
+        store.putString("first", "1")
+        val end = store.writePosition
+        store.putString("second", "2")
+        store.close()
+
+        // Corrupt the payload of the last record.
+        RandomAccessFile(file, "rw").use {
+            it.seek(end + 10L)
+            it.write(0xff)
+        }
+
+        store = LogKeyValueStore(file)
+        assertEquals("1", store.getString("first", null))
+        assertFalse(store.contains("second"))
+
+        // The log is writable again after the valid records.
+        assertEquals(end, store.writePosition)
+        store.putString("third", "3")
+        reopen()
+        assertEquals("3", store.getString("third", null))
+    }
+
+    @Test
+    fun testCompactionKeepsTheCurrentValues() {
+        val value = "x".repeat(1000)
+        for (i in 0 until 200) {
+            store.putString("key", value + i)
+            store.putInt("count", i)
+        }
+        // Most of the log has been overwritten, it has been compacted while writing.
+        assertTrue(store.writePosition < 32 * 1024)
+
+        store.compact()
+        assertTrue(store.writePosition < 1200)
+        reopen()
+        assertEquals(value + 199, store.getString("key", null))
+        assertEquals(199, store.getInt("count", 0))
+    }
+
+    @Test
+    fun testCompactionRunsInTheExecutor() {
+        val pending = ArrayList<Runnable>()
+        store.close()
+        store = LogKeyValueStore(file) { pending.add(it) }
+
+        val value = "x".repeat(1000)
+        for (i in 0 until 100) {
+            store.putString("key", value + i)
+        }
+        // Compaction is only scheduled once, the log grows until it runs.
+        assertEquals(1, pending.size)
+        assertTrue(store.writePosition > 64 * 1024)
+
+        store.putString("during", "compaction")
+        pending.removeAt(0).run()
+        assertTrue(store.writePosition < 1200)
+        reopen()
+        assertEquals(value + 99, store.getString("key", null))
+        assertEquals("compaction", store.getString("during", null))
+    }
+
+    @Test
+    fun testGrowsBeyondTheInitialCapacity() {
+        val value = "x".repeat(1000)
+        for (i in 0 until 100) {
+            store.putString("key$i", value)
+        }
+
+        reopen()
+        for (i in 0 until 100) {
+            assertEquals(value, store.getString("key$i", null))
+        }
+    }
+
+    private fun reopen() {
+        store.close()
+        store = LogKeyValueStore(file)
+    }
+}
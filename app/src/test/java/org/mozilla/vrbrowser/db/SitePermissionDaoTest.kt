@@ -0,0 +1,105 @@
+package org.mozilla.vrbrowser.db
+
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mozilla.vrbrowser.TestApplication
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = TestApplication::class)
+class SitePermissionDaoTest {
+
+    private lateinit var database: AppDatabase
+    private lateinit var dao: SitePermissionDao
+
+    @Before
+    fun setup() {
+        database = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext<TestApplication>(), AppDatabase::class.java)
+                .allowMainThreadQueries()
+                .build()
+        dao = database.sitePermissionDao()
+        dao.insert(createSites(SITE_COUNT, SitePermission.SITE_PERMISSION_POPUP))
+        dao.insert(createSites(SITE_COUNT, SitePermission.SITE_PERMISSION_TRACKING))
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun testBulkInsert() {
+        assertEquals(SITE_COUNT, dao.count(SitePermission.SITE_PERMISSION_POPUP))
+        assertEquals(SITE_COUNT, dao.count(SitePermission.SITE_PERMISSION_TRACKING))
+        assertEquals(0, dao.count(SitePermission.SITE_PERMISSION_WEBXR))
+        assertEquals(SITE_COUNT, dao.getAll(SitePermission.SITE_PERMISSION_POPUP).size)
+    }
+
+    @Test
+    fun testExactMatchLookup() {
+        val site = dao.getByUrl(url(42), SitePermission.SITE_PERMISSION_POPUP)
+        assertNotNull(site)
+        assertEquals(url(42), site.url)
+        assertEquals(SitePermission.SITE_PERMISSION_POPUP, site.category)
+
+        // No partial or pattern matches, the lookup is exact.
+        assertNull(dao.getByUrl("https://site42", SitePermission.SITE_PERMISSION_POPUP))
+        assertNull(dao.getByUrl("https://site4_.example.com", SitePermission.SITE_PERMISSION_POPUP))
+        assertNull(dao.getByUrl(url(42), SitePermission.SITE_PERMISSION_WEBXR))
+    }
+
+    @Test
+    fun testLookupUsesIndex() {
+        val cursor = database.openHelper.readableDatabase.query(
+                "EXPLAIN QUERY PLAN SELECT * FROM SitePermission WHERE category = ? AND url = ? LIMIT 1",
+                arrayOf<Any>(SitePermission.SITE_PERMISSION_POPUP, url(42)))
+        val plan = StringBuilder()
+        cursor.use {
+            while (it.moveToNext()) {
+                plan.append(it.getString(it.getColumnIndex("detail")))
+            }
+        }
+        assertTrue(plan.toString(), plan.contains("index_SitePermission_category_url"))
+    }
+
+    @Test
+    fun testBulkDelete() {
+        dao.deleteByUrls((0 until 100).map { url(it) }, SitePermission.SITE_PERMISSION_POPUP)
+        assertEquals(SITE_COUNT - 100, dao.count(SitePermission.SITE_PERMISSION_POPUP))
+        assertEquals(SITE_COUNT, dao.count(SitePermission.SITE_PERMISSION_TRACKING))
+        assertNull(dao.getByUrl(url(0), SitePermission.SITE_PERMISSION_POPUP))
+        assertNotNull(dao.getByUrl(url(100), SitePermission.SITE_PERMISSION_POPUP))
+
+        dao.delete(dao.getAll(SitePermission.SITE_PERMISSION_TRACKING))
+        assertEquals(0, dao.count(SitePermission.SITE_PERMISSION_TRACKING))
+
+        dao.deleteAll(SitePermission.SITE_PERMISSION_POPUP)
+        assertEquals(0, dao.count(SitePermission.SITE_PERMISSION_POPUP))
+    }
+
+    @Test
+    fun testReplaceInTransaction() {
+        database.runInTransaction {
+            dao.deleteAll(SitePermission.SITE_PERMISSION_POPUP)
+            dao.insert(createSites(10, SitePermission.SITE_PERMISSION_POPUP))
+        }
+        assertEquals(10, dao.count(SitePermission.SITE_PERMISSION_POPUP))
+        assertEquals(SITE_COUNT, dao.count(SitePermission.SITE_PERMISSION_TRACKING))
+    }
+
+    private fun createSites(count: Int, category: Int): List<SitePermission> {
+        return (0 until count).map { SitePermission(url(it), url(it), category) }
+    }
+
+    private fun url(index: Int) = "https://site$index.example.com"
+
+    companion object {
+        const val SITE_COUNT = 5000
+    }
+}
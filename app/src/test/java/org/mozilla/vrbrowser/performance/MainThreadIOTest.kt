@@ -0,0 +1,95 @@
+package org.mozilla.vrbrowser.performance
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mozilla.vrbrowser.TestApplication
+import org.mozilla.vrbrowser.utils.TestFileUtils
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = TestApplication::class)
+class MainThreadIOTest {
+
+    private lateinit var baseline: Set<String>
+
+    @Before
+    fun setup() {
+        baseline = TestFileUtils.readTextFile(javaClass.classLoader!!, "main_thread_io_baseline.txt")!!
+                .lines()
+                .map { it.trim() }
+                .filter { it.isNotEmpty() && !it.startsWith("#") }
+                .toSet()
+        MainThreadIO.clear()
+        MainThreadIO.enable()
+    }
+
+    @After
+    fun tearDown() {
+        MainThreadIO.disable()
+        MainThreadIO.clear()
+    }
+
+    @Test
+    fun testOnlyMainThreadAccessesAreRecorded() {
+        MainThreadIO.trace("Test.read", MainThreadIO.DISK_READ).use { }
+        val thread = Thread { MainThreadIO.trace("Test.background", MainThreadIO.DISK_READ).use { } }
+        thread.start()
+        thread.join()
+
+        assertEquals(setOf("Test.read"), MainThreadIO.getSites())
+        assertEquals(1, MainThreadIO.getRecords()[0].count)
+    }
+
+    @Test
+    fun testSiteAndCallerAreFoundInTheStack() {
+        val stack = arrayOf(
+                StackTraceElement("java.io.FileOutputStream", "open", "FileOutputStream.java", 10),
+                StackTraceElement("org.mozilla.vrbrowser.ui.widgets.Windows", "saveState", "Windows.java", 230),
+                StackTraceElement("org.mozilla.vrbrowser.ui.widgets.Windows\$1", "run", "Windows.java", 500),
+                StackTraceElement("org.mozilla.vrbrowser.VRBrowserActivity", "onPause", "VRBrowserActivity.java", 470))
+        assertEquals("Windows.saveState", MainThreadIO.getSite(stack))
+        assertEquals("VRBrowserActivity.onPause:470", MainThreadIO.getCaller("Windows.saveState", stack))
+        assertNull(MainThreadIO.getSite(arrayOf(stack[0])))
+    }
+
+    @Test
+    fun testTracedSitesMatchTheBaseline() {
+        // The working directory of the unit tests is the module directory.
+        val pattern = Regex("MainThreadIO\\.trace\\(\"([^\"]+)\"")
+        val traced = File("src/common/shared").walk()
+                .filter { it.isFile && (it.extension == "java" || it.extension == "kt") }
+                .filter { it.name != "MainThreadIO.java" }
+                .flatMap { file -> pattern.findAll(file.readText()).map { it.groupValues[1] } }
+                .toSet()
+
+        val added = traced - baseline
+        val removed = baseline - traced
+        assertTrue("New main thread I/O sites, move them off the main thread: $added", added.isEmpty())
+        assertTrue("Sites not traced anymore, remove them from the baseline: $removed", removed.isEmpty())
+    }
+
+    @Test
+    fun testViolationsInsideTracedSitesAreSkipped() {
+        val stack = arrayOf(
+                StackTraceElement("java.io.FileInputStream", "open", "FileInputStream.java", 10),
+                StackTraceElement("org.mozilla.vrbrowser.utils.Helper", "read", "Helper.java", 20),
+                StackTraceElement("org.mozilla.vrbrowser.ui.widgets.Windows", "restoreState", "Windows.java", 300))
+        assertFalse(MainThreadIO.isTraced(stack))
+
+        MainThreadIO.trace("Windows.restoreState", MainThreadIO.DISK_READ).use { }
+        // The trace is already closed when StrictMode reports the violation.
+        assertTrue(MainThreadIO.isTraced(stack))
+        assertFalse(MainThreadIO.isTraced(arrayOf(stack[0], stack[1])))
+    }
+
+    // The StrictMode policy is a no-op in Robolectric, the untraced sites of the entry points are
+    // checked against the baseline by MainThreadIOInstrumentedTest.
+}
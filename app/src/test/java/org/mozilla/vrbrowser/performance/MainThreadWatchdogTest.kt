@@ -0,0 +1,91 @@
+package org.mozilla.vrbrowser.performance
+
+import android.os.Handler
+import android.os.Looper
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mozilla.vrbrowser.TestApplication
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.robolectric.shadows.ShadowLooper
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = TestApplication::class)
+class MainThreadWatchdogTest {
+
+    private val dispatch = ">>>>> Dispatching to Handler (android.os.Handler) {5d6e7f} org.mozilla.vrbrowser.VRBrowserActivity\$\$Lambda\$42@9a8b7c: 0"
+    private val finish = "<<<<< Finished to Handler (android.os.Handler) {5d6e7f} org.mozilla.vrbrowser.VRBrowserActivity\$\$Lambda\$42@9a8b7c"
+
+    @Test
+    fun testCallbackIsParsedFromDispatchMessage() {
+        assertEquals("android.view.Choreographer\$FrameDisplayEventReceiver", MainThreadWatchdog.parseCallback(
+                ">>>>> Dispatching to Handler (android.view.Choreographer\$FrameHandler) {b1f4e2} android.view.Choreographer\$FrameDisplayEventReceiver@1a2b3c: 0"))
+        assertEquals("org.mozilla.vrbrowser.VRBrowserActivity\$\$Lambda", MainThreadWatchdog.parseCallback(
+                ">>>>> Dispatching to Handler (android.os.Handler) {5d6e7f} org.mozilla.vrbrowser.VRBrowserActivity\$\$Lambda\$42@9a8b7c: 0"))
+        assertEquals("android.app.ActivityThread\$H what=159", MainThreadWatchdog.parseCallback(
+                ">>>>> Dispatching to Handler (android.app.ActivityThread\$H) {a1b2c3} null: 159"))
+    }
+
+    @Test
+    fun testSignatureUsesTopAppFrames() {
+        val stack = arrayOf(
+                StackTraceElement("android.database.sqlite.SQLiteConnection", "nativeExecute", "SQLiteConnection.java", -2),
+                StackTraceElement("org.mozilla.vrbrowser.input.ChinesePinyinKeyboard", "loadKeymapTable", "ChinesePinyinKeyboard.java", 120),
+                StackTraceElement("org.mozilla.vrbrowser.ui.widgets.KeyboardWidget", "setKeyboard", "KeyboardWidget.java", 640),
+                StackTraceElement("org.mozilla.vrbrowser.ui.widgets.KeyboardWidget", "onLanguageChanged", "KeyboardWidget.java", 700),
+                StackTraceElement("org.mozilla.vrbrowser.VRBrowserActivity", "onClick", "VRBrowserActivity.java", 10))
+        assertEquals("ChinesePinyinKeyboard.loadKeymapTable:120 < KeyboardWidget.setKeyboard:640 < KeyboardWidget.onLanguageChanged:700",
+                MainThreadWatchdog.getSignature(stack))
+
+        val frameworkStack = arrayOf(
+                StackTraceElement("android.os.MessageQueue", "nativePollOnce", "MessageQueue.java", -2),
+                StackTraceElement("android.os.MessageQueue", "next", "MessageQueue.java", 336))
+        assertEquals("MessageQueue.nativePollOnce:-2 < MessageQueue.next:336", MainThreadWatchdog.getSignature(frameworkStack))
+        assertEquals("unsampled", MainThreadWatchdog.getSignature(null))
+    }
+
+    @Test
+    fun testStallsAreGroupedAndLogged() {
+        var now = 1000L
+        val watchdog = MainThreadWatchdog(ApplicationProvider.getApplicationContext<TestApplication>(),
+                Handler(Looper.getMainLooper())) { now }
+        val printer = watchdog.printer
+
+        // Messages shorter than the threshold are neither sampled nor reported.
+        printer.println(dispatch)
+        now += 20
+        ShadowLooper.idleMainLooper(20, TimeUnit.MILLISECONDS)
+        printer.println(finish)
+        ShadowLooper.idleMainLooper()
+        assertTrue(watchdog.stallGroups.isEmpty())
+        assertFalse(watchdog.logFile.exists())
+
+        repeat(2) {
+            printer.println(dispatch)
+            now += 150
+            ShadowLooper.idleMainLooper(150, TimeUnit.MILLISECONDS)
+            printer.println(finish)
+            ShadowLooper.idleMainLooper()
+        }
+
+        val groups = watchdog.stallGroups
+        assertEquals(1, groups.size)
+        assertEquals("org.mozilla.vrbrowser.VRBrowserActivity\$\$Lambda", groups[0].callback)
+        assertEquals(2, groups[0].count)
+        assertEquals(300, groups[0].totalMs)
+        assertEquals(150, groups[0].maxMs)
+        assertNotEquals("unsampled", groups[0].signature)
+
+        val entries = watchdog.logFile.readLines().filter { !it.startsWith("    at ") }
+        assertEquals(2, entries.size)
+        entries.forEach {
+            assertTrue(it.contains(" 150ms org.mozilla.vrbrowser.VRBrowserActivity\$\$Lambda @ " + groups[0].signature))
+        }
+    }
+}
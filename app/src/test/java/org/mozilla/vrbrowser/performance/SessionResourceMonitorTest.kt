@@ -0,0 +1,53 @@
+package org.mozilla.vrbrowser.performance
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SessionResourceMonitorTest {
+
+    @Test
+    fun testProcFilesAreParsed() {
+        val stat = "4321 (Gecko Child (tab)) S 1234 1234 0 0 -1 1077952832 5000 0 12 0 250 75 0 0 20 0 30 0 12345 1500000000 40000"
+        assertEquals(325, SessionResourceMonitor.parseCpuTicks(stat))
+        assertEquals(0, SessionResourceMonitor.parseCpuTicks("garbage"))
+        assertEquals(40000, SessionResourceMonitor.parseResidentPages("366210 40000 20000 5 0 80000 0"))
+        assertEquals(0, SessionResourceMonitor.parseResidentPages(""))
+    }
+
+    @Test
+    fun testContentProcessesAreRecognized() {
+        val pkg = "org.mozilla.vrbrowser"
+        assertTrue(SessionResourceMonitor.isContentProcess("$pkg:tab0", pkg))
+        assertTrue(SessionResourceMonitor.isContentProcess("$pkg:tab12", pkg))
+        assertFalse(SessionResourceMonitor.isContentProcess(pkg, pkg))
+        assertFalse(SessionResourceMonitor.isContentProcess("$pkg:crash", pkg))
+        assertFalse(SessionResourceMonitor.isContentProcess("$pkg:gpu", pkg))
+        assertFalse(SessionResourceMonitor.isContentProcess(null, pkg))
+    }
+
+    @Test
+    fun testMemoryGrowthIsAttributedToActiveSessions() {
+        // The first session grew 100MB while it was active, the second one is now active.
+        val shares = floatArrayOf(100f, 0f)
+        val memory = SessionResourceMonitor.attributeMemory(shares, floatArrayOf(0f, 1f), 50, 150)
+        assertArrayEquals(longArrayOf(100, 50), memory)
+
+        // Memory released by the content process is scaled down proportionally.
+        val scaled = SessionResourceMonitor.attributeMemory(shares, floatArrayOf(0f, 1f), 0, 75)
+        assertArrayEquals(longArrayOf(50, 25), scaled)
+
+        // Without active sessions the growth is split evenly.
+        val even = SessionResourceMonitor.attributeMemory(floatArrayOf(0f, 0f), floatArrayOf(0f, 0f), 80, 80)
+        assertArrayEquals(longArrayOf(40, 40), even)
+    }
+
+    @Test
+    fun testCpuIsSplitByWeight() {
+        val cpu = SessionResourceMonitor.attributeCpu(floatArrayOf(2f, 1f, 1f), 40f)
+        assertArrayEquals(floatArrayOf(20f, 10f, 10f), cpu, 0.001f)
+        assertArrayEquals(floatArrayOf(0f), SessionResourceMonitor.attributeCpu(floatArrayOf(0f), 40f), 0.001f)
+    }
+}